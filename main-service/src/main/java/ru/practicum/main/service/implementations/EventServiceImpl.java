@@ -25,12 +25,12 @@ import ru.practicum.main.repository.EventRepository;
 import ru.practicum.main.service.interfaces.CategoryService;
 import ru.practicum.main.service.interfaces.EventService;
 import ru.practicum.main.service.interfaces.UserService;
+import ru.practicum.stats.statsClient.LongLongMap;
 import ru.practicum.stats.statsClient.StatsClient;
 
 import java.time.LocalDateTime;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -299,14 +299,14 @@ public class EventServiceImpl implements EventService {
             return;
         }
 
-        Map<Long, Long> views = statsClient.getEventsViews(eventIds, true);
+        LongLongMap views = statsClient.getEventsViewCounts(eventIds, true);
 
         if (eventOrEvents instanceof EventFullDto event) {
-            event.setViews(views.getOrDefault(event.getId(), 0L));
+            event.setViews(views.get(event.getId(), 0L));
         } else if (eventOrEvents instanceof List<?> events) {
             events.forEach(e -> {
                 if (e instanceof EventShortDto eventShort) {
-                    eventShort.setViews(views.getOrDefault(eventShort.getId(), 0L));
+                    eventShort.setViews(views.get(eventShort.getId(), 0L));
                 }
             });
         }
@@ -22,10 +22,10 @@ import ru.practicum.main.repository.CategoryRepository;
 import ru.practicum.main.repository.EventRepository;
 import ru.practicum.main.repository.UserRepository;
 import ru.practicum.main.service.implementations.EventServiceImpl;
+import ru.practicum.stats.statsClient.LongLongMap;
 import ru.practicum.stats.statsClient.StatsClient;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -109,7 +109,7 @@ class EventServiceImplIntegrationTest {
                 .build();
 
         // Настраиваем мок для статистики
-        when(statistics.getEventsViews(anySet(), anyBoolean())).thenReturn(Map.of());
+        when(statistics.getEventsViewCounts(anySet(), anyBoolean())).thenReturn(new LongLongMap(0));
     }
 
     @Test
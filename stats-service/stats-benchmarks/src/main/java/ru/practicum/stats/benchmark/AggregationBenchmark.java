@@ -0,0 +1,133 @@
+package ru.practicum.stats.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roaringbitmap.RoaringBitmap;
+import ru.practicum.stats.cold.ColumnarBlock;
+import ru.practicum.stats.dictionary.UriTrie;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.realtime.SlidingWindowCounter;
+import ru.practicum.stats.sketch.HyperLogLog;
+import ru.practicum.stats.sketch.SpaceSaving;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Структуры в памяти, через которые проходит каждый хит или запрос: скетчи агрегатов и топа,
+// счётчики реального времени, дерево URI, колоночные блоки и битовые карты посетителей.
+// Новую структуру агрегации добавляем сюда же отдельным методом
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmark {
+    private static final int SIZE = 1 << 16;
+    private static final int URIS = 500;
+    private static final int IPS = 50_000;
+    private static final int DAYS = 30;
+
+    private List<Hit> hits;
+    private HyperLogLog sketch;
+    private HyperLogLog hourSketch;
+    private SpaceSaving<String> top;
+    private SlidingWindowCounter counter;
+    private UriTrie trie;
+    private ColumnarBlock block;
+    private List<RoaringBitmap> dayBitmaps;
+    private LocalDateTime start;
+    private LocalDateTime end;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        end = LocalDateTime.of(2024, 2, 1, 0, 0);
+        start = end.minusDays(DAYS);
+        hits = BenchmarkData.hits(SIZE, URIS, IPS, start, end);
+        sketch = new HyperLogLog();
+        hourSketch = new HyperLogLog();
+        hits.subList(0, 1000).forEach(hit -> hourSketch.offer(hit.getIp()));
+        top = new SpaceSaving<>(1000);
+        counter = new SlidingWindowCounter(3600);
+        trie = new UriTrie();
+        for (int i = 0; i < URIS; i++) {
+            trie.add(BenchmarkData.uri(i));
+            trie.add(BenchmarkData.uri(i) + "/comments");
+        }
+        block = ColumnarBlock.encode(hits);
+        // Суточные карты номеров ip: примерно столько объединяет запрос уникальных за месяц по одному uri
+        dayBitmaps = new ArrayList<>();
+        for (int day = 0; day < DAYS; day++) {
+            RoaringBitmap bitmap = new RoaringBitmap();
+            for (int i = day; i < SIZE; i += DAYS) {
+                bitmap.add(Math.floorMod(hits.get(i).getIp().hashCode(), IPS));
+            }
+            bitmap.runOptimize();
+            dayBitmaps.add(bitmap);
+        }
+    }
+
+    @Benchmark
+    public HyperLogLog hyperLogLogOffer() {
+        sketch.offer(nextHit().getIp());
+        return sketch;
+    }
+
+    @Benchmark
+    public long hyperLogLogMergeAndCount() {
+        return new HyperLogLog().merge(hourSketch).merge(sketch).cardinality();
+    }
+
+    @Benchmark
+    public SpaceSaving<String> spaceSavingOffer() {
+        top.offer(nextHit().getUri(), 1);
+        return top;
+    }
+
+    @Benchmark
+    public long slidingWindowIncrementAndSum() {
+        long second = next;
+        counter.increment(second);
+        return counter.sum(second, 60);
+    }
+
+    @Benchmark
+    public List<String> uriTrieMatch() {
+        return trie.match("/events/*");
+    }
+
+    @Benchmark
+    public ColumnarBlock columnarBlockEncode() {
+        return ColumnarBlock.encode(hits);
+    }
+
+    @Benchmark
+    public Map<List<String>, Long> columnarBlockCountHits() {
+        Map<List<String>, Long> totals = new HashMap<>();
+        block.countHits(start.plusDays(7), end.minusDays(7), true, null, totals);
+        return totals;
+    }
+
+    @Benchmark
+    public long visitorBitmapsUnion() {
+        return RoaringBitmap.or(dayBitmaps.iterator()).getLongCardinality();
+    }
+
+    private Hit nextHit() {
+        next = (next + 1) & (SIZE - 1);
+        return hits.get(next);
+    }
+}
@@ -0,0 +1,59 @@
+package ru.practicum.stats.benchmark;
+
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.model.Hit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Воспроизводимые данные для бенчмарков: фиксированное зерно, популярность uri и ip неравномерная -
+// малые номера выпадают заметно чаще, как у реальных событий и посетителей
+public final class BenchmarkData {
+    public static final String APP = "ewm-main-service";
+    public static final long SEED = 20240101L;
+
+    private BenchmarkData() {
+    }
+
+    public static List<Hit> hits(int count, int uris, int ips, LocalDateTime start, LocalDateTime end) {
+        Random random = new Random(SEED);
+        long spanSeconds = Duration.between(start, end).getSeconds();
+        List<Hit> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hits.add(Hit.builder()
+                    .app(APP)
+                    .uri(uri(skewed(random, uris, 3)))
+                    .ip(ip(skewed(random, ips, 2)))
+                    .timestamp(start.plusSeconds((long) (random.nextDouble() * spanSeconds)))
+                    .build());
+        }
+        return hits;
+    }
+
+    public static List<EndpointHit> endpointHits(int count, int uris, int ips, LocalDateTime start,
+                                                 LocalDateTime end) {
+        return hits(count, uris, ips, start, end).stream()
+                .map(hit -> EndpointHit.builder()
+                        .app(hit.getApp())
+                        .uri(hit.getUri())
+                        .ip(hit.getIp())
+                        .timestamp(hit.getTimestamp())
+                        .build())
+                .toList();
+    }
+
+    public static String uri(int index) {
+        return "/events/" + index;
+    }
+
+    public static String ip(int index) {
+        return "10." + (index >> 16 & 0xFF) + "." + (index >> 8 & 0xFF) + "." + (index & 0xFF);
+    }
+
+    private static int skewed(Random random, int bound, int power) {
+        return (int) (bound * Math.pow(random.nextDouble(), power));
+    }
+}
@@ -0,0 +1,64 @@
+package ru.practicum.stats.benchmark;
+
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.mapper.HitMapper;
+import ru.practicum.stats.model.Hit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Преобразования EndpointHit <-> Hit на пути записи хита и ответа на /hit
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitMapperBenchmark {
+    private static final int SIZE = 1024;
+
+    private HitMapper mapper;
+    private List<EndpointHit> endpointHits;
+    private List<Hit> hits;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        mapper = Mappers.getMapper(HitMapper.class);
+        LocalDateTime end = LocalDateTime.of(2024, 2, 1, 0, 0);
+        endpointHits = BenchmarkData.endpointHits(SIZE, 500, 50_000, end.minusDays(30), end);
+        hits = BenchmarkData.hits(SIZE, 500, 50_000, end.minusDays(30), end);
+    }
+
+    @Benchmark
+    public Hit toHit() {
+        return mapper.toHit(endpointHits.get(nextIndex()));
+    }
+
+    @Benchmark
+    public EndpointHit toEndpointHit() {
+        return mapper.toEndpointHit(hits.get(nextIndex()));
+    }
+
+    @Benchmark
+    public EndpointHit roundTrip() {
+        return mapper.toEndpointHit(mapper.toHit(endpointHits.get(nextIndex())));
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (SIZE - 1);
+        return next;
+    }
+}
@@ -0,0 +1,103 @@
+package ru.practicum.stats.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.ViewStats;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// (Де)сериализация тел /hit, /hits и ответа /stats тем же ObjectMapper, что собирает Spring:
+// json - обычный JSON, smile - двоичный формат внутренних вызовов (см. SmileConverterConfig)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    private static final TypeReference<List<EndpointHit>> HITS = new TypeReference<>() {
+    };
+    private static final TypeReference<List<ViewStats>> STATS = new TypeReference<>() {
+    };
+
+    @Param({"json", "smile"})
+    private String format;
+
+    // Размер пачки /hits и число строк ответа /stats
+    @Param({"100"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private EndpointHit hit;
+    private List<EndpointHit> hits;
+    private List<ViewStats> stats;
+    private byte[] hitBytes;
+    private byte[] hitsBytes;
+    private byte[] statsBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        if ("smile".equals(format)) {
+            builder.factory(new SmileFactory());
+        }
+        objectMapper = builder.build();
+        LocalDateTime end = LocalDateTime.of(2024, 2, 1, 0, 0);
+        hits = BenchmarkData.endpointHits(size, 500, 50_000, end.minusDays(30), end);
+        hit = hits.get(0);
+        stats = IntStream.range(0, size)
+                .mapToObj(i -> new ViewStats(BenchmarkData.APP, BenchmarkData.uri(i), 1_000_000L / (i + 1)))
+                .toList();
+        hitBytes = objectMapper.writeValueAsBytes(hit);
+        hitsBytes = objectMapper.writeValueAsBytes(hits);
+        statsBytes = objectMapper.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    public byte[] writeHit() throws IOException {
+        return objectMapper.writeValueAsBytes(hit);
+    }
+
+    @Benchmark
+    public EndpointHit readHit() throws IOException {
+        return objectMapper.readValue(hitBytes, EndpointHit.class);
+    }
+
+    @Benchmark
+    public byte[] writeHits() throws IOException {
+        return objectMapper.writeValueAsBytes(hits);
+    }
+
+    @Benchmark
+    public List<EndpointHit> readHits() throws IOException {
+        return objectMapper.readValue(hitsBytes, HITS);
+    }
+
+    @Benchmark
+    public byte[] writeStats() throws IOException {
+        return objectMapper.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    public List<ViewStats> readStats() throws IOException {
+        return objectMapper.readValue(statsBytes, STATS);
+    }
+}
@@ -0,0 +1,115 @@
+package ru.practicum.stats.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.repository.HitBatchRepository;
+import ru.practicum.stats.service.StatService;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// StatServiceImpl целиком на встроенной H2: hitCount хитов за DAYS суток по URIS uri от IPS посетителей.
+// База заполняется пачкой в отдельном контексте без агрегатов, затем поднимается контекст прогона -
+// агрегаты и битовые карты посетителей (rollups=true) пересчитываются при старте, как после перезапуска сервера
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StatServiceBenchmark {
+    private static final int URIS = 500;
+    private static final int IPS = 50_000;
+    private static final int DAYS = 30;
+
+    @Param({"200000"})
+    private int hitCount;
+
+    @Param({"true", "false"})
+    private boolean rollups;
+
+    private String url;
+    private ConfigurableApplicationContext context;
+    private StatService statService;
+    private List<EndpointHit> incoming;
+    private List<String> popularUris;
+    private LocalDateTime start;
+    private LocalDateTime end;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        end = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        start = end.minusDays(DAYS);
+        url = "jdbc:h2:mem:stats-benchmark-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+
+        try (ConfigurableApplicationContext loader = start(false)) {
+            loader.getBean(HitBatchRepository.class).saveAll(BenchmarkData.hits(hitCount, URIS, IPS, start, end), 1000);
+        }
+        context = start(rollups);
+        statService = context.getBean(StatService.class);
+        incoming = BenchmarkData.endpointHits(1024, URIS, IPS, end, end.plusHours(1));
+        popularUris = IntStream.range(0, 10).mapToObj(BenchmarkData::uri).toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        context.close();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    @Benchmark
+    public EndpointHit saveHit() {
+        next = (next + 1) & (incoming.size() - 1);
+        return statService.saveHit(incoming.get(next));
+    }
+
+    @Benchmark
+    public List<ViewStats> getStatsMonth() {
+        return statService.getStats(start, end, null, false);
+    }
+
+    @Benchmark
+    public List<ViewStats> getStatsWeekPopularUris() {
+        return statService.getStats(end.minusDays(7), end, popularUris, false);
+    }
+
+    @Benchmark
+    public List<ViewStats> getUniqueStatsMonth() {
+        return statService.getStats(start, end, null, true);
+    }
+
+    private ConfigurableApplicationContext start(boolean withRollups) {
+        return new SpringApplicationBuilder(StatsServerStart.class)
+                .profiles("benchmark")
+                .run("--spring.datasource.url=" + url,
+                        "--stats.rollup.enabled=" + withRollups,
+                        "--stats.visitors.enabled=" + withRollups);
+    }
+}
@@ -0,0 +1,78 @@
+package ru.practicum.stats.statsClient;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+// Размыкатель цепи: после failure-threshold неудач подряд цепь размыкается на open-ms, вызовы отклоняются
+// сразу, не занимая ни потоков, ни соединений. По истечении open-ms пропускается один пробный вызов:
+// успех замыкает цепь, неудача снова размыкает её на open-ms
+@Slf4j
+public class CircuitBreaker {
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMs) {
+        if (failureThreshold <= 0 || openMs <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Некорректные настройки размыкателя %s: failure-threshold=%d, open-ms=%d",
+                    name, failureThreshold, openMs));
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probing) {
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Цепь вызовов сервера статистики {} замкнута", name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            log.warn("Цепь вызовов сервера статистики {} разомкнута после {} неудач подряд", name, failures);
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probing = false;
+        }
+    }
+
+    // Вызов не дошёл до сервера (очередь занята, поток прерван): ни успех, ни неудача,
+    // но пробный вызов должен освободиться, иначе цепь останется полуоткрытой навсегда
+    public synchronized void onRejected() {
+        probing = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+}
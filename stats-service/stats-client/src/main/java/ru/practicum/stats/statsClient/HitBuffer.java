@@ -0,0 +1,54 @@
+package ru.practicum.stats.statsClient;
+
+import ru.practicum.stats.dto.EndpointHit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Ограниченная очередь хитов на отправку без блокировок. Размер ведётся отдельным счётчиком:
+// место резервируется до вставки, поэтому очередь не вырастает больше capacity, а size() у
+// ConcurrentLinkedQueue обходит всю очередь. Хит сверх ёмкости отбрасывается и считается
+public class HitBuffer {
+    private final ConcurrentLinkedQueue<EndpointHit> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final int capacity;
+
+    public HitBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ёмкость буфера хитов должна быть положительной: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public boolean offer(EndpointHit hit) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+        }
+        queue.offer(hit);
+        return true;
+    }
+
+    public List<EndpointHit> drain(int max) {
+        List<EndpointHit> batch = new ArrayList<>(Math.min(max, size()));
+        EndpointHit hit;
+        while (batch.size() < max && (hit = queue.poll()) != null) {
+            batch.add(hit);
+            size.decrementAndGet();
+        }
+        return batch;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,149 @@
+package ru.practicum.stats.statsClient;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Карта long -> long на открытой адресации с линейным пробированием: ключи и значения лежат в двух массивах,
+// без упаковки и узлов на каждую запись. Ключ 0 служит признаком пустой ячейки и хранится отдельно.
+// Таблица удваивается при заполнении на 3/4. Не потокобезопасна
+public class LongLongMap {
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Ожидаемый размер карты не может быть отрицательным: " + expectedSize);
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    public void put(long key, long value) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            values[slot] = value;
+            return;
+        }
+        insert(slot, key, value);
+    }
+
+    // Прибавляет delta к значению ключа, отсутствующий ключ считается равным 0
+    public void add(long key, long delta) {
+        if (key == 0) {
+            put(0, (hasZeroKey ? zeroValue : 0) + delta);
+            return;
+        }
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            values[slot] += delta;
+            return;
+        }
+        insert(slot, key, delta);
+    }
+
+    public long get(long key, long defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int slot = slot(key);
+        return keys[slot] == key ? values[slot] : defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : keys[slot(key)] == key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public Map<Long, Long> toMap() {
+        Map<Long, Long> map = new HashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+        forEach(map::put);
+        return map;
+    }
+
+    // Ячейка ключа, если он есть, иначе первая пустая ячейка его цепочки
+    private int slot(long key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, long key, long value) {
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size - (hasZeroKey ? 1 : 0) > keys.length - (keys.length >>> 2)) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    // Идентификаторы событий идут подряд, поэтому биты перемешиваются, иначе соседние ключи слипаются в цепочки
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1, (long) expectedSize * 4 / 3)) << 1);
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Слишком большой ожидаемый размер карты: " + expectedSize);
+        }
+        return (int) capacity;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+}
@@ -0,0 +1,118 @@
+package ru.practicum.stats.statsClient;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.exception.StatsClientException;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Защита вызывающих потоков от медленного сервера статистики. Вызовы /hit и /stats выполняются на отдельном
+// пуле из bulkhead.threads потоков с очередью bulkhead.queue-capacity: переполненный пул отклоняет вызов сразу.
+// Вызывающий поток ждёт не дольше таймаута своего вызова, после чего вызов отменяется. У /hit и /stats
+// свои размыкатели цепи, чтобы отказы записи хитов не отключали чтение статистики и наоборот
+@Slf4j
+@Component
+public class StatsCallGuard {
+    private final Duration connectTimeout;
+    private final long hitTimeoutMs;
+    private final long statsTimeoutMs;
+    private final CircuitBreaker hitBreaker;
+    private final CircuitBreaker statsBreaker;
+    private final ThreadPoolExecutor bulkhead;
+
+    public StatsCallGuard(@Value("${stats-server.timeouts.connect-ms:1000}") long connectTimeoutMs,
+                          @Value("${stats-server.timeouts.hit-ms:1000}") long hitTimeoutMs,
+                          @Value("${stats-server.timeouts.stats-ms:2000}") long statsTimeoutMs,
+                          @Value("${stats-server.breaker.failure-threshold:5}") int failureThreshold,
+                          @Value("${stats-server.breaker.open-ms:10000}") long openMs,
+                          @Value("${stats-server.bulkhead.threads:8}") int threads,
+                          @Value("${stats-server.bulkhead.queue-capacity:32}") int queueCapacity) {
+        if (connectTimeoutMs <= 0 || hitTimeoutMs <= 0 || statsTimeoutMs <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Таймауты вызовов сервера статистики должны быть положительными: connect-ms=%d, hit-ms=%d, " +
+                            "stats-ms=%d", connectTimeoutMs, hitTimeoutMs, statsTimeoutMs));
+        }
+        this.connectTimeout = Duration.ofMillis(connectTimeoutMs);
+        this.hitTimeoutMs = hitTimeoutMs;
+        this.statsTimeoutMs = statsTimeoutMs;
+        this.hitBreaker = new CircuitBreaker("/hit", failureThreshold, openMs);
+        this.statsBreaker = new CircuitBreaker("/stats", failureThreshold, openMs);
+        AtomicInteger counter = new AtomicInteger();
+        this.bulkhead = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "stats-call-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public <T> T hit(Callable<T> call) throws StatsClientException {
+        return call(hitBreaker, hitTimeoutMs, call);
+    }
+
+    public <T> T stats(Callable<T> call) throws StatsClientException {
+        return call(statsBreaker, statsTimeoutMs, call);
+    }
+
+    public CircuitBreaker.State getHitState() {
+        return hitBreaker.getState();
+    }
+
+    public CircuitBreaker.State getStatsState() {
+        return statsBreaker.getState();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bulkhead.shutdownNow();
+    }
+
+    private <T> T call(CircuitBreaker breaker, long timeoutMs, Callable<T> call) throws StatsClientException {
+        if (!breaker.tryAcquire()) {
+            throw new StatsClientException("Сервер статистики недоступен, цепь вызовов разомкнута");
+        }
+        Future<T> future;
+        try {
+            future = bulkhead.submit(call);
+        } catch (RejectedExecutionException e) {
+            breaker.onRejected();
+            throw new StatsClientException("Пул вызовов сервера статистики занят", e);
+        }
+        try {
+            T result = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            breaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            breaker.onFailure();
+            throw new StatsClientException("Сервер статистики не ответил за " + timeoutMs + " мс", e);
+        } catch (ExecutionException e) {
+            breaker.onFailure();
+            if (e.getCause() instanceof StatsClientException cause) {
+                throw cause;
+            }
+            throw new StatsClientException("Ошибка вызова сервера статистики: " + e.getCause().getMessage(),
+                    e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            breaker.onRejected();
+            Thread.currentThread().interrupt();
+            throw new StatsClientException("Запрос прерван: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package ru.practicum.stats.statsClient;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import ru.practicum.stats.dto.EndpointHit;
@@ -14,6 +20,7 @@ import ru.practicum.stats.dto.StatsRequest;
 import ru.practicum.stats.dto.ViewStats;
 import ru.practicum.stats.exception.StatsClientException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -26,22 +33,70 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 public class StatsClient {
+    private static final String EVENTS_PATTERN = "/events/*";
+    private static final String SMILE = "application/x-jackson-smile";
+    private static final char[] EVENT_URI_PREFIX = "/events/".toCharArray();
+
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final ObjectMapper smileMapper;
+    private final boolean smile;
     private final String baseUrl;
     private final String appName;
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // Асинхронная запись хитов: null - хит отправляется синхронно в вызывающем потоке
+    private final HitBuffer hitBuffer;
+    private final int hitBatchSize;
+    private final long hitFlushIntervalMs;
+    private final AtomicLong failedHits = new AtomicLong();
+    private final Thread hitSender;
+    private volatile boolean running;
+    // null или выключен - просмотры каждый раз запрашиваются у сервера
+    private final ViewsCache viewsCache;
+    // null - вызовы без таймаутов, размыкателя и отдельного пула, в вызывающем потоке
+    private final StatsCallGuard callGuard;
+
+    public StatsClient(String baseUrl, String appName) {
+        this(baseUrl, appName, false);
+    }
+
+    public StatsClient(String baseUrl, String appName, boolean smile) {
+        this(baseUrl, appName, smile, false, 10000, 100, 500, null, null);
+    }
 
+    // smile = true: запросы и ответы в двоичном Smile вместо JSON, сервер должен его поддерживать.
+    // hitsAsync = true: recordHit только кладёт хит в буфер, фоновый поток отправляет пачки в /hits,
+    // как только набралось hitBatchSize хитов или прошло hitFlushIntervalMs
+    @Autowired
     public StatsClient(@Value("${stats-server.url}") String baseUrl,
-                       @Value("${app.name:ewm-main-service}") String appName) {
-        this.httpClient = HttpClient.newHttpClient();
+                       @Value("${app.name:ewm-main-service}") String appName,
+                       @Value("${stats-server.smile:false}") boolean smile,
+                       @Value("${stats-server.hits.async:false}") boolean hitsAsync,
+                       @Value("${stats-server.hits.buffer-capacity:10000}") int hitBufferCapacity,
+                       @Value("${stats-server.hits.batch-size:100}") int hitBatchSize,
+                       @Value("${stats-server.hits.flush-interval-ms:500}") long hitFlushIntervalMs,
+                       ViewsCache viewsCache,
+                       StatsCallGuard callGuard) {
+        this.httpClient = callGuard == null
+                ? HttpClient.newHttpClient()
+                : HttpClient.newBuilder().connectTimeout(callGuard.getConnectTimeout()).build();
         this.baseUrl = baseUrl;
         this.appName = appName;
+        this.smile = smile;
+        this.hitBatchSize = hitBatchSize;
+        this.hitFlushIntervalMs = hitFlushIntervalMs;
+        this.viewsCache = viewsCache;
+        this.callGuard = callGuard;
 
         // Настраиваем ObjectMapper для правильной работы с LocalDateTime
         this.objectMapper = new ObjectMapper();
@@ -55,6 +110,18 @@ public class StatsClient {
 
         objectMapper.registerModule(javaTimeModule);
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.smileMapper = objectMapper.copyWith(new SmileFactory());
+
+        if (hitsAsync) {
+            this.hitBuffer = new HitBuffer(hitBufferCapacity);
+            this.running = true;
+            this.hitSender = new Thread(this::sendHits, "stats-hit-sender");
+            this.hitSender.setDaemon(true);
+            this.hitSender.start();
+        } else {
+            this.hitBuffer = null;
+            this.hitSender = null;
+        }
     }
 
     public void recordHit(String uri, String ip) {
@@ -64,56 +131,217 @@ public class StatsClient {
                 .uri(uri)
                 .timestamp(LocalDateTime.now())
                 .build();
-        postHit(endpointHit);
+        if (hitBuffer == null) {
+            guardedHit(() -> postHit(endpointHit));
+            return;
+        }
+        if (!hitBuffer.offer(endpointHit)) {
+            log.debug("Буфер хитов переполнен, хит отброшен: uri: {}, ip: {}", uri, ip);
+        } else if (hitBuffer.size() >= hitBatchSize) {
+            LockSupport.unpark(hitSender);
+        }
+    }
+
+    // Отправляет все накопленные хиты пачками, не дожидаясь фонового потока
+    public void flushHits() {
+        if (hitBuffer == null) {
+            return;
+        }
+        while (true) {
+            List<EndpointHit> batch = hitBuffer.drain(hitBatchSize);
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                guardedHit(() -> postHits(batch));
+            } catch (RuntimeException e) {
+                failedHits.addAndGet(batch.size());
+                log.warn("Не удалось отправить пачку хитов, размер: {}, error: {}", batch.size(), e.getMessage());
+            }
+        }
+    }
+
+    // При остановке фоновый поток останавливается, остаток буфера отправляется в вызывающем потоке
+    @PreDestroy
+    public void close() {
+        if (hitBuffer == null || !running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(hitSender);
+        try {
+            hitSender.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushHits();
+        log.info("Отправка хитов остановлена, отброшено при переполнении: {}, не отправлено из-за ошибок: {}",
+                getDroppedHits(), getFailedHits());
+    }
+
+    public int getPendingHits() {
+        return hitBuffer == null ? 0 : hitBuffer.size();
+    }
+
+    public long getDroppedHits() {
+        return hitBuffer == null ? 0 : hitBuffer.getDropped();
+    }
+
+    public long getFailedHits() {
+        return failedHits.get();
     }
 
     public Map<Long, Long> getEventsViews(Set<Long> eventIds, boolean unique) {
+        return getEventsViewCounts(eventIds, unique).toMap();
+    }
+
+    // Просмотры событий без упаковки: событий без просмотров и при ошибке в карте нет, читать через get(id, 0)
+    public LongLongMap getEventsViewCounts(Set<Long> eventIds, boolean unique) {
         if (eventIds == null || eventIds.isEmpty()) {
-            return Map.of();
+            return new LongLongMap(0);
         }
 
         try {
-            List<String> uris = eventIds.stream()
-                    .map(id -> "/events/" + id)
-                    .collect(Collectors.toList());
+            if (viewsCache != null && viewsCache.isEnabled()) {
+                return viewsCache.get(eventIds, unique, this::loadEventsViews);
+            }
+            return loadEventsViews(eventIds, unique);
+        } catch (Exception e) {
+            log.warn("Не удалось получить статистику для событий: {}, error: {}", eventIds, e.getMessage());
+            return new LongLongMap(0);
+        }
+    }
+
+    private LongLongMap loadEventsViews(Set<Long> eventIds, boolean unique) {
+        List<String> uris = eventIds.stream()
+                .map(id -> "/events/" + id)
+                .collect(Collectors.toList());
+
+        StatsRequest statsRequest = StatsRequest.builder()
+                .start(LocalDateTime.now().minusYears(100))
+                .end(LocalDateTime.now())
+                .uris(uris)
+                .unique(unique)
+                .build();
+
+        return guardedStats(() -> readEventsViews(statsRequest, eventIds.size()));
+    }
 
+    // Просмотры всех событий одним запросом по шаблону маршрута вместо списка URI
+    public Map<Long, Long> getAllEventsViews(boolean unique) {
+        try {
             StatsRequest statsRequest = StatsRequest.builder()
                     .start(LocalDateTime.now().minusYears(100))
                     .end(LocalDateTime.now())
-                    .uris(uris)
+                    .uris(List.of(EVENTS_PATTERN))
                     .unique(unique)
                     .build();
 
-            List<ViewStats> stats = getStats(statsRequest);
-
-            return stats.stream()
-                    .collect(Collectors.toMap(
-                            stat -> extractEventIdFromUri(stat.getUri()),
-                            ViewStats::getHits
-                    ));
+            return guardedStats(() -> readEventsViews(statsRequest, 64)).toMap();
         } catch (Exception e) {
-            log.warn("Не удалось получить статистику для событий: {}, error: {}", eventIds, e.getMessage());
+            log.warn("Не удалось получить статистику всех событий, error: {}", e.getMessage());
             return Map.of();
         }
     }
 
-    public Long getEventViews(Long eventId, boolean unique) {
-        Map<Long, Long> views = getEventsViews(Set.of(eventId), unique);
-        return views.getOrDefault(eventId, 0L);
+    // Суммарные просмотры всех событий: сервер сам складывает строки по шаблону
+    public long getTotalEventsViews() {
+        try {
+            StatsRequest statsRequest = StatsRequest.builder()
+                    .start(LocalDateTime.now().minusYears(100))
+                    .end(LocalDateTime.now())
+                    .uris(List.of(EVENTS_PATTERN))
+                    .group(true)
+                    .build();
+
+            long[] total = new long[1];
+            guardedStats(() -> {
+                readStats(statsRequest, (eventId, hits) -> total[0] += hits);
+                return total;
+            });
+            return total[0];
+        } catch (Exception e) {
+            log.warn("Не удалось получить суммарную статистику событий, error: {}", e.getMessage());
+            return 0;
+        }
     }
 
-    private Long extractEventIdFromUri(String uri) {
+    // Статистика построчно в формате NDJSON: строки разбираются по мере чтения ответа,
+    // весь список в памяти не держится
+    public void streamStats(StatsRequest statsRequest, Consumer<ViewStats> consumer) throws StatsClientException {
+        log.info("Клиент принял запрос на потоковый вывод статистики: запрос: {}", statsRequest);
         try {
-            return Long.parseLong(uri.substring("/events/".length()));
-        } catch (Exception e) {
-            log.warn("Некорректный URI события: {}", uri);
-            return -1L;
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(buildStatsUri(statsRequest))
+                    .header("Accept", "application/x-ndjson")
+                    .GET()
+                    .build();
+
+            HttpResponse<InputStream> response = httpClient.send(
+                    request,
+                    HttpResponse.BodyHandlers.ofInputStream()
+            );
+
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new StatsClientException("HTTP ошибка: " + response.statusCode() + " - "
+                            + new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                }
+                try (MappingIterator<ViewStats> stats = objectMapper.readerFor(ViewStats.class).readValues(body)) {
+                    while (stats.hasNextValue()) {
+                        consumer.accept(stats.nextValue());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Ошибка потокового GET запроса IO: {}", e.getMessage());
+            throw new StatsClientException("IO ошибка: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            log.error("Ошибка потокового GET запроса InterruptedException: {}", e.getMessage());
+            Thread.currentThread().interrupt();
+            throw new StatsClientException("Запрос прерван: " + e.getMessage(), e);
+        }
+    }
+
+    public Long getEventViews(Long eventId, boolean unique) {
+        return getEventsViewCounts(Set.of(eventId), unique).get(eventId, 0L);
+    }
+
+    // Идентификатор события из uri вида /events/{id} прямо по символам разборщика, без строки и упаковки.
+    // Для любого другого uri, в том числе шаблона /events/*, возвращается -1
+    private static long parseEventId(char[] chars, int offset, int length) {
+        int prefix = EVENT_URI_PREFIX.length;
+        if (length <= prefix || length > prefix + 18) {
+            return -1;
         }
+        for (int i = 0; i < prefix; i++) {
+            if (chars[offset + i] != EVENT_URI_PREFIX[i]) {
+                return -1;
+            }
+        }
+        long eventId = 0;
+        for (int i = offset + prefix; i < offset + length; i++) {
+            char digit = chars[i];
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            eventId = eventId * 10 + (digit - '0');
+        }
+        return eventId;
     }
 
     private EndpointHit postHit(EndpointHit hit) throws StatsClientException {
         log.info("Клиент принял запрос на отправку в сервис: ip:{}, app:{}", hit.getIp(), hit.getApp());
         try {
+            if (smile) {
+                return exchangeSmile(HttpRequest.newBuilder()
+                        .uri(URI.create(baseUrl + "/hit"))
+                        .header("Content-Type", SMILE)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(smileMapper.writeValueAsBytes(hit))),
+                        new TypeReference<EndpointHit>() {
+                        });
+            }
+
             String requestBody = objectMapper.writeValueAsString(hit);
 
             HttpRequest request = HttpRequest.newBuilder()
@@ -144,7 +372,77 @@ public class StatsClient {
         }
     }
 
-    private List<ViewStats> getStats(StatsRequest statsRequest) throws StatsClientException {
+    private <T> T guardedHit(Callable<T> call) throws StatsClientException {
+        return callGuard == null ? callDirectly(call) : callGuard.hit(call);
+    }
+
+    private <T> T guardedStats(Callable<T> call) throws StatsClientException {
+        return callGuard == null ? callDirectly(call) : callGuard.stats(call);
+    }
+
+    private static <T> T callDirectly(Callable<T> call) throws StatsClientException {
+        try {
+            return call.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new StatsClientException(e.getMessage(), e);
+        }
+    }
+
+    private void sendHits() {
+        while (running) {
+            if (hitBuffer.size() < hitBatchSize) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(hitFlushIntervalMs));
+            }
+            flushHits();
+        }
+    }
+
+    private int postHits(List<EndpointHit> hits) throws StatsClientException {
+        log.debug("Клиент отправляет пачку хитов в сервис, размер: {}", hits.size());
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/hits"))
+                    .header("Content-Type", smile ? SMILE : "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(smile
+                            ? smileMapper.writeValueAsBytes(hits)
+                            : objectMapper.writeValueAsBytes(hits)))
+                    .build();
+
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 != 2) {
+                throw new StatsClientException("HTTP ошибка: " + response.statusCode() + " - " + response.body());
+            }
+            return hits.size();
+        } catch (IOException e) {
+            throw new StatsClientException("IO ошибка: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StatsClientException("Запрос прерван: " + e.getMessage(), e);
+        }
+    }
+
+    // Просмотры событий, строки с uri не вида /events/{id} пропускаются. Повторяющиеся события складываются
+    private LongLongMap readEventsViews(StatsRequest statsRequest, int expectedSize) throws StatsClientException {
+        LongLongMap views = new LongLongMap(expectedSize);
+        int[] skipped = new int[1];
+        readStats(statsRequest, (eventId, hits) -> {
+            if (eventId < 0) {
+                skipped[0]++;
+            } else {
+                views.add(eventId, hits);
+            }
+        });
+        if (skipped[0] > 0) {
+            log.warn("Пропущено строк статистики с некорректным URI события: {}", skipped[0]);
+        }
+        return views;
+    }
+
+    // Ответ /stats разбирается потоково по мере чтения тела: без строки ответа, List<ViewStats> и строк uri.
+    // Каждая строка отдаётся в rows как пара eventId -> hits, eventId = -1 для uri не вида /events/{id}
+    private void readStats(StatsRequest statsRequest, LongLongMap.EntryConsumer rows) throws StatsClientException {
         log.info("Клиент принял запрос вывод статистики: запрос: {}", statsRequest);
         try {
             URI uri = buildStatsUri(statsRequest);
@@ -152,23 +450,30 @@ public class StatsClient {
 
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(uri)
-                    .header("Accept", "application/json")
+                    .header("Accept", smile ? SMILE : "application/json")
                     .GET()
                     .build();
 
-            HttpResponse<String> response = httpClient.send(
+            HttpResponse<InputStream> response = httpClient.send(
                     request,
-                    HttpResponse.BodyHandlers.ofString()
+                    HttpResponse.BodyHandlers.ofInputStream()
             );
 
-            if (response.statusCode() == 200) {
-                log.debug("Успешно получен ответ от сервиса, response: {}", response.body());
-                return objectMapper.readValue(response.body(), new TypeReference<List<ViewStats>>() {
-                });
-            } else {
-                throw new StatsClientException("HTTP ошибка: " + response.statusCode() + " - " + response.body());
+            boolean smileBody = smile && response.headers().firstValue("Content-Type")
+                    .map(contentType -> contentType.startsWith(SMILE))
+                    .orElse(false);
+            ObjectMapper mapper = smileBody ? smileMapper : objectMapper;
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    String error = smileBody
+                            ? mapper.readTree(body).toString()
+                            : new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                    throw new StatsClientException("HTTP ошибка: " + response.statusCode() + " - " + error);
+                }
+                try (JsonParser parser = mapper.createParser(body)) {
+                    readStatsRows(parser, rows);
+                }
             }
-
         } catch (IOException e) {
             log.error("Ошибка отправки GET запроса IO: {}", e.getMessage());
             throw new StatsClientException("IO ошибка: " + e.getMessage(), e);
@@ -179,6 +484,50 @@ public class StatsClient {
         }
     }
 
+    // Имена полей разборщик интернирует, значения uri читаются из его буфера символов, hits - как long
+    private static void readStatsRows(JsonParser parser, LongLongMap.EntryConsumer rows) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new StatsClientException("Некорректный ответ сервера статистики: ожидался массив");
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            long eventId = -1;
+            long hits = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("uri".equals(field) && value == JsonToken.VALUE_STRING) {
+                    eventId = parseEventId(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                } else if ("hits".equals(field)) {
+                    hits = parser.getValueAsLong();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            rows.accept(eventId, hits);
+        }
+        if (parser.currentToken() != JsonToken.END_ARRAY) {
+            throw new StatsClientException("Некорректный ответ сервера статистики: ожидался объект статистики");
+        }
+    }
+
+    // Ответ не в Smile (например, ошибка от прокси или старый сервер) разбирается как JSON
+    private <T> T exchangeSmile(HttpRequest.Builder builder, TypeReference<T> type)
+            throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(builder.header("Accept", SMILE).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        boolean smileBody = response.headers().firstValue("Content-Type")
+                .map(contentType -> contentType.startsWith(SMILE))
+                .orElse(false);
+        ObjectMapper mapper = smileBody ? smileMapper : objectMapper;
+        if (response.statusCode() == 200 || response.statusCode() == 201) {
+            return mapper.readValue(response.body(), type);
+        }
+        String body = smileBody
+                ? mapper.readTree(response.body()).toString()
+                : new String(response.body(), StandardCharsets.UTF_8);
+        throw new StatsClientException("HTTP ошибка: " + response.statusCode() + " - " + body);
+    }
+
     private URI buildStatsUri(StatsRequest statsRequest) {
         log.debug("Формируем строку запроса: {}", statsRequest);
 
@@ -196,6 +545,14 @@ public class StatsClient {
         boolean unique = statsRequest.getUnique() != null ? statsRequest.getUnique() : false;
         params.add("unique=" + unique);
 
+        if (Boolean.TRUE.equals(statsRequest.getApproximate())) {
+            params.add("approximate=true");
+        }
+
+        if (Boolean.TRUE.equals(statsRequest.getGroup())) {
+            params.add("group=true");
+        }
+
         String queryString = String.join("&", params);
         return URI.create(baseUrl + "/stats?" + queryString);
     }
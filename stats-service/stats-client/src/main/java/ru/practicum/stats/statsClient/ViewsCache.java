@@ -0,0 +1,191 @@
+package ru.practicum.stats.statsClient;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Кэш просмотров событий eventId -> views, отдельно для уникальных и всех просмотров. Значение живёт ttl-ms;
+// чтение в последние refresh-ahead-ms перед истечением отдаёт текущее значение и перечитывает ключ в фоне,
+// поэтому популярные события не упираются в истечение. Одновременные промахи по ключу ждут один запрос
+// к серверу статистики: загружает тот, кто первым зарегистрировал загрузку ключа, остальные ждут её future
+@Slf4j
+@Component
+public class ViewsCache {
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final long refreshAfterNanos;
+    private final int maxEntries;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<Long>> loading = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final ExecutorService refresher;
+
+    public ViewsCache(@Value("${stats-server.views-cache.enabled:false}") boolean enabled,
+                      @Value("${stats-server.views-cache.ttl-ms:10000}") long ttlMs,
+                      @Value("${stats-server.views-cache.refresh-ahead-ms:2000}") long refreshAheadMs,
+                      @Value("${stats-server.views-cache.max-entries:100000}") int maxEntries) {
+        if (enabled && (ttlMs <= 0 || refreshAheadMs < 0 || refreshAheadMs >= ttlMs || maxEntries <= 0)) {
+            throw new IllegalArgumentException(String.format(
+                    "Некорректные настройки кэша просмотров: ttl-ms=%d, refresh-ahead-ms=%d, max-entries=%d",
+                    ttlMs, refreshAheadMs, maxEntries));
+        }
+        this.enabled = enabled;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.refreshAfterNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs - refreshAheadMs);
+        this.maxEntries = maxEntries;
+        this.refresher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stats-views-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Просмотры событий: свежие - из кэша, недостающие - одним запросом через loader. Если загрузка не удалась,
+    // для ключа отдаётся последнее известное значение, а без него ключ в ответ не попадает
+    public LongLongMap get(Set<Long> eventIds, boolean unique, Loader loader) {
+        LongLongMap result = new LongLongMap(eventIds.size());
+        Map<Key, CompletableFuture<Long>> awaited = new HashMap<>();
+        Map<Key, CompletableFuture<Long>> owned = new HashMap<>();
+        Set<Key> refresh = new HashSet<>();
+        long now = System.nanoTime();
+        for (Long eventId : eventIds) {
+            Key key = new Key(eventId, unique);
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.loadedAt() < ttlNanos) {
+                result.put(eventId, entry.views());
+                if (now - entry.loadedAt() >= refreshAfterNanos) {
+                    refresh.add(key);
+                }
+                continue;
+            }
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            CompletableFuture<Long> current = loading.putIfAbsent(key, future);
+            if (current == null) {
+                owned.put(key, future);
+            }
+            awaited.put(key, current == null ? future : current);
+        }
+        if (!owned.isEmpty()) {
+            load(owned, unique, loader);
+        }
+        if (!refresh.isEmpty()) {
+            refreshAhead(refresh, unique, loader);
+        }
+        awaited.forEach((key, future) -> {
+            try {
+                result.put(key.eventId(), future.join());
+            } catch (CompletionException e) {
+                Entry stale = entries.get(key);
+                if (stale != null) {
+                    result.put(key.eventId(), stale.views());
+                }
+            }
+        });
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    // Ключ перечитывается в фоне, только если его ещё никто не загружает
+    private void refreshAhead(Set<Key> keys, boolean unique, Loader loader) {
+        Map<Key, CompletableFuture<Long>> owned = new HashMap<>();
+        for (Key key : keys) {
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            if (loading.putIfAbsent(key, future) == null) {
+                owned.put(key, future);
+            }
+        }
+        if (owned.isEmpty()) {
+            return;
+        }
+        try {
+            refresher.execute(() -> load(owned, unique, loader));
+        } catch (RejectedExecutionException e) {
+            owned.forEach(loading::remove);
+        }
+    }
+
+    // Событий без просмотров нет в ответе сервера, для них кэшируется 0. Значение кладётся в кэш
+    // раньше, чем снимается отметка загрузки, поэтому следующий читатель уже видит свежее значение
+    private void load(Map<Key, CompletableFuture<Long>> owned, boolean unique, Loader loader) {
+        Set<Long> eventIds = new HashSet<>();
+        owned.keySet().forEach(key -> eventIds.add(key.eventId()));
+        try {
+            LongLongMap views = loader.load(eventIds, unique);
+            long loadedAt = System.nanoTime();
+            owned.forEach((key, future) -> {
+                long value = views.get(key.eventId(), 0L);
+                entries.put(key, new Entry(value, loadedAt));
+                loading.remove(key, future);
+                future.complete(value);
+            });
+            evictIfFull();
+        } catch (RuntimeException e) {
+            log.warn("Не удалось загрузить просмотры событий: {}, error: {}", eventIds, e.getMessage());
+            owned.forEach((key, future) -> {
+                loading.remove(key, future);
+                future.completeExceptionally(e);
+            });
+        }
+    }
+
+    // Сначала удаляются истёкшие значения, затем самые старые - до 90% размера, чтобы не чистить на каждой записи
+    private void evictIfFull() {
+        if (entries.size() <= maxEntries || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            entries.values().removeIf(entry -> now - entry.loadedAt() >= ttlNanos);
+            int excess = entries.size() - (maxEntries - maxEntries / 10);
+            if (excess > 0) {
+                List<Key> oldest = entries.entrySet().stream()
+                        .sorted(Comparator.comparingLong(entry -> entry.getValue().loadedAt()))
+                        .limit(excess)
+                        .map(Map.Entry::getKey)
+                        .toList();
+                oldest.forEach(entries::remove);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        LongLongMap load(Set<Long> eventIds, boolean unique);
+    }
+
+    private record Key(long eventId, boolean unique) {
+    }
+
+    private record Entry(long views, long loadedAt) {
+    }
+}
@@ -0,0 +1,70 @@
+package ru.practicum.stats;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.stats.statsClient.LongLongMap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongLongMapTest {
+
+    @Test
+    void putAndGet_shouldReturnValueOrDefault() {
+        LongLongMap map = new LongLongMap(4);
+
+        map.put(1L, 10L);
+        map.put(2L, 20L);
+        map.put(1L, 11L);
+
+        assertEquals(2, map.size());
+        assertEquals(11L, map.get(1L, -1L));
+        assertEquals(20L, map.get(2L, -1L));
+        assertEquals(-1L, map.get(3L, -1L));
+        assertTrue(map.containsKey(2L));
+        assertFalse(map.containsKey(3L));
+    }
+
+    @Test
+    void add_shouldSumValuesAndStartFromZero() {
+        LongLongMap map = new LongLongMap(0);
+
+        map.add(5L, 3L);
+        map.add(5L, 4L);
+        map.add(-1L, 2L);
+
+        assertEquals(7L, map.get(5L, 0L));
+        assertEquals(2L, map.get(-1L, 0L));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void zeroKey_shouldBeStoredLikeAnyOtherKey() {
+        LongLongMap map = new LongLongMap(2);
+
+        assertFalse(map.containsKey(0L));
+        map.add(0L, 5L);
+        map.add(0L, 1L);
+
+        assertTrue(map.containsKey(0L));
+        assertEquals(6L, map.get(0L, -1L));
+        assertEquals(1, map.size());
+        assertEquals(Map.of(0L, 6L), map.toMap());
+    }
+
+    @Test
+    void growth_shouldKeepAllEntries() {
+        LongLongMap map = new LongLongMap(0);
+        Map<Long, Long> expected = new HashMap<>();
+
+        for (long key = -5_000; key < 50_000; key += 3) {
+            map.put(key, key * 7);
+            expected.put(key, key * 7);
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map.toMap());
+        assertEquals(-1L, map.get(2L, -1L));
+    }
+}
@@ -1,20 +1,37 @@
 package ru.practicum.stats;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import ru.practicum.stats.statsClient.CircuitBreaker;
+import ru.practicum.stats.statsClient.StatsCallGuard;
 import ru.practicum.stats.statsClient.StatsClient;
+import ru.practicum.stats.statsClient.ViewsCache;
 import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.StatsRequest;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.exception.StatsClientException;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -159,6 +176,42 @@ class StatsClientIntegrationTest {
         assertEquals(0L, result);
     }
 
+    @Test
+    void streamStats_shouldConsumeNdjsonLineByLine() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":15}\n"
+                        + "{\"app\":\"ewm-main-service\",\"uri\":\"/events/2\",\"hits\":8}\n")
+                .setHeader("Content-Type", "application/x-ndjson"));
+
+        List<ViewStats> received = new ArrayList<>();
+        statsClient.streamStats(StatsRequest.builder()
+                .start(LocalDateTime.of(2024, 1, 1, 0, 0))
+                .end(LocalDateTime.of(2024, 1, 2, 0, 0))
+                .unique(true)
+                .build(), received::add);
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        assertEquals("application/x-ndjson", recordedRequest.getHeader("Accept"));
+        assertTrue(recordedRequest.getPath().contains("unique=true"));
+        assertEquals(List.of(new ViewStats(appName, "/events/1", 15L), new ViewStats(appName, "/events/2", 8L)),
+                received);
+    }
+
+    @Test
+    void streamStats_shouldThrowOnServerError() {
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(500)
+                .setBody("Internal Server Error"));
+
+        StatsRequest statsRequest = StatsRequest.builder()
+                .start(LocalDateTime.of(2024, 1, 1, 0, 0))
+                .end(LocalDateTime.of(2024, 1, 2, 0, 0))
+                .build();
+
+        assertThrows(StatsClientException.class, () -> statsClient.streamStats(statsRequest, stat -> {
+        }));
+    }
+
     @Test
     void getEventsViews_shouldHandleServerErrorGracefully() {
         Set<Long> eventIds = Set.of(1L, 2L);
@@ -245,4 +298,226 @@ class StatsClientIntegrationTest {
         assertTrue(requestPath.contains("start="));
         assertTrue(requestPath.contains("end="));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getEventsViews_shouldExchangeSmileWhenEnabled() throws Exception {
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        byte[] body = smileMapper.writeValueAsBytes(List.of(new ViewStats(appName, "/events/1", 7L)));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(new Buffer().write(body))
+                .setHeader("Content-Type", "application/x-jackson-smile"));
+
+        Map<Long, Long> result = new StatsClient(baseUrl, appName, true).getEventsViews(Set.of(1L), false);
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        assertEquals("application/x-jackson-smile", recordedRequest.getHeader("Accept"));
+        assertEquals(Map.of(1L, 7L), result);
+    }
+
+    @Test
+    void recordHit_shouldSendSmileBodyWhenEnabled() throws Exception {
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"ip\":\"192.168.1.1\"," +
+                        "\"timestamp\":\"2024-01-01 10:00:00\"}")
+                .setHeader("Content-Type", "application/json")
+                .setResponseCode(201));
+
+        new StatsClient(baseUrl, appName, true).recordHit("/events/1", "192.168.1.1");
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        assertEquals("application/x-jackson-smile", recordedRequest.getHeader("Content-Type"));
+        JsonNode sentHit = smileMapper.readTree(recordedRequest.getBody().readByteArray());
+        assertEquals("/events/1", sentHit.get("uri").asText());
+        assertEquals("192.168.1.1", sentHit.get("ip").asText());
+    }
+
+    @Test
+    void recordHit_whenAsync_shouldSendBatchToBulkEndpoint() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(202));
+        StatsClient asyncClient = new StatsClient(baseUrl, appName, false, true, 100, 3, 60_000, null, null);
+
+        asyncClient.recordHit("/events/1", "192.168.1.1");
+        asyncClient.recordHit("/events/2", "192.168.1.2");
+        assertEquals(0, mockWebServer.getRequestCount());
+        asyncClient.recordHit("/events/1", "192.168.1.3");
+
+        // Третий хит добирает пачку, фоновый поток отправляет её, не дожидаясь интервала
+        RecordedRequest recordedRequest = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(recordedRequest);
+        assertEquals("POST", recordedRequest.getMethod());
+        assertEquals("/hits", recordedRequest.getPath());
+        List<EndpointHit> sent = objectMapper.readValue(recordedRequest.getBody().readUtf8(),
+                new TypeReference<List<EndpointHit>>() {
+                });
+        assertEquals(List.of("192.168.1.1", "192.168.1.2", "192.168.1.3"),
+                sent.stream().map(EndpointHit::getIp).toList());
+        asyncClient.close();
+    }
+
+    @Test
+    void recordHit_whenAsyncBufferOverflows_shouldDropAndDrainOnClose() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(202));
+        StatsClient asyncClient = new StatsClient(baseUrl, appName, false, true, 2, 100, 60_000, null, null);
+
+        for (int i = 1; i <= 5; i++) {
+            asyncClient.recordHit("/events/" + i, "192.168.1." + i);
+        }
+        assertEquals(2, asyncClient.getPendingHits());
+        assertEquals(3, asyncClient.getDroppedHits());
+
+        asyncClient.close();
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(recordedRequest);
+        assertEquals("/hits", recordedRequest.getPath());
+        List<EndpointHit> sent = objectMapper.readValue(recordedRequest.getBody().readUtf8(),
+                new TypeReference<List<EndpointHit>>() {
+                });
+        assertEquals(List.of("/events/1", "/events/2"), sent.stream().map(EndpointHit::getUri).toList());
+        assertEquals(0, asyncClient.getPendingHits());
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    void recordHit_whenAsyncAndServerDown_shouldNotThrowAndCountFailedHits() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+        StatsClient asyncClient = new StatsClient(baseUrl, appName, false, true, 100, 100, 60_000, null, null);
+
+        assertDoesNotThrow(() -> asyncClient.recordHit("/events/1", "192.168.1.1"));
+        asyncClient.close();
+
+        assertEquals(1, asyncClient.getFailedHits());
+    }
+
+    @Test
+    void getEventViews_whenCached_shouldCoalesceConcurrentMissesIntoOneRequest() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("[{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":42}]")
+                .setHeader("Content-Type", "application/json")
+                .setBodyDelay(300, TimeUnit.MILLISECONDS));
+        StatsClient cachedClient = new StatsClient(baseUrl, appName, false, false, 100, 100, 500,
+                new ViewsCache(true, 60_000, 1_000, 100), null);
+
+        int viewers = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(viewers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < viewers; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return cachedClient.getEventViews(1L, true);
+            }));
+        }
+        start.countDown();
+        for (Future<Long> result : results) {
+            assertEquals(42L, result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertEquals(42L, cachedClient.getEventViews(1L, true));
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    void getEventsViews_whenCached_shouldLoadOnlyMissingEventsAndCacheAbsentAsZero() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("[{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":5}]")
+                .setHeader("Content-Type", "application/json"));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("[{\"app\":\"ewm-main-service\",\"uri\":\"/events/3\",\"hits\":9}]")
+                .setHeader("Content-Type", "application/json"));
+        StatsClient cachedClient = new StatsClient(baseUrl, appName, false, false, 100, 100, 500,
+                new ViewsCache(true, 60_000, 1_000, 100), null);
+
+        assertEquals(Map.of(1L, 5L, 2L, 0L), cachedClient.getEventsViews(Set.of(1L, 2L), true));
+        assertEquals(Map.of(1L, 5L, 2L, 0L, 3L, 9L), cachedClient.getEventsViews(Set.of(1L, 2L, 3L), true));
+
+        mockWebServer.takeRequest();
+        String secondPath = mockWebServer.takeRequest().getPath();
+        assertTrue(secondPath.contains("uris=%2Fevents%2F3"));
+        assertFalse(secondPath.contains("uris=%2Fevents%2F1"));
+        assertEquals(2, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    void getEventViews_whenCachedNearExpiry_shouldServeCurrentValueAndRefreshInBackground() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("[{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":5}]")
+                .setHeader("Content-Type", "application/json"));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("[{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":7}]")
+                .setHeader("Content-Type", "application/json"));
+        StatsClient cachedClient = new StatsClient(baseUrl, appName, false, false, 100, 100, 500,
+                new ViewsCache(true, 10_000, 9_800, 100), null);
+
+        assertEquals(5L, cachedClient.getEventViews(1L, true));
+        Thread.sleep(300);
+        // Значение ещё не истекло, но попало в окно упреждающего обновления
+        assertEquals(5L, cachedClient.getEventViews(1L, true));
+
+        mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(mockWebServer.takeRequest(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (cachedClient.getEventViews(1L, true) != 7L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(7L, cachedClient.getEventViews(1L, true));
+    }
+
+    @Test
+    void getEventsViews_whenServerSlowerThanTimeout_shouldReturnEmptyMapWithoutWaiting() {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("[{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":5}]")
+                .setHeader("Content-Type", "application/json")
+                .setHeadersDelay(3, TimeUnit.SECONDS));
+        StatsCallGuard guard = new StatsCallGuard(1_000, 1_000, 200, 5, 10_000, 2, 2);
+        StatsClient guardedClient = new StatsClient(baseUrl, appName, false, false, 100, 100, 500, null, guard);
+
+        long started = System.nanoTime();
+        Map<Long, Long> result = guardedClient.getEventsViews(Set.of(1L), false);
+
+        assertTrue(result.isEmpty());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 2_000);
+        guard.shutdown();
+    }
+
+    @Test
+    void getEventsViews_whenBreakerOpen_shouldNotCallServer() {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+        StatsCallGuard guard = new StatsCallGuard(1_000, 1_000, 1_000, 2, 60_000, 2, 2);
+        StatsClient guardedClient = new StatsClient(baseUrl, appName, false, false, 100, 100, 500, null, guard);
+
+        guardedClient.getEventsViews(Set.of(1L), false);
+        guardedClient.getEventsViews(Set.of(1L), false);
+        assertEquals(CircuitBreaker.State.OPEN, guard.getStatsState());
+
+        assertTrue(guardedClient.getEventsViews(Set.of(1L), false).isEmpty());
+        assertEquals(2, mockWebServer.getRequestCount());
+        assertEquals(CircuitBreaker.State.CLOSED, guard.getHitState());
+        guard.shutdown();
+    }
+
+    @Test
+    void getEventViews_whenCachedAndServerFails_shouldServeStaleValue() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("[{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":5}]")
+                .setHeader("Content-Type", "application/json"));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+        StatsCallGuard guard = new StatsCallGuard(1_000, 1_000, 1_000, 1, 60_000, 2, 2);
+        StatsClient cachedClient = new StatsClient(baseUrl, appName, false, false, 100, 100, 500,
+                new ViewsCache(true, 200, 0, 100), guard);
+
+        assertEquals(5L, cachedClient.getEventViews(1L, false));
+        Thread.sleep(300);
+        // Значение истекло, сервер отвечает ошибкой - отдаётся последнее известное
+        assertEquals(5L, cachedClient.getEventViews(1L, false));
+        assertEquals(CircuitBreaker.State.OPEN, guard.getStatsState());
+        // Цепь разомкнута: сервер больше не вызывается, значение всё ещё отдаётся
+        assertEquals(5L, cachedClient.getEventViews(1L, false));
+        assertEquals(2, mockWebServer.getRequestCount());
+        guard.shutdown();
+    }
+}
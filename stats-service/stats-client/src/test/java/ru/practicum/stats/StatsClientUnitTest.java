@@ -9,13 +9,17 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.stats.statsClient.LongLongMap;
 import ru.practicum.stats.statsClient.StatsClient;
 import ru.practicum.stats.dto.ViewStats;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,7 +35,7 @@ class StatsClientUnitTest {
     private HttpClient httpClient;
 
     @Mock
-    private HttpResponse<String> httpResponse;
+    private HttpResponse<InputStream> httpResponse;
 
     @Captor
     private ArgumentCaptor<HttpRequest> httpRequestCaptor;
@@ -75,7 +79,7 @@ class StatsClientUnitTest {
         String responseBody = objectMapper.writeValueAsString(viewStats);
 
         when(httpResponse.statusCode()).thenReturn(200);
-        when(httpResponse.body()).thenReturn(responseBody);
+        when(httpResponse.body()).thenReturn(body(responseBody));
         when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
                 .thenReturn(httpResponse);
 
@@ -95,6 +99,42 @@ class StatsClientUnitTest {
         assertEquals(5L, result.get(2L));
     }
 
+    @Test
+    void getEventsViewCounts_shouldReturnPrimitiveViewsAndEmptyMapOnError() throws Exception {
+        String responseBody = objectMapper.writeValueAsString(List.of(new ViewStats(appName, "/events/1", 10L)));
+
+        when(httpResponse.statusCode()).thenReturn(200, 500);
+        when(httpResponse.body()).thenReturn(body(responseBody), body("error"));
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(httpResponse);
+
+        LongLongMap views = statsClient.getEventsViewCounts(Set.of(1L, 2L), true);
+        LongLongMap failed = statsClient.getEventsViewCounts(Set.of(1L), true);
+
+        assertEquals(10L, views.get(1L, 0L));
+        assertEquals(0L, views.get(2L, 0L));
+        assertEquals(1, views.size());
+        assertTrue(failed.isEmpty());
+    }
+
+    @Test
+    void getTotalEventsViews_shouldRequestGroupedRouteTemplate() throws Exception {
+        String responseBody = objectMapper.writeValueAsString(List.of(new ViewStats(appName, "/events/*", 42L)));
+
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.body()).thenReturn(body(responseBody));
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(httpResponse);
+
+        long result = statsClient.getTotalEventsViews();
+
+        verify(httpClient).send(httpRequestCaptor.capture(), any());
+        String requestUri = httpRequestCaptor.getValue().uri().toString();
+        assertTrue(requestUri.contains("uris=%2Fevents%2F*"));
+        assertTrue(requestUri.contains("group=true"));
+        assertEquals(42L, result);
+    }
+
     @Test
     void getEventsViews_withEmptyEventIds_shouldReturnEmptyMap() throws IOException, InterruptedException {
         Set<Long> eventIds = Set.of();
@@ -115,7 +155,7 @@ class StatsClientUnitTest {
         String responseBody = objectMapper.writeValueAsString(viewStats);
 
         when(httpResponse.statusCode()).thenReturn(200);
-        when(httpResponse.body()).thenReturn(responseBody);
+        when(httpResponse.body()).thenReturn(body(responseBody));
         when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
                 .thenReturn(httpResponse);
 
@@ -133,7 +173,7 @@ class StatsClientUnitTest {
         String responseBody = objectMapper.writeValueAsString(viewStats);
 
         when(httpResponse.statusCode()).thenReturn(200);
-        when(httpResponse.body()).thenReturn(responseBody);
+        when(httpResponse.body()).thenReturn(body(responseBody));
         when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
                 .thenReturn(httpResponse);
 
@@ -147,7 +187,7 @@ class StatsClientUnitTest {
         Set<Long> eventIds = Set.of(1L, 2L);
 
         when(httpResponse.statusCode()).thenReturn(400);
-        when(httpResponse.body()).thenReturn("Bad Request");
+        when(httpResponse.body()).thenReturn(body("Bad Request"));
         when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
                 .thenReturn(httpResponse);
 
@@ -183,15 +223,60 @@ class StatsClientUnitTest {
     }
 
     @Test
-    void extractEventIdFromUri_shouldWorkCorrectly() throws Exception {
+    void parseEventId_shouldWorkCorrectly() throws Exception {
         // Используем рефлексию для тестирования приватного метода
-        var method = StatsClient.class.getDeclaredMethod("extractEventIdFromUri", String.class);
+        var method = StatsClient.class.getDeclaredMethod("parseEventId", char[].class, int.class, int.class);
         method.setAccessible(true);
 
-        assertEquals(1L, method.invoke(statsClient, "/events/1"));
-        assertEquals(123L, method.invoke(statsClient, "/events/123"));
-        assertEquals(-1L, method.invoke(statsClient, "invalid-uri"));
-        assertEquals(-1L, method.invoke(statsClient, "/events/not-a-number"));
+        assertEquals(1L, method.invoke(null, "/events/1".toCharArray(), 0, 9));
+        assertEquals(123L, method.invoke(null, "xx/events/123yy".toCharArray(), 2, 11));
+        assertEquals(-1L, method.invoke(null, "invalid-uri".toCharArray(), 0, 11));
+        assertEquals(-1L, method.invoke(null, "/events/not-a-number".toCharArray(), 0, 20));
+        assertEquals(-1L, method.invoke(null, "/events/*".toCharArray(), 0, 9));
+        assertEquals(-1L, method.invoke(null, "/events/".toCharArray(), 0, 8));
+        assertEquals(-1L, method.invoke(null, "/events/1234567890123456789".toCharArray(), 0, 27));
+    }
+
+    @Test
+    void getEventsViews_shouldParseFieldsInAnyOrderAndSkipUnknownFields() throws Exception {
+        String responseBody = "[{\"hits\":7,\"extra\":{\"uri\":\"/events/9\",\"hits\":[1,2]},\"uri\":\"/events/3\"}," +
+                "{\"app\":\"ewm-main-service\",\"uri\":\"/events/4\",\"hits\":2}]";
+
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.body()).thenReturn(body(responseBody));
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(httpResponse);
+
+        Map<Long, Long> result = statsClient.getEventsViews(Set.of(3L, 4L), true);
+
+        assertEquals(Map.of(3L, 7L, 4L, 2L), result);
+    }
+
+    @Test
+    void getAllEventsViews_shouldSumRepeatedEventsAndSkipNonEventUris() throws Exception {
+        String responseBody = objectMapper.writeValueAsString(List.of(
+                new ViewStats(appName, "/events/1", 10L),
+                new ViewStats(appName, "/events/2", 4L),
+                new ViewStats(appName, "/events/1", 3L),
+                new ViewStats(appName, "/events/bad", 100L)
+        ));
+
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.body()).thenReturn(body(responseBody));
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(httpResponse);
+
+        assertEquals(Map.of(1L, 13L, 2L, 4L), statsClient.getAllEventsViews(false));
+    }
+
+    @Test
+    void getEventsViews_whenResponseIsNotArray_shouldReturnEmptyMap() throws Exception {
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.body()).thenReturn(body("{\"uri\":\"/events/1\",\"hits\":1}"));
+        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(httpResponse);
+
+        assertTrue(statsClient.getEventsViews(Set.of(1L), true).isEmpty());
     }
 
     @Test
@@ -200,7 +285,7 @@ class StatsClientUnitTest {
         boolean unique = false;
 
         when(httpResponse.statusCode()).thenReturn(200);
-        when(httpResponse.body()).thenReturn("[]");
+        when(httpResponse.body()).thenReturn(body("[]"));
         when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
                 .thenReturn(httpResponse);
 
@@ -218,7 +303,7 @@ class StatsClientUnitTest {
         Set<Long> eventIds = Set.of(1L);
 
         when(httpResponse.statusCode()).thenReturn(200);
-        when(httpResponse.body()).thenReturn("invalid json");
+        when(httpResponse.body()).thenReturn(body("invalid json"));
         when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
                 .thenReturn(httpResponse);
 
@@ -226,4 +311,8 @@ class StatsClientUnitTest {
 
         assertTrue(result.isEmpty());
     }
-}
\ No newline at end of file
+
+    private static InputStream body(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -26,11 +26,24 @@ public class StatsRequest {
     @Builder.Default
     private Boolean unique = false;
 
+    // Уникальные ip по HyperLogLog-скетчам, относительная ошибка ~1.6% (не больше 5% с вероятностью 99.7%)
+    @Builder.Default
+    private Boolean approximate = false;
+
+    // Суммы по (app, шаблон из uris) вместо строк по каждому URI, например uris=/events/* - просмотры всех событий
+    @Builder.Default
+    private Boolean group = false;
+
     @AssertTrue(message = "Дата начала должна быть раньше даты окончания")
     public boolean isDateRangeValid() {
         return start == null || end == null || start.isBefore(end);
     }
 
+    @AssertTrue(message = "Группировка по шаблонам считает только хиты, без уникальности ip")
+    public boolean isGroupingValid() {
+        return !Boolean.TRUE.equals(group) || !Boolean.TRUE.equals(unique);
+    }
+
     public StatsRequest withUri(String uri) {
         this.uris.add(uri);
         return this;
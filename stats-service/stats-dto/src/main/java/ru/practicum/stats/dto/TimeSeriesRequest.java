@@ -0,0 +1,53 @@
+package ru.practicum.stats.dto;
+
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+public class TimeSeriesRequest {
+    public static final long MAX_BUCKETS = 10_000;
+
+    @NotNull(message = "Параметр 'start' является обязательным")
+    @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime start;
+
+    @NotNull(message = "Параметр 'end' является обязательным")
+    @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime end;
+
+    @Builder.Default
+    private List<String> uris = List.of();
+
+    // Ширина корзины: minute, hour или day
+    @Builder.Default
+    @Pattern(regexp = "minute|hour|day", message = "Ширина корзины должна быть minute, hour или day")
+    private String bucket = "hour";
+
+    @AssertTrue(message = "Дата начала должна быть раньше даты окончания")
+    public boolean isDateRangeValid() {
+        return start == null || end == null || start.isBefore(end);
+    }
+
+    @AssertTrue(message = "Слишком много корзин: не больше " + MAX_BUCKETS + " на URI, укрупните корзину")
+    public boolean isBucketCountValid() {
+        if (start == null || end == null || !start.isBefore(end) || bucket == null) {
+            return true;
+        }
+        Duration width = switch (bucket) {
+            case "minute" -> Duration.ofMinutes(1);
+            case "hour" -> Duration.ofHours(1);
+            case "day" -> Duration.ofDays(1);
+            default -> null;
+        };
+        return width == null || Duration.between(start, end).dividedBy(width) < MAX_BUCKETS;
+    }
+}
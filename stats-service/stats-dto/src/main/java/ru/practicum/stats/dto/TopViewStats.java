@@ -0,0 +1,16 @@
+package ru.practicum.stats.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopViewStats {
+    private String app;
+    private String uri;
+    private Long hits;
+    // Оценка hits завышена не больше чем на error
+    private Long error;
+}
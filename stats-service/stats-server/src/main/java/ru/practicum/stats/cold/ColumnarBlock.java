@@ -0,0 +1,303 @@
+package ru.practicum.stats.cold;
+
+import ru.practicum.stats.dictionary.IpCodec;
+import ru.practicum.stats.dictionary.UriPattern;
+import ru.practicum.stats.model.Hit;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+// Блок холодных хитов, разложенный по столбцам. app и uri хранятся номерами в словаре блока,
+// ip упакованы в int (IPv4 как есть, если в блоке есть другие адреса - номер в словаре ip),
+// время - в микросекундах разностями с предыдущим хитом. Хиты в блоке отсортированы по времени.
+// Все числа, кроме IPv4, пишутся как varint, поэтому хит занимает в среднем 7-8 байт.
+// Веса хитов выборочного сохранения - отдельный столбец, которого нет, если все веса равны 1
+public class ColumnarBlock {
+    private static final byte IPS_V4 = 0;
+    private static final byte IPS_DICTIONARY = 1;
+
+    private final int rowCount;
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    private final byte[] dictionary;
+    private final byte[] apps;
+    private final byte[] uris;
+    private final byte[] ips;
+    private final byte[] timestamps;
+    private final byte[] weights;
+
+    public ColumnarBlock(int rowCount, LocalDateTime start, LocalDateTime end, byte[] dictionary, byte[] apps,
+                         byte[] uris, byte[] ips, byte[] timestamps, byte[] weights) {
+        this.rowCount = rowCount;
+        this.start = start;
+        this.end = end;
+        this.dictionary = dictionary;
+        this.apps = apps;
+        this.uris = uris;
+        this.ips = ips;
+        this.timestamps = timestamps;
+        this.weights = weights;
+    }
+
+    public static ColumnarBlock encode(List<Hit> hits) {
+        if (hits.isEmpty()) {
+            throw new IllegalArgumentException("Блок не может быть пустым");
+        }
+        List<Hit> sorted = new ArrayList<>(hits);
+        sorted.sort(Comparator.comparing(Hit::getTimestamp));
+
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        ByteArrayOutputStream appColumn = new ByteArrayOutputStream();
+        ByteArrayOutputStream uriColumn = new ByteArrayOutputStream();
+        ByteArrayOutputStream timeColumn = new ByteArrayOutputStream();
+        ByteArrayOutputStream weightColumn = new ByteArrayOutputStream();
+        long previous = 0;
+        boolean allIpv4 = true;
+        boolean weighted = false;
+        for (Hit hit : sorted) {
+            writeVarLong(appColumn, ids.computeIfAbsent(hit.getApp(), key -> ids.size()));
+            writeVarLong(uriColumn, ids.computeIfAbsent(hit.getUri(), key -> ids.size()));
+            long micros = toMicros(hit.getTimestamp());
+            writeVarLong(timeColumn, zigZag(micros - previous));
+            previous = micros;
+            allIpv4 = allIpv4 && IpCodec.packIpv4(hit.getIp()) != null;
+            writeVarLong(weightColumn, hit.getWeight());
+            weighted = weighted || hit.getWeight() != 1;
+        }
+        return new ColumnarBlock(sorted.size(), sorted.get(0).getTimestamp(),
+                sorted.get(sorted.size() - 1).getTimestamp(), writeStrings(ids.keySet()), appColumn.toByteArray(),
+                uriColumn.toByteArray(), allIpv4 ? encodeIpv4(sorted) : encodeIpDictionary(sorted),
+                timeColumn.toByteArray(), weighted ? weightColumn.toByteArray() : null);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public LocalDateTime getEnd() {
+        return end;
+    }
+
+    public byte[] getDictionary() {
+        return dictionary;
+    }
+
+    public byte[] getApps() {
+        return apps;
+    }
+
+    public byte[] getUris() {
+        return uris;
+    }
+
+    public byte[] getIps() {
+        return ips;
+    }
+
+    public byte[] getTimestamps() {
+        return timestamps;
+    }
+
+    public byte[] getWeights() {
+        return weights;
+    }
+
+    public int getEncodedSize() {
+        return dictionary.length + apps.length + uris.length + ips.length + timestamps.length
+                + (weights == null ? 0 : weights.length);
+    }
+
+    public void countHits(LocalDateTime from, LocalDateTime to, boolean includeTo, List<String> uriFilter,
+                          Map<List<String>, Long> totals) {
+        Columns columns = decode(from, to, includeTo, uriFilter);
+        if (columns == null) {
+            return;
+        }
+        int[] rowWeights = weights == null ? null : readInts(weights, columns.last);
+        Map<Long, long[]> counts = new HashMap<>();
+        for (int row = columns.first; row < columns.last; row++) {
+            if (columns.matches(row)) {
+                int weight = rowWeights == null ? 1 : rowWeights[row];
+                counts.computeIfAbsent(columns.key(row), key -> new long[1])[0] += weight;
+            }
+        }
+        counts.forEach((key, hits) -> totals.merge(columns.resolve(key), hits[0], Long::sum));
+    }
+
+    // Для уникальности ip разворачиваются в строки только по одному разу на (app, uri, ip)
+    public void collectIps(LocalDateTime from, LocalDateTime to, boolean includeTo, List<String> uriFilter,
+                           BiConsumer<List<String>, String> consumer) {
+        Columns columns = decode(from, to, includeTo, uriFilter);
+        if (columns == null) {
+            return;
+        }
+        ByteBuffer ipColumn = ByteBuffer.wrap(ips);
+        byte mode = ipColumn.get();
+        String[] ipDictionary = mode == IPS_DICTIONARY ? readStrings(ipColumn) : null;
+        Map<Long, Set<Integer>> seen = new HashMap<>();
+        for (int row = 0; row < columns.last; row++) {
+            int ip = mode == IPS_V4 ? ipColumn.getInt() : (int) readVarLong(ipColumn);
+            if (row < columns.first || !columns.matches(row)) {
+                continue;
+            }
+            if (seen.computeIfAbsent(columns.key(row), key -> new HashSet<>()).add(ip)) {
+                consumer.accept(columns.resolve(columns.key(row)),
+                        mode == IPS_V4 ? IpCodec.unpackIpv4(ip) : ipDictionary[ip]);
+            }
+        }
+    }
+
+    // Сначала словарь: если в блоке нет ни одного из запрошенных uri, остальные столбцы не разбираются
+    private Columns decode(LocalDateTime from, LocalDateTime to, boolean includeTo, List<String> uriFilter) {
+        if (end.isBefore(from) || start.isAfter(to) || (!includeTo && !start.isBefore(to))) {
+            return null;
+        }
+        String[] strings = readStrings(ByteBuffer.wrap(dictionary));
+        BitSet allowed = null;
+        if (uriFilter != null) {
+            allowed = new BitSet(strings.length);
+            Predicate<String> matcher = UriPattern.matcher(uriFilter);
+            for (int id = 0; id < strings.length; id++) {
+                if (matcher.test(strings[id])) {
+                    allowed.set(id);
+                }
+            }
+            if (allowed.isEmpty()) {
+                return null;
+            }
+        }
+        long fromMicros = toMicros(from);
+        long toMicros = toMicros(to);
+        ByteBuffer timeColumn = ByteBuffer.wrap(timestamps);
+        int first = rowCount;
+        int last = 0;
+        long micros = 0;
+        for (int row = 0; row < rowCount; row++) {
+            micros += unZigZag(readVarLong(timeColumn));
+            if (micros > toMicros || (!includeTo && micros == toMicros)) {
+                break;
+            }
+            if (micros >= fromMicros && first == rowCount) {
+                first = row;
+            }
+            last = row + 1;
+        }
+        if (first >= last) {
+            return null;
+        }
+        return new Columns(strings, readInts(apps, last), readInts(uris, last), allowed, first, last);
+    }
+
+    private static int[] readInts(byte[] column, int count) {
+        ByteBuffer buffer = ByteBuffer.wrap(column);
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (int) readVarLong(buffer);
+        }
+        return values;
+    }
+
+    private static byte[] encodeIpv4(List<Hit> hits) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + hits.size() * Integer.BYTES).put(IPS_V4);
+        hits.forEach(hit -> buffer.putInt(IpCodec.packIpv4(hit.getIp())));
+        return buffer.array();
+    }
+
+    private static byte[] encodeIpDictionary(List<Hit> hits) {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        ByteArrayOutputStream idColumn = new ByteArrayOutputStream();
+        hits.forEach(hit -> writeVarLong(idColumn, ids.computeIfAbsent(hit.getIp(), key -> ids.size())));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(IPS_DICTIONARY);
+        out.writeBytes(writeStrings(ids.keySet()));
+        out.writeBytes(idColumn.toByteArray());
+        return out.toByteArray();
+    }
+
+    private static byte[] writeStrings(Iterable<String> strings) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<byte[]> encoded = new ArrayList<>();
+        strings.forEach(value -> encoded.add(value.getBytes(StandardCharsets.UTF_8)));
+        writeVarLong(out, encoded.size());
+        for (byte[] bytes : encoded) {
+            writeVarLong(out, bytes.length);
+            out.writeBytes(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        String[] strings = new String[(int) readVarLong(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[(int) readVarLong(buffer)];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), time);
+    }
+
+    private record Columns(String[] strings, int[] appIds, int[] uriIds, BitSet allowedUris, int first, int last) {
+        boolean matches(int row) {
+            return allowedUris == null || allowedUris.get(uriIds[row]);
+        }
+
+        long key(int row) {
+            return ((long) appIds[row] << 32) | (uriIds[row] & 0xffffffffL);
+        }
+
+        List<String> resolve(long key) {
+            return List.of(strings[(int) (key >>> 32)], strings[(int) key]);
+        }
+    }
+}
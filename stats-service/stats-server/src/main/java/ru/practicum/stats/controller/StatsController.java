@@ -1,16 +1,34 @@
 package ru.practicum.stats.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.stats.dto.EndpointHit;
 import ru.practicum.stats.dto.StatsRequest;
+import ru.practicum.stats.dto.TimeSeriesRequest;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.TopViewStats;
 import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.service.IngestAdmission;
+import ru.practicum.stats.service.RealtimeHitCounters;
 import ru.practicum.stats.service.StatService;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @Slf4j
@@ -20,22 +38,109 @@ import java.util.List;
 @RequestMapping
 public class StatsController {
     private final StatService service;
+    private final ObjectMapper objectMapper;
+    private final IngestAdmission admission;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
     public EndpointHit createHit(@Valid @RequestBody EndpointHit endpointHit) {
         log.info("Сервер: запрос на сохранение эндпоинта - app: {}, uri: {}, ip: {}",
                 endpointHit.getApp(), endpointHit.getUri(), endpointHit.getIp());
-        return service.saveHit(endpointHit);
+        return admission.admit(List.of(endpointHit.getApp()), () -> service.saveHit(endpointHit));
+    }
+
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public void createHits(@RequestBody @NotEmpty List<@Valid EndpointHit> endpointHits) {
+        log.info("Сервер: запрос на пакетное сохранение эндпоинтов, размер: {}", endpointHits.size());
+        List<String> apps = endpointHits.stream()
+                .map(EndpointHit::getApp)
+                .toList();
+        admission.admit(apps, () -> service.saveHits(endpointHits));
     }
 
     @GetMapping("/stats")
     public List<ViewStats> getStats(@Valid @ModelAttribute StatsRequest statsRequest) {
 
-        log.info("Сервер: вывод статистики от {} до {}, путь: {}, уникальность ip: {}",
-                statsRequest.getStart(), statsRequest.getEnd(), statsRequest.getUris(), statsRequest.getUnique());
+        log.info("Сервер: вывод статистики от {} до {}, путь: {}, уникальность ip: {}, приблизительно: {}",
+                statsRequest.getStart(), statsRequest.getEnd(), statsRequest.getUris(), statsRequest.getUnique(),
+                statsRequest.getApproximate());
 
+        if (Boolean.TRUE.equals(statsRequest.getGroup())) {
+            return service.getGroupedStats(statsRequest.getStart(), statsRequest.getEnd(), statsRequest.getUris());
+        }
+        if (Boolean.TRUE.equals(statsRequest.getApproximate())) {
+            return service.getApproximateStats(statsRequest.getStart(), statsRequest.getEnd(), statsRequest.getUris(),
+                    statsRequest.getUnique());
+        }
         return service.getStats(statsRequest.getStart(), statsRequest.getEnd(), statsRequest.getUris(),
                 statsRequest.getUnique());
     }
+
+    // NDJSON: строка на запись, пишется в ответ по мере чтения, весь список в памяти не собирается.
+    // Выбирается заголовком Accept: application/x-ndjson или параметром stream=true
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamStats(@Valid @ModelAttribute StatsRequest statsRequest) {
+        log.info("Сервер: потоковый вывод статистики от {} до {}, путь: {}, уникальность ip: {}",
+                statsRequest.getStart(), statsRequest.getEnd(), statsRequest.getUris(), statsRequest.getUnique());
+
+        ObjectWriter writer = objectMapper.writerFor(ViewStats.class);
+        StreamingResponseBody body = out -> {
+            try {
+                if (Boolean.TRUE.equals(statsRequest.getGroup())) {
+                    service.getGroupedStats(statsRequest.getStart(), statsRequest.getEnd(), statsRequest.getUris())
+                            .forEach(stat -> writeLine(writer, out, stat));
+                } else if (Boolean.TRUE.equals(statsRequest.getApproximate())) {
+                    service.getApproximateStats(statsRequest.getStart(), statsRequest.getEnd(),
+                                    statsRequest.getUris(), statsRequest.getUnique())
+                            .forEach(stat -> writeLine(writer, out, stat));
+                } else {
+                    service.streamStats(statsRequest.getStart(), statsRequest.getEnd(), statsRequest.getUris(),
+                            statsRequest.getUnique(), stat -> writeLine(writer, out, stat));
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping(value = "/stats", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamStatsByParam(@Valid @ModelAttribute StatsRequest statsRequest) {
+        return streamStats(statsRequest);
+    }
+
+    @GetMapping("/stats/timeseries")
+    public List<TimeSeriesStats> getTimeSeries(@Valid @ModelAttribute TimeSeriesRequest request) {
+        log.info("Сервер: ряд по корзинам {} от {} до {}, путь: {}",
+                request.getBucket(), request.getStart(), request.getEnd(), request.getUris());
+        return service.getTimeSeries(request.getStart(), request.getEnd(), request.getUris(),
+                RollupLevel.fromUnit(request.getBucket()));
+    }
+
+    @GetMapping("/stats/top")
+    public List<TopViewStats> getTopStats(@RequestParam(defaultValue = "hour") @Pattern(regexp = "hour|day") String window,
+                                          @RequestParam(defaultValue = "10") @Positive int k) {
+        log.info("Сервер: популярные URI за окно {}, количество: {}", window, k);
+        return service.getTopStats(window, k);
+    }
+
+    @GetMapping("/stats/realtime")
+    public List<ViewStats> getRealtimeStats(@RequestParam(defaultValue = "5") @Positive
+                                            @Max(RealtimeHitCounters.MAX_MINUTES) int minutes,
+                                            @RequestParam(required = false) List<String> uris) {
+        log.info("Сервер: просмотры за последние {} минут, путь: {}", minutes, uris);
+        return service.getRealtimeStats(minutes, uris);
+    }
+
+    private void writeLine(ObjectWriter writer, OutputStream out, ViewStats stat) {
+        try {
+            out.write(writer.writeValueAsBytes(stat));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package ru.practicum.stats.dictionary;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+
+// Создаётся Hibernate через контейнер Spring, словарь берётся лениво: JdbcTemplate ждёт готовности JPA.
+// Номер для записи заводит HitDictionaryListener, здесь только поиск:
+// неизвестное имя в условии запроса получает несуществующий номер
+@Converter
+@RequiredArgsConstructor
+public class AppIdConverter implements AttributeConverter<String, Integer> {
+    private final ObjectProvider<HitDictionary> dictionary;
+
+    @Override
+    public Integer convertToDatabaseColumn(String app) {
+        if (app == null) {
+            return null;
+        }
+        Integer id = dictionary.getObject().findAppId(app);
+        return id == null ? HitDictionaryListener.UNKNOWN_ID : id;
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer id) {
+        return id == null ? null : dictionary.getObject().app(id);
+    }
+}
@@ -0,0 +1,175 @@
+package ru.practicum.stats.dictionary;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.repository.HitDictionaryRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Словари app и uri: в hits хранятся только номера. Номер имени не меняется, поэтому кеш не сбрасывается.
+// Словарь ip даёт плотные номера посетителей для битовых карт VisitorBitmapIndex, в hits ip хранится как есть.
+// Число ip не ограничено, поэтому их кеш держит не больше ip-cache-size имён и при переполнении сбрасывается
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitDictionary {
+    private final HitDictionaryRepository repository;
+    private final Entries apps;
+    private final Entries uris;
+    private final Entries ips;
+
+    public HitDictionary(HitDictionaryRepository repository,
+                         @Value("${stats.visitors.ip-cache-size:100000}") int ipCacheSize) {
+        this.repository = repository;
+        this.apps = new Entries("hit_apps", Integer.MAX_VALUE);
+        this.uris = new Entries("hit_uris", Integer.MAX_VALUE);
+        this.ips = new Entries("hit_ips", ipCacheSize);
+    }
+
+    public int appId(String app) {
+        return apps.register(app);
+    }
+
+    public int uriId(String uri) {
+        return uris.register(uri);
+    }
+
+    public int ipId(String ip) {
+        return ips.register(ip);
+    }
+
+    // Поиск без заведения нового номера, null - имени в словаре нет
+    public Integer findAppId(String app) {
+        return apps.find(app);
+    }
+
+    public Integer findUriId(String uri) {
+        return uris.find(uri);
+    }
+
+    public Integer findIpId(String ip) {
+        return ips.find(ip);
+    }
+
+    // Номера многих ip сразу: недостающие ищутся и заводятся пакетами, а не запросом и транзакцией на каждый
+    public Map<String, Integer> ipIds(Collection<String> ips) {
+        return this.ips.registerAll(ips);
+    }
+
+    // Номера известных словарю ip, ip без номера в ответ не попадают
+    public Map<String, Integer> findIpIds(Collection<String> ips) {
+        return this.ips.findAll(ips);
+    }
+
+    public String app(int id) {
+        return apps.name(id);
+    }
+
+    public String uri(int id) {
+        return uris.name(id);
+    }
+
+    private final class Entries {
+        private final String table;
+        private final int maxSize;
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final Map<Integer, String> names = new ConcurrentHashMap<>();
+
+        private Entries(String table, int maxSize) {
+            this.table = table;
+            this.maxSize = maxSize;
+        }
+
+        private Integer find(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = repository.findId(table, name);
+                if (id != null) {
+                    put(name, id);
+                }
+            }
+            return id;
+        }
+
+        private int register(String name) {
+            Integer id = find(name);
+            if (id != null) {
+                return id;
+            }
+            try {
+                id = repository.insert(table, name);
+            } catch (DuplicateKeyException e) {
+                // То же имя параллельно завёл другой экземпляр сервиса
+                id = repository.findId(table, name);
+            }
+            put(name, id);
+            return id;
+        }
+
+        private Map<String, Integer> findAll(Collection<String> names) {
+            Map<String, Integer> result = new HashMap<>();
+            List<String> unknown = new ArrayList<>();
+            for (String name : names) {
+                Integer id = ids.get(name);
+                if (id == null) {
+                    unknown.add(name);
+                } else {
+                    result.put(name, id);
+                }
+            }
+            if (!unknown.isEmpty()) {
+                repository.findIds(table, unknown).forEach((name, id) -> {
+                    put(name, id);
+                    result.put(name, id);
+                });
+            }
+            return result;
+        }
+
+        private Map<String, Integer> registerAll(Collection<String> names) {
+            Map<String, Integer> result = findAll(names);
+            List<String> missing = names.stream()
+                    .filter(name -> !result.containsKey(name))
+                    .toList();
+            if (missing.isEmpty()) {
+                return result;
+            }
+            try {
+                repository.insertAll(table, missing).forEach((name, id) -> {
+                    put(name, id);
+                    result.put(name, id);
+                });
+            } catch (DuplicateKeyException e) {
+                // Часть имён параллельно завёл другой экземпляр сервиса: пакет откатился, заводим по одному
+                missing.forEach(name -> result.put(name, register(name)));
+            }
+            return result;
+        }
+
+        private String name(int id) {
+            String name = names.get(id);
+            if (name == null) {
+                name = repository.findName(table, id);
+                if (name != null) {
+                    put(name, id);
+                }
+            }
+            return name;
+        }
+
+        private void put(String name, int id) {
+            if (ids.size() >= maxSize) {
+                ids.clear();
+                names.clear();
+            }
+            ids.put(name, id);
+            names.put(id, name);
+        }
+    }
+}
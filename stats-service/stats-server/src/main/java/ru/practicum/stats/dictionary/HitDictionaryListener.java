@@ -0,0 +1,19 @@
+package ru.practicum.stats.dictionary;
+
+import jakarta.persistence.PrePersist;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import ru.practicum.stats.model.Hit;
+
+@RequiredArgsConstructor
+public class HitDictionaryListener {
+    public static final int UNKNOWN_ID = -1;
+
+    private final ObjectProvider<HitDictionary> dictionary;
+
+    @PrePersist
+    public void register(Hit hit) {
+        dictionary.getObject().appId(hit.getApp());
+        dictionary.getObject().uriId(hit.getUri());
+    }
+}
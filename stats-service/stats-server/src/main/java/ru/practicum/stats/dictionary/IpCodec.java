@@ -0,0 +1,67 @@
+package ru.practicum.stats.dictionary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Упаковка ip для столбца hits.ip: IPv4 в каноничной записи - 4 байта, остальное (IPv6, localhost) - текст UTF-8.
+// Текст из 4 байт предваряется нулевым байтом, чтобы не спутать его с IPv4
+public final class IpCodec {
+    private static final int IPV4_BYTES = 4;
+
+    private IpCodec() {
+    }
+
+    public static byte[] pack(String ip) {
+        Integer ipv4 = packIpv4(ip);
+        if (ipv4 != null) {
+            return ByteBuffer.allocate(IPV4_BYTES).putInt(ipv4).array();
+        }
+        byte[] text = ip.getBytes(StandardCharsets.UTF_8);
+        if (text.length != IPV4_BYTES) {
+            return text;
+        }
+        byte[] prefixed = new byte[IPV4_BYTES + 1];
+        System.arraycopy(text, 0, prefixed, 1, IPV4_BYTES);
+        return prefixed;
+    }
+
+    public static String unpack(byte[] packed) {
+        if (packed.length == IPV4_BYTES) {
+            return unpackIpv4(ByteBuffer.wrap(packed).getInt());
+        }
+        byte[] text = packed.length > 0 && packed[0] == 0 ? Arrays.copyOfRange(packed, 1, packed.length) : packed;
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    // Упаковываем только адреса в каноничной записи, иначе при распаковке ip изменился бы
+    public static Integer packIpv4(String ip) {
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        int packed = 0;
+        for (String part : parts) {
+            if (part.isEmpty() || part.length() > 3 || (part.length() > 1 && part.charAt(0) == '0')) {
+                return null;
+            }
+            int octet = 0;
+            for (int i = 0; i < part.length(); i++) {
+                char c = part.charAt(i);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                octet = octet * 10 + (c - '0');
+            }
+            if (octet > 255) {
+                return null;
+            }
+            packed = (packed << 8) | octet;
+        }
+        return packed;
+    }
+
+    public static String unpackIpv4(int ip) {
+        return (ip >>> 24) + "." + ((ip >>> 16) & 0xff) + "." + ((ip >>> 8) & 0xff) + "." + (ip & 0xff);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.practicum.stats.dictionary;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+@Converter
+public class IpConverter implements AttributeConverter<String, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(String ip) {
+        return ip == null ? null : IpCodec.pack(ip);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] packed) {
+        return packed == null ? null : IpCodec.unpack(packed);
+    }
+}
@@ -0,0 +1,26 @@
+package ru.practicum.stats.dictionary;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+
+@Converter
+@RequiredArgsConstructor
+public class UriIdConverter implements AttributeConverter<String, Integer> {
+    private final ObjectProvider<HitDictionary> dictionary;
+
+    @Override
+    public Integer convertToDatabaseColumn(String uri) {
+        if (uri == null) {
+            return null;
+        }
+        Integer id = dictionary.getObject().findUriId(uri);
+        return id == null ? HitDictionaryListener.UNKNOWN_ID : id;
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer id) {
+        return id == null ? null : dictionary.getObject().uri(id);
+    }
+}
@@ -0,0 +1,134 @@
+package ru.practicum.stats.dictionary;
+
+import ru.practicum.stats.dto.ViewStats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+// Шаблоны URI в запросах статистики (/events/*, /events/{id}, /events/**). Шаблон делится по '/':
+// сегмент '*' или '{имя}' совпадает ровно с одним сегментом, '**' в конце - с любым хвостом, в том числе пустым.
+// Шаблоны не раскрываются в список известных URI: в SQL они уходят условием по имени,
+// в памяти имя сверяется с шаблоном по сегментам
+public final class UriPattern {
+    private static final String ANY_TAIL = "**";
+    private static final String REGEX_SPECIALS = "\\^$.|?*+()[]{}";
+
+    private UriPattern() {
+    }
+
+    public static boolean isPattern(String uri) {
+        for (String segment : uri.split("/", -1)) {
+            if (isWildcard(segment) || segment.equals(ANY_TAIL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static boolean hasPatterns(List<String> uris) {
+        return uris != null && uris.stream().anyMatch(UriPattern::isPattern);
+    }
+
+    public static boolean matches(String pattern, String uri) {
+        String[] patternSegments = pattern.split("/", -1);
+        String[] uriSegments = uri.split("/", -1);
+        for (int i = 0; i < patternSegments.length; i++) {
+            String segment = patternSegments[i];
+            if (isTail(patternSegments, i)) {
+                return uriSegments.length >= i;
+            }
+            if (i >= uriSegments.length || (!isWildcard(segment) && !segment.equals(uriSegments[i]))) {
+                return false;
+            }
+        }
+        return patternSegments.length == uriSegments.length;
+    }
+
+    // Фильтр по списку из запроса: null или пустой список пропускает любой URI
+    public static Predicate<String> matcher(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return uri -> true;
+        }
+        Set<String> exact = Set.copyOf(uris.stream().filter(uri -> !isPattern(uri)).toList());
+        List<String> patterns = uris.stream().filter(UriPattern::isPattern).distinct().toList();
+        if (patterns.isEmpty()) {
+            return exact::contains;
+        }
+        return uri -> exact.contains(uri) || patterns.stream().anyMatch(pattern -> matches(pattern, uri));
+    }
+
+    // Начало шаблона до первого подстановочного сегмента: по нему условие LIKE идёт по индексу имени
+    public static String prefix(String pattern) {
+        String[] segments = pattern.split("/", -1);
+        int offset = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (isTail(segments, i)) {
+                return i == 0 ? "" : pattern.substring(0, offset - 1);
+            }
+            if (isWildcard(segments[i])) {
+                return pattern.substring(0, offset);
+            }
+            offset += segments[i].length() + 1;
+        }
+        return pattern;
+    }
+
+    // Регулярное выражение шаблона, одинаково понятное PostgreSQL и H2: без \Q..\E, спецсимволы экранируются по одному
+    public static String regex(String pattern) {
+        String[] segments = pattern.split("/", -1);
+        StringBuilder regex = new StringBuilder("^");
+        for (int i = 0; i < segments.length; i++) {
+            if (isTail(segments, i)) {
+                regex.append(i == 0 ? ".*" : "(/.*)?");
+                break;
+            }
+            if (i > 0) {
+                regex.append('/');
+            }
+            if (isWildcard(segments[i])) {
+                regex.append("[^/]*");
+            } else {
+                for (char c : segments[i].toCharArray()) {
+                    if (REGEX_SPECIALS.indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+                }
+            }
+        }
+        return regex.append('$').toString();
+    }
+
+    // Суммы по (app, запрошенный URI или шаблон). URI, подходящий под несколько шаблонов, входит в сумму каждого
+    public static List<ViewStats> group(List<String> uris, List<ViewStats> stats) {
+        if (uris == null || uris.isEmpty()) {
+            return stats;
+        }
+        List<String> requested = uris.stream().distinct().toList();
+        Map<List<String>, Long> totals = new LinkedHashMap<>();
+        for (ViewStats stat : stats) {
+            for (String uri : requested) {
+                if (matches(uri, stat.getUri())) {
+                    totals.merge(List.of(stat.getApp(), uri), stat.getHits(), Long::sum);
+                }
+            }
+        }
+        List<ViewStats> result = new ArrayList<>(totals.size());
+        totals.forEach((key, hits) -> result.add(new ViewStats(key.get(0), key.get(1), hits)));
+        result.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return result;
+    }
+
+    private static boolean isTail(String[] segments, int index) {
+        return segments[index].equals(ANY_TAIL) && index == segments.length - 1;
+    }
+
+    private static boolean isWildcard(String segment) {
+        return segment.equals("*") || (segment.length() > 2 && segment.startsWith("{") && segment.endsWith("}"));
+    }
+}
@@ -2,11 +2,13 @@ package ru.practicum.stats.mapper;
 
 
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import ru.practicum.stats.dto.EndpointHit;
 import ru.practicum.stats.model.Hit;
 
 @Mapper(componentModel = "spring")
 public interface HitMapper {
+    @Mapping(target = "weight", ignore = true)
     Hit toHit(EndpointHit endpointHit);
 
     EndpointHit toEndpointHit(Hit hit);
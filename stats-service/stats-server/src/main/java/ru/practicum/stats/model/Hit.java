@@ -5,11 +5,16 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.practicum.stats.dictionary.AppIdConverter;
+import ru.practicum.stats.dictionary.HitDictionaryListener;
+import ru.practicum.stats.dictionary.IpConverter;
+import ru.practicum.stats.dictionary.UriIdConverter;
 
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "hits")
+@EntityListeners(HitDictionaryListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -19,15 +24,24 @@ public class Hit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false)
+    // app и uri хранятся номерами в словарях hit_apps и hit_uris, ip - упакованным в байты
+    @Column(name = "app_id", nullable = false)
+    @Convert(converter = AppIdConverter.class)
     private String app;
 
-    @Column(nullable = false)
+    @Column(name = "uri_id", nullable = false)
+    @Convert(converter = UriIdConverter.class)
     private String uri;
 
     @Column(nullable = false)
+    @Convert(converter = IpConverter.class)
     private String ip;
 
     @Column(nullable = false)
     private LocalDateTime timestamp;
+
+    // Сколько хитов представляет запись: при выборочном сохранении 1 / доля сохраняемых хитов
+    @Column(nullable = false)
+    @Builder.Default
+    private int weight = 1;
 }
\ No newline at end of file
@@ -0,0 +1,10 @@
+package ru.practicum.stats.model;
+
+import java.time.LocalDateTime;
+
+public record RollupKey(String app, String uri, LocalDateTime bucket) {
+
+    public RollupKey toLevel(RollupLevel level) {
+        return new RollupKey(app, uri, level.floor(bucket));
+    }
+}
@@ -0,0 +1,41 @@
+package ru.practicum.stats.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+@Getter
+@RequiredArgsConstructor
+public enum RollupLevel {
+    DAY("hits_rollup_day", "day", ChronoUnit.DAYS),
+    HOUR("hits_rollup_hour", "hour", ChronoUnit.HOURS),
+    MINUTE("hits_rollup_minute", "minute", ChronoUnit.MINUTES);
+
+    private final String table;
+    private final String truncUnit;
+    private final ChronoUnit unit;
+
+    public static RollupLevel fromUnit(String truncUnit) {
+        for (RollupLevel level : values()) {
+            if (level.truncUnit.equals(truncUnit)) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестная ширина корзины: " + truncUnit);
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+
+    public RollupLevel finer() {
+        return this == MINUTE ? null : values()[ordinal() + 1];
+    }
+}
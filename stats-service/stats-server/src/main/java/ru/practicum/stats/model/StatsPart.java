@@ -0,0 +1,19 @@
+package ru.practicum.stats.model;
+
+import java.time.LocalDateTime;
+
+// Кусок диапазона статистики: корзины уровня агрегатов с from по to (не включая) или сырые хиты (level == null)
+public record StatsPart(RollupLevel level, LocalDateTime from, LocalDateTime to, boolean includeTo) {
+
+    public static StatsPart raw(LocalDateTime from, LocalDateTime to, boolean includeTo) {
+        return new StatsPart(null, from, to, includeTo);
+    }
+
+    public static StatsPart rollup(RollupLevel level, LocalDateTime from, LocalDateTime to) {
+        return new StatsPart(level, from, to, false);
+    }
+
+    public boolean isRaw() {
+        return level == null;
+    }
+}
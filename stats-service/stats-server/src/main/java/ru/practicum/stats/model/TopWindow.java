@@ -0,0 +1,25 @@
+package ru.practicum.stats.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Окно популярных URI: последние buckets корзин уровня level, текущая корзина заполняется
+@Getter
+@RequiredArgsConstructor
+public enum TopWindow {
+    HOUR(RollupLevel.MINUTE, 60),
+    DAY(RollupLevel.HOUR, 24);
+
+    private final RollupLevel level;
+    private final int buckets;
+
+    public LocalDateTime currentBucket(LocalDateTime now) {
+        return level.floor(now);
+    }
+
+    public LocalDateTime firstBucket(LocalDateTime now) {
+        return currentBucket(now).minus(buckets - 1L, level.getUnit());
+    }
+}
@@ -0,0 +1,98 @@
+package ru.practicum.stats.realtime;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Число событий за последние seconds секунд: кольцо посекундных ячеек.
+// Ячейка - long: старшие 36 бит номер секунды эпохи, младшие 28 бит число событий за эту секунду.
+// Устаревшая ячейка обнуляется той же CAS-операцией, которой увеличивается, поэтому блокировок нет.
+// Как в LongAdder, кольцо разбито на полосы: при конфликте CAS поток переходит на другую полосу,
+// а число полос удваивается до числа процессоров. Сумма за окно - сумма по всем полосам.
+public class SlidingWindowCounter {
+    private static final int COUNT_BITS = 28;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final int MAX_STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) << 1;
+    private static final ThreadLocal<int[]> PROBE =
+            ThreadLocal.withInitial(() -> new int[]{ThreadLocalRandom.current().nextInt() | 1});
+
+    private final int seconds;
+    private final AtomicReference<AtomicLongArray[]> stripes;
+    private volatile long lastSecond;
+
+    public SlidingWindowCounter(int seconds) {
+        this.seconds = seconds;
+        this.stripes = new AtomicReference<>(new AtomicLongArray[]{new AtomicLongArray(seconds)});
+    }
+
+    public void increment(long epochSecond) {
+        add(epochSecond, 1);
+    }
+
+    public void add(long epochSecond, int count) {
+        int[] probe = PROBE.get();
+        int slot = (int) Math.floorMod(epochSecond, (long) seconds);
+        AtomicLongArray[] current = stripes.get();
+        while (true) {
+            AtomicLongArray cells = current[probe[0] & (current.length - 1)];
+            long value = cells.get(slot);
+            long stamp = value >>> COUNT_BITS;
+            if (stamp > epochSecond) {
+                // Ячейку уже заняла секунда на круг позже, событие выпало из окна
+                return;
+            }
+            long updated = stamp == epochSecond ? value + count : (epochSecond << COUNT_BITS) | count;
+            if (cells.compareAndSet(slot, value, updated)) {
+                break;
+            }
+            probe[0] = rehash(probe[0]);
+            current = grow(current);
+        }
+        if (lastSecond < epochSecond) {
+            lastSecond = epochSecond;
+        }
+    }
+
+    public long sum(long nowSecond, int windowSeconds) {
+        int window = Math.min(windowSeconds, seconds);
+        long total = 0;
+        for (AtomicLongArray cells : stripes.get()) {
+            for (long second = nowSecond - window + 1; second <= nowSecond; second++) {
+                long value = cells.get((int) Math.floorMod(second, (long) seconds));
+                if (value >>> COUNT_BITS == second) {
+                    total += value & COUNT_MASK;
+                }
+            }
+        }
+        return total;
+    }
+
+    public long getLastSecond() {
+        return lastSecond;
+    }
+
+    public int getStripeCount() {
+        return stripes.get().length;
+    }
+
+    private AtomicLongArray[] grow(AtomicLongArray[] current) {
+        if (current.length >= MAX_STRIPES) {
+            return stripes.get();
+        }
+        AtomicLongArray[] next = new AtomicLongArray[current.length << 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        for (int i = current.length; i < next.length; i++) {
+            next[i] = new AtomicLongArray(seconds);
+        }
+        stripes.compareAndSet(current, next);
+        return stripes.get();
+    }
+
+    // xorshift, как у ThreadLocalRandom для выбора ячейки LongAdder
+    private static int rehash(int probe) {
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        probe ^= probe << 5;
+        return probe;
+    }
+}
@@ -0,0 +1,147 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.cold.ColumnarBlock;
+import ru.practicum.stats.dictionary.IpCodec;
+import ru.practicum.stats.model.Hit;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class ColdBlockRepository {
+    private static final String INSERT_BLOCK = "INSERT INTO hits_cold_blocks " +
+            "(block_start, block_end, row_count, dictionary, apps, uris, ips, timestamps, weights) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Столбец ip нужен только для уникальных запросов, без него блок читается заметно быстрее
+    private static final String SELECT_BLOCKS = "SELECT b.block_start, b.block_end, b.row_count, b.dictionary, " +
+            "b.apps, b.uris, %s AS ips, b.timestamps, b.weights FROM hits_cold_blocks b " +
+            "WHERE b.block_start <= ? AND b.block_end >= ? ORDER BY b.block_start";
+    private static final String SELECT_HITS_OF_RANGE = "SELECT a.name AS app, u.name AS uri, h.ip, h.timestamp, h.weight " +
+            "FROM hits h JOIN hit_apps a ON a.id = h.app_id JOIN hit_uris u ON u.id = h.uri_id " +
+            "WHERE h.timestamp >= ? AND h.timestamp < ? ORDER BY h.timestamp";
+    private static final String LOCK_PARTITION = "LOCK TABLE %s IN SHARE MODE";
+    private static final String SELECT_HITS_OF_PARTITION = "SELECT a.name AS app, u.name AS uri, h.ip, h.timestamp, " +
+            "h.weight FROM %s h JOIN hit_apps a ON a.id = h.app_id JOIN hit_uris u ON u.id = h.uri_id " +
+            "ORDER BY h.timestamp";
+    private static final String SET_LOCK_TIMEOUT = "SET LOCAL lock_timeout = '500ms'";
+    private static final String DROP_PARTITION = "DROP TABLE %s";
+    private static final String DELETE_HITS_OF_RANGE = "DELETE FROM hits WHERE timestamp >= ? AND timestamp < ?";
+    private static final String DELETE_BLOCKS_BEFORE = "DELETE FROM hits_cold_blocks WHERE block_end < ?";
+    private static final String SELECT_FIRST_BLOCK_START = "SELECT MIN(b.block_start) FROM hits_cold_blocks b";
+    private static final String SELECT_BOUNDARY = "SELECT compacted_before FROM hits_cold_state WHERE id = 1";
+    private static final String MERGE_BOUNDARY = "MERGE INTO hits_cold_state s " +
+            "USING (SELECT 1 AS id, CAST(? AS TIMESTAMP) AS compacted_before) AS v ON s.id = v.id " +
+            "WHEN MATCHED THEN UPDATE SET compacted_before = " +
+            "CASE WHEN s.compacted_before > v.compacted_before THEN s.compacted_before ELSE v.compacted_before END " +
+            "WHEN NOT MATCHED THEN INSERT (id, compacted_before) VALUES (v.id, v.compacted_before)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // В REPEATABLE READ удаляются только прочитанные хиты: вставленные параллельно останутся горячими
+    // и уйдут в холодные блоки при следующем запуске. Путь для партиции по умолчанию и таблицы без секций
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public int compact(LocalDateTime from, LocalDateTime to, int blockRows) {
+        Timestamp fromTime = Timestamp.valueOf(from);
+        Timestamp toTime = Timestamp.valueOf(to);
+        int moved = writeBlocks(SELECT_HITS_OF_RANGE, blockRows, fromTime, toTime);
+        jdbcTemplate.update(DELETE_HITS_OF_RANGE, fromTime, toTime);
+        jdbcTemplate.update(MERGE_BOUNDARY, toTime);
+        return moved;
+    }
+
+    // Суточная партиция переносится целиком и удаляется вместе с хитами, без DELETE и мёртвых строк.
+    // SHARE блокирует запись в партицию до конца транзакции, поэтому прочитаны все хиты, которые будут удалены.
+    // DROP ждёт исключительной блокировки hits не дольше lock_timeout: он меньше deadlock_timeout, и при встречной
+    // записи опоздавшего хита в эту партицию откатывается перенос, а не запись. Повтор при следующем запуске
+    @Transactional
+    public int compactPartition(String partition, LocalDateTime to, int blockRows) {
+        jdbcTemplate.execute(String.format(LOCK_PARTITION, partition));
+        int moved = writeBlocks(String.format(SELECT_HITS_OF_PARTITION, partition), blockRows);
+        jdbcTemplate.execute(SET_LOCK_TIMEOUT);
+        jdbcTemplate.execute(String.format(DROP_PARTITION, partition));
+        jdbcTemplate.update(MERGE_BOUNDARY, Timestamp.valueOf(to));
+        return moved;
+    }
+
+    public void forEachBlock(LocalDateTime from, LocalDateTime to, boolean withIps, Consumer<ColumnarBlock> consumer) {
+        String sql = String.format(SELECT_BLOCKS, withIps ? "b.ips" : "NULL");
+        jdbcTemplate.query(sql, rs -> {
+            consumer.accept(new ColumnarBlock(rs.getInt("row_count"),
+                    rs.getTimestamp("block_start").toLocalDateTime(),
+                    rs.getTimestamp("block_end").toLocalDateTime(),
+                    rs.getBytes("dictionary"),
+                    rs.getBytes("apps"),
+                    rs.getBytes("uris"),
+                    rs.getBytes("ips"),
+                    rs.getBytes("timestamps"),
+                    rs.getBytes("weights")));
+        }, Timestamp.valueOf(to), Timestamp.valueOf(from));
+    }
+
+    public int deleteBlocksBefore(LocalDateTime before) {
+        return jdbcTemplate.update(DELETE_BLOCKS_BEFORE, Timestamp.valueOf(before));
+    }
+
+    public LocalDateTime findBoundary() {
+        List<Timestamp> result = jdbcTemplate.queryForList(SELECT_BOUNDARY, Timestamp.class);
+        return result.isEmpty() || result.get(0) == null ? null : result.get(0).toLocalDateTime();
+    }
+
+    public LocalDateTime findFirstBlockStart() {
+        Timestamp first = jdbcTemplate.queryForObject(SELECT_FIRST_BLOCK_START, Timestamp.class);
+        return first == null ? null : first.toLocalDateTime();
+    }
+
+    // Хиты читаются курсором порциями по блоку: без размера выборки pgjdbc загрузил бы в память всю партицию.
+    // Курсору нужна открытая транзакция, её дают compact и compactPartition
+    private int writeBlocks(String sql, int blockRows, Object... args) {
+        List<Hit> block = new ArrayList<>(blockRows);
+        int[] moved = new int[1];
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(blockRows);
+        streaming.query(sql, rs -> {
+            block.add(Hit.builder()
+                    .app(rs.getString("app"))
+                    .uri(rs.getString("uri"))
+                    .ip(IpCodec.unpack(rs.getBytes("ip")))
+                    .timestamp(rs.getTimestamp("timestamp").toLocalDateTime())
+                    .weight(rs.getInt("weight"))
+                    .build());
+            if (block.size() == blockRows) {
+                moved[0] += insert(block);
+            }
+        }, args);
+        return moved[0] + insert(block);
+    }
+
+    private int insert(List<Hit> hits) {
+        if (hits.isEmpty()) {
+            return 0;
+        }
+        ColumnarBlock block = ColumnarBlock.encode(hits);
+        jdbcTemplate.update(INSERT_BLOCK,
+                Timestamp.valueOf(block.getStart()),
+                Timestamp.valueOf(block.getEnd()),
+                block.getRowCount(),
+                block.getDictionary(),
+                block.getApps(),
+                block.getUris(),
+                block.getIps(),
+                block.getTimestamps(),
+                block.getWeights());
+        int count = hits.size();
+        hits.clear();
+        return count;
+    }
+}
@@ -0,0 +1,41 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dictionary.HitDictionary;
+import ru.practicum.stats.dictionary.IpCodec;
+import ru.practicum.stats.model.Hit;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class HitBatchRepository {
+    private static final String DELETE_BETWEEN = "DELETE FROM hits WHERE timestamp >= ? AND timestamp < ?";
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, timestamp, weight) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HitDictionary dictionary;
+
+    // Hibernate не батчит вставки с IDENTITY, поэтому пишем пачкой через JDBC
+    @Transactional
+    public void saveAll(List<Hit> hits, int batchSize) {
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, dictionary.appId(hit.getApp()));
+            ps.setInt(2, dictionary.uriId(hit.getUri()));
+            ps.setBytes(3, IpCodec.pack(hit.getIp()));
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+            ps.setInt(5, hit.getWeight());
+        });
+    }
+
+    public int deleteBetween(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.update(DELETE_BETWEEN, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+}
@@ -0,0 +1,72 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class HitDictionaryRepository {
+    private static final String SELECT_ID = "SELECT id FROM %s WHERE name = ?";
+    private static final String SELECT_NAME = "SELECT name FROM %s WHERE id = ?";
+    private static final String SELECT_IDS = "SELECT id, name FROM %s WHERE name IN (:names)";
+    private static final int BATCH_SIZE = 1000;
+    private static final String MERGE_NAME = "MERGE INTO %s d " +
+            "USING (SELECT CAST(? AS VARCHAR(500)) AS name) AS v ON d.name = v.name " +
+            "WHEN NOT MATCHED THEN INSERT (name) VALUES (v.name)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Integer findId(String table, String name) {
+        List<Integer> result = jdbcTemplate.queryForList(String.format(SELECT_ID, table), Integer.class, name);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    public String findName(String table, int id) {
+        List<String> result = jdbcTemplate.queryForList(String.format(SELECT_NAME, table), String.class, id);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    // Своя транзакция: номер сразу попадает в кеш и должен остаться в словаре, даже если транзакция хита откатится
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Integer insert(String table, String name) {
+        jdbcTemplate.update(String.format(MERGE_NAME, table), name);
+        return findId(table, name);
+    }
+
+    // Номера многих имён: IN-списки по BATCH_SIZE имён, отсутствующих в словаре имён в ответе нет
+    public Map<String, Integer> findIds(String table, Collection<String> names) {
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        String sql = String.format(SELECT_IDS, table);
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> all = new ArrayList<>(names);
+        for (int from = 0; from < all.size(); from += BATCH_SIZE) {
+            List<String> part = all.subList(from, Math.min(from + BATCH_SIZE, all.size()));
+            namedJdbcTemplate.query(sql, new MapSqlParameterSource("names", part),
+                    rs -> {
+                        ids.put(rs.getString("name"), rs.getInt("id"));
+                    });
+        }
+        return ids;
+    }
+
+    // Заводит имена пакетами в одной своей транзакции вместо транзакции на каждое имя
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Map<String, Integer> insertAll(String table, Collection<String> names) {
+        jdbcTemplate.batchUpdate(String.format(MERGE_NAME, table), names, BATCH_SIZE,
+                (ps, name) -> ps.setString(1, name));
+        return findIds(table, names);
+    }
+}
@@ -0,0 +1,62 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+// Партиции таблицы hits (только PostgreSQL): по одной на сутки плюс партиция по умолчанию
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class HitPartitionRepository {
+    public static final String DEFAULT_PARTITION = "hits_default";
+
+    private static final String IS_PARTITIONED = "SELECT COUNT(*) FROM pg_partitioned_table pt " +
+            "JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = 'hits' AND pg_table_is_visible(c.oid)";
+    private static final String SELECT_PARTITIONS = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "JOIN pg_class p ON p.oid = i.inhparent " +
+            "WHERE p.relname = 'hits' AND pg_table_is_visible(p.oid)";
+    private static final String CREATE_DETACHED = "CREATE TABLE %s (LIKE hits INCLUDING DEFAULTS INCLUDING CONSTRAINTS)";
+    private static final String MOVE_FROM_DEFAULT = "WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " " +
+            "WHERE timestamp >= ? AND timestamp < ? RETURNING *) INSERT INTO %s SELECT * FROM moved";
+    private static final String ATTACH = "ALTER TABLE hits ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')";
+    private static final String DROP = "DROP TABLE IF EXISTS %s";
+    private static final String DELETE_FROM_DEFAULT = "DELETE FROM " + DEFAULT_PARTITION + " WHERE timestamp < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public boolean isPartitioned() {
+        Long count = jdbcTemplate.queryForObject(IS_PARTITIONED, Long.class);
+        return count != null && count > 0;
+    }
+
+    public List<String> findPartitions() {
+        return jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class);
+    }
+
+    // Хиты этих суток, попавшие в партицию по умолчанию, переносятся в новую партицию до её подключения,
+    // иначе PostgreSQL откажет в ATTACH
+    @Transactional
+    public void createPartition(String name, LocalDate day) {
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        jdbcTemplate.execute(String.format(CREATE_DETACHED, name));
+        jdbcTemplate.update(String.format(MOVE_FROM_DEFAULT, name), from, to);
+        jdbcTemplate.execute(String.format(ATTACH, name, day, day.plusDays(1)));
+    }
+
+    public void dropPartition(String name) {
+        jdbcTemplate.execute(String.format(DROP, name));
+    }
+
+    public int deleteFromDefaultBefore(LocalDate day) {
+        return jdbcTemplate.update(DELETE_FROM_DEFAULT, Timestamp.valueOf(day.atStartOfDay()));
+    }
+}
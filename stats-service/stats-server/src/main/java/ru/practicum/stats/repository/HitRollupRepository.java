@@ -0,0 +1,330 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dictionary.IpCodec;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.RollupKey;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.model.StatsPart;
+import ru.practicum.stats.sketch.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class HitRollupRepository {
+    private static final String JOIN_NAMES = "JOIN hit_apps a ON a.id = g.app_id JOIN hit_uris u ON u.id = g.uri_id";
+    private static final String MERGE_ROLLUP = "MERGE INTO %s r " +
+            "USING (SELECT CAST(? AS VARCHAR(255)) AS app, CAST(? AS VARCHAR(500)) AS uri, " +
+            "CAST(? AS TIMESTAMP) AS bucket, CAST(? AS BIGINT) AS hits) AS v " +
+            "ON r.app = v.app AND r.uri = v.uri AND r.bucket = v.bucket " +
+            "WHEN MATCHED THEN UPDATE SET hits = r.hits + v.hits " +
+            "WHEN NOT MATCHED THEN INSERT (app, uri, bucket, hits) VALUES (v.app, v.uri, v.bucket, v.hits)";
+    private static final String SELECT_STATS = "SELECT r.app, r.uri, SUM(r.hits) AS hits FROM %s r " +
+            "WHERE r.bucket >= :from AND r.bucket < :to %s" +
+            "GROUP BY r.app, r.uri";
+    // Куски диапазона одним запросом: суммы по (app, uri) сводит сервер, строки читаются курсором
+    private static final String SELECT_PARTS_STATS = "SELECT s.app, s.uri, SUM(s.hits) AS hits FROM (%s) s " +
+            "GROUP BY s.app, s.uri ORDER BY SUM(s.hits) DESC";
+    private static final String SELECT_ROLLUP_PART = "SELECT r.app, r.uri, SUM(r.hits) AS hits FROM %1$s r " +
+            "WHERE r.bucket >= :from%2$d AND r.bucket < :to%2$d %3$sGROUP BY r.app, r.uri";
+    private static final String SELECT_RAW_PART = "SELECT a.name AS app, u.name AS uri, g.hits FROM (" +
+            "SELECT h.app_id, h.uri_id, SUM(h.weight) AS hits FROM hits h " +
+            "WHERE h.timestamp >= :from%1$d AND h.timestamp %2$s :to%1$d %3$sGROUP BY h.app_id, h.uri_id) g " +
+            JOIN_NAMES;
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final String DELETE_FROM = "DELETE FROM %s WHERE bucket >= ?";
+    private static final String DELETE_BEFORE = "DELETE FROM %s WHERE bucket < ?";
+    // Хиты группируются по номерам из словарей, имена подставляются уже к сгруппированным строкам
+    private static final String REBUILD_FROM = "INSERT INTO %1$s (app, uri, bucket, hits) " +
+            "SELECT a.name, u.name, g.bucket, g.hits FROM (" +
+            "SELECT h.app_id, h.uri_id, DATE_TRUNC('%2$s', h.timestamp) AS bucket, SUM(h.weight) AS hits FROM hits h " +
+            "WHERE h.timestamp >= ? GROUP BY h.app_id, h.uri_id, DATE_TRUNC('%2$s', h.timestamp)) g " + JOIN_NAMES;
+    private static final String REBUILD_ALL = "INSERT INTO %1$s (app, uri, bucket, hits) " +
+            "SELECT a.name, u.name, g.bucket, g.hits FROM (" +
+            "SELECT h.app_id, h.uri_id, DATE_TRUNC('%2$s', h.timestamp) AS bucket, SUM(h.weight) AS hits FROM hits h " +
+            "GROUP BY h.app_id, h.uri_id, DATE_TRUNC('%2$s', h.timestamp)) g " + JOIN_NAMES;
+    private static final String SELECT_WATERMARK = "SELECT watermark FROM hits_rollup_state WHERE id = 1";
+    private static final String MERGE_WATERMARK = "MERGE INTO hits_rollup_state s " +
+            "USING (SELECT 1 AS id, CAST(? AS TIMESTAMP) AS watermark) AS v ON s.id = v.id " +
+            "WHEN MATCHED THEN UPDATE SET watermark = v.watermark " +
+            "WHEN NOT MATCHED THEN INSERT (id, watermark) VALUES (v.id, v.watermark)";
+
+    private static final String SELECT_SKETCHES = "SELECT r.app, r.uri, r.bucket, r.ip_sketch FROM %s r " +
+            "WHERE r.bucket >= :from AND r.bucket < :to AND r.ip_sketch IS NOT NULL %s";
+    private static final String SELECT_SKETCHES_FOR_KEYS = "SELECT r.app, r.uri, r.bucket, r.ip_sketch FROM %s r " +
+            "WHERE r.bucket IN (:buckets) AND r.uri IN (:uris) AND r.ip_sketch IS NOT NULL";
+    // Хит, записанный между снятием счётчиков и скетчей, даёт скетч раньше строки с количеством:
+    // такая строка создаётся с нулём хитов, количество добавит следующий сброс
+    private static final String MERGE_SKETCH = "MERGE INTO %s r " +
+            "USING (SELECT CAST(? AS VARCHAR(255)) AS app, CAST(? AS VARCHAR(500)) AS uri, " +
+            "CAST(? AS TIMESTAMP) AS bucket) AS v " +
+            "ON r.app = v.app AND r.uri = v.uri AND r.bucket = v.bucket " +
+            "WHEN MATCHED THEN UPDATE SET ip_sketch = ? " +
+            "WHEN NOT MATCHED THEN INSERT (app, uri, bucket, hits, ip_sketch) VALUES (v.app, v.uri, v.bucket, 0, ?)";
+    private static final String SELECT_DISTINCT_IPS = "SELECT a.name AS app, u.name AS uri, g.ip FROM (" +
+            "SELECT DISTINCT h.app_id, h.uri_id, h.ip FROM hits h " +
+            "WHERE h.timestamp >= :from AND h.timestamp %s :to %s) g " + JOIN_NAMES;
+    private static final String SELECT_HITS_OF_RANGE = "SELECT a.name AS app, u.name AS uri, h.ip, h.timestamp, h.weight " +
+            "FROM hits h JOIN hit_apps a ON a.id = h.app_id JOIN hit_uris u ON u.id = h.uri_id " +
+            "WHERE h.timestamp >= ? AND h.timestamp < ?";
+    // Все корзины диапазона одним проходом по хитам, вместо запроса на каждую корзину
+    private static final String SELECT_TIME_SERIES = "SELECT a.name AS app, u.name AS uri, g.bucket, g.hits, g.visitors " +
+            "FROM (SELECT h.app_id, h.uri_id, DATE_TRUNC('%1$s', h.timestamp) AS bucket, SUM(h.weight) AS hits, " +
+            "COUNT(DISTINCT h.ip) AS visitors FROM hits h WHERE h.timestamp >= :from AND h.timestamp <= :to %2$s" +
+            "GROUP BY h.app_id, h.uri_id, DATE_TRUNC('%1$s', h.timestamp)) g " + JOIN_NAMES + " ORDER BY g.bucket, g.hits DESC";
+    private static final String SELECT_ROLLUP_TIME_SERIES = "SELECT r.app, r.uri, r.bucket, r.hits, r.ip_sketch " +
+            "FROM %s r WHERE r.bucket >= :from AND r.bucket < :to %s" +
+            "ORDER BY r.bucket, r.hits DESC";
+    private static final String SELECT_FIRST_HIT_TIME = "SELECT MIN(h.timestamp) FROM hits h";
+    // Суточные агрегаты хранятся всегда, поэтому раньше их первой корзины данных нет ни на одной ступени
+    private static final String SELECT_FIRST_DATA_TIME = "SELECT MIN(f.first_time) FROM (" +
+            "SELECT MIN(h.timestamp) AS first_time FROM hits h " +
+            "UNION ALL SELECT MIN(b.block_start) FROM hits_cold_blocks b " +
+            "UNION ALL SELECT MIN(r.bucket) FROM hits_rollup_day r) f";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    // Все уровни и отметка пишутся в одной транзакции, чтобы при ошибке снимок можно было повторить целиком
+    @Transactional
+    public void apply(Map<RollupKey, Long> minuteCounts, Map<RollupKey, HyperLogLog> hourSketches,
+                      LocalDateTime watermark) {
+        for (RollupLevel level : RollupLevel.values()) {
+            List<Map.Entry<RollupKey, Long>> rows = new ArrayList<>(rollUp(minuteCounts, level).entrySet());
+            if (rows.isEmpty()) {
+                continue;
+            }
+            jdbcTemplate.batchUpdate(String.format(MERGE_ROLLUP, level.getTable()), rows, rows.size(),
+                    (ps, row) -> {
+                        ps.setString(1, row.getKey().app());
+                        ps.setString(2, row.getKey().uri());
+                        ps.setTimestamp(3, Timestamp.valueOf(row.getKey().bucket()));
+                        ps.setLong(4, row.getValue());
+                    });
+        }
+        mergeSketches(RollupLevel.HOUR, hourSketches);
+        mergeSketches(RollupLevel.DAY, rollUpSketches(hourSketches, RollupLevel.DAY));
+        jdbcTemplate.update(MERGE_WATERMARK, Timestamp.valueOf(watermark));
+    }
+
+    // Скетч нельзя сложить средствами SQL, поэтому читаем сохранённые, объединяем и записываем обратно.
+    // Пишет их единственный поток сброса
+    @Transactional
+    public void mergeSketches(RollupLevel level, Map<RollupKey, HyperLogLog> sketches) {
+        if (sketches.isEmpty()) {
+            return;
+        }
+        Map<RollupKey, HyperLogLog> merged = new HashMap<>(sketches);
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("buckets", sketches.keySet().stream()
+                        .map(key -> Timestamp.valueOf(key.bucket()))
+                        .distinct()
+                        .toList())
+                .addValue("uris", sketches.keySet().stream()
+                        .map(RollupKey::uri)
+                        .distinct()
+                        .toList());
+        namedJdbcTemplate.query(String.format(SELECT_SKETCHES_FOR_KEYS, level.getTable()), params, rs -> {
+            RollupKey key = new RollupKey(rs.getString("app"), rs.getString("uri"),
+                    rs.getTimestamp("bucket").toLocalDateTime());
+            HyperLogLog sketch = merged.get(key);
+            if (sketch != null) {
+                merged.put(key, HyperLogLog.fromBytes(rs.getBytes("ip_sketch")).merge(sketch));
+            }
+        });
+        List<Map.Entry<RollupKey, HyperLogLog>> rows = new ArrayList<>(merged.entrySet());
+        jdbcTemplate.batchUpdate(String.format(MERGE_SKETCH, level.getTable()), rows, rows.size(),
+                (ps, row) -> {
+                    byte[] sketch = row.getValue().toBytes();
+                    ps.setString(1, row.getKey().app());
+                    ps.setString(2, row.getKey().uri());
+                    ps.setTimestamp(3, Timestamp.valueOf(row.getKey().bucket()));
+                    ps.setBytes(4, sketch);
+                    ps.setBytes(5, sketch);
+                });
+    }
+
+    public void mergeSketchesInto(Map<List<String>, HyperLogLog> target, RollupLevel level,
+                                  LocalDateTime from, LocalDateTime to, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        namedJdbcTemplate.query(String.format(SELECT_SKETCHES, level.getTable(), uriFilter(params, uris, "r")),
+                params, rs -> {
+                    HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("ip_sketch"));
+                    target.merge(List.of(rs.getString("app"), rs.getString("uri")), sketch, HyperLogLog::merge);
+                });
+    }
+
+    // Уникальные (app, uri, ip) сырых хитов на краях диапазона, который не покрыт скетчами
+    @Transactional(readOnly = true)
+    public void offerDistinctIps(Map<List<String>, HyperLogLog> target, LocalDateTime from, LocalDateTime to,
+                                 boolean includeTo, List<String> uris) {
+        forEachDistinctIp(from, to, includeTo, uris,
+                (key, ip) -> target.computeIfAbsent(key, k -> new HyperLogLog()).offer(ip));
+    }
+
+    // Проходы по суткам и диапазонам сырых хитов (пересчёт скетчей и битовых карт) читаются курсором
+    // порциями: без размера выборки и транзакции pgjdbc держал бы в памяти весь результат
+    @Transactional(readOnly = true)
+    public void forEachDistinctIp(LocalDateTime from, LocalDateTime to, boolean includeTo, List<String> uris,
+                                  BiConsumer<List<String>, String> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = String.format(SELECT_DISTINCT_IPS, includeTo ? "<=" : "<", hitUriFilter(params, uris));
+        new NamedParameterJdbcTemplate(streamingTemplate()).query(sql, params, rs -> {
+            consumer.accept(List.of(rs.getString("app"), rs.getString("uri")), IpCodec.unpack(rs.getBytes("ip")));
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public void forEachHit(LocalDateTime from, LocalDateTime to, Consumer<Hit> consumer) {
+        streamingTemplate().query(SELECT_HITS_OF_RANGE, rs -> {
+            consumer.accept(Hit.builder()
+                    .app(rs.getString("app"))
+                    .uri(rs.getString("uri"))
+                    .ip(IpCodec.unpack(rs.getBytes("ip")))
+                    .timestamp(rs.getTimestamp("timestamp").toLocalDateTime())
+                    .weight(rs.getInt("weight"))
+                    .build());
+        }, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    public List<TimeSeriesStats> getTimeSeries(RollupLevel level, LocalDateTime from, LocalDateTime to,
+                                               List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        return namedJdbcTemplate.query(String.format(SELECT_TIME_SERIES, level.getTruncUnit(),
+                        hitUriFilter(params, uris)), params,
+                (rs, rowNum) -> new TimeSeriesStats(rs.getString("app"), rs.getString("uri"),
+                        rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits"), rs.getLong("visitors")));
+    }
+
+    // Корзины уровня с часовыми или суточными скетчами: уникальные ip - оценка скетча
+    public List<TimeSeriesStats> getRollupTimeSeries(RollupLevel level, LocalDateTime from, LocalDateTime to,
+                                                     List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        return namedJdbcTemplate.query(String.format(SELECT_ROLLUP_TIME_SERIES, level.getTable(),
+                        uriFilter(params, uris, "r")), params,
+                (rs, rowNum) -> {
+                    byte[] sketch = rs.getBytes("ip_sketch");
+                    return new TimeSeriesStats(rs.getString("app"), rs.getString("uri"),
+                            rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits"),
+                            sketch == null ? 0L : HyperLogLog.fromBytes(sketch).cardinality());
+                });
+    }
+
+    public LocalDateTime findFirstHitTime() {
+        Timestamp first = jdbcTemplate.queryForObject(SELECT_FIRST_HIT_TIME, Timestamp.class);
+        return first == null ? null : first.toLocalDateTime();
+    }
+
+    public LocalDateTime findFirstDataTime() {
+        Timestamp first = jdbcTemplate.queryForObject(SELECT_FIRST_DATA_TIME, Timestamp.class);
+        return first == null ? null : first.toLocalDateTime();
+    }
+
+    public List<ViewStats> getStats(RollupLevel level, LocalDateTime from, LocalDateTime to, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        return namedJdbcTemplate.query(String.format(SELECT_STATS, level.getTable(), uriFilter(params, uris, "r")),
+                params,
+                (rs, rowNum) -> new ViewStats(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    // Строки уходят потребителю по мере чтения. Для курсора PostgreSQL нужна открытая транзакция
+    public void forEachStats(List<StatsPart> parts, List<String> uris, Consumer<ViewStats> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        List<String> selects = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            StatsPart part = parts.get(i);
+            params.addValue("from" + i, Timestamp.valueOf(part.from()))
+                    .addValue("to" + i, Timestamp.valueOf(part.to()));
+            selects.add(part.isRaw()
+                    ? String.format(SELECT_RAW_PART, i, part.includeTo() ? "<=" : "<", hitUriFilter(params, uris))
+                    : String.format(SELECT_ROLLUP_PART, part.level().getTable(), i, uriFilter(params, uris, "r")));
+        }
+        new NamedParameterJdbcTemplate(streamingTemplate()).query(String.format(SELECT_PARTS_STATS,
+                String.join(" UNION ALL ", selects)), params, rs -> {
+            consumer.accept(new ViewStats(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+        });
+    }
+
+    // Пересчёт агрегатов по сырым хитам начиная с from (null - вся история)
+    @Transactional
+    public void rebuild(LocalDateTime from, LocalDateTime watermark) {
+        for (RollupLevel level : RollupLevel.values()) {
+            if (from == null) {
+                jdbcTemplate.update("DELETE FROM " + level.getTable());
+                jdbcTemplate.update(String.format(REBUILD_ALL, level.getTable(), level.getTruncUnit()));
+            } else {
+                Timestamp fromTs = Timestamp.valueOf(from);
+                jdbcTemplate.update(String.format(DELETE_FROM, level.getTable()), fromTs);
+                jdbcTemplate.update(String.format(REBUILD_FROM, level.getTable(), level.getTruncUnit()), fromTs);
+            }
+        }
+        jdbcTemplate.update(MERGE_WATERMARK, Timestamp.valueOf(watermark));
+    }
+
+    public int deleteBefore(RollupLevel level, LocalDateTime before) {
+        return jdbcTemplate.update(String.format(DELETE_BEFORE, level.getTable()), Timestamp.valueOf(before));
+    }
+
+    public LocalDateTime findWatermark() {
+        List<Timestamp> result = jdbcTemplate.queryForList(SELECT_WATERMARK, Timestamp.class);
+        return result.isEmpty() || result.get(0) == null ? null : result.get(0).toLocalDateTime();
+    }
+
+    public static Map<RollupKey, HyperLogLog> rollUpSketches(Map<RollupKey, HyperLogLog> sketches,
+                                                              RollupLevel level) {
+        Map<RollupKey, HyperLogLog> result = new HashMap<>();
+        sketches.forEach((key, sketch) -> result.computeIfAbsent(key.toLevel(level), k -> new HyperLogLog())
+                .merge(sketch));
+        return result;
+    }
+
+    private JdbcTemplate streamingTemplate() {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(STREAM_FETCH_SIZE);
+        return streaming;
+    }
+
+    private String uriFilter(MapSqlParameterSource params, List<String> uris, String alias) {
+        return UriSqlFilter.and(params, uris, alias + ".uri");
+    }
+
+    private String hitUriFilter(MapSqlParameterSource params, List<String> uris) {
+        return UriSqlFilter.andUriId(params, uris, "h.uri_id");
+    }
+
+    private Map<RollupKey, Long> rollUp(Map<RollupKey, Long> minuteCounts, RollupLevel level) {
+        if (level == RollupLevel.MINUTE) {
+            return minuteCounts;
+        }
+        Map<RollupKey, Long> result = new HashMap<>();
+        minuteCounts.forEach((key, count) -> result.merge(key.toLevel(level), count, Long::sum));
+        return result;
+    }
+}
@@ -0,0 +1,36 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.model.Hit;
+
+import java.util.List;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class HitWalRepository {
+    private static final String SELECT_APPLIED = "SELECT lsn FROM hits_wal_applied WHERE wal_id = ?";
+    private static final String MERGE_APPLIED = "MERGE INTO hits_wal_applied w " +
+            "USING (SELECT CAST(? AS VARCHAR(36)) AS wal_id) AS v ON w.wal_id = v.wal_id " +
+            "WHEN MATCHED THEN UPDATE SET lsn = ? " +
+            "WHEN NOT MATCHED THEN INSERT (wal_id, lsn) VALUES (v.wal_id, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HitBatchRepository hitBatchRepository;
+
+    public long findAppliedLsn(String walId) {
+        List<Long> result = jdbcTemplate.queryForList(SELECT_APPLIED, Long.class, walId);
+        return result.isEmpty() ? 0 : result.get(0);
+    }
+
+    // Хиты и отметка применённого LSN в одной транзакции: после сбоя пачка не применится дважды
+    @Transactional
+    public void apply(String walId, List<Hit> hits, long lsn, int batchSize) {
+        hitBatchRepository.saveAll(hits, batchSize);
+        jdbcTemplate.update(MERGE_APPLIED, walId, lsn, lsn);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.practicum.stats.repository;
+
+import ru.practicum.stats.dto.ViewStats;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Статистика по сырым хитам. uris может содержать шаблоны (/events/*), null или пустой список - без фильтра
+public interface StatsQueryRepository {
+
+    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+
+    List<ViewStats> getStatsBeforeEnd(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+
+    // Курсор только вперёд: строки забираются порциями по мере чтения, нужна открытая транзакция
+    Stream<ViewStats> streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+}
@@ -0,0 +1,61 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.practicum.stats.dto.ViewStats;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Запросы на SQL, а не JPQL: шаблон URI сверяется с именем в словаре hit_uris, которого нет среди сущностей
+@RequiredArgsConstructor
+public class StatsQueryRepositoryImpl implements StatsQueryRepository {
+    private static final String SELECT_STATS = "SELECT a.name AS app, u.name AS uri, g.hits FROM (" +
+            "SELECT h.app_id, h.uri_id, %1$s AS hits, SUM(h.weight) AS weight FROM hits h " +
+            "WHERE h.timestamp >= :start AND h.timestamp %2$s :end %3$sGROUP BY h.app_id, h.uri_id) g " +
+            "JOIN hit_apps a ON a.id = g.app_id JOIN hit_uris u ON u.id = g.uri_id ORDER BY g.weight DESC";
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final RowMapper<ViewStats> VIEW_STATS = (rs, rowNum) ->
+            new ViewStats(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        MapSqlParameterSource params = params(start, end);
+        return namedJdbcTemplate.query(sql(params, uris, unique, true), params, VIEW_STATS);
+    }
+
+    @Override
+    public List<ViewStats> getStatsBeforeEnd(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             boolean unique) {
+        MapSqlParameterSource params = params(start, end);
+        return namedJdbcTemplate.query(sql(params, uris, unique, false), params, VIEW_STATS);
+    }
+
+    @Override
+    public Stream<ViewStats> streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        MapSqlParameterSource params = params(start, end);
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(STREAM_FETCH_SIZE);
+        return new NamedParameterJdbcTemplate(streaming).queryForStream(sql(params, uris, unique, true), params,
+                VIEW_STATS);
+    }
+
+    private MapSqlParameterSource params(LocalDateTime start, LocalDateTime end) {
+        return new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+    }
+
+    private String sql(MapSqlParameterSource params, List<String> uris, boolean unique, boolean includeEnd) {
+        return String.format(SELECT_STATS, unique ? "COUNT(DISTINCT h.ip)" : "SUM(h.weight)", includeEnd ? "<=" : "<",
+                UriSqlFilter.andUriId(params, uris, "h.uri_id"));
+    }
+}
@@ -1,25 +1,9 @@
 package ru.practicum.stats.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
-import ru.practicum.stats.dto.ViewStats;
 import ru.practicum.stats.model.Hit;
 
-import java.time.LocalDateTime;
-import java.util.List;
-
-public interface StatsRepository extends JpaRepository<Hit, Long> {
-
-    @Query("SELECT new ru.practicum.stats.dto.ViewStats(h.app, h.uri, " +
-            "CASE WHEN :unique = true THEN COUNT(DISTINCT h.ip) ELSE COUNT(h.ip) END) " +
-            "FROM Hit h " +
-            "WHERE h.timestamp BETWEEN :start AND :end " +
-            "AND (:uris IS NULL OR h.uri IN :uris) " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(h.ip) DESC")
-    List<ViewStats> getStats(@Param("start") LocalDateTime start,
-                             @Param("end") LocalDateTime end,
-                             @Param("uris") List<String> uris,
-                             @Param("unique") boolean unique);
-}
\ No newline at end of file
+// Хиты считаются по весу: запись, сохранённая при выборочном сохранении, представляет weight хитов.
+// Уникальные ip по выборке дают оценку снизу. Запросы статистики - в StatsQueryRepository
+public interface StatsRepository extends JpaRepository<Hit, Long>, StatsQueryRepository {
+}
@@ -0,0 +1,41 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.function.BiConsumer;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class TopSnapshotRepository {
+    private static final String MERGE_SNAPSHOT = "MERGE INTO hits_top_snapshots s " +
+            "USING (SELECT CAST(? AS VARCHAR(16)) AS time_window, CAST(? AS TIMESTAMP) AS bucket) AS v " +
+            "ON s.time_window = v.time_window AND s.bucket = v.bucket " +
+            "WHEN MATCHED THEN UPDATE SET sketch = ? " +
+            "WHEN NOT MATCHED THEN INSERT (time_window, bucket, sketch) VALUES (v.time_window, v.bucket, ?)";
+    private static final String SELECT_SNAPSHOTS = "SELECT bucket, sketch FROM hits_top_snapshots " +
+            "WHERE time_window = ? AND bucket >= ? ORDER BY bucket";
+    private static final String DELETE_SNAPSHOTS_BEFORE = "DELETE FROM hits_top_snapshots " +
+            "WHERE time_window = ? AND bucket < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void save(String window, LocalDateTime bucket, byte[] sketch) {
+        jdbcTemplate.update(MERGE_SNAPSHOT, window, Timestamp.valueOf(bucket), sketch, sketch);
+    }
+
+    public void forEachSince(String window, LocalDateTime from, BiConsumer<LocalDateTime, byte[]> consumer) {
+        jdbcTemplate.query(SELECT_SNAPSHOTS, rs -> {
+            consumer.accept(rs.getTimestamp("bucket").toLocalDateTime(), rs.getBytes("sketch"));
+        }, window, Timestamp.valueOf(from));
+    }
+
+    public int deleteBefore(String window, LocalDateTime before) {
+        return jdbcTemplate.update(DELETE_SNAPSHOTS_BEFORE, window, Timestamp.valueOf(before));
+    }
+}
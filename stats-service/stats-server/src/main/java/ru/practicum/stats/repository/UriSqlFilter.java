@@ -0,0 +1,53 @@
+package ru.practicum.stats.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import ru.practicum.stats.dictionary.UriPattern;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Условие по именам URI: точные имена - одним IN, каждый шаблон - LIKE по его началу (идёт по индексу имени)
+// и REGEXP_LIKE по сегментам. REGEXP_LIKE есть и в PostgreSQL начиная с 15, и в H2.
+// Экранирующий символ LIKE - '!', обратная косая черта в кавычках сбивает разбор именованных параметров
+final class UriSqlFilter {
+
+    private UriSqlFilter() {
+    }
+
+    // null - фильтра нет. Повторный вызов с тем же списком кладёт в params те же значения
+    static String condition(MapSqlParameterSource params, List<String> uris, String column) {
+        if (uris == null || uris.isEmpty()) {
+            return null;
+        }
+        List<String> conditions = new ArrayList<>();
+        List<String> exact = uris.stream().filter(uri -> !UriPattern.isPattern(uri)).distinct().toList();
+        if (!exact.isEmpty()) {
+            params.addValue("uris", exact);
+            conditions.add(column + " IN (:uris)");
+        }
+        List<String> patterns = uris.stream().filter(UriPattern::isPattern).distinct().toList();
+        for (int i = 0; i < patterns.size(); i++) {
+            params.addValue("uriPrefix" + i, escapeLike(UriPattern.prefix(patterns.get(i))) + "%")
+                    .addValue("uriRegex" + i, UriPattern.regex(patterns.get(i)));
+            conditions.add("(" + column + " LIKE :uriPrefix" + i + " ESCAPE '!' AND REGEXP_LIKE(" + column
+                    + ", :uriRegex" + i + "))");
+        }
+        return "(" + String.join(" OR ", conditions) + ")";
+    }
+
+    // Фильтр по столбцу с именем URI: " AND (...) " или пустая строка
+    static String and(MapSqlParameterSource params, List<String> uris, String column) {
+        String condition = condition(params, uris, column);
+        return condition == null ? "" : "AND " + condition + " ";
+    }
+
+    // Фильтр по номеру URI в hits: имена сверяются в словаре hit_uris
+    static String andUriId(MapSqlParameterSource params, List<String> uris, String column) {
+        String condition = condition(params, uris, "d.name");
+        return condition == null ? "" : "AND " + column + " IN (SELECT d.id FROM hit_uris d WHERE " + condition + ") ";
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+}
@@ -0,0 +1,137 @@
+package ru.practicum.stats.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.model.RollupKey;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+@Repository
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class VisitorBitmapRepository {
+    private static final String SELECT_BITMAPS = "SELECT v.app, v.uri, v.visitors FROM hits_visitors_day v " +
+            "WHERE v.bucket >= :from AND v.bucket < :to %sORDER BY v.app, v.uri";
+    private static final String SELECT_BITMAPS_FOR_KEYS = "SELECT v.app, v.uri, v.bucket, v.visitors " +
+            "FROM hits_visitors_day v WHERE v.bucket IN (:buckets) AND v.uri IN (:uris)";
+    private static final String MERGE_BITMAP = "MERGE INTO hits_visitors_day d " +
+            "USING (SELECT CAST(? AS VARCHAR(255)) AS app, CAST(? AS VARCHAR(500)) AS uri, " +
+            "CAST(? AS TIMESTAMP) AS bucket) AS v " +
+            "ON d.app = v.app AND d.uri = v.uri AND d.bucket = v.bucket " +
+            "WHEN MATCHED THEN UPDATE SET visitors = ? " +
+            "WHEN NOT MATCHED THEN INSERT (app, uri, bucket, visitors) VALUES (v.app, v.uri, v.bucket, ?)";
+    private static final String SELECT_WATERMARK = "SELECT watermark FROM hits_visitors_state WHERE id = 1";
+    private static final String MERGE_WATERMARK = "MERGE INTO hits_visitors_state s " +
+            "USING (SELECT 1 AS id, CAST(? AS TIMESTAMP) AS watermark) AS v ON s.id = v.id " +
+            "WHEN MATCHED THEN UPDATE SET watermark = v.watermark " +
+            "WHEN NOT MATCHED THEN INSERT (id, watermark) VALUES (v.id, v.watermark)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    // Объединение битовых карт идемпотентно, поэтому повтор сброса или пересчёт суток ничего не удваивает.
+    // Сохранённые карты читаются, объединяются с новыми и пишутся обратно вместе с отметкой (null - не менять)
+    @Transactional
+    public void merge(Map<RollupKey, RoaringBitmap> bitmaps, LocalDateTime watermark) {
+        if (!bitmaps.isEmpty()) {
+            Map<RollupKey, RoaringBitmap> merged = new HashMap<>(bitmaps);
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("buckets", bitmaps.keySet().stream()
+                            .map(key -> Timestamp.valueOf(key.bucket()))
+                            .distinct()
+                            .toList())
+                    .addValue("uris", bitmaps.keySet().stream()
+                            .map(RollupKey::uri)
+                            .distinct()
+                            .toList());
+            namedJdbcTemplate.query(SELECT_BITMAPS_FOR_KEYS, params, rs -> {
+                RollupKey key = new RollupKey(rs.getString("app"), rs.getString("uri"),
+                        rs.getTimestamp("bucket").toLocalDateTime());
+                RoaringBitmap bitmap = merged.get(key);
+                if (bitmap != null) {
+                    merged.put(key, RoaringBitmap.or(fromBytes(rs.getBytes("visitors")), bitmap));
+                }
+            });
+            List<Map.Entry<RollupKey, RoaringBitmap>> rows = new ArrayList<>(merged.entrySet());
+            jdbcTemplate.batchUpdate(MERGE_BITMAP, rows, rows.size(), (ps, row) -> {
+                byte[] visitors = toBytes(row.getValue());
+                ps.setString(1, row.getKey().app());
+                ps.setString(2, row.getKey().uri());
+                ps.setTimestamp(3, Timestamp.valueOf(row.getKey().bucket()));
+                ps.setBytes(4, visitors);
+                ps.setBytes(5, visitors);
+            });
+        }
+        if (watermark != null) {
+            jdbcTemplate.update(MERGE_WATERMARK, Timestamp.valueOf(watermark));
+        }
+    }
+
+    // Объединение суточных карт с from по to (не включая), to и from - начала суток. Строки идут по (app, uri),
+    // поэтому в памяти только карта текущего ключа, и потребитель получает каждый ключ один раз
+    public void forEachBitmap(LocalDateTime from, LocalDateTime to, List<String> uris,
+                              BiConsumer<List<String>, RoaringBitmap> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        namedJdbcTemplate.query(String.format(SELECT_BITMAPS, UriSqlFilter.and(params, uris, "v.uri")), params, (ResultSetExtractor<Void>) rs -> {
+            List<String> currentKey = null;
+            RoaringBitmap current = null;
+            while (rs.next()) {
+                List<String> key = List.of(rs.getString("app"), rs.getString("uri"));
+                RoaringBitmap day = fromBytes(rs.getBytes("visitors"));
+                if (key.equals(currentKey)) {
+                    current.or(day);
+                    continue;
+                }
+                if (currentKey != null) {
+                    consumer.accept(currentKey, current);
+                }
+                currentKey = key;
+                current = day;
+            }
+            if (currentKey != null) {
+                consumer.accept(currentKey, current);
+            }
+            return null;
+        });
+    }
+
+    public LocalDateTime findWatermark() {
+        List<Timestamp> result = jdbcTemplate.queryForList(SELECT_WATERMARK, Timestamp.class);
+        return result.isEmpty() || result.get(0) == null ? null : result.get(0).toLocalDateTime();
+    }
+
+    public static byte[] toBytes(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+        return buffer.array();
+    }
+
+    public static RoaringBitmap fromBytes(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Повреждена битовая карта посетителей", e);
+        }
+        return bitmap;
+    }
+}
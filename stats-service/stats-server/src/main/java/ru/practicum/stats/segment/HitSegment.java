@@ -0,0 +1,306 @@
+package ru.practicum.stats.segment;
+
+import ru.practicum.stats.dictionary.UriPattern;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.RollupKey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// Сегмент хитов: файл фиксированного размера, отображённый в память, и словарь строк сегмента.
+// Запись 20 байт: время в мс (UTC) и номера app, uri и ip в словаре сегмента.
+// Для каждого блока из BLOCK_SIZE записей в памяти хранятся минимальное и максимальное время,
+// блоки вне запрошенного диапазона при чтении пропускаются
+class HitSegment implements Closeable {
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 20;
+    static final int BLOCK_SIZE = 4096;
+    static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private static final int MAGIC = 0x53544853;
+    private static final int VERSION = 1;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final String DATA_FILE = "hits-%010d.seg";
+    private static final String DICTIONARY_FILE = "hits-%010d.dict";
+
+    private final long sequence;
+    private final int capacity;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final FileChannel dictionaryChannel;
+    private final SegmentDictionary dictionary;
+    private final long[] blockMin;
+    private final long[] blockMax;
+    private volatile int count;
+    private volatile long minTimestamp = Long.MAX_VALUE;
+    private volatile long maxTimestamp = Long.MIN_VALUE;
+
+    private HitSegment(long sequence, int capacity, FileChannel channel, MappedByteBuffer buffer,
+                       FileChannel dictionaryChannel, SegmentDictionary dictionary) {
+        this.sequence = sequence;
+        this.capacity = capacity;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.dictionaryChannel = dictionaryChannel;
+        this.dictionary = dictionary;
+        int blocks = (capacity + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.blockMin = new long[blocks];
+        this.blockMax = new long[blocks];
+    }
+
+    static HitSegment open(Path directory, long sequence, int capacity) throws IOException {
+        Path dataFile = directory.resolve(String.format(DATA_FILE, sequence));
+        boolean exists = Files.exists(dataFile);
+        FileChannel channel = FileChannel.open(dataFile, CREATE, READ, WRITE);
+        int segmentCapacity = exists ? readCapacity(channel, dataFile) : capacity;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) segmentCapacity * RECORD_SIZE);
+        FileChannel dictionaryChannel = FileChannel.open(directory.resolve(String.format(DICTIONARY_FILE, sequence)),
+                CREATE, READ, WRITE);
+        HitSegment segment = new HitSegment(sequence, segmentCapacity, channel, buffer, dictionaryChannel,
+                SegmentDictionary.load(dictionaryChannel));
+        if (exists) {
+            segment.recover();
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, segmentCapacity);
+            buffer.putInt(COUNT_OFFSET, 0);
+        }
+        return segment;
+    }
+
+    static Long parseSequence(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith("hits-") || !name.endsWith(".seg")) {
+            return null;
+        }
+        try {
+            return Long.parseLong(name.substring("hits-".length(), name.length() - ".seg".length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    // Вызывается только под блокировкой записи хранилища, читатели видят запись после публикации count
+    int append(long timestamp, String app, String uri, String ip) throws IOException {
+        int appId = dictionary.idOf(app, dictionaryChannel);
+        int uriId = dictionary.idOf(uri, dictionaryChannel);
+        int ipId = dictionary.idOf(ip, dictionaryChannel);
+        int index = count;
+        int position = HEADER_SIZE + index * RECORD_SIZE;
+        buffer.putLong(position, timestamp);
+        buffer.putInt(position + 8, appId);
+        buffer.putInt(position + 12, uriId);
+        buffer.putInt(position + 16, ipId);
+        index(index, timestamp);
+        buffer.putInt(COUNT_OFFSET, index + 1);
+        count = index + 1;
+        return index;
+    }
+
+    void countHits(long from, long to, List<String> uris, Map<List<String>, Long> totals) {
+        Map<Long, long[]> counts = new HashMap<>();
+        scan(from, to, uris, (timestamp, appId, uriId, ipId) -> counts.computeIfAbsent(key(appId, uriId), k -> new long[1])[0]++);
+        counts.forEach((key, hits) -> totals.merge(resolve(key), hits[0], Long::sum));
+    }
+
+    // Номера ip у разных сегментов свои, поэтому между сегментами уникальность считается по строкам
+    void collectIps(long from, long to, List<String> uris, Map<List<String>, Set<String>> ips) {
+        Map<Long, BitSet> ids = new HashMap<>();
+        scan(from, to, uris, (timestamp, appId, uriId, ipId) -> ids.computeIfAbsent(key(appId, uriId), k -> new BitSet())
+                .set(ipId));
+        ids.forEach((key, ipIds) -> {
+            Set<String> target = ips.computeIfAbsent(resolve(key), k -> new HashSet<>());
+            ipIds.stream().forEach(ipId -> target.add(dictionary.get(ipId)));
+        });
+    }
+
+    // Время записей в UTC, поэтому корзины по bucketMillis совпадают с усечением LocalDateTime
+    void collectSeries(long from, long to, List<String> uris, long bucketMillis,
+                       Map<RollupKey, Long> hits, Map<RollupKey, Set<String>> ips) {
+        Map<SeriesKey, SeriesBucket> buckets = new HashMap<>();
+        scan(from, to, uris, (timestamp, appId, uriId, ipId) -> {
+            SeriesBucket bucket = buckets.computeIfAbsent(
+                    new SeriesKey(key(appId, uriId), Math.floorDiv(timestamp, bucketMillis) * bucketMillis),
+                    k -> new SeriesBucket());
+            bucket.hits++;
+            bucket.ipIds.set(ipId);
+        });
+        buckets.forEach((key, bucket) -> {
+            List<String> names = resolve(key.key());
+            RollupKey target = new RollupKey(names.get(0), names.get(1),
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(key.bucket()), ZoneOffset.UTC));
+            hits.merge(target, bucket.hits, Long::sum);
+            Set<String> targetIps = ips.computeIfAbsent(target, k -> new HashSet<>());
+            bucket.ipIds.stream().forEach(ipId -> targetIps.add(dictionary.get(ipId)));
+        });
+    }
+
+    void forEachHit(long from, long to, Consumer<Hit> consumer) {
+        scan(from, to, null, (timestamp, appId, uriId, ipId) -> consumer.accept(Hit.builder()
+                .app(dictionary.get(appId))
+                .uri(dictionary.get(uriId))
+                .ip(dictionary.get(ipId))
+                .timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC))
+                .build()));
+    }
+
+    void force() throws IOException {
+        buffer.force();
+        dictionaryChannel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        dictionaryChannel.close();
+        channel.close();
+    }
+
+    private void scan(long from, long to, List<String> uris, RecordVisitor visitor) {
+        int visible = count;
+        if (visible == 0 || maxTimestamp < from || minTimestamp > to) {
+            return;
+        }
+        BitSet uriFilter = null;
+        if (uris != null) {
+            uriFilter = new BitSet();
+            for (String uri : uris) {
+                int id = dictionary.find(uri);
+                if (id >= 0) {
+                    uriFilter.set(id);
+                }
+            }
+            // Шаблон сверяется со строками словаря сегмента, а не раскрывается по всем известным URI
+            if (UriPattern.hasPatterns(uris)) {
+                Predicate<String> matcher = UriPattern.matcher(uris);
+                for (int id = 0, size = dictionary.size(); id < size; id++) {
+                    if (matcher.test(dictionary.get(id))) {
+                        uriFilter.set(id);
+                    }
+                }
+            }
+            if (uriFilter.isEmpty()) {
+                return;
+            }
+        }
+        // Границы последнего, ещё заполняемого блока могут меняться, его читаем всегда
+        int completeBlocks = visible / BLOCK_SIZE;
+        for (int block = 0; block * BLOCK_SIZE < visible; block++) {
+            if (block < completeBlocks && (blockMax[block] < from || blockMin[block] > to)) {
+                continue;
+            }
+            int end = Math.min(visible, (block + 1) * BLOCK_SIZE);
+            for (int i = block * BLOCK_SIZE; i < end; i++) {
+                int position = HEADER_SIZE + i * RECORD_SIZE;
+                long timestamp = buffer.getLong(position);
+                if (timestamp < from || timestamp > to) {
+                    continue;
+                }
+                int uriId = buffer.getInt(position + 12);
+                if (uriFilter == null || uriFilter.get(uriId)) {
+                    visitor.visit(timestamp, buffer.getInt(position + 8), uriId, buffer.getInt(position + 16));
+                }
+            }
+        }
+    }
+
+    // После сбоя отбрасываем записи, ссылающиеся на недописанные строки словаря
+    private void recover() {
+        int stored = Math.min(buffer.getInt(COUNT_OFFSET), capacity);
+        int known = dictionary.size();
+        int valid = 0;
+        while (valid < stored) {
+            int position = HEADER_SIZE + valid * RECORD_SIZE;
+            if (buffer.getInt(position + 8) >= known || buffer.getInt(position + 12) >= known
+                    || buffer.getInt(position + 16) >= known) {
+                break;
+            }
+            index(valid, buffer.getLong(position));
+            valid++;
+        }
+        buffer.putInt(COUNT_OFFSET, valid);
+        count = valid;
+    }
+
+    private void index(int index, long timestamp) {
+        int block = index / BLOCK_SIZE;
+        if (index % BLOCK_SIZE == 0) {
+            blockMin[block] = timestamp;
+            blockMax[block] = timestamp;
+        } else {
+            blockMin[block] = Math.min(blockMin[block], timestamp);
+            blockMax[block] = Math.max(blockMax[block], timestamp);
+        }
+        if (timestamp < minTimestamp) {
+            minTimestamp = timestamp;
+        }
+        if (timestamp > maxTimestamp) {
+            maxTimestamp = timestamp;
+        }
+    }
+
+    private static int readCapacity(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Повреждён заголовок сегмента: " + file);
+        }
+        return header.getInt(CAPACITY_OFFSET);
+    }
+
+    private static long key(int appId, int uriId) {
+        return ((long) appId << 32) | (uriId & 0xffffffffL);
+    }
+
+    private List<String> resolve(long key) {
+        return List.of(dictionary.get((int) (key >>> 32)), dictionary.get((int) key));
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(long timestamp, int appId, int uriId, int ipId);
+    }
+
+    private record SeriesKey(long key, long bucket) {
+    }
+
+    private static final class SeriesBucket {
+        private final BitSet ipIds = new BitSet();
+        private long hits;
+    }
+}
@@ -0,0 +1,85 @@
+package ru.practicum.stats.segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Словарь строк сегмента (app, uri, ip): в записях хранятся только их номера.
+// Пишет один поток под блокировкой хранилища, читать можно без блокировок
+class SegmentDictionary {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[1024];
+    private volatile int size;
+
+    static SegmentDictionary load(FileChannel channel) throws IOException {
+        SegmentDictionary dictionary = new SegmentDictionary();
+        ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+        while (data.hasRemaining()) {
+            if (channel.read(data, data.position()) < 0) {
+                break;
+            }
+        }
+        data.flip();
+        while (data.remaining() >= Integer.BYTES) {
+            int length = data.getInt(data.position());
+            if (length < 0 || data.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            data.getInt();
+            data.get(bytes);
+            dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        // Недописанный при сбое хвост словаря отбрасываем
+        channel.truncate(data.position());
+        channel.position(data.position());
+        return dictionary;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int find(String value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    String get(int id) {
+        return values[id];
+    }
+
+    // Новая строка попадает в файл раньше, чем в неё сошлётся запись сегмента
+    int idOf(String value, FileChannel channel) throws IOException {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + bytes.length)
+                .putInt(bytes.length)
+                .put(bytes)
+                .flip();
+        while (entry.hasRemaining()) {
+            channel.write(entry);
+        }
+        return add(value);
+    }
+
+    private int add(String value) {
+        int id = size;
+        String[] current = values;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = value;
+        values = current;
+        ids.put(value, id);
+        size = id + 1;
+        return id;
+    }
+}
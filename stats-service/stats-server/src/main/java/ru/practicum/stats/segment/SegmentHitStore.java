@@ -0,0 +1,215 @@
+package ru.practicum.stats.segment;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.exception.StatsPersistenceException;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.RollupKey;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.service.ParallelQueryExecutor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Локальное хранилище хитов в сегментах, отображённых в память: дописывание без БД,
+// чтение без копирования и только тех сегментов, что пересекаются с запрошенным диапазоном
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "segment")
+public class SegmentHitStore {
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final ParallelQueryExecutor parallelExecutor;
+    private final List<HitSegment> segments = new CopyOnWriteArrayList<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private HitSegment active;
+
+    public SegmentHitStore(@Value("${stats.segment.dir:data/segments}") String directory,
+                           @Value("${stats.segment.records-per-segment:1048576}") int recordsPerSegment,
+                           ParallelQueryExecutor parallelExecutor) {
+        if (recordsPerSegment <= 0 || recordsPerSegment > HitSegment.MAX_CAPACITY) {
+            throw new IllegalArgumentException("Размер сегмента должен быть от 1 до " + HitSegment.MAX_CAPACITY);
+        }
+        this.directory = Path.of(directory);
+        this.recordsPerSegment = recordsPerSegment;
+        this.parallelExecutor = parallelExecutor;
+    }
+
+    @PostConstruct
+    public void open() {
+        try {
+            Files.createDirectories(directory);
+            List<Long> sequences;
+            try (Stream<Path> files = Files.list(directory)) {
+                sequences = files.map(HitSegment::parseSequence)
+                        .filter(Objects::nonNull)
+                        .sorted()
+                        .toList();
+            }
+            for (Long sequence : sequences) {
+                segments.add(HitSegment.open(directory, sequence, recordsPerSegment));
+            }
+            active = segments.isEmpty() ? roll(0) : segments.get(segments.size() - 1);
+            log.info("Открыто хранилище сегментов {}, сегментов: {}", directory, segments.size());
+        } catch (IOException e) {
+            throw new StatsPersistenceException("Не удалось открыть хранилище сегментов: " + e.getMessage());
+        }
+    }
+
+    // Идентификатор хита: номер сегмента в старших 32 битах, позиция в сегменте - в младших
+    public long append(Hit hit) {
+        appendLock.lock();
+        try {
+            return appendLocked(hit);
+        } catch (IOException e) {
+            throw new StatsPersistenceException("Ошибка записи в сегмент: " + e.getMessage());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public void appendAll(List<Hit> hits) {
+        appendLock.lock();
+        try {
+            for (Hit hit : hits) {
+                appendLocked(hit);
+            }
+        } catch (IOException e) {
+            throw new StatsPersistenceException("Ошибка записи в сегмент: " + e.getMessage());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        long from = toMillis(start);
+        long to = toMillis(end);
+        List<String> uriFilter = uris == null || uris.isEmpty() ? null : uris;
+        Map<List<String>, Long> totals = new HashMap<>();
+        // Сегменты читаются параллельно, каждый в свою карту, карты сливаются в конце
+        if (unique) {
+            Map<List<String>, Set<String>> ips = new HashMap<>();
+            parallelExecutor.invokeAll(segments.stream()
+                            .<Callable<Map<List<String>, Set<String>>>>map(segment -> () -> {
+                                Map<List<String>, Set<String>> partial = new HashMap<>();
+                                segment.collectIps(from, to, uriFilter, partial);
+                                return partial;
+                            })
+                            .toList())
+                    .forEach(partial -> partial.forEach((key, values) ->
+                            ips.computeIfAbsent(key, k -> new HashSet<>()).addAll(values)));
+            ips.forEach((key, values) -> totals.put(key, (long) values.size()));
+        } else {
+            parallelExecutor.invokeAll(segments.stream()
+                            .<Callable<Map<List<String>, Long>>>map(segment -> () -> {
+                                Map<List<String>, Long> partial = new HashMap<>();
+                                segment.countHits(from, to, uriFilter, partial);
+                                return partial;
+                            })
+                            .toList())
+                    .forEach(partial -> partial.forEach((key, hits) -> totals.merge(key, hits, Long::sum)));
+        }
+        return totals.entrySet().stream()
+                .map(entry -> new ViewStats(entry.getKey().get(0), entry.getKey().get(1), entry.getValue()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    // Хиты и уникальные ip по корзинам одним проходом по сегментам
+    public List<TimeSeriesStats> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                               RollupLevel bucket) {
+        List<String> uriFilter = uris == null || uris.isEmpty() ? null : uris;
+        long bucketMillis = bucket.getUnit().getDuration().toMillis();
+        Map<RollupKey, Long> hits = new HashMap<>();
+        Map<RollupKey, Set<String>> ips = new HashMap<>();
+        segments.forEach(segment -> segment.collectSeries(toMillis(start), toMillis(end), uriFilter, bucketMillis,
+                hits, ips));
+        return hits.entrySet().stream()
+                .map(entry -> new TimeSeriesStats(entry.getKey().app(), entry.getKey().uri(), entry.getKey().bucket(),
+                        entry.getValue(), (long) ips.get(entry.getKey()).size()))
+                .sorted(Comparator.comparing(TimeSeriesStats::getBucket)
+                        .thenComparing(TimeSeriesStats::getHits, Comparator.reverseOrder()))
+                .toList();
+    }
+
+    // Хиты [from, to) всех сегментов по порядку записи, ими при старте заполняются счётчики в памяти
+    public void forEachHit(LocalDateTime from, LocalDateTime to, Consumer<Hit> consumer) {
+        long fromMillis = toMillis(from);
+        long toMillis = toMillis(to) - 1;
+        segments.forEach(segment -> segment.forEachHit(fromMillis, toMillis, consumer));
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.segment.force-interval-ms:1000}")
+    public void force() {
+        appendLock.lock();
+        try {
+            if (active != null) {
+                active.force();
+            }
+        } catch (IOException e) {
+            log.error("Ошибка при сбросе сегмента на диск: {}", e.getMessage());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        appendLock.lock();
+        try {
+            for (HitSegment segment : segments) {
+                segment.close();
+            }
+        } catch (IOException e) {
+            log.error("Ошибка при закрытии хранилища сегментов: {}", e.getMessage());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private long appendLocked(Hit hit) throws IOException {
+        if (active.isFull()) {
+            active.force();
+            active = roll(active.getSequence() + 1);
+        }
+        int offset = active.append(toMillis(hit.getTimestamp()), hit.getApp(), hit.getUri(), hit.getIp());
+        return (active.getSequence() << 32) | offset;
+    }
+
+    private HitSegment roll(long sequence) throws IOException {
+        HitSegment segment = HitSegment.open(directory, sequence, recordsPerSegment);
+        segments.add(segment);
+        log.debug("Создан сегмент статистики: {}", sequence);
+        return segment;
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -0,0 +1,81 @@
+package ru.practicum.stats.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.repository.ColdBlockRepository;
+import ru.practicum.stats.repository.HitRollupRepository;
+import ru.practicum.stats.repository.StatsRepository;
+import ru.practicum.stats.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+// Статистика по диапазону, задевающему холодное хранилище: холодные блоки и горячие хиты
+// читаются в одном снимке, поэтому параллельный перенос не теряет и не удваивает хиты
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class ColdStatsReader {
+    private final HitCompactor compactor;
+    private final ColdBlockRepository coldBlockRepository;
+    private final HitRollupRepository rollupRepository;
+    private final StatsRepository statsRepository;
+
+    public boolean isCold(LocalDateTime time) {
+        return compactor.isCold(time);
+    }
+
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, boolean includeEnd,
+                                    List<String> uris, boolean unique) {
+        List<String> uriFilter = uris == null || uris.isEmpty() ? null : uris;
+        Map<List<String>, Long> totals = new HashMap<>();
+        if (unique) {
+            Map<List<String>, Set<String>> ips = new HashMap<>();
+            collectIps(start, end, includeEnd, uriFilter,
+                    (key, ip) -> ips.computeIfAbsent(key, k -> new HashSet<>()).add(ip));
+            ips.forEach((key, values) -> totals.put(key, (long) values.size()));
+        } else {
+            coldBlockRepository.forEachBlock(start, end, false,
+                    block -> block.countHits(start, end, includeEnd, uriFilter, totals));
+            List<ViewStats> hot = includeEnd
+                    ? statsRepository.getStats(start, end, uriFilter, false)
+                    : statsRepository.getStatsBeforeEnd(start, end, uriFilter, false);
+            hot.forEach(stat -> totals.merge(List.of(stat.getApp(), stat.getUri()), stat.getHits(), Long::sum));
+        }
+        return totals.entrySet().stream()
+                .map(entry -> new ViewStats(entry.getKey().get(0), entry.getKey().get(1), entry.getValue()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void offerDistinctIps(Map<List<String>, HyperLogLog> target, LocalDateTime from, LocalDateTime to,
+                                 boolean includeTo, List<String> uris) {
+        collectIps(from, to, includeTo, uris,
+                (key, ip) -> target.computeIfAbsent(key, k -> new HyperLogLog()).offer(ip));
+    }
+
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void forEachDistinctIp(LocalDateTime from, LocalDateTime to, boolean includeTo, List<String> uris,
+                                  BiConsumer<List<String>, String> consumer) {
+        collectIps(from, to, includeTo, uris, consumer);
+    }
+
+    private void collectIps(LocalDateTime from, LocalDateTime to, boolean includeTo, List<String> uris,
+                            BiConsumer<List<String>, String> consumer) {
+        coldBlockRepository.forEachBlock(from, to, true,
+                block -> block.collectIps(from, to, includeTo, uris, consumer));
+        rollupRepository.forEachDistinctIp(from, to, includeTo, uris, consumer);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.repository.ColdBlockRepository;
+import ru.practicum.stats.repository.HitRollupRepository;
+
+import java.time.LocalDateTime;
+
+// Переносит хиты старше заданного числа суток из таблицы hits в столбцовые блоки hits_cold_blocks.
+// Сутки с собственной партицией переносятся целиком и партиция удаляется, остальные - через DELETE.
+// Хиты здесь только меняют хранилище, срок их хранения задаёт HitTierCompactor
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitCompactor {
+    private final ColdBlockRepository coldBlockRepository;
+    private final HitRollupRepository rollupRepository;
+    private final HitPartitionManager partitionManager;
+    private final boolean enabled;
+    private final int afterDays;
+    private final int blockRows;
+    // Раньше отметки хиты могут лежать в холодных блоках, позже - только в hits
+    private volatile LocalDateTime boundary;
+
+    public HitCompactor(ColdBlockRepository coldBlockRepository,
+                        HitRollupRepository rollupRepository,
+                        HitPartitionManager partitionManager,
+                        @Value("${stats.cold.enabled:false}") boolean enabled,
+                        @Value("${stats.cold.after-days:30}") int afterDays,
+                        @Value("${stats.cold.block-rows:65536}") int blockRows) {
+        this.coldBlockRepository = coldBlockRepository;
+        this.rollupRepository = rollupRepository;
+        this.partitionManager = partitionManager;
+        this.enabled = enabled;
+        this.afterDays = afterDays;
+        this.blockRows = blockRows;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            boundary = coldBlockRepository.findBoundary();
+        }
+    }
+
+    public LocalDateTime getBoundary() {
+        return boundary;
+    }
+
+    public boolean isCold(LocalDateTime time) {
+        LocalDateTime current = boundary;
+        return enabled && current != null && time.isBefore(current);
+    }
+
+    // Каждый раз берём сутки самого раннего горячего хита: пустые сутки пропускаются,
+    // а опоздавшие хиты уже сжатых суток тоже переносятся
+    @Scheduled(initialDelayString = "${stats.cold.compaction-initial-delay-ms:60000}",
+            fixedDelayString = "${stats.cold.compaction-interval-ms:3600000}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime target = RollupLevel.DAY.floor(LocalDateTime.now()).minusDays(afterDays);
+        LocalDateTime first = rollupRepository.findFirstHitTime();
+        while (first != null && first.isBefore(target)) {
+            LocalDateTime day = RollupLevel.DAY.floor(first);
+            LocalDateTime next = day.plusDays(1);
+            // Отметку двигаем до переноса: читатели заглядывают в холодные блоки и горячие хиты
+            // в одном снимке, поэтому ранняя отметка безопасна, а поздняя потеряла бы хиты
+            if (boundary == null || boundary.isBefore(next)) {
+                boundary = next;
+            }
+            try {
+                String partition = partitionManager.findPartition(day.toLocalDate());
+                int moved = partition == null
+                        ? coldBlockRepository.compact(day, next, blockRows)
+                        : coldBlockRepository.compactPartition(partition, next, blockRows);
+                log.info("Хиты за {} перенесены в холодное хранилище: {}", day.toLocalDate(), moved);
+            } catch (DataAccessException e) {
+                log.error("Ошибка при переносе хитов за {} в холодное хранилище: {}", day.toLocalDate(),
+                        e.getMessage());
+                return;
+            }
+            first = rollupRepository.findFirstHitTime();
+        }
+    }
+}
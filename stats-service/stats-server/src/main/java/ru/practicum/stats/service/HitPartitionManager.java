@@ -0,0 +1,137 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.repository.HitPartitionRepository;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.Set;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitPartitionManager {
+    private static final String PREFIX = "hits_p";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final HitPartitionRepository partitionRepository;
+    private final boolean enabled;
+    private final int premakeDays;
+    private final int retentionDays;
+    private volatile boolean partitioned;
+
+    public HitPartitionManager(HitPartitionRepository partitionRepository,
+                               @Value("${stats.partition.enabled:false}") boolean enabled,
+                               @Value("${stats.partition.premake-days:7}") int premakeDays,
+                               @Value("${stats.partition.retention-days:0}") int retentionDays) {
+        this.partitionRepository = partitionRepository;
+        this.enabled = enabled;
+        this.premakeDays = premakeDays;
+        this.retentionDays = retentionDays;
+    }
+
+    // Партиции на сегодня создаются до приёма первых хитов, чтобы они не оседали в партиции по умолчанию
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        partitioned = partitionRepository.isPartitioned();
+        if (!partitioned) {
+            log.warn("Таблица hits не секционирована, обслуживание партиций отключено");
+            return;
+        }
+        maintain();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.partition.maintenance-interval-ms:3600000}")
+    public void maintain() {
+        if (!enabled || !partitioned) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        Set<String> existing = new HashSet<>(partitionRepository.findPartitions());
+        createAhead(today, existing);
+        if (retentionDays > 0) {
+            dropExpired(today.minusDays(retentionDays), existing);
+        }
+    }
+
+    public boolean isPartitioned() {
+        return enabled && partitioned;
+    }
+
+    // Удаление суток раньше cutoff целыми партициями, вызывается и ступенчатым хранением
+    public void dropBefore(LocalDate cutoff) {
+        if (isPartitioned()) {
+            dropExpired(cutoff, new HashSet<>(partitionRepository.findPartitions()));
+        }
+    }
+
+    // Собственная партиция суток или null, если их хиты лежат в партиции по умолчанию либо таблица не секционирована
+    public String findPartition(LocalDate day) {
+        if (!isPartitioned()) {
+            return null;
+        }
+        String name = partitionName(day);
+        return partitionRepository.findPartitions().contains(name) ? name : null;
+    }
+
+    static String partitionName(LocalDate day) {
+        return PREFIX + SUFFIX.format(day);
+    }
+
+    static LocalDate partitionDay(String name) {
+        if (!name.startsWith(PREFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(name.substring(PREFIX.length()), SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private void createAhead(LocalDate today, Set<String> existing) {
+        for (LocalDate day = today; !day.isAfter(today.plusDays(premakeDays)); day = day.plusDays(1)) {
+            String name = partitionName(day);
+            if (existing.contains(name)) {
+                continue;
+            }
+            try {
+                partitionRepository.createPartition(name, day);
+                log.info("Создана партиция статистики: {}", name);
+            } catch (DataAccessException e) {
+                log.error("Ошибка при создании партиции {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    // Старые сутки удаляются целой партицией: без DELETE, мёртвых строк и вакуума
+    private void dropExpired(LocalDate cutoff, Set<String> existing) {
+        for (String name : existing) {
+            LocalDate day = partitionDay(name);
+            if (day == null || !day.isBefore(cutoff)) {
+                continue;
+            }
+            try {
+                partitionRepository.dropPartition(name);
+                log.info("Удалена партиция статистики раньше {}: {}", cutoff, name);
+            } catch (DataAccessException e) {
+                log.error("Ошибка при удалении партиции {}: {}", name, e.getMessage());
+            }
+        }
+        int deleted = partitionRepository.deleteFromDefaultBefore(cutoff);
+        if (deleted > 0) {
+            log.info("Удалено устаревших хитов из партиции по умолчанию: {}", deleted);
+        }
+    }
+}
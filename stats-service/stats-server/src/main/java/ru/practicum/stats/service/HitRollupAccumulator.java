@@ -0,0 +1,142 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.RollupKey;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.repository.HitRollupRepository;
+import ru.practicum.stats.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Неприменённый хвост журнала предзаписи переносится в hits при старте журнала, поэтому агрегаты
+// пересчитываются только после него
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@DependsOn("hitWriteAheadLog")
+public class HitRollupAccumulator {
+    private final HitRollupRepository rollupRepository;
+    private final boolean enabled;
+    private final Map<RollupKey, Long> pending = new ConcurrentHashMap<>();
+    private final Map<RollupKey, HyperLogLog> pendingSketches = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Агрегаты полны для всех корзин строго раньше отметки, дальше читаются сырые хиты
+    private volatile LocalDateTime watermark;
+
+    public HitRollupAccumulator(HitRollupRepository rollupRepository,
+                                @Value("${stats.rollup.enabled:true}") boolean enabled) {
+        this.rollupRepository = rollupRepository;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime stored = rollupRepository.findWatermark();
+        // Незаписанные до остановки приращения восстанавливаем из сырых хитов, начиная с дня отметки
+        LocalDateTime rebuildFrom = stored == null ? null : RollupLevel.DAY.floor(stored);
+        LocalDateTime now = RollupLevel.MINUTE.floor(LocalDateTime.now());
+        log.info("Пересчёт агрегатов статистики начиная с: {}", rebuildFrom == null ? "начала истории" : rebuildFrom);
+        rollupRepository.rebuild(rebuildFrom, now);
+        rebuildSketches(rebuildFrom == null ? rollupRepository.findFirstHitTime() : rebuildFrom, now);
+        watermark = now;
+    }
+
+    public boolean isEnabled() {
+        return enabled && watermark != null;
+    }
+
+    public LocalDateTime getWatermark() {
+        return watermark;
+    }
+
+    public void record(Hit hit) {
+        if (enabled) {
+            pending.merge(new RollupKey(hit.getApp(), hit.getUri(), RollupLevel.MINUTE.floor(hit.getTimestamp())),
+                    1L, Long::sum);
+            pendingSketches.compute(new RollupKey(hit.getApp(), hit.getUri(), RollupLevel.HOUR.floor(hit.getTimestamp())),
+                    (key, sketch) -> offer(sketch, hit));
+        }
+    }
+
+    public void recordAll(List<Hit> hits) {
+        hits.forEach(this::record);
+    }
+
+    @Scheduled(fixedDelayString = "${stats.rollup.flush-interval-ms:1000}")
+    public void flush() {
+        if (!isEnabled()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            LocalDateTime flushStart = RollupLevel.MINUTE.floor(LocalDateTime.now());
+            Map<RollupKey, Long> snapshot = drain(pending);
+            Map<RollupKey, HyperLogLog> sketches = drain(pendingSketches);
+            try {
+                rollupRepository.apply(snapshot, sketches, flushStart);
+                watermark = flushStart;
+            } catch (DataAccessException e) {
+                log.error("Ошибка при записи агрегатов статистики, повтор при следующем сбросе: {}", e.getMessage());
+                snapshot.forEach((key, count) -> pending.merge(key, count, Long::sum));
+                sketches.forEach((key, sketch) -> pendingSketches.merge(key, sketch, HyperLogLog::merge));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    // Скетчи пересчитываются по суткам, чтобы в памяти были только скетчи одних суток
+    private void rebuildSketches(LocalDateTime from, LocalDateTime to) {
+        if (from == null) {
+            return;
+        }
+        for (LocalDateTime day = RollupLevel.DAY.floor(from); day.isBefore(to); day = day.plusDays(1)) {
+            Map<RollupKey, HyperLogLog> hourSketches = new HashMap<>();
+            rollupRepository.forEachHit(day, day.plusDays(1), hit -> hourSketches.compute(
+                    new RollupKey(hit.getApp(), hit.getUri(), RollupLevel.HOUR.floor(hit.getTimestamp())),
+                    (key, sketch) -> offer(sketch, hit)));
+            rollupRepository.mergeSketches(RollupLevel.HOUR, hourSketches);
+            rollupRepository.mergeSketches(RollupLevel.DAY,
+                    HitRollupRepository.rollUpSketches(hourSketches, RollupLevel.DAY));
+        }
+    }
+
+    private HyperLogLog offer(HyperLogLog sketch, Hit hit) {
+        HyperLogLog result = sketch == null ? new HyperLogLog() : sketch;
+        result.offer(hit.getIp());
+        return result;
+    }
+
+    private <T> Map<RollupKey, T> drain(Map<RollupKey, T> source) {
+        Map<RollupKey, T> snapshot = new HashMap<>();
+        for (RollupKey key : source.keySet()) {
+            T value = source.remove(key);
+            if (value != null) {
+                snapshot.put(key, value);
+            }
+        }
+        return snapshot;
+    }
+}
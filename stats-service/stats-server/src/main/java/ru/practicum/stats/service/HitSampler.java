@@ -0,0 +1,119 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.UriKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Выборочное сохранение хитов при затяжной перегрузке. Вес - сколько хитов представляет сохранённая запись:
+// от каждой пары (app, uri) сохраняется каждый weight-й хит со случайного начального места, с весом weight,
+// поэтому сумма весов - несмещённая оценка числа хитов. Вес удваивается, пока очередь записи
+// (буфер, журнал предзаписи и ждущие допуска запросы) держится выше high-backlog sustain-checks проверок подряд,
+// и уменьшается вдвое, когда она ниже low-backlog. Счётчики в памяти (агрегаты, популярные URI, окна
+// реального времени) видят все хиты, выборка касается только записи сырых хитов
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitSampler {
+    private final HitWriteBehindBuffer hitBuffer;
+    private final HitWriteAheadLog writeAheadLog;
+    private final IngestAdmission admission;
+    private final boolean enabled;
+    private final long highBacklog;
+    private final long lowBacklog;
+    private final int maxWeight;
+    private final int sustainChecks;
+    private final Map<UriKey, AtomicLong> positions = new ConcurrentHashMap<>();
+    private final Counter sampledOut;
+    private volatile int weight = 1;
+    private int overloadedChecks;
+
+    public HitSampler(HitWriteBehindBuffer hitBuffer,
+                      HitWriteAheadLog writeAheadLog,
+                      IngestAdmission admission,
+                      MeterRegistry meterRegistry,
+                      @Value("${stats.sampling.enabled:true}") boolean enabled,
+                      @Value("${stats.sampling.high-backlog:50000}") long highBacklog,
+                      @Value("${stats.sampling.low-backlog:5000}") long lowBacklog,
+                      @Value("${stats.sampling.max-weight:64}") int maxWeight,
+                      @Value("${stats.sampling.sustain-checks:5}") int sustainChecks) {
+        this.hitBuffer = hitBuffer;
+        this.writeAheadLog = writeAheadLog;
+        this.admission = admission;
+        this.enabled = enabled;
+        this.highBacklog = highBacklog;
+        this.lowBacklog = lowBacklog;
+        this.maxWeight = maxWeight;
+        this.sustainChecks = sustainChecks;
+        this.sampledOut = meterRegistry.counter("stats.ingest.sampled-out");
+        Gauge.builder("stats.ingest.sample.weight", this, HitSampler::getWeight).register(meterRegistry);
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    // Хиты к записи в БД: при весе 1 - все как есть, иначе отобранные копии с проставленным весом
+    public List<Hit> sample(List<Hit> hits) {
+        int current = weight;
+        if (current == 1) {
+            return hits;
+        }
+        List<Hit> kept = new ArrayList<>(hits.size() / current + 1);
+        for (Hit hit : hits) {
+            AtomicLong position = positions.computeIfAbsent(new UriKey(hit.getApp(), hit.getUri()),
+                    key -> new AtomicLong(ThreadLocalRandom.current().nextInt(current)));
+            if (position.getAndIncrement() % current == 0) {
+                kept.add(Hit.builder()
+                        .app(hit.getApp())
+                        .uri(hit.getUri())
+                        .ip(hit.getIp())
+                        .timestamp(hit.getTimestamp())
+                        .weight(current)
+                        .build());
+            }
+        }
+        sampledOut.increment(hits.size() - kept.size());
+        return kept;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.sampling.adjust-interval-ms:1000}")
+    public synchronized void adjust() {
+        if (!enabled) {
+            return;
+        }
+        long backlog = hitBuffer.size() + writeAheadLog.getBacklog() + admission.getQueueDepth();
+        int previous = weight;
+        if (backlog >= highBacklog) {
+            if (++overloadedChecks >= sustainChecks && previous < maxWeight) {
+                weight = Math.min(maxWeight, previous * 2);
+                overloadedChecks = 0;
+            }
+        } else {
+            overloadedChecks = 0;
+            if (backlog <= lowBacklog && previous > 1) {
+                weight = previous / 2;
+            }
+        }
+        if (weight == previous) {
+            return;
+        }
+        if (weight == 1) {
+            positions.clear();
+        }
+        log.warn("Очередь записи хитов: {}, вес выборочного сохранения изменён с {} на {}", backlog, previous, weight);
+    }
+}
@@ -0,0 +1,12 @@
+package ru.practicum.stats.service;
+
+import ru.practicum.stats.model.Hit;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+// Сырые хиты хранилища, выбранного stats.storage, за [from, to): из них при старте заполняются счётчики в памяти
+@FunctionalInterface
+public interface HitSource {
+    void forEachHit(LocalDateTime from, LocalDateTime to, Consumer<Hit> consumer);
+}
@@ -0,0 +1,124 @@
+package ru.practicum.stats.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.repository.ColdBlockRepository;
+import ru.practicum.stats.repository.HitBatchRepository;
+import ru.practicum.stats.repository.HitRollupRepository;
+
+import java.time.LocalDateTime;
+
+// Ступенчатое хранение: сырые хиты (с холодными блоками) и минутные агрегаты хранятся raw-days суток,
+// часовые агрегаты со скетчами ip - hourly-days суток, суточные - всегда. Агрегаты заполняет
+// HitRollupAccumulator при записи хитов, здесь удаляется только то, что уже учтено в агрегатах следующей
+// ступени, то есть раньше отметки агрегатов. Сырые хиты удаляются целыми сутками: партициями или по суткам.
+// Запросы к удалённым ступеням расширяются до целых часов или суток, см. widenStart и widenEnd
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitTierCompactor {
+    private final HitRollupAccumulator accumulator;
+    private final HitRollupRepository rollupRepository;
+    private final HitBatchRepository hitBatchRepository;
+    private final ColdBlockRepository coldBlockRepository;
+    private final HitPartitionManager partitionManager;
+    private final boolean enabled;
+    private final int rawDays;
+    private final int hourlyDays;
+
+    public HitTierCompactor(HitRollupAccumulator accumulator,
+                            HitRollupRepository rollupRepository,
+                            HitBatchRepository hitBatchRepository,
+                            ColdBlockRepository coldBlockRepository,
+                            HitPartitionManager partitionManager,
+                            @Value("${stats.tiers.enabled:false}") boolean enabled,
+                            @Value("${stats.tiers.raw-days:90}") int rawDays,
+                            @Value("${stats.tiers.hourly-days:365}") int hourlyDays) {
+        if (enabled && (rawDays <= 0 || hourlyDays < rawDays)) {
+            throw new IllegalArgumentException(String.format(
+                    "Срок хранения часовых агрегатов (%d) должен быть не меньше срока сырых хитов (%d)",
+                    hourlyDays, rawDays));
+        }
+        this.accumulator = accumulator;
+        this.rollupRepository = rollupRepository;
+        this.hitBatchRepository = hitBatchRepository;
+        this.coldBlockRepository = coldBlockRepository;
+        this.partitionManager = partitionManager;
+        this.enabled = enabled;
+        this.rawDays = rawDays;
+        this.hourlyDays = hourlyDays;
+    }
+
+    // Самая мелкая ступень, которой можно прочитать время: MINUTE - сырые хиты и минутные агрегаты ещё есть
+    public RollupLevel levelAt(LocalDateTime time) {
+        if (!enabled) {
+            return RollupLevel.MINUTE;
+        }
+        LocalDateTime today = RollupLevel.DAY.floor(LocalDateTime.now());
+        if (!time.isBefore(today.minusDays(rawDays))) {
+            return RollupLevel.MINUTE;
+        }
+        return time.isBefore(today.minusDays(hourlyDays)) ? RollupLevel.DAY : RollupLevel.HOUR;
+    }
+
+    public boolean isDownsampled(LocalDateTime time) {
+        return levelAt(time) != RollupLevel.MINUTE;
+    }
+
+    // Начало и конец диапазона на удалённых ступенях округляются наружу до корзин оставшейся ступени
+    public LocalDateTime widenStart(LocalDateTime start) {
+        return levelAt(start).floor(start);
+    }
+
+    public LocalDateTime widenEnd(LocalDateTime end) {
+        RollupLevel level = levelAt(end);
+        return level == RollupLevel.MINUTE ? end : level.ceil(end);
+    }
+
+    @Scheduled(initialDelayString = "${stats.tiers.compaction-initial-delay-ms:120000}",
+            fixedDelayString = "${stats.tiers.compaction-interval-ms:3600000}")
+    public void compact() {
+        if (!enabled || !accumulator.isEnabled()) {
+            return;
+        }
+        LocalDateTime today = RollupLevel.DAY.floor(LocalDateTime.now());
+        LocalDateTime settled = RollupLevel.DAY.floor(accumulator.getWatermark());
+        LocalDateTime rawCutoff = earliest(today.minusDays(rawDays), settled);
+        LocalDateTime hourlyCutoff = earliest(today.minusDays(hourlyDays), settled);
+        try {
+            int days = dropRawBefore(rawCutoff);
+            int blocks = coldBlockRepository.deleteBlocksBefore(rawCutoff);
+            int minutes = rollupRepository.deleteBefore(RollupLevel.MINUTE, rawCutoff);
+            int hours = rollupRepository.deleteBefore(RollupLevel.HOUR, hourlyCutoff);
+            log.info("Ступенчатое хранение: удалены сырые хиты до {} (суток без партиций: {}, холодных блоков: {}), " +
+                    "минутных агрегатов: {}, часовых агрегатов до {}: {}", rawCutoff, days, blocks, minutes,
+                    hourlyCutoff, hours);
+        } catch (DataAccessException e) {
+            log.error("Ошибка ступенчатого хранения, повтор при следующем запуске: {}", e.getMessage());
+        }
+    }
+
+    private int dropRawBefore(LocalDateTime cutoff) {
+        if (partitionManager.isPartitioned()) {
+            partitionManager.dropBefore(cutoff.toLocalDate());
+            return 0;
+        }
+        int days = 0;
+        LocalDateTime first = rollupRepository.findFirstHitTime();
+        for (LocalDateTime day = first == null ? cutoff : RollupLevel.DAY.floor(first);
+             day.isBefore(cutoff); day = day.plusDays(1)) {
+            hitBatchRepository.deleteBetween(day, day.plusDays(1));
+            days++;
+        }
+        return days;
+    }
+
+    private static LocalDateTime earliest(LocalDateTime first, LocalDateTime second) {
+        return first.isBefore(second) ? first : second;
+    }
+}
@@ -0,0 +1,166 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.exception.StatsPersistenceException;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.repository.HitWalRepository;
+import ru.practicum.stats.wal.WalStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Хит подтверждается после записи в локальный журнал, а не после коммита в БД. Фоновый применитель
+// переносит журнал в hits пачками, отметка применённого LSN пишется в той же транзакции.
+// При старте неприменённый хвост журнала переносится до приёма запросов.
+// Журнал принадлежит экземпляру сервиса: его номер хранится в каталоге журнала
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitWriteAheadLog {
+    private static final String ID_FILE = "wal.id";
+
+    private final HitWalRepository walRepository;
+    private final boolean enabled;
+    private final Path directory;
+    private final int batchSize;
+    private final WalStore store;
+    private final ReentrantLock applyLock = new ReentrantLock();
+    // Хиты, принятые после старта и ещё не перенесённые в БД
+    private final AtomicLong backlog = new AtomicLong();
+    private String walId;
+    private volatile long appliedLsn;
+
+    public HitWriteAheadLog(HitWalRepository walRepository,
+                            @Value("${stats.wal.enabled:false}") boolean enabled,
+                            @Value("${stats.wal.dir:data/wal}") String directory,
+                            @Value("${stats.wal.segment-bytes:67108864}") long segmentBytes,
+                            @Value("${stats.wal.fsync:true}") boolean fsync,
+                            @Value("${stats.wal.batch-size:500}") int batchSize) {
+        this.walRepository = walRepository;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.batchSize = batchSize;
+        this.store = new WalStore(this.directory, segmentBytes, fsync);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            walId = readOrCreateId();
+            appliedLsn = walRepository.findAppliedLsn(walId);
+            store.open(appliedLsn);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал предзаписи " + directory, e);
+        }
+        log.info("Журнал предзаписи {} открыт, применён до LSN {}, записан до LSN {}",
+                walId, appliedLsn, store.getSyncedLsn());
+        apply();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void append(List<Hit> hits) {
+        try {
+            store.append(hits);
+            backlog.addAndGet(hits.size());
+        } catch (IOException e) {
+            log.error("Ошибка записи в журнал предзаписи: {}", e.getMessage());
+            throw new StatsPersistenceException("Ошибка записи в журнал предзаписи: " + e.getMessage());
+        }
+    }
+
+    public long getAppliedLsn() {
+        return appliedLsn;
+    }
+
+    public long getBacklog() {
+        return backlog.get();
+    }
+
+    public long getSyncedLsn() {
+        return store.getSyncedLsn();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.wal.apply-interval-ms:200}")
+    public void apply() {
+        if (!enabled || !applyLock.tryLock()) {
+            return;
+        }
+        try {
+            drain();
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        applyLock.lock();
+        try {
+            drain();
+            store.close();
+        } catch (IOException e) {
+            log.error("Ошибка закрытия журнала предзаписи: {}", e.getMessage());
+        } finally {
+            applyLock.unlock();
+        }
+        log.info("Журнал предзаписи закрыт, применён до LSN {}, записан до LSN {}", appliedLsn, store.getSyncedLsn());
+    }
+
+    private void drain() {
+        try {
+            int applied = 0;
+            WalStore.Batch batch = store.read(appliedLsn, batchSize);
+            while (!batch.hits().isEmpty()) {
+                walRepository.apply(walId, batch.hits(), batch.end(), batchSize);
+                appliedLsn = batch.end();
+                int size = batch.hits().size();
+                backlog.updateAndGet(pending -> Math.max(0, pending - size));
+                applied += batch.hits().size();
+                batch = store.read(appliedLsn, batchSize);
+            }
+            if (applied > 0) {
+                int deleted = store.deleteBefore(appliedLsn);
+                log.debug("Из журнала предзаписи применено хитов: {}, удалено файлов: {}", applied, deleted);
+            }
+        } catch (DataAccessException e) {
+            // Записи остаются в журнале и применятся следующим проходом
+            log.error("Ошибка применения журнала предзаписи с LSN {}: {}", appliedLsn, e.getMessage());
+        } catch (IOException e) {
+            log.error("Ошибка чтения журнала предзаписи с LSN {}: {}", appliedLsn, e.getMessage());
+        }
+    }
+
+    private String readOrCreateId() throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(ID_FILE);
+        if (Files.exists(file)) {
+            return Files.readString(file, StandardCharsets.UTF_8).trim();
+        }
+        String id = UUID.randomUUID().toString();
+        Files.writeString(file, id, StandardCharsets.UTF_8);
+        return id;
+    }
+}
@@ -0,0 +1,168 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.exception.StatsPersistenceException;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.repository.HitBatchRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Пачка, не записанная из-за ошибки БД, не выбрасывается: она повторяется с растущей паузой до max-retries раз,
+// а пока она не записана, очередь не сбрасывается. Потерянные после всех попыток хиты видны в stats.ingest.lost
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitWriteBehindBuffer {
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final HitBatchRepository hitBatchRepository;
+    private final BlockingQueue<Hit> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Приём пачек по одной: место, проверенное под этой блокировкой, не займёт параллельный приём
+    private final ReentrantLock offerLock = new ReentrantLock();
+    private final Counter retries;
+    private final Counter lost;
+    // Пачка, ждущая повторной записи, и число неудачных попыток её записать
+    private volatile List<Hit> failedBatch = List.of();
+    private int failedAttempts;
+    private long retryAt;
+
+    public HitWriteBehindBuffer(HitBatchRepository hitBatchRepository,
+                                MeterRegistry meterRegistry,
+                                @Value("${stats.ingest.buffer-capacity:10000}") int capacity,
+                                @Value("${stats.ingest.batch-size:500}") int batchSize,
+                                @Value("${stats.ingest.max-retries:5}") int maxRetries,
+                                @Value("${stats.ingest.retry-backoff-ms:500}") long retryBackoffMillis) {
+        this.hitBatchRepository = hitBatchRepository;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.retries = meterRegistry.counter("stats.ingest.write.retries");
+        this.lost = meterRegistry.counter("stats.ingest.lost");
+        Gauge.builder("stats.ingest.buffer.size", this, HitWriteBehindBuffer::size).register(meterRegistry);
+    }
+
+    // Пачка принимается целиком или не принимается вовсе: после ошибки клиент повторяет всю пачку,
+    // и уже принятая её часть задвоилась бы. Пачка больше буфера пишется в БД сразу
+    public void addAll(List<Hit> hits) {
+        if (hits.size() > capacity) {
+            writeThrough(hits);
+            return;
+        }
+        offerLock.lock();
+        try {
+            // Буфер переполнен - сбрасываем его в потоке вызывающего, это и есть обратное давление.
+            // Если БД не принимает даже повторную попытку, запрос получает ошибку, а не ждёт без ограничения
+            while (queue.remainingCapacity() < hits.size()) {
+                if (!write(true)) {
+                    throw new StatsPersistenceException("Буфер статистики заполнен, БД недоступна");
+                }
+            }
+            queue.addAll(hits);
+        } finally {
+            offerLock.unlock();
+        }
+    }
+
+    public int size() {
+        return queue.size() + failedBatch.size();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.ingest.flush-interval-ms:200}")
+    public void flush() {
+        write(false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Остановка буфера статистики, к записи осталось: {}", size());
+        if (!write(true) && size() > 0) {
+            log.error("БД недоступна при остановке, потеряно записей статистики: {}", size());
+            lost.increment(size());
+        }
+    }
+
+    // Сначала повторяется отложенная пачка, затем сбрасывается очередь. false - БД не приняла пачку.
+    // force - повторить отложенную пачку, не дожидаясь конца паузы
+    private boolean write(boolean force) {
+        flushLock.lock();
+        try {
+            if (!failedBatch.isEmpty()) {
+                if (!force && System.currentTimeMillis() < retryAt) {
+                    return false;
+                }
+                retries.increment();
+                if (!writeBatch(failedBatch)) {
+                    return false;
+                }
+            }
+            List<Hit> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                if (!writeBatch(batch)) {
+                    return false;
+                }
+                batch = new ArrayList<>(batchSize);
+            }
+            return true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void writeThrough(List<Hit> hits) {
+        if (!write(true)) {
+            throw new StatsPersistenceException("Буфер статистики не сброшен, БД недоступна");
+        }
+        try {
+            hitBatchRepository.saveAll(hits, batchSize);
+            log.debug("Пачка статистики больше буфера записана сразу, размер: {}", hits.size());
+        } catch (DataAccessException e) {
+            throw new StatsPersistenceException("Пачка статистики больше буфера не записана в БД: " + e.getMessage());
+        }
+    }
+
+    private boolean writeBatch(List<Hit> batch) {
+        try {
+            hitBatchRepository.saveAll(batch, batchSize);
+            log.debug("Записана пачка статистики, размер: {}", batch.size());
+            failedBatch = List.of();
+            failedAttempts = 0;
+            return true;
+        } catch (DataAccessException e) {
+            failedAttempts++;
+            if (failedAttempts > maxRetries) {
+                log.error("Пачка статистики не записана после {} попыток, потеряно записей: {}, ошибка: {}",
+                        failedAttempts, batch.size(), e.getMessage());
+                lost.increment(batch.size());
+                failedBatch = List.of();
+                failedAttempts = 0;
+                return false;
+            }
+            long backoff = Math.min(retryBackoffMillis << Math.min(failedAttempts - 1, 16), MAX_BACKOFF_MILLIS);
+            log.warn("Ошибка при пакетной записи статистики в БД, попытка {} из {}, повтор через {} мс: {}",
+                    failedAttempts, maxRetries + 1, backoff, e.getMessage());
+            failedBatch = batch;
+            retryAt = System.currentTimeMillis() + backoff;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.exception.IngestRejectedException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Допуск запросов записи хитов: не больше max-concurrent одновременно пишущих, остальные ждут в очереди
+// не дольше max-wait-ms. Очередь ограничена queue-capacity, сверх неё запрос сразу получает 503.
+// Одно приложение не может занять больше per-app-limit мест (429), чтобы всплеск одного клиента
+// не выдавил остальных. Отказ лучше ожидания: вызывающий сервис не должен ждать статистику
+@Slf4j
+@Component
+public class IngestAdmission {
+    private final boolean enabled;
+    private final Semaphore writers;
+    private final int queueCapacity;
+    private final long maxWaitMillis;
+    private final int perAppLimit;
+    private final long retryAfterSeconds;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Map<String, AtomicInteger> inFlightByApp = new ConcurrentHashMap<>();
+    private final Counter queueFull;
+    private final Counter waitTimeouts;
+    private final Counter appLimit;
+    private final Timer waitTimer;
+
+    public IngestAdmission(MeterRegistry meterRegistry,
+                           @Value("${stats.admission.enabled:true}") boolean enabled,
+                           @Value("${stats.admission.max-concurrent:10}") int maxConcurrent,
+                           @Value("${stats.admission.queue-capacity:100}") int queueCapacity,
+                           @Value("${stats.admission.max-wait-ms:200}") long maxWaitMillis,
+                           @Value("${stats.admission.per-app-limit:8}") int perAppLimit,
+                           @Value("${stats.admission.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.enabled = enabled;
+        this.writers = new Semaphore(maxConcurrent);
+        this.queueCapacity = queueCapacity;
+        this.maxWaitMillis = maxWaitMillis;
+        this.perAppLimit = perAppLimit;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.queueFull = meterRegistry.counter("stats.ingest.rejected", "reason", "queue_full");
+        this.waitTimeouts = meterRegistry.counter("stats.ingest.rejected", "reason", "wait_timeout");
+        this.appLimit = meterRegistry.counter("stats.ingest.rejected", "reason", "app_limit");
+        this.waitTimer = meterRegistry.timer("stats.ingest.wait");
+        Gauge.builder("stats.ingest.queue.depth", waiting, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("stats.ingest.in-flight", this, admission -> maxConcurrent - admission.writers.availablePermits())
+                .register(meterRegistry);
+    }
+
+    public <T> T admit(Collection<String> apps, Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+        List<AtomicInteger> acquired = acquireApps(apps);
+        try {
+            acquireWriter();
+            try {
+                return action.get();
+            } finally {
+                writers.release();
+            }
+        } finally {
+            acquired.forEach(AtomicInteger::decrementAndGet);
+        }
+    }
+
+    public void admit(Collection<String> apps, Runnable action) {
+        admit(apps, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    // Приложения пачки занимают места в порядке имени, при отказе уже занятые освобождаются
+    private List<AtomicInteger> acquireApps(Collection<String> apps) {
+        List<AtomicInteger> acquired = new ArrayList<>();
+        for (String app : new TreeSet<>(apps)) {
+            AtomicInteger inFlight = inFlightByApp.computeIfAbsent(app, key -> new AtomicInteger());
+            if (inFlight.incrementAndGet() > perAppLimit) {
+                inFlight.decrementAndGet();
+                acquired.forEach(AtomicInteger::decrementAndGet);
+                appLimit.increment();
+                log.warn("Отказ в записи хитов: приложение {} превысило лимит одновременных запросов {}",
+                        app, perAppLimit);
+                throw new IngestRejectedException("Превышен лимит одновременных запросов приложения " + app,
+                        HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds);
+            }
+            acquired.add(inFlight);
+        }
+        return acquired;
+    }
+
+    private void acquireWriter() {
+        if (writers.tryAcquire()) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return;
+        }
+        if (waiting.incrementAndGet() > queueCapacity) {
+            waiting.decrementAndGet();
+            queueFull.increment();
+            throw new IngestRejectedException("Очередь записи хитов переполнена",
+                    HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds);
+        }
+        long started = System.nanoTime();
+        boolean admitted;
+        try {
+            admitted = writers.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        } finally {
+            waiting.decrementAndGet();
+            waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+        if (!admitted) {
+            waitTimeouts.increment();
+            throw new IngestRejectedException("Истекло ожидание очереди записи хитов",
+                    HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.exception.StatsPersistenceException;
+import ru.practicum.stats.model.RollupLevel;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+// Параллельное чтение длинных диапазонов: диапазон делится на куски по part-hours часов, выровненные
+// по суткам (с суточными партициями кусок читает одну партицию), куски считаются на отдельном пуле
+// из threads потоков, частичные суммы и множества ip сливаются в конце. Потоков не больше, чем соединений
+// в пуле БД, иначе куски ждут соединение: при threads=0 берётся меньшее из числа ядер и размера пула Hikari
+@Slf4j
+@Component
+public class ParallelQueryExecutor {
+    private final boolean enabled;
+    private final int partHours;
+    private final ForkJoinPool pool;
+
+    public ParallelQueryExecutor(@Value("${stats.parallel.enabled:true}") boolean enabled,
+                                 @Value("${stats.parallel.threads:0}") int threads,
+                                 @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connections,
+                                 @Value("${stats.parallel.part-hours:24}") int partHours) {
+        if (partHours <= 0) {
+            throw new IllegalArgumentException("Размер куска диапазона должен быть положительным: " + partHours);
+        }
+        this.enabled = enabled;
+        this.partHours = partHours;
+        this.pool = new ForkJoinPool(threads > 0
+                ? threads
+                : Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), connections)));
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    // Есть смысл делить, только если диапазон длиннее одного куска
+    public boolean isParallel(LocalDateTime start, LocalDateTime end) {
+        return enabled && split(start, end, true).size() > 1;
+    }
+
+    public List<Part> split(LocalDateTime start, LocalDateTime end, boolean includeEnd) {
+        List<Part> parts = new ArrayList<>();
+        LocalDateTime boundary = RollupLevel.DAY.floor(start);
+        while (!boundary.isAfter(start)) {
+            boundary = boundary.plusHours(partHours);
+        }
+        LocalDateTime from = start;
+        while (boundary.isBefore(end)) {
+            parts.add(new Part(from, boundary, false));
+            from = boundary;
+            boundary = boundary.plusHours(partHours);
+        }
+        parts.add(new Part(from, end, includeEnd));
+        return parts;
+    }
+
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, boolean includeEnd,
+                                    PartialStats partialStats) {
+        Map<List<String>, Long> totals = new HashMap<>();
+        for (List<ViewStats> partial : invokeAll(split(start, end, includeEnd).stream()
+                .<Callable<List<ViewStats>>>map(part -> () -> partialStats.load(part.from(), part.to(),
+                        part.includeTo()))
+                .toList())) {
+            partial.forEach(stat -> totals.merge(List.of(stat.getApp(), stat.getUri()), stat.getHits(), Long::sum));
+        }
+        return sorted(totals);
+    }
+
+    // Один ip может встретиться в нескольких кусках, поэтому куски отдают множества, а не числа
+    public List<ViewStats> getUniqueStats(LocalDateTime start, LocalDateTime end, boolean includeEnd,
+                                          PartialIps partialIps) {
+        Map<List<String>, Set<String>> ips = new HashMap<>();
+        for (Map<List<String>, Set<String>> partial : invokeAll(split(start, end, includeEnd).stream()
+                .<Callable<Map<List<String>, Set<String>>>>map(part -> () -> {
+                    Map<List<String>, Set<String>> result = new HashMap<>();
+                    partialIps.collect(part.from(), part.to(), part.includeTo(),
+                            (key, ip) -> result.computeIfAbsent(key, k -> new HashSet<>()).add(ip));
+                    return result;
+                })
+                .toList())) {
+            partial.forEach((key, values) -> ips.merge(key, values, (current, added) -> {
+                current.addAll(added);
+                return current;
+            }));
+        }
+        Map<List<String>, Long> totals = new HashMap<>();
+        ips.forEach((key, values) -> totals.put(key, (long) values.size()));
+        return sorted(totals);
+    }
+
+    // Задачи выполняются на пуле, результаты - в порядке задач. Одну задачу или при выключенном
+    // параллельном чтении выполняем в вызывающем потоке
+    public <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (!enabled || tasks.size() <= 1) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StatsPersistenceException("Чтение статистики прервано");
+        } catch (Exception e) {
+            throw rethrow(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new StatsPersistenceException(cause.getMessage());
+    }
+
+    private static List<ViewStats> sorted(Map<List<String>, Long> totals) {
+        return totals.entrySet().stream()
+                .map(entry -> new ViewStats(entry.getKey().get(0), entry.getKey().get(1), entry.getValue()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    public record Part(LocalDateTime from, LocalDateTime to, boolean includeTo) {
+    }
+
+    @FunctionalInterface
+    public interface PartialStats {
+        List<ViewStats> load(LocalDateTime from, LocalDateTime to, boolean includeTo);
+    }
+
+    @FunctionalInterface
+    public interface PartialIps {
+        void collect(LocalDateTime from, LocalDateTime to, boolean includeTo, BiConsumer<List<String>, String> consumer);
+    }
+}
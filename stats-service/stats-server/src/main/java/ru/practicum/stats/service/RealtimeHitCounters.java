@@ -0,0 +1,121 @@
+package ru.practicum.stats.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dictionary.UriPattern;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.exception.ValidationException;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.UriKey;
+import ru.practicum.stats.realtime.SlidingWindowCounter;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+// Просмотры за последние минуты без обращения к БД: посекундное кольцо на каждую пару (app, uri).
+// Запись не берёт блокировок, при старте кольца заполняет хитами последнего часа выбранное хранилище
+@Slf4j
+@Component
+public class RealtimeHitCounters {
+    public static final int MAX_MINUTES = 60;
+    private static final int WINDOW_SECONDS = MAX_MINUTES * 60;
+
+    private final boolean enabled;
+    private final Map<UriKey, SlidingWindowCounter> counters = new ConcurrentHashMap<>();
+
+    public RealtimeHitCounters(@Value("${stats.realtime.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void restore(HitSource source) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        source.forEachHit(now.minusMinutes(MAX_MINUTES), now, this::record);
+        log.info("Счётчики просмотров за последний час восстановлены, пар (app, uri): {}", counters.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void record(Hit hit) {
+        if (!enabled) {
+            return;
+        }
+        long now = Instant.now().getEpochSecond();
+        long second = Math.min(hit.getTimestamp().atZone(ZoneId.systemDefault()).toEpochSecond(), now);
+        if (second <= now - WINDOW_SECONDS) {
+            return;
+        }
+        UriKey key = new UriKey(hit.getApp(), hit.getUri());
+        SlidingWindowCounter counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> new SlidingWindowCounter(WINDOW_SECONDS));
+        }
+        counter.add(second, hit.getWeight());
+    }
+
+    public void recordAll(List<Hit> hits) {
+        hits.forEach(this::record);
+    }
+
+    public List<ViewStats> getStats(int minutes, List<String> uris) {
+        if (!enabled) {
+            throw new ValidationException("Счётчики просмотров в реальном времени отключены");
+        }
+        if (minutes <= 0 || minutes > MAX_MINUTES) {
+            throw new ValidationException(
+                    String.format("Окно должно быть от 1 до %d минут, получено: %d", MAX_MINUTES, minutes));
+        }
+        long now = Instant.now().getEpochSecond();
+        Predicate<String> matcher = UriPattern.matcher(uris);
+        return counters.entrySet().stream()
+                .filter(entry -> matcher.test(entry.getKey().uri()))
+                .map(entry -> new ViewStats(entry.getKey().app(), entry.getKey().uri(),
+                        entry.getValue().sum(now, minutes * 60)))
+                .filter(stats -> stats.getHits() > 0)
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    // Число хитов по парам за секунды [from, to] включительно; секунды старше часа в кольцах уже затёрты.
+    // Хиты из будущего записаны текущей секундой, поэтому конец в будущем считается до текущей секунды
+    public Map<UriKey, Long> countBetween(LocalDateTime from, LocalDateTime to, List<String> uris) {
+        long fromSecond = from.atZone(ZoneId.systemDefault()).toEpochSecond();
+        long toSecond = Math.min(to.atZone(ZoneId.systemDefault()).toEpochSecond(), Instant.now().getEpochSecond());
+        Map<UriKey, Long> result = new HashMap<>();
+        if (!enabled || fromSecond > toSecond) {
+            return result;
+        }
+        int window = (int) Math.min(toSecond - fromSecond + 1, WINDOW_SECONDS);
+        Predicate<String> matcher = UriPattern.matcher(uris);
+        counters.forEach((key, counter) -> {
+            if (matcher.test(key.uri())) {
+                long hits = counter.sum(toSecond, window);
+                if (hits > 0) {
+                    result.put(key, hits);
+                }
+            }
+        });
+        return result;
+    }
+
+    // Кольца пар без хитов за весь час удаляются. Хит, пришедший одновременно с удалением,
+    // может попасть в уже удалённое кольцо
+    @Scheduled(fixedDelayString = "${stats.realtime.eviction-interval-ms:60000}")
+    public void evictIdle() {
+        long expired = Instant.now().getEpochSecond() - WINDOW_SECONDS;
+        counters.values().removeIf(counter -> counter.getLastSecond() <= expired);
+    }
+}
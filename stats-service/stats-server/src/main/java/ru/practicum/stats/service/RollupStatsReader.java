@@ -0,0 +1,219 @@
+package ru.practicum.stats.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.exception.ValidationException;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.model.StatsPart;
+import ru.practicum.stats.repository.HitRollupRepository;
+import ru.practicum.stats.repository.StatsRepository;
+import ru.practicum.stats.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class RollupStatsReader {
+    private final HitRollupAccumulator accumulator;
+    private final HitRollupRepository rollupRepository;
+    private final StatsRepository statsRepository;
+    private final ColdStatsReader coldStatsReader;
+    private final HitTierCompactor tierCompactor;
+
+    public boolean isEnabled() {
+        return accumulator.isEnabled();
+    }
+
+    // Сырых хитов на это время уже нет, остались только часовые или суточные агрегаты
+    public boolean isDownsampled(LocalDateTime time) {
+        return isEnabled() && tierCompactor.isDownsampled(time);
+    }
+
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return getStats(start, end, true, uris);
+    }
+
+    public List<ViewStats> getStats(LocalDateTime requestStart, LocalDateTime requestEnd, boolean includeEnd,
+                                    List<String> uris) {
+        List<String> uriFilter = uris == null || uris.isEmpty() ? null : uris;
+        List<StatsPart> parts = plan(requestStart, requestEnd, includeEnd);
+        if (parts.size() == 1 && parts.get(0).isRaw()) {
+            StatsPart part = parts.get(0);
+            return rawStats(part.from(), part.to(), part.includeTo(), uriFilter, false);
+        }
+
+        Map<List<String>, Long> totals = new HashMap<>();
+        for (StatsPart part : parts) {
+            addAll(totals, part.isRaw()
+                    ? rawStats(part.from(), part.to(), part.includeTo(), uriFilter, false)
+                    : rollupRepository.getStats(part.level(), part.from(), part.to(), uriFilter));
+        }
+        return totals.entrySet().stream()
+                .map(entry -> new ViewStats(entry.getKey().get(0), entry.getKey().get(1), entry.getValue()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    // Все куски диапазона сводит один запрос, и строки уходят потребителю без списка в памяти.
+    // Холодные блоки разбираются только в памяти, поэтому диапазон с холодным сырым краем отдаём списком
+    public void streamStats(LocalDateTime requestStart, LocalDateTime requestEnd, List<String> uris,
+                            Consumer<ViewStats> consumer) {
+        List<String> uriFilter = uris == null || uris.isEmpty() ? null : uris;
+        List<StatsPart> parts = plan(requestStart, requestEnd, true);
+        if (parts.stream().anyMatch(part -> part.isRaw() && coldStatsReader.isCold(part.from()))) {
+            getStats(requestStart, requestEnd, true, uriFilter).forEach(consumer);
+            return;
+        }
+        rollupRepository.forEachStats(parts, uriFilter, consumer);
+    }
+
+    // Приблизительное число уникальных ip: объединение скетчей часовых и суточных корзин,
+    // края диапазона, не покрытые часовыми корзинами, добавляются в скетч из сырых хитов
+    public List<ViewStats> getApproximateUniqueStats(LocalDateTime requestStart, LocalDateTime requestEnd,
+                                                     List<String> uris) {
+        List<String> uriFilter = uris == null || uris.isEmpty() ? null : uris;
+        LocalDateTime start = tierCompactor.widenStart(requestStart);
+        LocalDateTime end = tierCompactor.widenEnd(requestEnd);
+        LocalDateTime watermark = accumulator.getWatermark();
+        LocalDateTime from = RollupLevel.HOUR.ceil(start);
+        LocalDateTime to = RollupLevel.HOUR.floor(end.isBefore(watermark) ? end : watermark);
+
+        if (!from.isBefore(to)) {
+            return rawStats(start, end, true, uriFilter, true);
+        }
+
+        Map<List<String>, HyperLogLog> sketches = new HashMap<>();
+        if (start.isBefore(from)) {
+            offerDistinctIps(sketches, start, from, false, uriFilter);
+        }
+        LocalDateTime dayFrom = RollupLevel.DAY.ceil(from);
+        LocalDateTime dayTo = RollupLevel.DAY.floor(to);
+        if (dayFrom.isBefore(dayTo)) {
+            rollupRepository.mergeSketchesInto(sketches, RollupLevel.DAY, dayFrom, dayTo, uriFilter);
+            mergeHourSketches(sketches, from, dayFrom, uriFilter);
+            mergeHourSketches(sketches, dayTo, to, uriFilter);
+        } else {
+            mergeHourSketches(sketches, from, to, uriFilter);
+        }
+        offerDistinctIps(sketches, to, end, true, uriFilter);
+
+        return sketches.entrySet().stream()
+                .map(entry -> new ViewStats(entry.getKey().get(0), entry.getKey().get(1),
+                        entry.getValue().cardinality()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    // Пока сырые хиты начала диапазона на месте - один проход по ним. Иначе корзины до отметки агрегатов
+    // читаются из агрегатов целиком (уникальные ip - по скетчам, поэтому минутных корзин там нет),
+    // корзины после отметки - из сырых хитов
+    public List<TimeSeriesStats> getTimeSeries(RollupLevel level, LocalDateTime start, LocalDateTime end,
+                                               List<String> uris) {
+        List<String> uriFilter = uris == null || uris.isEmpty() ? null : uris;
+        if (!isEnabled() || !(coldStatsReader.isCold(start) || tierCompactor.isDownsampled(start))) {
+            return rollupRepository.getTimeSeries(level, start, end, uriFilter);
+        }
+        RollupLevel stored = tierCompactor.levelAt(start);
+        RollupLevel finest = stored == RollupLevel.MINUTE ? RollupLevel.HOUR : stored;
+        if (level.ordinal() > finest.ordinal()) {
+            throw new ValidationException(String.format(
+                    "Корзины по %s недоступны для начала %s: данные этого периода хранятся с шагом %s",
+                    level.getTruncUnit(), start, finest.getTruncUnit()));
+        }
+        LocalDateTime split = level.floor(accumulator.getWatermark());
+        LocalDateTime lastBucketEnd = level.floor(end).plus(1, level.getUnit());
+        List<TimeSeriesStats> series = new ArrayList<>(rollupRepository.getRollupTimeSeries(level,
+                level.floor(start), lastBucketEnd.isBefore(split) ? lastBucketEnd : split, uriFilter));
+        if (!end.isBefore(split)) {
+            series.addAll(rollupRepository.getTimeSeries(level, split.isBefore(start) ? start : split, end,
+                    uriFilter));
+        }
+        return series;
+    }
+
+    // Если начало куска раньше отметки холодного хранилища, читаем и холодные блоки, и горячие хиты
+    private List<ViewStats> rawStats(LocalDateTime from, LocalDateTime to, boolean includeTo, List<String> uris,
+                                     boolean unique) {
+        if (coldStatsReader.isCold(from)) {
+            return coldStatsReader.getStats(from, to, includeTo, uris, unique);
+        }
+        return includeTo
+                ? statsRepository.getStats(from, to, uris, unique)
+                : statsRepository.getStatsBeforeEnd(from, to, uris, unique);
+    }
+
+    private void offerDistinctIps(Map<List<String>, HyperLogLog> sketches, LocalDateTime from, LocalDateTime to,
+                                  boolean includeTo, List<String> uris) {
+        if (coldStatsReader.isCold(from)) {
+            coldStatsReader.offerDistinctIps(sketches, from, to, includeTo, uris);
+        } else {
+            rollupRepository.offerDistinctIps(sketches, from, to, includeTo, uris);
+        }
+    }
+
+    private void mergeHourSketches(Map<List<String>, HyperLogLog> sketches, LocalDateTime from, LocalDateTime to,
+                                   List<String> uris) {
+        if (from.isBefore(to)) {
+            rollupRepository.mergeSketchesInto(sketches, RollupLevel.HOUR, from, to, uris);
+        }
+    }
+
+    // [start, from) и [to, end] читаем из сырых хитов, середину - из самых крупных подходящих корзин
+    private List<StatsPart> plan(LocalDateTime requestStart, LocalDateTime requestEnd, boolean includeEnd) {
+        LocalDateTime start = tierCompactor.widenStart(requestStart);
+        LocalDateTime end = tierCompactor.widenEnd(requestEnd);
+        LocalDateTime watermark = accumulator.getWatermark();
+        LocalDateTime from = RollupLevel.MINUTE.ceil(start);
+        LocalDateTime to = RollupLevel.MINUTE.floor(end.isBefore(watermark) ? end : watermark);
+
+        if (!from.isBefore(to)) {
+            return List.of(StatsPart.raw(start, end, includeEnd));
+        }
+        List<StatsPart> parts = new ArrayList<>();
+        if (start.isBefore(from)) {
+            parts.add(StatsPart.raw(start, from, false));
+        }
+        cover(parts, from, to, RollupLevel.DAY);
+        if (includeEnd || to.isBefore(end)) {
+            parts.add(StatsPart.raw(to, end, includeEnd));
+        }
+        log.debug("Статистика собирается из агрегатов: {} - {}, сырые края: {} - {} и {} - {}",
+                from, to, start, from, to, end);
+        return parts;
+    }
+
+    private void cover(List<StatsPart> parts, LocalDateTime from, LocalDateTime to, RollupLevel level) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        if (level == RollupLevel.MINUTE) {
+            parts.add(StatsPart.rollup(level, from, to));
+            return;
+        }
+        LocalDateTime alignedFrom = level.ceil(from);
+        LocalDateTime alignedTo = level.floor(to);
+        if (alignedFrom.isBefore(alignedTo)) {
+            parts.add(StatsPart.rollup(level, alignedFrom, alignedTo));
+            cover(parts, from, alignedFrom, level.finer());
+            cover(parts, alignedTo, to, level.finer());
+        } else {
+            cover(parts, from, to, level.finer());
+        }
+    }
+
+    private void addAll(Map<List<String>, Long> totals, List<ViewStats> stats) {
+        stats.forEach(stat -> totals.merge(List.of(stat.getApp(), stat.getUri()), stat.getHits(), Long::sum));
+    }
+}
@@ -0,0 +1,113 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.practicum.stats.dictionary.UriPattern;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.TopViewStats;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.mapper.HitMapper;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.segment.SegmentHitStore;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "segment")
+public class SegmentStatService implements StatService {
+    private final SegmentHitStore store;
+    private final HitMapper mapper;
+    private final TopUriTracker topUriTracker;
+    private final RealtimeHitCounters realtimeHitCounters;
+
+    // Состояние в памяти восстанавливается из сегментов: БД в этом режиме нет
+    @PostConstruct
+    public void init() {
+        realtimeHitCounters.restore(store::forEachHit);
+        topUriTracker.restore(store::forEachHit);
+    }
+
+    @Override
+    public EndpointHit saveHit(EndpointHit endpointHit) {
+        log.info("Сервис принял запрос на сохранение статистики в сегмент - app: {}, uri: {}, ip: {}",
+                endpointHit.getApp(), endpointHit.getUri(), endpointHit.getIp());
+        Hit hit = mapper.toHit(endpointHit);
+        hit.setId(store.append(hit));
+        topUriTracker.record(hit);
+        realtimeHitCounters.record(hit);
+        return mapper.toEndpointHit(hit);
+    }
+
+    @Override
+    public void saveHits(List<EndpointHit> endpointHits) {
+        log.info("Сервис принял пачку статистики на запись в сегмент, размер: {}", endpointHits.size());
+        List<Hit> hits = endpointHits.stream()
+                .map(mapper::toHit)
+                .toList();
+        store.appendAll(hits);
+        topUriTracker.recordAll(hits);
+        realtimeHitCounters.recordAll(hits);
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end,
+                                    List<String> uris, Boolean unique) {
+        log.info("Сервис: вывод статистики из сегментов от {} до {}, путь: {}, уникальность ip: {}",
+                start, end, uris, unique);
+
+        StatService.validateTimeRange(start, end);
+
+        return store.getStats(start, end, uris, Boolean.TRUE.equals(unique));
+    }
+
+    // Сегменты читаются без обращения к БД, поэтому и уникальные ip считаются точно
+    @Override
+    public List<ViewStats> getApproximateStats(LocalDateTime start, LocalDateTime end,
+                                               List<String> uris, Boolean unique) {
+        return getStats(start, end, uris, unique);
+    }
+
+    @Override
+    public List<ViewStats> getGroupedStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        log.info("Сервис: статистика из сегментов по шаблонам от {} до {}, путь: {}", start, end, uris);
+        return UriPattern.group(uris, getStats(start, end, uris, false));
+    }
+
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end,
+                            List<String> uris, Boolean unique, Consumer<ViewStats> consumer) {
+        getStats(start, end, uris, unique).forEach(consumer);
+    }
+
+    @Override
+    public List<TimeSeriesStats> getTimeSeries(LocalDateTime start, LocalDateTime end,
+                                               List<String> uris, RollupLevel bucket) {
+        log.info("Сервис: ряд из сегментов по корзинам {} от {} до {}, путь: {}",
+                bucket.getTruncUnit(), start, end, uris);
+
+        StatService.validateTimeRange(start, end);
+
+        return store.getTimeSeries(start, end, uris, bucket);
+    }
+
+    @Override
+    public List<TopViewStats> getTopStats(String window, int limit) {
+        log.info("Сервис: популярные URI за окно {}, количество: {}", window, limit);
+        return topUriTracker.getTop(window, limit);
+    }
+
+    @Override
+    public List<ViewStats> getRealtimeStats(int minutes, List<String> uris) {
+        log.info("Сервис: просмотры за последние {} минут, путь: {}", minutes, uris);
+        return realtimeHitCounters.getStats(minutes, uris);
+    }
+}
@@ -1,15 +1,50 @@
 package ru.practicum.stats.service;
 
 import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.TopViewStats;
 import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.exception.ValidationException;
+import ru.practicum.stats.model.RollupLevel;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatService {
 
     EndpointHit saveHit(EndpointHit endpointHit);
 
+    void saveHits(List<EndpointHit> endpointHits);
+
     List<ViewStats> getStats(LocalDateTime start, LocalDateTime end,
                              List<String> uris, Boolean unique);
-}
\ No newline at end of file
+
+    List<ViewStats> getApproximateStats(LocalDateTime start, LocalDateTime end,
+                                        List<String> uris, Boolean unique);
+
+    List<ViewStats> getGroupedStats(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    void streamStats(LocalDateTime start, LocalDateTime end,
+                     List<String> uris, Boolean unique, Consumer<ViewStats> consumer);
+
+    List<TimeSeriesStats> getTimeSeries(LocalDateTime start, LocalDateTime end,
+                                        List<String> uris, RollupLevel bucket);
+
+    List<TopViewStats> getTopStats(String window, int limit);
+
+    List<ViewStats> getRealtimeStats(int minutes, List<String> uris);
+
+    // Общая проверка диапазона для всех движков хранения
+    static void validateTimeRange(LocalDateTime start, LocalDateTime end) {
+        if (start == null || end == null) {
+            throw new ValidationException("Дата начала и окончания не могут быть null");
+        }
+
+        if (start.isAfter(end)) {
+            throw new ValidationException(
+                    String.format("Дата начала %s не может быть позже даты окончания %s", start, end)
+            );
+        }
+    }
+}
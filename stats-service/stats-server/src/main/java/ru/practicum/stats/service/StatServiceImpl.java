@@ -1,57 +1,246 @@
 package ru.practicum.stats.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dictionary.UriPattern;
 import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.TopViewStats;
 import ru.practicum.stats.dto.ViewStats;
 import ru.practicum.stats.exception.StatsPersistenceException;
-import ru.practicum.stats.exception.ValidationException;
 import ru.practicum.stats.mapper.HitMapper;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.repository.HitRollupRepository;
 import ru.practicum.stats.repository.StatsRepository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
 public class StatServiceImpl implements StatService {
     private final StatsRepository statsRepository;
     private final HitMapper mapper;
+    private final HitWriteBehindBuffer hitBuffer;
+    private final HitWriteAheadLog writeAheadLog;
+    private final HitSampler hitSampler;
+    private final HitRollupAccumulator rollupAccumulator;
+    private final RollupStatsReader rollupStatsReader;
+    private final ColdStatsReader coldStatsReader;
+    private final TopUriTracker topUriTracker;
+    private final RealtimeHitCounters realtimeHitCounters;
+    private final StatsResultCache statsResultCache;
+    private final VisitorBitmapIndex visitorIndex;
+    private final ParallelQueryExecutor parallelExecutor;
+    private final HitRollupRepository rollupRepository;
+
+    // Вызывается после переноса хвоста журнала предзаписи в hits, поэтому кольца видят и его хиты
+    @PostConstruct
+    public void init() {
+        realtimeHitCounters.restore(rollupRepository::forEachHit);
+    }
 
     @Override
     public EndpointHit saveHit(EndpointHit endpointHit) {
         try {
             log.info("Сервис принял запрос на сохранение статистики - app: {}, uri: {}, ip: {}",
                     endpointHit.getApp(), endpointHit.getUri(), endpointHit.getIp());
-            return mapper.toEndpointHit(statsRepository.save(mapper.toHit(endpointHit)));
+            Hit saved = mapper.toHit(endpointHit);
+            // Сохранённая копия несёт вес выборки, счётчики в памяти получают исходный хит с весом 1
+            Hit persisted = saved;
+            List<Hit> stored = hitSampler.sample(List.of(saved));
+            if (stored.isEmpty()) {
+                // Хит не попал в выборку, его учтёт вес сохранённых хитов того же URI
+                log.debug("Хит не попал в выборку сохранения - app: {}, uri: {}", saved.getApp(), saved.getUri());
+            } else if (writeAheadLog.isEnabled()) {
+                // Хит на диске в журнале, в hits его перенесёт применитель журнала
+                writeAheadLog.append(stored);
+            } else {
+                persisted = statsRepository.save(stored.get(0));
+            }
+            rollupAccumulator.record(saved);
+            topUriTracker.record(saved);
+            realtimeHitCounters.record(saved);
+            statsResultCache.record(saved);
+            visitorIndex.record(saved);
+            return mapper.toEndpointHit(persisted);
         } catch (DataAccessException e) {
             log.error("Ошибка при сохранении статистики в БД: {}", e.getMessage());
             throw new StatsPersistenceException(e.getMessage());
         }
     }
 
+    @Override
+    public void saveHits(List<EndpointHit> endpointHits) {
+        log.info("Сервис принял пачку статистики на отложенную запись, размер: {}", endpointHits.size());
+        List<Hit> hits = endpointHits.stream()
+                .map(mapper::toHit)
+                .toList();
+        List<Hit> stored = hitSampler.sample(hits);
+        if (stored.isEmpty()) {
+            log.debug("Ни один хит пачки не попал в выборку сохранения");
+        } else if (writeAheadLog.isEnabled()) {
+            writeAheadLog.append(stored);
+        } else {
+            hitBuffer.addAll(stored);
+        }
+        rollupAccumulator.recordAll(hits);
+        topUriTracker.recordAll(hits);
+        realtimeHitCounters.recordAll(hits);
+        statsResultCache.recordAll(hits);
+        visitorIndex.recordAll(hits);
+    }
+
     @Override
     public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end,
                                     List<String> uris, Boolean unique) {
         log.info("Сервис: вывод статистики от {} до {}, путь: {}, уникальность ip: {}", start, end, uris, unique);
 
-        validateTimeRange(start, end);
+        StatService.validateTimeRange(start, end);
+
+        if (!Boolean.TRUE.equals(unique)) {
+            return statsResultCache.getStats(start, end, uris,
+                    (from, to, includeEnd) -> loadStats(from, to, includeEnd, uris));
+        }
+        // Полные сутки - объединение битовых карт посетителей вместо COUNT(DISTINCT ip) по сырым хитам
+        if (visitorIndex.isEnabled()) {
+            return visitorIndex.getStats(start, end, uris);
+        }
+        // Сырых хитов начала диапазона уже нет, уникальные ip остались только скетчами в агрегатах
+        if (rollupStatsReader.isDownsampled(start)) {
+            return rollupStatsReader.getApproximateUniqueStats(start, end, uris);
+        }
+        if (coldStatsReader.isCold(start)) {
+            return coldStatsReader.getStats(start, end, true, uris, true);
+        }
+        if (parallelExecutor.isParallel(start, end)) {
+            LocalDateTime dataStart = findDataStart(start, end);
+            if (dataStart == null) {
+                return List.of();
+            }
+            if (parallelExecutor.isParallel(dataStart, end)) {
+                List<String> ipFilter = uris == null || uris.isEmpty() ? null : uris;
+                return parallelExecutor.getUniqueStats(dataStart, end, true, (from, to, includeTo, consumer) ->
+                        rollupRepository.forEachDistinctIp(from, to, includeTo, ipFilter, consumer));
+            }
+        }
+        return statsRepository.getStats(start, end, uris, true);
+    }
+
+    @Override
+    public List<ViewStats> getApproximateStats(LocalDateTime start, LocalDateTime end,
+                                               List<String> uris, Boolean unique) {
+        log.info("Сервис: приблизительная статистика от {} до {}, путь: {}, уникальность ip: {}",
+                start, end, uris, unique);
+
+        StatService.validateTimeRange(start, end);
+
+        // Без уникальности агрегаты и так дают точный ответ
+        if (!Boolean.TRUE.equals(unique) || !rollupStatsReader.isEnabled()) {
+            return getStats(start, end, uris, unique);
+        }
+        return rollupStatsReader.getApproximateUniqueStats(start, end, uris);
+    }
+
+    // Уникальные ip по группе не складываются из уникальных по URI, поэтому группы - только по числу хитов
+    @Override
+    public List<ViewStats> getGroupedStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        log.info("Сервис: статистика по шаблонам от {} до {}, путь: {}", start, end, uris);
+        return UriPattern.group(uris, getStats(start, end, uris, false));
+    }
+
+    // Сырые хиты и агрегаты читаются курсором и сразу уходят потребителю. Уникальные ip по битовым картам,
+    // скетчам и холодным блокам сводятся в памяти до строки на (app, uri), их отдаём готовым списком.
+    // REPEATABLE READ нужен чтению холодного хранилища, которое участвует в этой транзакции
+    @Override
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void streamStats(LocalDateTime start, LocalDateTime end,
+                            List<String> uris, Boolean unique, Consumer<ViewStats> consumer) {
+        log.info("Сервис: потоковый вывод статистики от {} до {}, путь: {}, уникальность ip: {}",
+                start, end, uris, unique);
+
+        StatService.validateTimeRange(start, end);
 
-        return statsRepository.getStats(start, end, uris, Boolean.TRUE.equals(unique));
+        boolean isUnique = Boolean.TRUE.equals(unique);
+        if (!isUnique && rollupStatsReader.isEnabled()) {
+            rollupStatsReader.streamStats(start, end, uris, consumer);
+            return;
+        }
+        if ((isUnique && visitorIndex.isEnabled()) || coldStatsReader.isCold(start)
+                || rollupStatsReader.isDownsampled(start)) {
+            getStats(start, end, uris, unique).forEach(consumer);
+            return;
+        }
+        try (Stream<ViewStats> stats = statsRepository.streamStats(start, end, uris, isUnique)) {
+            stats.forEach(consumer);
+        }
     }
 
-    private void validateTimeRange(LocalDateTime start, LocalDateTime end) {
-        if (start == null || end == null) {
-            throw new ValidationException("Дата начала и окончания не могут быть null");
+    @Override
+    public List<TimeSeriesStats> getTimeSeries(LocalDateTime start, LocalDateTime end,
+                                               List<String> uris, RollupLevel bucket) {
+        log.info("Сервис: ряд по корзинам {} от {} до {}, путь: {}", bucket.getTruncUnit(), start, end, uris);
+
+        StatService.validateTimeRange(start, end);
+
+        return rollupStatsReader.getTimeSeries(bucket, start, end, uris);
+    }
+
+    @Override
+    public List<TopViewStats> getTopStats(String window, int limit) {
+        log.info("Сервис: популярные URI за окно {}, количество: {}", window, limit);
+        return topUriTracker.getTop(window, limit);
+    }
+
+    @Override
+    public List<ViewStats> getRealtimeStats(int minutes, List<String> uris) {
+        log.info("Сервис: просмотры за последние {} минут, путь: {}", minutes, uris);
+        return realtimeHitCounters.getStats(minutes, uris);
+    }
+
+    // Уникальные ip по корзинам не складываются, поэтому агрегаты читаются только для простых счётчиков
+    private List<ViewStats> loadStats(LocalDateTime start, LocalDateTime end, boolean includeEnd, List<String> uris) {
+        if (rollupStatsReader.isEnabled()) {
+            return rollupStatsReader.getStats(start, end, includeEnd, uris);
+        }
+        if (coldStatsReader.isCold(start)) {
+            return coldStatsReader.getStats(start, end, includeEnd, uris, false);
         }
+        // Без агрегатов длинный диапазон читается кусками параллельно
+        if (parallelExecutor.isParallel(start, end)) {
+            LocalDateTime dataStart = findDataStart(start, end);
+            if (dataStart == null) {
+                return List.of();
+            }
+            if (parallelExecutor.isParallel(dataStart, end)) {
+                return parallelExecutor.getStats(dataStart, end, includeEnd, (from, to, includeTo) -> includeTo
+                        ? statsRepository.getStats(from, to, uris, false)
+                        : statsRepository.getStatsBeforeEnd(from, to, uris, false));
+            }
+        }
+        return includeEnd
+                ? statsRepository.getStats(start, end, uris, false)
+                : statsRepository.getStatsBeforeEnd(start, end, uris, false);
+    }
 
-        if (start.isAfter(end)) {
-            throw new ValidationException(
-                    String.format("Дата начала %s не может быть позже даты окончания %s", start, end)
-            );
+    // Куски начинаются не раньше первых данных: запрос main-service с началом сто лет назад
+    // иначе дал бы десятки тысяч суточных кусков. null - данных в диапазоне нет
+    private LocalDateTime findDataStart(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime first = rollupRepository.findFirstDataTime();
+        if (first == null || first.isAfter(end)) {
+            return null;
         }
+        return first.isAfter(start) ? first : start;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,274 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dictionary.UriPattern;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.model.UriKey;
+import ru.practicum.stats.repository.HitRollupRepository;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Кэш ответов /stats без уникальности ip. Ключ - нормализованный список uri, начало и граница:
+// история [start, граница) читается из БД один раз, а хиты [граница, end] каждый раз добавляются
+// из посекундных колец RealtimeHitCounters, которые и так обновляются при каждом хите.
+// Граница - начало минуты, на минуту более ранней, чем конец запроса (или текущее время), запас покрывает
+// отложенную запись хитов в БД. Запрос, целиком лежащий раньше границы текущего времени, кэшируется целиком.
+// Хит с меткой раньше границы помечает минуту и uri как изменённые после текущей версии: запись, прочитанная
+// до этой версии и покрывающая помеченную минуту и uri, при чтении считается устаревшей. Уникальные ip по частям не складываются,
+// такие запросы идут мимо кэша.
+// Начало раньше самых ранних данных (хиты, холодные блоки, суточные агрегаты) в ключе заменяется их временем:
+// ответ от этого не меняется, а запросы "с начала времён" с разным началом делят одну запись. Хит раньше
+// этого времени сдвигает его и сбрасывает записи с прежним началом
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+public class StatsResultCache {
+    private final RealtimeHitCounters realtimeHitCounters;
+    private final HitRollupRepository rollupRepository;
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long lateSettleMillis;
+    // LRU по порядку доступа, все обращения под блокировкой на самой карте
+    private final Map<Key, Entry> entries;
+    // Время последнего опоздавшего хита: пока он может быть не записан в БД, прочитанная история не кэшируется
+    private final AtomicLong lastLateHit = new AtomicLong();
+    // Минута -> uri -> последняя пометка опоздавшим хитом. Пометки старше ttl уже не могут сбросить ни одной записи
+    private final ConcurrentNavigableMap<LocalDateTime, Map<String, Mark>> dirtySince = new ConcurrentSkipListMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong nextPrune = new AtomicLong();
+    // Начало минуты самых ранних данных, null - данных ещё нет
+    private volatile LocalDateTime firstDataTime;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Counter evictions;
+    private final Counter invalidations;
+
+    public StatsResultCache(RealtimeHitCounters realtimeHitCounters,
+                            HitRollupRepository rollupRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${stats.cache.enabled:true}") boolean enabled,
+                            @Value("${stats.cache.max-entries:10000}") int maxEntries,
+                            @Value("${stats.cache.ttl-ms:600000}") long ttlMillis,
+                            @Value("${stats.cache.late-settle-ms:5000}") long lateSettleMillis) {
+        this.realtimeHitCounters = realtimeHitCounters;
+        this.rollupRepository = rollupRepository;
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.lateSettleMillis = lateSettleMillis;
+        this.cacheHits = meterRegistry.counter("stats.cache.requests", "result", "hit");
+        this.cacheMisses = meterRegistry.counter("stats.cache.requests", "result", "miss");
+        this.evictions = meterRegistry.counter("stats.cache.evictions");
+        this.invalidations = meterRegistry.counter("stats.cache.invalidations");
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (super.size() > StatsResultCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        Gauge.builder("stats.cache.size", this, StatsResultCache::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            LocalDateTime first = rollupRepository.findFirstDataTime();
+            firstDataTime = first == null ? null : RollupLevel.MINUTE.floor(first);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        List<ViewStats> load(LocalDateTime start, LocalDateTime end, boolean includeEnd);
+    }
+
+    public List<ViewStats> getStats(LocalDateTime requestStart, LocalDateTime end, List<String> uris,
+                                    Loader loader) {
+        if (!enabled) {
+            return loader.load(requestStart, end, true);
+        }
+        LocalDateTime first = firstDataTime;
+        LocalDateTime start = first != null && requestStart.isBefore(first) && !end.isBefore(first)
+                ? first : requestStart;
+        List<String> uriKey = uris == null ? List.of() : uris.stream().distinct().sorted().toList();
+        LocalDateTime now = LocalDateTime.now();
+        if (end.isBefore(settledBefore(now))) {
+            return toStats(cached(new Key(uriKey, start, end, false), () -> loader.load(start, end, true)), Map.of());
+        }
+        // Кольца считают по целым секундам и помнят только последний час
+        if (!realtimeHitCounters.isEnabled() || start.getNano() != 0 || end.getNano() != 0) {
+            return loader.load(start, end, true);
+        }
+        LocalDateTime bucket = settledBefore(end.isBefore(now) ? end : now);
+        if (!start.isBefore(bucket)) {
+            return toStats(Map.of(), realtimeHitCounters.countBetween(start, end, uriKey));
+        }
+        Map<UriKey, Long> history = cached(new Key(uriKey, start, bucket, true),
+                () -> loader.load(start, bucket, false));
+        return toStats(history, realtimeHitCounters.countBetween(bucket, end, uriKey));
+    }
+
+    public void record(Hit hit) {
+        recordAll(List.of(hit));
+    }
+
+    public void recordAll(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime settled = settledBefore(LocalDateTime.now());
+        moveFirstDataTime(hits);
+        List<Hit> late = hits.stream()
+                .filter(hit -> hit.getTimestamp().isBefore(settled))
+                .toList();
+        if (late.isEmpty()) {
+            return;
+        }
+        lastLateHit.set(System.currentTimeMillis());
+        // Время берётся после версии: пометка новее записи не может оказаться старше её создания
+        long markVersion = version.incrementAndGet();
+        long now = System.currentTimeMillis();
+        Mark mark = new Mark(markVersion, now);
+        for (Hit hit : late) {
+            dirtySince.computeIfAbsent(RollupLevel.MINUTE.floor(hit.getTimestamp()), minute -> new ConcurrentHashMap<>())
+                    .put(hit.getUri(), mark);
+        }
+        log.debug("Опоздавшие хиты ({}) помечены версией {}", late.size(), mark.version());
+        pruneMarks(now);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Записи с прежним временем начала данных могли быть сужены до него и не учитывают более ранний хит
+    private void moveFirstDataTime(List<Hit> hits) {
+        LocalDateTime earliest = hits.stream()
+                .map(hit -> RollupLevel.MINUTE.floor(hit.getTimestamp()))
+                .min(Comparator.naturalOrder())
+                .orElse(null);
+        if (earliest == null) {
+            return;
+        }
+        synchronized (entries) {
+            LocalDateTime previous = firstDataTime;
+            if (previous != null && !earliest.isBefore(previous)) {
+                return;
+            }
+            firstDataTime = earliest;
+            if (previous != null) {
+                entries.keySet().removeIf(key -> key.start().equals(previous));
+            }
+        }
+    }
+
+    // Пометки проверяются вне блокировки: устаревшая запись удаляется, только если её ещё не заменили
+    private Map<UriKey, Long> cached(Key key, Supplier<List<ViewStats>> loader) {
+        long now = System.currentTimeMillis();
+        long loadVersion = version.get();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            boolean expired = now - entry.created() >= ttlMillis;
+            if (!expired && !isDirty(key, entry.version())) {
+                cacheHits.increment();
+                return entry.counts();
+            }
+            if (!expired) {
+                invalidations.increment();
+            }
+            synchronized (entries) {
+                entries.remove(key, entry);
+            }
+        }
+        cacheMisses.increment();
+        Map<UriKey, Long> counts = new HashMap<>();
+        loader.get().forEach(stats -> counts.merge(new UriKey(stats.getApp(), stats.getUri()),
+                stats.getHits(), Long::sum));
+        // Опоздавший хит во время чтения или незадолго до него мог ещё не дойти до БД
+        if (System.currentTimeMillis() - lastLateHit.get() >= lateSettleMillis) {
+            synchronized (entries) {
+                entries.put(key, new Entry(counts, now, loadVersion));
+            }
+        }
+        return counts;
+    }
+
+    private boolean isDirty(Key key, long entryVersion) {
+        for (Map<String, Mark> marks : dirtySince.subMap(RollupLevel.MINUTE.floor(key.start()), true,
+                key.end(), true).values()) {
+            for (Map.Entry<String, Mark> mark : marks.entrySet()) {
+                if (mark.getValue().version() > entryVersion && key.matches(mark.getKey())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Не чаще раза за ttl: пометка старше ttl старше любой живой записи и сбросить её уже не может
+    private void pruneMarks(long now) {
+        long due = nextPrune.get();
+        if (now < due || !nextPrune.compareAndSet(due, now + ttlMillis)) {
+            return;
+        }
+        long cutoff = now - ttlMillis;
+        dirtySince.values().forEach(marks -> marks.values().removeIf(mark -> mark.marked() < cutoff));
+        dirtySince.values().removeIf(Map::isEmpty);
+    }
+
+    private List<ViewStats> toStats(Map<UriKey, Long> history, Map<UriKey, Long> delta) {
+        Map<UriKey, Long> totals = new HashMap<>(history);
+        delta.forEach((key, hits) -> totals.merge(key, hits, Long::sum));
+        return totals.entrySet().stream()
+                .map(entry -> new ViewStats(entry.getKey().app(), entry.getKey().uri(), entry.getValue()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .toList();
+    }
+
+    private static LocalDateTime settledBefore(LocalDateTime time) {
+        return RollupLevel.MINUTE.floor(time).minusMinutes(1);
+    }
+
+    // live: записи хранят [start, end), иначе [start, end]
+    private record Key(List<String> uris, LocalDateTime start, LocalDateTime end, boolean live) {
+        private boolean matches(String uri) {
+            return uris.isEmpty() || uris.stream().anyMatch(pattern -> UriPattern.matches(pattern, uri));
+        }
+    }
+
+    // version - версия пометок на момент начала чтения из БД
+    private record Entry(Map<UriKey, Long> counts, long created, long version) {
+    }
+
+    private record Mark(long version, long marked) {
+    }
+}
@@ -0,0 +1,253 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.TopViewStats;
+import ru.practicum.stats.exception.ValidationException;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.TopWindow;
+import ru.practicum.stats.model.UriKey;
+import ru.practicum.stats.repository.TopSnapshotRepository;
+import ru.practicum.stats.sketch.SpaceSaving;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Популярные (app, uri) за скользящие окна: Space-Saving-скетч на каждую корзину окна.
+// Закрытые корзины окна сводятся один раз при смене текущей корзины, запрос добавляет к готовой сводке
+// только текущую корзину. Снимки корзин периодически пишутся в БД, хиты после последнего снимка
+// при аварийной остановке теряются. Без БД (stats.storage=segment) снимков нет, корзины при старте
+// заполняются хитами хранилища.
+@Slf4j
+@Component
+public class TopUriTracker {
+    private final TopSnapshotRepository snapshotRepository;
+    private final boolean enabled;
+    private final int capacity;
+    private final Map<TopWindow, WindowState> windows = new EnumMap<>(TopWindow.class);
+
+    public TopUriTracker(@Nullable TopSnapshotRepository snapshotRepository,
+                         @Value("${stats.top.enabled:true}") boolean enabled,
+                         @Value("${stats.top.capacity:1000}") int capacity) {
+        this.snapshotRepository = snapshotRepository;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        for (TopWindow window : TopWindow.values()) {
+            windows.put(window, new WindowState(window));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled || snapshotRepository == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        windows.values().forEach(state -> snapshotRepository.forEachSince(state.window.name(),
+                state.window.firstBucket(now), (bucket, bytes) -> state.buckets.put(bucket, fromBytes(bytes))));
+        log.info("Восстановлены скетчи популярных URI: {}", windows.values().stream()
+                .map(state -> state.window + "=" + state.buckets.size())
+                .toList());
+    }
+
+    public void restore(HitSource source) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime from = Arrays.stream(TopWindow.values())
+                .map(window -> window.firstBucket(now))
+                .min(Comparator.naturalOrder())
+                .orElse(now);
+        source.forEachHit(from, now, this::record);
+        log.info("Скетчи популярных URI заполнены хитами хранилища с {}", from);
+    }
+
+    public void record(Hit hit) {
+        if (enabled) {
+            LocalDateTime now = LocalDateTime.now();
+            windows.values().forEach(state -> state.offer(hit, now));
+        }
+    }
+
+    public void recordAll(List<Hit> hits) {
+        hits.forEach(this::record);
+    }
+
+    public List<TopViewStats> getTop(String window, int limit) {
+        if (!enabled) {
+            throw new ValidationException("Подсчёт популярных URI отключён");
+        }
+        TopWindow topWindow;
+        try {
+            topWindow = TopWindow.valueOf(window.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Неизвестное окно популярных URI: " + window);
+        }
+        return windows.get(topWindow).top(LocalDateTime.now()).top(limit).stream()
+                .map(counter -> new TopViewStats(counter.item().app(), counter.item().uri(),
+                        counter.count(), counter.error()))
+                .toList();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.top.snapshot-interval-ms:60000}")
+    public void snapshot() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (WindowState state : windows.values()) {
+            LocalDateTime first = state.window.firstBucket(now);
+            state.buckets.headMap(first).clear();
+            List<LocalDateTime> dirty = drain(state.dirty);
+            if (snapshotRepository == null) {
+                continue;
+            }
+            try {
+                for (LocalDateTime bucket : dirty) {
+                    SpaceSaving<UriKey> sketch = state.buckets.get(bucket);
+                    if (sketch != null) {
+                        snapshotRepository.save(state.window.name(), bucket, toBytes(sketch));
+                    }
+                }
+                snapshotRepository.deleteBefore(state.window.name(), first);
+            } catch (DataAccessException e) {
+                log.error("Ошибка при записи снимков популярных URI окна {}: {}", state.window, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshot();
+    }
+
+    private List<LocalDateTime> drain(Set<LocalDateTime> dirty) {
+        List<LocalDateTime> snapshot = new ArrayList<>();
+        for (LocalDateTime bucket : dirty) {
+            if (dirty.remove(bucket)) {
+                snapshot.add(bucket);
+            }
+        }
+        return snapshot;
+    }
+
+    private byte[] toBytes(SpaceSaving<UriKey> sketch) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            List<SpaceSaving.Counter<UriKey>> counters;
+            synchronized (sketch) {
+                out.writeInt(sketch.getCapacity());
+                out.writeLong(sketch.getTotal());
+                counters = sketch.counters();
+            }
+            out.writeInt(counters.size());
+            for (SpaceSaving.Counter<UriKey> counter : counters) {
+                out.writeUTF(counter.item().app());
+                out.writeUTF(counter.item().uri());
+                out.writeLong(counter.count());
+                out.writeLong(counter.error());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private SpaceSaving<UriKey> fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int sketchCapacity = in.readInt();
+            long total = in.readLong();
+            int size = in.readInt();
+            List<SpaceSaving.Counter<UriKey>> counters = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                counters.add(new SpaceSaving.Counter<>(new UriKey(in.readUTF(), in.readUTF()),
+                        in.readLong(), in.readLong()));
+            }
+            return SpaceSaving.of(sketchCapacity, total, counters);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Sealed(LocalDateTime current, long version, SpaceSaving<UriKey> sketch) {
+    }
+
+    private final class WindowState {
+        private final TopWindow window;
+        private final ConcurrentNavigableMap<LocalDateTime, SpaceSaving<UriKey>> buckets =
+                new ConcurrentSkipListMap<>();
+        private final Set<LocalDateTime> dirty = ConcurrentHashMap.newKeySet();
+        // Растёт при записи в уже закрытую корзину, тогда готовая сводка окна пересчитывается
+        private final AtomicLong version = new AtomicLong();
+        private volatile Sealed sealed;
+
+        private WindowState(TopWindow window) {
+            this.window = window;
+        }
+
+        private void offer(Hit hit, LocalDateTime now) {
+            LocalDateTime current = window.currentBucket(now);
+            LocalDateTime bucket = window.getLevel().floor(hit.getTimestamp());
+            if (bucket.isAfter(current)) {
+                bucket = current;
+            } else if (bucket.isBefore(window.firstBucket(now))) {
+                return;
+            }
+            SpaceSaving<UriKey> sketch = buckets.computeIfAbsent(bucket, key -> new SpaceSaving<>(capacity));
+            synchronized (sketch) {
+                sketch.offer(new UriKey(hit.getApp(), hit.getUri()), 1);
+            }
+            dirty.add(bucket);
+            if (bucket.isBefore(current)) {
+                version.incrementAndGet();
+            }
+        }
+
+        private SpaceSaving<UriKey> top(LocalDateTime now) {
+            LocalDateTime current = window.currentBucket(now);
+            long currentVersion = version.get();
+            Sealed result = sealed;
+            if (result == null || !result.current().equals(current) || result.version() != currentVersion) {
+                SpaceSaving<UriKey> merged = new SpaceSaving<>(capacity);
+                for (SpaceSaving<UriKey> sketch : buckets.subMap(window.firstBucket(now), current).values()) {
+                    synchronized (sketch) {
+                        merged = merged.merge(sketch);
+                    }
+                }
+                result = new Sealed(current, currentVersion, merged);
+                sealed = result;
+            }
+            SpaceSaving<UriKey> sketch = buckets.get(current);
+            if (sketch == null) {
+                return result.sketch();
+            }
+            synchronized (sketch) {
+                return result.sketch().merge(sketch);
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package ru.practicum.stats.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dictionary.HitDictionary;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.RollupKey;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.repository.ColdBlockRepository;
+import ru.practicum.stats.repository.HitRollupRepository;
+import ru.practicum.stats.repository.VisitorBitmapRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+// Точное число уникальных ip: ip получает плотный номер в словаре hit_ips, по (app, uri, сутки) хранится
+// roaring-битовая карта номеров. Полные сутки диапазона - объединение карт, края - уникальные ip сырых хитов.
+// Номера заводятся при сбросе, а не при записи хита, чтобы запись не ходила в словарь, и сразу для всех ip
+// сброса или суток пересчёта: пакетами, а не транзакцией на каждый новый ip.
+// Создаётся после журнала предзаписи: карты при старте пересчитываются уже с применённым хвостом журнала
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage", havingValue = "jdbc", matchIfMissing = true)
+@DependsOn("hitWriteAheadLog")
+public class VisitorBitmapIndex {
+    private final HitDictionary dictionary;
+    private final VisitorBitmapRepository bitmapRepository;
+    private final HitRollupRepository rollupRepository;
+    private final ColdBlockRepository coldBlockRepository;
+    private final ColdStatsReader coldStatsReader;
+    private final HitTierCompactor tierCompactor;
+    private final boolean enabled;
+    private final Map<RollupKey, Set<String>> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Карты полны для всех хитов, принятых раньше отметки
+    private volatile LocalDateTime watermark;
+
+    public VisitorBitmapIndex(HitDictionary dictionary,
+                              VisitorBitmapRepository bitmapRepository,
+                              HitRollupRepository rollupRepository,
+                              ColdBlockRepository coldBlockRepository,
+                              ColdStatsReader coldStatsReader,
+                              HitTierCompactor tierCompactor,
+                              @Value("${stats.visitors.enabled:true}") boolean enabled) {
+        this.dictionary = dictionary;
+        this.bitmapRepository = bitmapRepository;
+        this.rollupRepository = rollupRepository;
+        this.coldBlockRepository = coldBlockRepository;
+        this.coldStatsReader = coldStatsReader;
+        this.tierCompactor = tierCompactor;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime stored = bitmapRepository.findWatermark();
+        // Незаписанные до остановки ip восстанавливаем из сырых хитов, начиная с дня отметки
+        LocalDateTime rebuildFrom = stored == null ? findFirstHitTime() : RollupLevel.DAY.floor(stored);
+        LocalDateTime now = RollupLevel.MINUTE.floor(LocalDateTime.now());
+        log.info("Пересчёт битовых карт посетителей начиная с: {}", rebuildFrom == null ? "начала истории" : rebuildFrom);
+        rebuild(rebuildFrom, now);
+        bitmapRepository.merge(Map.of(), now);
+        watermark = now;
+    }
+
+    public boolean isEnabled() {
+        return enabled && watermark != null;
+    }
+
+    public void record(Hit hit) {
+        if (enabled) {
+            pending.compute(new RollupKey(hit.getApp(), hit.getUri(), RollupLevel.DAY.floor(hit.getTimestamp())),
+                    (key, ips) -> {
+                        Set<String> result = ips == null ? new HashSet<>() : ips;
+                        result.add(hit.getIp());
+                        return result;
+                    });
+        }
+    }
+
+    public void recordAll(List<Hit> hits) {
+        hits.forEach(this::record);
+    }
+
+    @Scheduled(fixedDelayString = "${stats.visitors.flush-interval-ms:1000}")
+    public void flush() {
+        if (!isEnabled()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            LocalDateTime flushStart = RollupLevel.MINUTE.floor(LocalDateTime.now());
+            Map<RollupKey, Set<String>> snapshot = new HashMap<>();
+            for (RollupKey key : pending.keySet()) {
+                Set<String> ips = pending.remove(key);
+                if (ips != null) {
+                    snapshot.put(key, ips);
+                }
+            }
+            try {
+                bitmapRepository.merge(toBitmaps(snapshot), flushStart);
+                watermark = flushStart;
+            } catch (DataAccessException e) {
+                log.error("Ошибка при записи битовых карт посетителей, повтор при следующем сбросе: {}",
+                        e.getMessage());
+                snapshot.forEach((key, ips) -> pending.merge(key, ips, (current, failed) -> {
+                    current.addAll(failed);
+                    return current;
+                }));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    // Число уникальных ip по (app, uri). На удалённых ступенях хранения края расширяются до суток,
+    // потому что сырых хитов для них уже нет
+    public List<ViewStats> getStats(LocalDateTime requestStart, LocalDateTime requestEnd, List<String> uris) {
+        List<String> uriFilter = uris == null || uris.isEmpty() ? null : uris;
+        LocalDateTime start = tierCompactor.isDownsampled(requestStart)
+                ? RollupLevel.DAY.floor(requestStart) : requestStart;
+        LocalDateTime end = tierCompactor.isDownsampled(requestEnd)
+                ? RollupLevel.DAY.ceil(requestEnd) : requestEnd;
+        LocalDateTime from = RollupLevel.DAY.ceil(start);
+        LocalDateTime to = RollupLevel.DAY.floor(end.isBefore(watermark) ? end : watermark);
+
+        // Края собираются заранее: это не больше суток сырых хитов. Суточные карты идут по ключам,
+        // и в памяти одновременно только карта текущего ключа
+        Map<List<String>, RoaringBitmap> edges = new HashMap<>();
+        // ip без номера: краёв, которых ещё нет в словаре (их нет и ни в одной карте), или всего диапазона короче суток
+        Map<List<String>, Set<String>> unnumbered = new HashMap<>();
+        BiConsumer<List<String>, String> edgeConsumer = (key, ip) ->
+                unnumbered.computeIfAbsent(key, k -> new HashSet<>()).add(ip);
+        List<ViewStats> stats = new ArrayList<>();
+        if (from.isBefore(to)) {
+            if (start.isBefore(from)) {
+                forEachDistinctIp(start, from, false, uriFilter, edgeConsumer);
+            }
+            forEachDistinctIp(to, end, true, uriFilter, edgeConsumer);
+            // Номера ip краёв ищутся в словаре одним пакетом, ip с номером переходят в карты краёв
+            Set<String> edgeIps = new HashSet<>();
+            unnumbered.values().forEach(edgeIps::addAll);
+            Map<String, Integer> ids = dictionary.findIpIds(edgeIps);
+            unnumbered.forEach((key, ips) -> ips.removeIf(ip -> {
+                Integer id = ids.get(ip);
+                if (id != null) {
+                    edges.computeIfAbsent(key, k -> new RoaringBitmap()).add(id);
+                }
+                return id != null;
+            }));
+            unnumbered.values().removeIf(Set::isEmpty);
+            bitmapRepository.forEachBitmap(from, to, uriFilter, (key, bitmap) -> {
+                RoaringBitmap edge = edges.remove(key);
+                if (edge != null) {
+                    bitmap.or(edge);
+                }
+                Set<String> extra = unnumbered.remove(key);
+                stats.add(new ViewStats(key.get(0), key.get(1),
+                        bitmap.getLongCardinality() + (extra == null ? 0 : extra.size())));
+            });
+        } else {
+            forEachDistinctIp(start, end, true, uriFilter, edgeConsumer);
+        }
+        log.debug("Уникальные ip по битовым картам: {} - {}, сырые края: {} - {} и {} - {}",
+                from, to, start, from, to, end);
+
+        // Ключи, которые есть только на краях
+        Map<List<String>, Long> totals = new HashMap<>();
+        edges.forEach((key, bitmap) -> totals.put(key, bitmap.getLongCardinality()));
+        unnumbered.forEach((key, ips) -> totals.merge(key, (long) ips.size(), Long::sum));
+        totals.forEach((key, hits) -> stats.add(new ViewStats(key.get(0), key.get(1), hits)));
+        stats.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return stats;
+    }
+
+    // Карты пересчитываются по суткам, чтобы в памяти были только ip и карты одних суток
+    private void rebuild(LocalDateTime from, LocalDateTime to) {
+        if (from == null) {
+            return;
+        }
+        for (LocalDateTime day = RollupLevel.DAY.floor(from); day.isBefore(to); day = day.plusDays(1)) {
+            LocalDateTime bucket = day;
+            Map<RollupKey, Set<String>> visitors = new HashMap<>();
+            forEachDistinctIp(day, day.plusDays(1), false, null, (key, ip) -> visitors
+                    .computeIfAbsent(new RollupKey(key.get(0), key.get(1), bucket), k -> new HashSet<>())
+                    .add(ip));
+            bitmapRepository.merge(toBitmaps(visitors), null);
+        }
+    }
+
+    private void forEachDistinctIp(LocalDateTime from, LocalDateTime to, boolean includeTo, List<String> uris,
+                                   BiConsumer<List<String>, String> consumer) {
+        if (coldStatsReader.isCold(from)) {
+            coldStatsReader.forEachDistinctIp(from, to, includeTo, uris, consumer);
+        } else {
+            rollupRepository.forEachDistinctIp(from, to, includeTo, uris, consumer);
+        }
+    }
+
+    private LocalDateTime findFirstHitTime() {
+        LocalDateTime hot = rollupRepository.findFirstHitTime();
+        LocalDateTime cold = coldBlockRepository.findFirstBlockStart();
+        if (hot == null || cold == null) {
+            return hot == null ? cold : hot;
+        }
+        return hot.isBefore(cold) ? hot : cold;
+    }
+
+    private Map<RollupKey, RoaringBitmap> toBitmaps(Map<RollupKey, Set<String>> visitors) {
+        Set<String> all = new HashSet<>();
+        visitors.values().forEach(all::addAll);
+        Map<String, Integer> ids = dictionary.ipIds(all);
+        Map<RollupKey, RoaringBitmap> bitmaps = new HashMap<>();
+        visitors.forEach((key, ips) -> {
+            RoaringBitmap bitmap = new RoaringBitmap();
+            ips.forEach(ip -> bitmap.add(ids.get(ip)));
+            bitmaps.put(key, bitmap);
+        });
+        return bitmaps;
+    }
+}
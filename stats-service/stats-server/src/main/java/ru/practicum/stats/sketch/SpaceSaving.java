@@ -0,0 +1,135 @@
+package ru.practicum.stats.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Space-Saving (Metwally и др.): capacity счётчиков на самые частые элементы потока.
+// Новый элемент вытесняет элемент с наименьшим счётчиком и наследует его значение как ошибку,
+// поэтому count - error <= истинное число <= count, а любой элемент с долей больше 1/capacity всегда в сводке.
+// Не потокобезопасен, синхронизация на стороне владельца.
+public class SpaceSaving<T> {
+    private static final Comparator<Node<?>> ORDER = Comparator.<Node<?>>comparingLong(node -> node.count)
+            .thenComparingLong(node -> node.sequence);
+
+    private final int capacity;
+    private final Map<T, Node<T>> nodes = new HashMap<>();
+    private final TreeSet<Node<?>> ordered = new TreeSet<>(ORDER);
+    private long total;
+    private long sequence;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Число счётчиков должно быть положительным: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public static <T> SpaceSaving<T> of(int capacity, long total, List<Counter<T>> counters) {
+        SpaceSaving<T> sketch = new SpaceSaving<>(capacity);
+        counters.stream()
+                .sorted(Comparator.comparingLong(Counter<T>::count).reversed())
+                .limit(capacity)
+                .forEach(counter -> sketch.put(counter.item(), counter.count(), counter.error()));
+        sketch.total = total;
+        return sketch;
+    }
+
+    public void offer(T item, long count) {
+        total += count;
+        Node<T> node = nodes.get(item);
+        if (node != null) {
+            ordered.remove(node);
+            node.count += count;
+            ordered.add(node);
+            return;
+        }
+        if (nodes.size() < capacity) {
+            put(item, count, 0);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Node<T> min = (Node<T>) ordered.pollFirst();
+        nodes.remove(min.item);
+        put(item, min.count + count, min.count);
+    }
+
+    // Сводка двух потоков (Agarwal и др.): отсутствующий в одной сводке элемент мог встретиться в её потоке
+    // не больше её минимального счётчика раз, этот минимум добавляется и к счётчику, и к ошибке
+    public SpaceSaving<T> merge(SpaceSaving<T> other) {
+        long thisMin = minCount();
+        long otherMin = other.minCount();
+        List<Counter<T>> combined = new ArrayList<>(nodes.size() + other.nodes.size());
+        for (Node<T> node : nodes.values()) {
+            Node<T> pair = other.nodes.get(node.item);
+            combined.add(pair == null
+                    ? new Counter<>(node.item, node.count + otherMin, node.error + otherMin)
+                    : new Counter<>(node.item, node.count + pair.count, node.error + pair.error));
+        }
+        for (Node<T> node : other.nodes.values()) {
+            if (!nodes.containsKey(node.item)) {
+                combined.add(new Counter<>(node.item, node.count + thisMin, node.error + thisMin));
+            }
+        }
+        return of(capacity, total + other.total, combined);
+    }
+
+    public SpaceSaving<T> copy() {
+        return of(capacity, total, counters());
+    }
+
+    public List<Counter<T>> top(int limit) {
+        List<Counter<T>> result = new ArrayList<>(Math.min(limit, nodes.size()));
+        Iterator<Node<?>> iterator = ordered.descendingIterator();
+        while (iterator.hasNext() && result.size() < limit) {
+            @SuppressWarnings("unchecked")
+            Node<T> node = (Node<T>) iterator.next();
+            result.add(new Counter<>(node.item, node.count, node.error));
+        }
+        return result;
+    }
+
+    public List<Counter<T>> counters() {
+        return top(nodes.size());
+    }
+
+    // Верхняя граница числа появлений любого элемента, которого нет в сводке
+    public long minCount() {
+        return nodes.size() < capacity ? 0 : ordered.first().count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    private void put(T item, long count, long error) {
+        Node<T> node = new Node<>(item, count, error, sequence++);
+        nodes.put(item, node);
+        ordered.add(node);
+    }
+
+    public record Counter<T>(T item, long count, long error) {
+    }
+
+    private static final class Node<T> {
+        private final T item;
+        private final long error;
+        private final long sequence;
+        private long count;
+
+        private Node(T item, long count, long error, long sequence) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+            this.sequence = sequence;
+        }
+    }
+}
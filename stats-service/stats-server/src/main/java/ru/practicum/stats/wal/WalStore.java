@@ -0,0 +1,301 @@
+package ru.practicum.stats.wal;
+
+import ru.practicum.stats.model.Hit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// Журнал предзаписи хитов: файлы wal-<LSN начала>.log, запись - длина тела, CRC32C тела и тело
+// (время, вес, app, uri, ip). LSN - сквозное смещение в байтах по всем файлам журнала.
+// Групповая фиксация: поток дописывает свои записи под блокировкой и ждёт force. Первый из ждущих
+// сбрасывает на диск всё записанное к этому моменту, остальные находят свои записи уже на диске.
+// При открытии хвост последнего файла, начиная с первой повреждённой (недописанной при сбое) записи, отрезается
+public class WalStore implements Closeable {
+    private static final int HEADER_SIZE = 8;
+    private static final String FILE = "wal-%020d.log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final ConcurrentNavigableMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Object syncLock = new Object();
+    // Всё до synced уже на диске и может применяться к БД
+    private final AtomicLong synced = new AtomicLong();
+    private FileChannel active;
+    private long activeBase;
+    private volatile long written;
+
+    public WalStore(Path directory, long segmentBytes, boolean fsync) {
+        if (segmentBytes <= 0) {
+            throw new IllegalArgumentException("Размер файла журнала должен быть положительным: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+    }
+
+    // appliedLsn - до какого места журнал уже применён к БД: новые записи не должны получить LSN меньше него
+    public void open(long appliedLsn) throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Long base = parseBase(file);
+                if (base != null) {
+                    segments.put(base, file);
+                }
+            });
+        }
+        long end = segments.isEmpty() ? appliedLsn : recover(segments.lastKey(), segments.lastEntry().getValue());
+        if (end < appliedLsn) {
+            end = appliedLsn;
+        }
+        if (segments.isEmpty() || segments.lastKey() + Files.size(segments.lastEntry().getValue()) != end) {
+            segments.put(end, directory.resolve(String.format(FILE, end)));
+        }
+        activeBase = segments.lastKey();
+        active = FileChannel.open(segments.get(activeBase), CREATE, WRITE);
+        active.position(end - activeBase);
+        written = end;
+        synced.set(end);
+    }
+
+    public long append(List<Hit> hits) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(encode(hits));
+        long end;
+        appendLock.lock();
+        try {
+            if (written > activeBase && written - activeBase + data.remaining() > segmentBytes) {
+                rotate();
+            }
+            while (data.hasRemaining()) {
+                active.write(data);
+            }
+            end = written + data.capacity();
+            written = end;
+        } finally {
+            appendLock.unlock();
+        }
+        sync(end);
+        return end;
+    }
+
+    // Записи от from, не больше maxRecords и только уже сброшенные на диск
+    public Batch read(long from, int maxRecords) throws IOException {
+        long limit = synced.get();
+        List<Hit> hits = new ArrayList<>();
+        long position = from;
+        while (hits.size() < maxRecords && position < limit) {
+            Map.Entry<Long, Path> segment = segments.floorEntry(position);
+            if (segment == null) {
+                throw new IOException("Нет файла журнала с LSN " + position);
+            }
+            Long next = segments.higherKey(position);
+            long segmentLimit = (next == null ? limit : Math.min(next, limit)) - segment.getKey();
+            long offset = position - segment.getKey();
+            try (FileChannel channel = FileChannel.open(segment.getValue(), READ)) {
+                while (hits.size() < maxRecords && offset < segmentLimit) {
+                    ByteBuffer header = readFully(channel, offset, HEADER_SIZE);
+                    int length = header.getInt();
+                    int checksum = header.getInt();
+                    ByteBuffer body = readFully(channel, offset + HEADER_SIZE, length);
+                    if (checksum(body) != checksum) {
+                        throw new IOException("Повреждена запись журнала с LSN " + (segment.getKey() + offset));
+                    }
+                    hits.add(decode(body.array()));
+                    offset += HEADER_SIZE + length;
+                }
+            }
+            position = segment.getKey() + offset;
+        }
+        return new Batch(hits, position);
+    }
+
+    // Файлы, целиком лежащие до lsn, больше не нужны. Текущий файл не удаляется
+    public int deleteBefore(long lsn) throws IOException {
+        int deleted = 0;
+        for (Map.Entry<Long, Path> segment : segments.headMap(segments.lastKey()).entrySet()) {
+            Long next = segments.higherKey(segment.getKey());
+            if (next == null || next > lsn) {
+                break;
+            }
+            Files.deleteIfExists(segment.getValue());
+            segments.remove(segment.getKey());
+            deleted++;
+        }
+        return deleted;
+    }
+
+    public long getSyncedLsn() {
+        return synced.get();
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            if (active != null && active.isOpen()) {
+                active.force(false);
+                active.close();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void sync(long end) throws IOException {
+        if (!fsync) {
+            synced.accumulateAndGet(end, Math::max);
+            return;
+        }
+        if (synced.get() >= end) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced.get() >= end) {
+                return;
+            }
+            FileChannel channel;
+            long target;
+            appendLock.lock();
+            try {
+                channel = active;
+                target = written;
+            } finally {
+                appendLock.unlock();
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Файл закрыт сменой файла журнала, которая уже сбросила его на диск
+            }
+            synced.accumulateAndGet(target, Math::max);
+        }
+    }
+
+    // Вызывается под блокировкой записи
+    private void rotate() throws IOException {
+        active.force(false);
+        active.close();
+        synced.accumulateAndGet(written, Math::max);
+        activeBase = written;
+        Path file = directory.resolve(String.format(FILE, activeBase));
+        active = FileChannel.open(file, CREATE, WRITE);
+        segments.put(activeBase, file);
+    }
+
+    private long recover(long base, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+            long size = channel.size();
+            long offset = 0;
+            while (offset + HEADER_SIZE <= size) {
+                ByteBuffer header = readFully(channel, offset, HEADER_SIZE);
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < 0 || offset + HEADER_SIZE + length > size
+                        || checksum(readFully(channel, offset + HEADER_SIZE, length)) != checksum) {
+                    break;
+                }
+                offset += HEADER_SIZE + length;
+            }
+            if (offset < size) {
+                channel.truncate(offset);
+            }
+            channel.force(false);
+            return base + offset;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Неожиданный конец файла журнала");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static byte[] encode(List<Hit> hits) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(hits.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        for (Hit hit : hits) {
+            body.reset();
+            bodyOut.writeLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+            bodyOut.writeInt(hit.getTimestamp().getNano());
+            bodyOut.writeInt(hit.getWeight());
+            bodyOut.writeUTF(hit.getApp());
+            bodyOut.writeUTF(hit.getUri());
+            bodyOut.writeUTF(hit.getIp());
+            byte[] record = body.toByteArray();
+            out.writeInt(record.length);
+            out.writeInt(checksum(ByteBuffer.wrap(record)));
+            out.write(record);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Hit decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        int weight = in.readInt();
+        return Hit.builder()
+                .timestamp(timestamp)
+                .weight(weight)
+                .app(in.readUTF())
+                .uri(in.readUTF())
+                .ip(in.readUTF())
+                .build();
+    }
+
+    private static int checksum(ByteBuffer body) {
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static Long parseBase(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith("wal-") || !name.endsWith(".log")) {
+            return null;
+        }
+        try {
+            return Long.parseLong(name.substring("wal-".length(), name.length() - ".log".length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public record Batch(List<Hit> hits, long end) {
+    }
+}
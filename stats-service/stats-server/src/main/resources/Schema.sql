@@ -1,22 +1,218 @@
--- Создание таблицы hits
-CREATE TABLE IF NOT EXISTS hits (
-    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+-- app и uri хранятся номерами в словарях hit_apps и hit_uris, ip - 4 байтами для IPv4, иначе текстом
+CREATE TABLE IF NOT EXISTS hit_apps (
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_hit_apps PRIMARY KEY (id),
+    CONSTRAINT uq_hit_apps_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS hit_uris (
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(500) NOT NULL,
+    CONSTRAINT pk_hit_uris PRIMARY KEY (id),
+    CONSTRAINT uq_hit_uris_name UNIQUE (name)
+);
+
+-- Шаблон URI из запроса статистики отбирает имена условием LIKE 'начало%': индексу по сопоставлению
+-- базы оно недоступно, varchar_pattern_ops сравнивает побайтно
+CREATE INDEX IF NOT EXISTS idx_hit_uris_name_pattern ON hit_uris(name varchar_pattern_ops);
+
+-- Перевод hits со строковыми app, uri и ip на словари. Тело в одинарных кавычках, а не в $$:
+-- скрипт инициализации делит текст на команды по точке с запятой вне кавычек
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = ''hits'' AND column_name = ''uri'') THEN
+        INSERT INTO hit_apps (name) SELECT DISTINCT app FROM hits ON CONFLICT (name) DO NOTHING;
+        INSERT INTO hit_uris (name) SELECT DISTINCT uri FROM hits ON CONFLICT (name) DO NOTHING;
+        ALTER TABLE hits ADD COLUMN app_id INT, ADD COLUMN uri_id INT, ADD COLUMN ip_packed BYTEA;
+        UPDATE hits h SET app_id = a.id, uri_id = u.id,
+            ip_packed = CASE
+                WHEN h.ip ~ ''^((25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])[.]){3}(25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])$''
+                    THEN decode(lpad(to_hex(h.ip::inet - ''0.0.0.0''::inet), 8, ''0''), ''hex'')
+                WHEN octet_length(h.ip) = 4 THEN decode(''00'', ''hex'') || convert_to(h.ip, ''UTF8'')
+                ELSE convert_to(h.ip, ''UTF8'')
+            END
+        FROM hit_apps a, hit_uris u
+        WHERE a.name = h.app AND u.name = h.uri;
+        ALTER TABLE hits DROP COLUMN app, DROP COLUMN uri, DROP COLUMN ip;
+        ALTER TABLE hits RENAME COLUMN ip_packed TO ip;
+        ALTER TABLE hits ALTER COLUMN app_id SET NOT NULL, ALTER COLUMN uri_id SET NOT NULL,
+            ALTER COLUMN ip SET NOT NULL;
+    END IF;
+END
+';
+
+ALTER TABLE IF EXISTS hits ADD COLUMN IF NOT EXISTS weight INT NOT NULL DEFAULT 1;
+
+-- Таблица hits секционирована по суткам. Партиции на ближайшие дни создаёт HitPartitionManager, хиты вне
+-- созданных партиций попадают в hits_default. Несекционированная hits прежних версий (её создавал Hibernate,
+-- а после него - перевод на словари выше) переименовывается, для каждых её суток создаётся партиция,
+-- строки копируются в новую таблицу, старая удаляется, счётчик id продолжается с наибольшего перенесённого
+DO '
+DECLARE
+    legacy_day TIMESTAMP;
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid
+               WHERE c.relname = ''hits'' AND pg_table_is_visible(c.oid)) THEN
+        RETURN;
+    END IF;
+    IF to_regclass(''hits'') IS NOT NULL THEN
+        ALTER TABLE hits RENAME TO hits_unpartitioned;
+    END IF;
+    CREATE TABLE hits (
+        id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+        app_id INT NOT NULL,
+        uri_id INT NOT NULL,
+        ip BYTEA NOT NULL,
+        timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+        weight INT NOT NULL DEFAULT 1,
+        CONSTRAINT pk_hits PRIMARY KEY (id, timestamp)
+    ) PARTITION BY RANGE (timestamp);
+    CREATE TABLE hits_default PARTITION OF hits DEFAULT;
+    IF to_regclass(''hits_unpartitioned'') IS NOT NULL THEN
+        FOR legacy_day IN SELECT DISTINCT date_trunc(''day'', timestamp) FROM hits_unpartitioned LOOP
+            EXECUTE format(''CREATE TABLE %I PARTITION OF hits FOR VALUES FROM (%L) TO (%L)'',
+                ''hits_p'' || to_char(legacy_day, ''YYYYMMDD''), legacy_day, legacy_day + INTERVAL ''1 day'');
+        END LOOP;
+        INSERT INTO hits (id, app_id, uri_id, ip, timestamp, weight)
+            SELECT id, app_id, uri_id, ip, timestamp, weight FROM hits_unpartitioned;
+        DROP TABLE hits_unpartitioned;
+        PERFORM setval(pg_get_serial_sequence(''hits'', ''id''), COALESCE(MAX(id), 0) + 1, false) FROM hits;
+    END IF;
+END
+';
+
+-- Отбор по времени делает отсечение партиций, внутри партиции хватает двух индексов
+CREATE INDEX IF NOT EXISTS idx_hits_timestamp_app_uri ON hits(timestamp, app_id, uri_id);
+CREATE INDEX IF NOT EXISTS idx_hits_uri_timestamp ON hits(uri_id, timestamp);
+
+-- Агрегаты по корзинам времени: минута, час, сутки
+CREATE TABLE IF NOT EXISTS hits_rollup_minute (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(500) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    CONSTRAINT pk_hits_rollup_minute PRIMARY KEY (app, uri, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_hour (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(500) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    ip_sketch BYTEA,
+    CONSTRAINT pk_hits_rollup_hour PRIMARY KEY (app, uri, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_day (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(500) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    ip_sketch BYTEA,
+    CONSTRAINT pk_hits_rollup_day PRIMARY KEY (app, uri, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_minute_uri_bucket ON hits_rollup_minute(uri, bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_minute_bucket ON hits_rollup_minute(bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_hour_uri_bucket ON hits_rollup_hour(uri, bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_hour_bucket ON hits_rollup_hour(bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_day_uri_bucket ON hits_rollup_day(uri, bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_day_bucket ON hits_rollup_day(bucket);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_state (
+    id INT NOT NULL,
+    watermark TIMESTAMP WITHOUT TIME ZONE,
+    CONSTRAINT pk_hits_rollup_state PRIMARY KEY (id)
+);
+
+-- Холодное хранилище: хиты старше порога, разложенные по столбцам блоками
+CREATE TABLE IF NOT EXISTS hits_cold_blocks (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    block_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    block_end TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    row_count INT NOT NULL,
+    dictionary BYTEA NOT NULL,
+    apps BYTEA NOT NULL,
+    uris BYTEA NOT NULL,
+    ips BYTEA NOT NULL,
+    timestamps BYTEA NOT NULL,
+    weights BYTEA,
+    CONSTRAINT pk_hits_cold_blocks PRIMARY KEY (id)
+);
+
+ALTER TABLE hits_cold_blocks ADD COLUMN IF NOT EXISTS weights BYTEA;
+
+CREATE INDEX IF NOT EXISTS idx_hits_cold_blocks_start_end ON hits_cold_blocks(block_start, block_end);
+
+CREATE TABLE IF NOT EXISTS hits_cold_state (
+    id INT NOT NULL,
+    compacted_before TIMESTAMP WITHOUT TIME ZONE,
+    CONSTRAINT pk_hits_cold_state PRIMARY KEY (id)
+);
+
+-- Снимки скетчей популярных URI по корзинам окон, переживают перезапуск
+CREATE TABLE IF NOT EXISTS hits_top_snapshots (
+    time_window VARCHAR(16) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    sketch BYTEA NOT NULL,
+    CONSTRAINT pk_hits_top_snapshots PRIMARY KEY (time_window, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS hits_wal_applied (
+    wal_id VARCHAR(36) NOT NULL,
+    lsn BIGINT NOT NULL,
+    CONSTRAINT pk_hits_wal_applied PRIMARY KEY (wal_id)
+);
+
+-- Номера посетителей и битовые карты номеров по (app, uri, сутки) для точного числа уникальных ip
+CREATE TABLE IF NOT EXISTS hit_ips (
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(45) NOT NULL,
+    CONSTRAINT pk_hit_ips PRIMARY KEY (id),
+    CONSTRAINT uq_hit_ips_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS hits_visitors_day (
     app VARCHAR(255) NOT NULL,
     uri VARCHAR(500) NOT NULL,
-    ip VARCHAR(45) NOT NULL,
-    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    visitors BYTEA NOT NULL,
+    CONSTRAINT pk_hits_visitors_day PRIMARY KEY (app, uri, bucket)
 );
 
-CREATE INDEX IF NOT EXISTS idx_hits_timestamp ON hits(timestamp);
-CREATE INDEX IF NOT EXISTS idx_hits_uri ON hits(uri);
-CREATE INDEX IF NOT EXISTS idx_hits_app ON hits(app);
-CREATE INDEX IF NOT EXISTS idx_hits_ip ON hits(ip);
-CREATE INDEX IF NOT EXISTS idx_hits_app_uri ON hits(app, uri);
-CREATE INDEX IF NOT EXISTS idx_hits_timestamp_app_uri ON hits(timestamp, app, uri);
+CREATE INDEX IF NOT EXISTS idx_hits_visitors_day_bucket ON hits_visitors_day(bucket);
+
+CREATE TABLE IF NOT EXISTS hits_visitors_state (
+    id INT NOT NULL,
+    watermark TIMESTAMP WITHOUT TIME ZONE,
+    CONSTRAINT pk_hits_visitors_state PRIMARY KEY (id)
+);
 
-COMMENT ON TABLE hits IS 'Таблица для хранения статистики посещений эндпоинтов';
+COMMENT ON TABLE hits IS 'Таблица для хранения статистики посещений эндпоинтов, секционирована по суткам';
+COMMENT ON TABLE hits_default IS 'Хиты, для суток которых партиция ещё не создана';
 COMMENT ON COLUMN hits.id IS 'Уникальный идентификатор записи';
-COMMENT ON COLUMN hits.app IS 'Идентификатор сервиса (приложения)';
-COMMENT ON COLUMN hits.uri IS 'URI эндпоинта';
-COMMENT ON COLUMN hits.ip IS 'IP-адрес пользователя';
-COMMENT ON COLUMN hits.timestamp IS 'Время посещения (без временной зоны)';
\ No newline at end of file
+COMMENT ON COLUMN hits.app_id IS 'Номер сервиса (приложения) в hit_apps';
+COMMENT ON COLUMN hits.uri_id IS 'Номер URI эндпоинта в hit_uris';
+COMMENT ON COLUMN hits.ip IS 'IP-адрес пользователя: IPv4 - 4 байта, иначе текст UTF-8';
+COMMENT ON COLUMN hits.weight IS 'Сколько хитов представляет запись при выборочном сохранении';
+COMMENT ON TABLE hit_apps IS 'Словарь сервисов (приложений)';
+COMMENT ON TABLE hit_uris IS 'Словарь URI эндпоинтов';
+COMMENT ON COLUMN hits.timestamp IS 'Время посещения (без временной зоны)';
+COMMENT ON TABLE hits_rollup_minute IS 'Количество хитов по (app, uri) за минуту';
+COMMENT ON TABLE hits_rollup_hour IS 'Количество хитов по (app, uri) за час';
+COMMENT ON TABLE hits_rollup_day IS 'Количество хитов по (app, uri) за сутки';
+COMMENT ON COLUMN hits_rollup_hour.ip_sketch IS 'HyperLogLog-скетч ip за час';
+COMMENT ON COLUMN hits_rollup_day.ip_sketch IS 'HyperLogLog-скетч ip за сутки';
+COMMENT ON TABLE hits_rollup_state IS 'Отметка, до которой агрегаты содержат все хиты';
+COMMENT ON TABLE hits_cold_blocks IS 'Хиты старше порога: словарь app и uri, ip в int, время разностями';
+COMMENT ON COLUMN hits_cold_blocks.dictionary IS 'Словарь строк app и uri блока';
+COMMENT ON COLUMN hits_cold_blocks.ips IS 'IPv4 по 4 байта или номера в словаре ip блока';
+COMMENT ON COLUMN hits_cold_blocks.timestamps IS 'Время в микросекундах разностями с предыдущим хитом';
+COMMENT ON COLUMN hits_cold_blocks.weights IS 'Веса хитов, NULL - все веса равны 1';
+COMMENT ON TABLE hits_cold_state IS 'Отметка, раньше которой хиты могут лежать в холодных блоках';
+COMMENT ON TABLE hits_top_snapshots IS 'Space-Saving-скетчи популярных (app, uri) по корзинам окна';
+COMMENT ON TABLE hit_ips IS 'Словарь ip: плотные номера посетителей для битовых карт';
+COMMENT ON TABLE hits_visitors_day IS 'Roaring-битовые карты номеров ip по (app, uri) за сутки';
+COMMENT ON TABLE hits_visitors_state IS 'Отметка, до которой битовые карты содержат все хиты';
@@ -0,0 +1,105 @@
+package ru.practicum.stats.cold;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.stats.model.Hit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarBlockTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Test
+    void countHits_shouldCountRowsInsideRange() {
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            hits.add(hit("/events/" + (i % 2), "10.0.0." + (i % 10), BASE.plusMinutes(99 - i)));
+        }
+        ColumnarBlock block = ColumnarBlock.encode(hits);
+
+        Map<List<String>, Long> totals = new HashMap<>();
+        block.countHits(BASE.plusMinutes(10), BASE.plusMinutes(19), true, null, totals);
+
+        assertEquals(Map.of(List.of("ewm-main-service", "/events/0"), 5L,
+                List.of("ewm-main-service", "/events/1"), 5L), totals);
+        assertEquals(BASE, block.getStart());
+        assertEquals(BASE.plusMinutes(99), block.getEnd());
+    }
+
+    @Test
+    void countHits_shouldRespectExclusiveEndAndUriFilter() {
+        ColumnarBlock block = ColumnarBlock.encode(List.of(
+                hit("/events/1", "10.0.0.1", BASE),
+                hit("/events/2", "10.0.0.1", BASE),
+                hit("/events/1", "10.0.0.1", BASE.plusHours(1))));
+
+        Map<List<String>, Long> totals = new HashMap<>();
+        block.countHits(BASE, BASE.plusHours(1), false, List.of("/events/1"), totals);
+        block.countHits(BASE, BASE.plusHours(1), true, List.of("/unknown"), totals);
+
+        assertEquals(Map.of(List.of("ewm-main-service", "/events/1"), 1L), totals);
+    }
+
+    @Test
+    void countHits_shouldSumWeightsOfSampledHits() {
+        List<Hit> hits = List.of(hit("/events/1", "10.0.0.1", BASE), hit("/events/1", "10.0.0.2", BASE.plusMinutes(1)),
+                hit("/events/2", "10.0.0.1", BASE.plusMinutes(2)));
+        hits.get(1).setWeight(4);
+
+        Map<List<String>, Long> totals = new HashMap<>();
+        ColumnarBlock.encode(hits).countHits(BASE, BASE.plusHours(1), true, null, totals);
+
+        assertEquals(Map.of(List.of("ewm-main-service", "/events/1"), 5L,
+                List.of("ewm-main-service", "/events/2"), 1L), totals);
+        assertNull(ColumnarBlock.encode(List.of(hits.get(0))).getWeights());
+    }
+
+    @Test
+    void collectIps_shouldRestoreIpv4AndOtherAddresses() {
+        List<Hit> ipv4 = List.of(hit("/events/1", "192.168.0.1", BASE), hit("/events/1", "255.0.10.3", BASE),
+                hit("/events/1", "192.168.0.1", BASE.plusSeconds(1)));
+        List<Hit> mixed = List.of(hit("/events/1", "::1", BASE), hit("/events/1", "localhost", BASE),
+                hit("/events/1", "010.0.0.1", BASE), hit("/events/1", "10.0.0.1", BASE));
+
+        assertEquals(Set.of("192.168.0.1", "255.0.10.3"), collectIps(ColumnarBlock.encode(ipv4)));
+        assertEquals(Set.of("::1", "localhost", "010.0.0.1", "10.0.0.1"), collectIps(ColumnarBlock.encode(mixed)));
+    }
+
+    @Test
+    void encode_shouldBeMuchSmallerThanRawRows() {
+        List<Hit> hits = new ArrayList<>();
+        int rawSize = 0;
+        for (int i = 0; i < 10_000; i++) {
+            Hit hit = hit("/events/" + (i % 200), "10.1." + (i % 256) + "." + (i % 97), BASE.plusSeconds(i * 3L));
+            hits.add(hit);
+            rawSize += hit.getApp().length() + hit.getUri().length() + hit.getIp().length() + Long.BYTES * 2;
+        }
+
+        ColumnarBlock block = ColumnarBlock.encode(hits);
+
+        assertTrue(block.getEncodedSize() * 4 < rawSize, "Размер блока: " + block.getEncodedSize());
+        assertEquals(10_000, block.getRowCount());
+    }
+
+    private Set<String> collectIps(ColumnarBlock block) {
+        Set<String> ips = new HashSet<>();
+        block.collectIps(BASE, BASE.plusDays(1), true, null, (key, ip) -> assertTrue(ips.add(ip)));
+        return ips;
+    }
+
+    private Hit hit(String uri, String ip, LocalDateTime timestamp) {
+        return Hit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
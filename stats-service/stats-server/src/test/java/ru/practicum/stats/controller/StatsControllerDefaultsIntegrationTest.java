@@ -0,0 +1,147 @@
+package ru.practicum.stats.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.repository.PostgresTestDatabase;
+import ru.practicum.stats.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Весь путь хита с настройками application.properties как в работе: допуск записи, журнал предзаписи,
+// секции, агрегаты, битовые карты посетителей, кольца последнего часа и кэш ответов
+@SpringBootTest(classes = StatsServerStart.class, properties = "spring.profiles.active=")
+@AutoConfigureMockMvc
+@EnabledIf("ru.practicum.stats.repository.PostgresTestDatabase#isAvailable")
+class StatsControllerDefaultsIntegrationTest {
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final LocalDateTime NOW = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        String url = PostgresTestDatabase.createSchema("defaults");
+        registry.add("spring.datasource.url", () -> url);
+        registry.add("spring.datasource.username", PostgresTestDatabase::username);
+        registry.add("spring.datasource.password", PostgresTestDatabase::password);
+        registry.add("stats.wal.dir", () -> PostgresTestDatabase.tempDirectory("stats-wal"));
+    }
+
+    @Test
+    void hitsAndStats_shouldWorkWithProductionSettings() throws Exception {
+        postHit(hit("/events/1", "10.0.0.1", NOW.minusHours(2)));
+        postHit(hit("/events/1", "10.0.0.2", NOW.minusHours(1)));
+        postHit(hit("/events/2", "2001:db8::1", NOW.minusMinutes(30)));
+        mockMvc.perform(post("/hits")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(
+                                hit("/events/1", "10.0.0.1", NOW.minusDays(40)),
+                                hit("/events/1", "10.0.0.3", NOW.minusDays(40).plusHours(1)),
+                                hit("/events/2", "2001:db8::1", NOW.minusMinutes(10))))))
+                .andExpect(status().isAccepted());
+        awaitHits(6);
+
+        Set<ViewStats> expected = Set.of(new ViewStats("ewm-main-service", "/events/1", 4L),
+                new ViewStats("ewm-main-service", "/events/2", 2L));
+        assertEquals(expected, stats(false));
+        assertEquals(Set.of(new ViewStats("ewm-main-service", "/events/1", 3L),
+                new ViewStats("ewm-main-service", "/events/2", 1L)), stats(true));
+        assertEquals(expected, streamedStats());
+        assertEquals(Set.of(new ViewStats("ewm-main-service", "/events/2", 2L)), realtimeStats());
+    }
+
+    private void postHit(EndpointHit hit) throws Exception {
+        mockMvc.perform(post("/hit")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(hit)))
+                .andExpect(status().isCreated());
+    }
+
+    // Хиты подтверждаются после журнала, в hits их переносит фоновый применитель
+    private void awaitHits(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (statsRepository.count() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertEquals(count, statsRepository.count());
+    }
+
+    private Set<ViewStats> stats(boolean unique) throws Exception {
+        String body = mockMvc.perform(get("/stats")
+                        .param("start", NOW.minusDays(60).format(FORMAT))
+                        .param("end", NOW.plusMinutes(1).format(FORMAT))
+                        .param("unique", String.valueOf(unique)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return Set.of(objectMapper.readValue(body, ViewStats[].class));
+    }
+
+    private Set<ViewStats> streamedStats() throws Exception {
+        MvcResult result = mockMvc.perform(get("/stats")
+                        .param("start", NOW.minusDays(60).format(FORMAT))
+                        .param("end", NOW.plusMinutes(1).format(FORMAT))
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return Arrays.stream(body.split("\n"))
+                .map(line -> {
+                    try {
+                        return objectMapper.readValue(line, ViewStats.class);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .collect(Collectors.toSet());
+    }
+
+    private Set<ViewStats> realtimeStats() throws Exception {
+        String body = mockMvc.perform(get("/stats/realtime").param("minutes", "45"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return Set.of(objectMapper.readValue(body, ViewStats[].class));
+    }
+
+    private EndpointHit hit(String uri, String ip, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -1,27 +1,40 @@
 package ru.practicum.stats.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import ru.practicum.stats.dto.EndpointHit;
 import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.exception.IngestRejectedException;
+import ru.practicum.stats.service.IngestAdmission;
 import ru.practicum.stats.service.StatService;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(StatsController.class)
+@Import({IngestAdmission.class, SimpleMeterRegistry.class})
 class StatsControllerIntegrationTest {
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
 
     @Autowired
     private MockMvc mockMvc;
@@ -32,6 +45,9 @@ class StatsControllerIntegrationTest {
     @MockBean
     private StatService statService;
 
+    @SpyBean
+    private IngestAdmission admission;
+
     @Test
     void createHit_shouldCreateAndReturnHit() throws Exception {
         EndpointHit endpointHit = new EndpointHit();
@@ -51,6 +67,122 @@ class StatsControllerIntegrationTest {
                 .andExpect(jsonPath("$.ip").value("192.168.1.1"));
     }
 
+    @Test
+    void createHit_shouldAcceptAndReturnSmile() throws Exception {
+        ObjectMapper smileMapper = objectMapper.copyWith(new SmileFactory());
+        EndpointHit endpointHit = new EndpointHit();
+        endpointHit.setApp("ewm-main-service");
+        endpointHit.setUri("/events/1");
+        endpointHit.setIp("192.168.1.1");
+        endpointHit.setTimestamp(LocalDateTime.of(2024, 1, 1, 10, 0));
+
+        when(statService.saveHit(any(EndpointHit.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        byte[] response = mockMvc.perform(post("/hit")
+                        .contentType(SMILE)
+                        .accept(SMILE)
+                        .content(smileMapper.writeValueAsBytes(endpointHit)))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals(endpointHit, smileMapper.readValue(response, EndpointHit.class));
+    }
+
+    @Test
+    void getStats_shouldReturnSmileWhenAccepted() throws Exception {
+        ObjectMapper smileMapper = objectMapper.copyWith(new SmileFactory());
+        List<ViewStats> stats = List.of(new ViewStats("ewm-main-service", "/events/1", 10L));
+        when(statService.getStats(any(), any(), any(), any())).thenReturn(stats);
+
+        byte[] response = mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .accept(SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals(stats, List.of(smileMapper.readValue(response, ViewStats[].class)));
+    }
+
+    @Test
+    void createHits_shouldAcceptBatch() throws Exception {
+        EndpointHit endpointHit = new EndpointHit();
+        endpointHit.setApp("ewm-main-service");
+        endpointHit.setUri("/events/1");
+        endpointHit.setIp("192.168.1.1");
+        endpointHit.setTimestamp(LocalDateTime.of(2024, 1, 1, 10, 0));
+
+        mockMvc.perform(post("/hits")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(endpointHit, endpointHit))))
+                .andExpect(status().isAccepted());
+
+        verify(statService).saveHits(anyList());
+    }
+
+    @Test
+    void createHits_shouldShedLoadWithRetryAfter() throws Exception {
+        EndpointHit endpointHit = new EndpointHit();
+        endpointHit.setApp("ewm-main-service");
+        endpointHit.setUri("/events/1");
+        endpointHit.setIp("192.168.1.1");
+        endpointHit.setTimestamp(LocalDateTime.of(2024, 1, 1, 10, 0));
+        doThrow(new IngestRejectedException("Очередь записи хитов переполнена", HttpStatus.SERVICE_UNAVAILABLE, 2))
+                .when(admission).admit(eq(List.of("ewm-main-service")), any(Runnable.class));
+
+        mockMvc.perform(post("/hits")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(endpointHit))))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "2"));
+
+        verifyNoInteractions(statService);
+    }
+
+    @Test
+    void createHits_shouldRejectInvalidHitInBatch() throws Exception {
+        EndpointHit invalidHit = new EndpointHit();
+        invalidHit.setApp("ewm-main-service");
+
+        mockMvc.perform(post("/hits")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(invalidHit))))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(statService);
+    }
+
+    @Test
+    void createHits_shouldRejectEmptyBatch() throws Exception {
+        mockMvc.perform(post("/hits")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(statService);
+    }
+
+    @Test
+    void getTopStats_shouldRejectUnknownWindowAndNonPositiveK() throws Exception {
+        mockMvc.perform(get("/stats/top")
+                        .param("window", "week"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/stats/top")
+                        .param("k", "0"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(statService);
+    }
+
+    @Test
+    void getRealtimeStats_shouldRejectWindowLongerThanHour() throws Exception {
+        mockMvc.perform(get("/stats/realtime")
+                        .param("minutes", "61"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(statService);
+    }
+
     @Test
     void getStats_shouldReturnStatistics() throws Exception {
         List<ViewStats> stats = List.of(
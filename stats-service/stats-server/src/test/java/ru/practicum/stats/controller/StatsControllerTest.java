@@ -2,24 +2,33 @@ package ru.practicum.stats.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.TopViewStats;
 import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.service.IngestAdmission;
 import ru.practicum.stats.service.StatService;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -33,6 +42,12 @@ class StatsControllerTest {
     @Mock
     private StatService statService;
 
+    @Spy
+    private ObjectMapper controllerObjectMapper = new ObjectMapper();
+
+    @Spy
+    private IngestAdmission admission = new IngestAdmission(new SimpleMeterRegistry(), true, 10, 100, 200, 8, 1);
+
     @InjectMocks
     private StatsController statsController;
 
@@ -101,6 +116,105 @@ class StatsControllerTest {
         verify(statService).getStats(any(LocalDateTime.class), any(LocalDateTime.class), any(), eq(true));
     }
 
+    @Test
+    void getStats_shouldUseApproximateStatsWhenRequested() throws Exception {
+        when(statService.getApproximateStats(any(LocalDateTime.class), any(LocalDateTime.class), any(), any()))
+                .thenReturn(List.of(new ViewStats("ewm-main-service", "/events/1", 42L)));
+
+        mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .param("unique", "true")
+                        .param("approximate", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].hits").value(42));
+
+        verify(statService).getApproximateStats(any(LocalDateTime.class), any(LocalDateTime.class), any(), eq(true));
+        verify(statService, never()).getStats(any(), any(), any(), any());
+    }
+
+    @Test
+    void getStats_shouldReturnGroupedStatsForUriPatterns() throws Exception {
+        when(statService.getGroupedStats(any(LocalDateTime.class), any(LocalDateTime.class), any()))
+                .thenReturn(List.of(new ViewStats("ewm-main-service", "/events/*", 120L)));
+
+        mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .param("uris", "/events/*")
+                        .param("group", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].uri").value("/events/*"))
+                .andExpect(jsonPath("$[0].hits").value(120));
+
+        verify(statService).getGroupedStats(any(LocalDateTime.class), any(LocalDateTime.class),
+                eq(List.of("/events/*")));
+        verify(statService, never()).getStats(any(), any(), any(), any());
+    }
+
+    @Test
+    void getStats_shouldRejectGroupingWithUniqueIps() throws Exception {
+        mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .param("uris", "/events/*")
+                        .param("unique", "true")
+                        .param("group", "true"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(statService);
+    }
+
+    @Test
+    void streamStats_shouldWriteNdjsonWhenAcceptHeaderRequestsIt() throws Exception {
+        stubStreamStats();
+
+        MvcResult result = mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":5}\n"
+                        + "{\"app\":\"ewm-main-service\",\"uri\":\"/events/2\",\"hits\":3}\n"));
+        verify(statService, never()).getStats(any(), any(), any(), any());
+    }
+
+    @Test
+    void streamStats_shouldWriteNdjsonWhenStreamParamIsSet() throws Exception {
+        stubStreamStats();
+
+        MvcResult result = mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON));
+        verify(statService).streamStats(any(LocalDateTime.class), any(LocalDateTime.class), any(), any(), any());
+    }
+
+    @Test
+    void getStats_shouldReturnJsonArrayForAnyAcceptHeader() throws Exception {
+        when(statService.getStats(any(LocalDateTime.class), any(LocalDateTime.class), any(), any()))
+                .thenReturn(List.of(new ViewStats("ewm-main-service", "/events/1", 5L)));
+
+        mockMvc.perform(get("/stats")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-02 00:00:00")
+                        .accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].hits").value(5));
+        verify(statService, never()).streamStats(any(), any(), any(), any(), any());
+    }
+
     @Test
     void getStats_shouldReturnBadRequestWhenMissingRequiredParams() throws Exception {
         mockMvc.perform(get("/stats"))
@@ -133,4 +247,81 @@ class StatsControllerTest {
 
         verify(statService).getStats(any(LocalDateTime.class), any(LocalDateTime.class), any(), isNull());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getTopStats_shouldReturnTopUrisWithErrorBounds() throws Exception {
+        when(statService.getTopStats("day", 2))
+                .thenReturn(List.of(new TopViewStats("ewm-main-service", "/events/1", 10L, 0L),
+                        new TopViewStats("ewm-main-service", "/events/2", 7L, 2L)));
+
+        mockMvc.perform(get("/stats/top")
+                        .param("window", "day")
+                        .param("k", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].uri").value("/events/1"))
+                .andExpect(jsonPath("$[1].hits").value(7))
+                .andExpect(jsonPath("$[1].error").value(2));
+    }
+
+    @Test
+    void getTopStats_shouldUseHourWindowByDefault() throws Exception {
+        when(statService.getTopStats("hour", 10)).thenReturn(List.of());
+
+        mockMvc.perform(get("/stats/top"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+        verify(statService).getTopStats("hour", 10);
+    }
+
+    @Test
+    void getTimeSeries_shouldPassBucketWidthAndReturnBuckets() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 8, 0, 0);
+        when(statService.getTimeSeries(start, end, List.of("/events/1"), RollupLevel.DAY))
+                .thenReturn(List.of(new TimeSeriesStats("ewm-main-service", "/events/1", start, 12L, 5L)));
+
+        mockMvc.perform(get("/stats/timeseries")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-01-08 00:00:00")
+                        .param("uris", "/events/1")
+                        .param("bucket", "day"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].bucket").value("2024-01-01 00:00:00"))
+                .andExpect(jsonPath("$[0].hits").value(12))
+                .andExpect(jsonPath("$[0].uniqueHits").value(5));
+    }
+
+    @Test
+    void getTimeSeries_shouldRejectTooManyBuckets() throws Exception {
+        mockMvc.perform(get("/stats/timeseries")
+                        .param("start", "2024-01-01 00:00:00")
+                        .param("end", "2024-03-01 00:00:00")
+                        .param("bucket", "minute"))
+                .andExpect(status().isBadRequest());
+        verify(statService, never()).getTimeSeries(any(), any(), any(), any());
+    }
+
+    @Test
+    void getRealtimeStats_shouldPassMinutesAndUris() throws Exception {
+        when(statService.getRealtimeStats(15, List.of("/events/1")))
+                .thenReturn(List.of(new ViewStats("ewm-main-service", "/events/1", 4L)));
+
+        mockMvc.perform(get("/stats/realtime")
+                        .param("minutes", "15")
+                        .param("uris", "/events/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].uri").value("/events/1"))
+                .andExpect(jsonPath("$[0].hits").value(4));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubStreamStats() {
+        doAnswer(invocation -> {
+            Consumer<ViewStats> consumer = invocation.getArgument(4);
+            consumer.accept(new ViewStats("ewm-main-service", "/events/1", 5L));
+            consumer.accept(new ViewStats("ewm-main-service", "/events/2", 3L));
+            return null;
+        }).when(statService).streamStats(any(LocalDateTime.class), any(LocalDateTime.class), any(), any(), any());
+    }
+}
@@ -0,0 +1,96 @@
+package ru.practicum.stats.dictionary;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.repository.HitDictionaryRepository;
+import ru.practicum.stats.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = StatsServerStart.class)
+@ActiveProfiles("test")
+class HitDictionaryIntegrationTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 10, 0);
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private HitDictionary dictionary;
+
+    @Autowired
+    private HitDictionaryRepository dictionaryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        statsRepository.deleteAll();
+    }
+
+    @Test
+    void save_shouldStoreDictionaryIdsAndPackedIp() {
+        Hit saved = statsRepository.save(hit("/events/dictionary", "10.1.2.3"));
+
+        Map<String, Object> row = jdbcTemplate.queryForMap("SELECT app_id, uri_id, ip FROM hits WHERE id = ?",
+                saved.getId());
+
+        assertEquals(dictionary.appId("ewm-main-service"), row.get("app_id"));
+        assertEquals(dictionary.uriId("/events/dictionary"), row.get("uri_id"));
+        assertArrayEquals(new byte[]{10, 1, 2, 3}, (byte[]) row.get("ip"));
+        Hit loaded = statsRepository.findById(saved.getId()).orElseThrow();
+        assertEquals("/events/dictionary", loaded.getUri());
+        assertEquals("10.1.2.3", loaded.getIp());
+    }
+
+    @Test
+    void getStats_shouldNotRegisterUnknownUrisOfFilter() {
+        statsRepository.save(hit("/events/1", "localhost"));
+
+        List<ViewStats> stats = statsRepository.getStats(BASE.minusHours(1), BASE.plusHours(1),
+                List.of("/events/unknown-filter"), false);
+
+        assertTrue(stats.isEmpty());
+        assertNull(dictionary.findUriId("/events/unknown-filter"));
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 1L)),
+                statsRepository.getStats(BASE.minusHours(1), BASE.plusHours(1), List.of("/events/1"), true));
+    }
+
+    @Test
+    void ipIds_shouldRegisterIpsInBulkAndKeepBoundedCacheConsistent() {
+        HitDictionary bounded = new HitDictionary(dictionaryRepository, 2);
+        List<String> ips = List.of("10.9.0.1", "10.9.0.2", "10.9.0.3", "10.9.0.4", "10.9.0.5");
+        int known = bounded.ipId("10.9.0.1");
+
+        Map<String, Integer> ids = bounded.ipIds(ips);
+
+        assertEquals(ips.size(), ids.size());
+        assertEquals(known, ids.get("10.9.0.1"));
+        assertEquals(ips.size(), ids.values().stream().distinct().count());
+        ips.forEach(ip -> assertEquals(ids.get(ip), dictionary.findIpId(ip)));
+        assertEquals(ids, bounded.ipIds(ips));
+        assertEquals(Map.of("10.9.0.2", ids.get("10.9.0.2")), bounded.findIpIds(List.of("10.9.0.2", "10.9.0.99")));
+    }
+
+    private Hit hit(String uri, String ip) {
+        return Hit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(BASE)
+                .build();
+    }
+}
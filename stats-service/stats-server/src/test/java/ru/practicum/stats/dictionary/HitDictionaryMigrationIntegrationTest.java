@@ -0,0 +1,91 @@
+package ru.practicum.stats.dictionary;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.repository.PostgresTestDatabase;
+import ru.practicum.stats.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Перевод на словари при запуске на базе прежней версии: строковые app, uri и ip таблицы hits,
+// созданной Hibernate, заменяются номерами и упакованными ip без потери строк
+@SpringBootTest(classes = StatsServerStart.class, properties = "spring.profiles.active=")
+@EnabledIf("ru.practicum.stats.repository.PostgresTestDatabase#isAvailable")
+class HitDictionaryMigrationIntegrationTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 10, 0);
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private HitDictionary dictionary;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void baselineDatabase(DynamicPropertyRegistry registry) {
+        String url = PostgresTestDatabase.createSchema("dictionary");
+        PostgresTestDatabase.execute(url,
+                "CREATE TABLE hits (id BIGINT GENERATED BY DEFAULT AS IDENTITY, app VARCHAR(255) NOT NULL, " +
+                        "ip VARCHAR(255) NOT NULL, timestamp TIMESTAMP(6) NOT NULL, uri VARCHAR(255) NOT NULL, " +
+                        "PRIMARY KEY (id))",
+                "INSERT INTO hits (app, ip, timestamp, uri) VALUES " +
+                        "('ewm-main-service', '192.168.1.1', TIMESTAMP '2024-01-01 10:00:00', '/events/1'), " +
+                        "('ewm-main-service', '192.168.1.1', TIMESTAMP '2024-01-01 10:05:00', '/events/1'), " +
+                        "('ewm-main-service', '2001:db8::1', TIMESTAMP '2024-01-01 11:00:00', '/events/1'), " +
+                        "('ewm-main-service', 'abcd', TIMESTAMP '2024-01-02 09:00:00', '/events/2'), " +
+                        "('other-service', '10.0.0.255', TIMESTAMP '2024-01-02 09:30:00', '/events/1')");
+        registry.add("spring.datasource.url", () -> url);
+        registry.add("spring.datasource.username", PostgresTestDatabase::username);
+        registry.add("spring.datasource.password", PostgresTestDatabase::password);
+        registry.add("stats.wal.dir", () -> PostgresTestDatabase.tempDirectory("stats-wal"));
+    }
+
+    @Test
+    void startup_shouldReplaceStringColumnsWithDictionaryIds() {
+        List<String> columns = jdbcTemplate.queryForList("SELECT column_name FROM information_schema.columns " +
+                "WHERE table_schema = current_schema() AND table_name = 'hits'", String.class);
+
+        assertEquals(Set.of("id", "app_id", "uri_id", "ip", "timestamp", "weight"), Set.copyOf(columns));
+        assertNotNull(dictionary.findAppId("ewm-main-service"));
+        assertNotNull(dictionary.findAppId("other-service"));
+        assertNotNull(dictionary.findUriId("/events/1"));
+        assertNotNull(dictionary.findUriId("/events/2"));
+        assertEquals(2L, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hit_uris", Long.class));
+    }
+
+    @Test
+    void startup_shouldPackIpsSoTheyReadBackUnchanged() {
+        List<Hit> hits = statsRepository.findAll();
+
+        assertEquals(5, hits.size());
+        assertEquals(Set.of("192.168.1.1", "2001:db8::1", "abcd", "10.0.0.255"),
+                hits.stream().map(Hit::getIp).collect(Collectors.toSet()));
+        assertTrue(hits.stream().allMatch(hit -> hit.getWeight() == 1));
+        assertEquals(3L, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits WHERE octet_length(ip) = 4",
+                Long.class));
+    }
+
+    @Test
+    void startup_shouldKeepUniqueCountsOfLegacyHits() {
+        List<ViewStats> unique = statsRepository.getStats(BASE, BASE.plusDays(2), List.of("/events/1"), true);
+
+        assertEquals(Set.of(new ViewStats("ewm-main-service", "/events/1", 2L),
+                new ViewStats("other-service", "/events/1", 1L)), Set.copyOf(unique));
+    }
+}
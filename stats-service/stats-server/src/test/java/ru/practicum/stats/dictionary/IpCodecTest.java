@@ -0,0 +1,36 @@
+package ru.practicum.stats.dictionary;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpCodecTest {
+
+    @Test
+    void packIpv4_shouldAcceptOnlyCanonicalAddresses() {
+        assertEquals(0xC0A80001, IpCodec.packIpv4("192.168.0.1"));
+        assertEquals("192.168.0.1", IpCodec.unpackIpv4(0xC0A80001));
+        assertNull(IpCodec.packIpv4("256.0.0.1"));
+        assertNull(IpCodec.packIpv4("01.0.0.1"));
+        assertNull(IpCodec.packIpv4("1.0.0"));
+        assertNull(IpCodec.packIpv4("localhost"));
+    }
+
+    @Test
+    void pack_shouldStoreIpv4InFourBytes() {
+        byte[] packed = IpCodec.pack("192.168.0.1");
+
+        assertArrayEquals(new byte[]{(byte) 192, (byte) 168, 0, 1}, packed);
+        assertEquals("192.168.0.1", IpCodec.unpack(packed));
+    }
+
+    @Test
+    void pack_shouldKeepOtherAddressesAsText() {
+        for (String ip : new String[]{"::1", "2001:db8::1", "localhost", "abcd", "01.0.0.1"}) {
+            byte[] packed = IpCodec.pack(ip);
+
+            assertNotEquals(4, packed.length, ip);
+            assertEquals(ip, IpCodec.unpack(packed));
+        }
+    }
+}
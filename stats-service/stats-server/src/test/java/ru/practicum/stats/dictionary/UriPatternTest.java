@@ -0,0 +1,69 @@
+package ru.practicum.stats.dictionary;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.stats.dto.ViewStats;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UriPatternTest {
+
+    @Test
+    void matches_shouldTreatStarAndTemplateAsSingleSegment() {
+        assertTrue(UriPattern.matches("/events/*", "/events/1"));
+        assertTrue(UriPattern.matches("/events/{id}", "/events/2"));
+        assertTrue(UriPattern.matches("/*/*/comments", "/events/2/comments"));
+        assertFalse(UriPattern.matches("/events/*", "/events"));
+        assertFalse(UriPattern.matches("/events/*", "/events/2/comments"));
+        assertFalse(UriPattern.matches("/events/*", "/users/1"));
+    }
+
+    @Test
+    void matches_shouldTreatTrailingDoubleStarAsPrefix() {
+        assertTrue(UriPattern.matches("/events/**", "/events"));
+        assertTrue(UriPattern.matches("/events/**", "/events/1"));
+        assertTrue(UriPattern.matches("/events/**", "/events/2/comments"));
+        assertFalse(UriPattern.matches("/events/**", "/eventsx"));
+        assertFalse(UriPattern.matches("/events/**", "/compilations/1"));
+    }
+
+    @Test
+    void isPattern_shouldDetectWildcardSegments() {
+        assertTrue(UriPattern.isPattern("/events/*"));
+        assertTrue(UriPattern.isPattern("/events/{id}/comments"));
+        assertTrue(UriPattern.isPattern("/events/**"));
+        assertFalse(UriPattern.isPattern("/events/1"));
+        assertFalse(UriPattern.isPattern("/events/a*b"));
+        assertFalse(UriPattern.isPattern("/events/{}"));
+    }
+
+    @Test
+    void prefixAndRegex_shouldSelectSameUrisAsMatches() {
+        List<String> uris = List.of("/events", "/events/1", "/events/2/comments", "/eventsx", "/events.v2/1");
+
+        for (String pattern : List.of("/events/*", "/events/{id}/comments", "/events/**", "/events.v2/*", "/**")) {
+            Pattern regex = Pattern.compile(UriPattern.regex(pattern));
+            String prefix = UriPattern.prefix(pattern);
+            for (String uri : uris) {
+                assertEquals(UriPattern.matches(pattern, uri), uri.startsWith(prefix) && regex.matcher(uri).matches(),
+                        pattern + " / " + uri);
+            }
+        }
+        assertEquals("/events/", UriPattern.prefix("/events/*"));
+        assertEquals("/events", UriPattern.prefix("/events/**"));
+    }
+
+    @Test
+    void group_shouldSumRowsByRequestedPattern() {
+        List<ViewStats> stats = List.of(
+                new ViewStats("ewm-main-service", "/events/1", 4L),
+                new ViewStats("ewm-main-service", "/events/2", 3L),
+                new ViewStats("ewm-main-service", "/users/1", 2L));
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/*", 7L),
+                        new ViewStats("ewm-main-service", "/users/1", 2L)),
+                UriPattern.group(List.of("/events/*", "/users/1"), stats));
+    }
+}
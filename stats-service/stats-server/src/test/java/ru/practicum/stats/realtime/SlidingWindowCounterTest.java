@@ -0,0 +1,74 @@
+package ru.practicum.stats.realtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowCounterTest {
+
+    private static final long NOW = 1_700_000_000L;
+
+    @Test
+    void sum_shouldCountOnlySecondsOfWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(60);
+        counter.increment(NOW);
+        counter.increment(NOW);
+        counter.increment(NOW - 10);
+        counter.increment(NOW - 30);
+
+        assertEquals(2, counter.sum(NOW, 1));
+        assertEquals(3, counter.sum(NOW, 11));
+        assertEquals(4, counter.sum(NOW, 60));
+        assertEquals(2, counter.sum(NOW + 50, 60));
+        assertEquals(NOW, counter.getLastSecond());
+    }
+
+    @Test
+    void increment_shouldReplaceSecondOfPreviousLap() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(60);
+        counter.increment(NOW - 60);
+        counter.increment(NOW - 60);
+
+        counter.increment(NOW);
+
+        assertEquals(1, counter.sum(NOW, 60));
+    }
+
+    @Test
+    void increment_shouldDropSecondOverwrittenByLaterLap() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(60);
+        counter.increment(NOW);
+
+        counter.increment(NOW - 60);
+
+        assertEquals(1, counter.sum(NOW, 60));
+    }
+
+    @Test
+    void increment_shouldNotLoseHitsUnderContention() throws InterruptedException {
+        SlidingWindowCounter counter = new SlidingWindowCounter(60);
+        int threads = 8;
+        int perThread = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    counter.increment(NOW - (i % 5));
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals((long) threads * perThread, counter.sum(NOW, 60));
+    }
+}
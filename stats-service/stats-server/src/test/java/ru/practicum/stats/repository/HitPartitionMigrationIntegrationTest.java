@@ -0,0 +1,95 @@
+package ru.practicum.stats.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.service.StatService;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Запуск с настройками по умолчанию на базе прежней версии: hits создана Hibernate по исходной сущности,
+// без секционирования и словарей. Профиль test, который сборка включает всем тестам, здесь снимается
+@SpringBootTest(classes = StatsServerStart.class, properties = "spring.profiles.active=")
+@EnabledIf("ru.practicum.stats.repository.PostgresTestDatabase#isAvailable")
+class HitPartitionMigrationIntegrationTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    private static final LocalDateTime OLD = NOW.minusDays(40);
+    private static final LocalDateTime RECENT = NOW.minusDays(2);
+
+    @Autowired
+    private HitPartitionRepository partitionRepository;
+
+    @Autowired
+    private StatService statService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void baselineDatabase(DynamicPropertyRegistry registry) {
+        String url = PostgresTestDatabase.createSchema("baseline");
+        PostgresTestDatabase.execute(url,
+                "CREATE TABLE hits (id BIGINT GENERATED BY DEFAULT AS IDENTITY, app VARCHAR(255) NOT NULL, " +
+                        "ip VARCHAR(255) NOT NULL, timestamp TIMESTAMP(6) NOT NULL, uri VARCHAR(255) NOT NULL, " +
+                        "PRIMARY KEY (id))",
+                insert("/events/1", "192.168.1.1", OLD),
+                insert("/events/1", "192.168.1.1", OLD.plusMinutes(1)),
+                insert("/events/1", "10.0.0.2", RECENT),
+                insert("/events/2", "2001:db8::1", NOW.minusMinutes(5)));
+        registry.add("spring.datasource.url", () -> url);
+        registry.add("spring.datasource.username", PostgresTestDatabase::username);
+        registry.add("spring.datasource.password", PostgresTestDatabase::password);
+        registry.add("stats.wal.dir", () -> PostgresTestDatabase.tempDirectory("stats-wal"));
+    }
+
+    @Test
+    void startup_shouldConvertBaselineTableIntoDailyPartitions() {
+        assertTrue(partitionRepository.isPartitioned());
+        List<String> partitions = partitionRepository.findPartitions();
+        assertTrue(partitions.contains(HitPartitionRepository.DEFAULT_PARTITION));
+        assertTrue(partitions.contains(partitionName(OLD)));
+        assertTrue(partitions.contains(partitionName(RECENT)));
+        assertTrue(partitions.contains(partitionName(NOW)));
+        assertNull(jdbcTemplate.queryForObject("SELECT to_regclass('hits_unpartitioned')::text", String.class));
+
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits", Long.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " +
+                HitPartitionRepository.DEFAULT_PARTITION, Long.class));
+    }
+
+    @Test
+    void startup_shouldKeepLegacyHitsReadableAndContinueIds() {
+        List<ViewStats> stats = statService.getStats(NOW.minusYears(1), NOW.plusMinutes(1), null, false);
+        List<ViewStats> unique = statService.getStats(NOW.minusYears(1), NOW.plusMinutes(1), null, true);
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 3L),
+                new ViewStats("ewm-main-service", "/events/2", 1L)), stats);
+        assertEquals(2L, unique.get(0).getHits());
+
+        Long id = jdbcTemplate.queryForObject("INSERT INTO hits (app_id, uri_id, ip, timestamp) " +
+                "SELECT app_id, uri_id, ip, LOCALTIMESTAMP FROM hits ORDER BY id LIMIT 1 RETURNING id", Long.class);
+        assertTrue(id > 4, "id после переноса: " + id);
+    }
+
+    private static String insert(String uri, String ip, LocalDateTime timestamp) {
+        return String.format("INSERT INTO hits (app, ip, timestamp, uri) VALUES ('ewm-main-service', '%s', " +
+                "TIMESTAMP '%s', '%s')", ip, timestamp.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME).replace('T', ' '),
+                uri);
+    }
+
+    private static String partitionName(LocalDateTime day) {
+        return "hits_p" + day.format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+}
@@ -0,0 +1,80 @@
+package ru.practicum.stats.repository;
+
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.UUID;
+
+// PostgreSQL для тестов, которым не хватает H2: секционирование, DO-блоки Schema.sql, настройки по умолчанию.
+// Сервер берётся из -Dstats.test.postgres.url (и .username, .password), иначе поднимается контейнер
+// Testcontainers; без обоих тесты с @EnabledIf("...#isAvailable") пропускаются. Каждый тест получает свою схему
+public final class PostgresTestDatabase {
+    private static final String URL = System.getProperty("stats.test.postgres.url", "");
+    private static final String USERNAME = System.getProperty("stats.test.postgres.username", "admin");
+    private static final String PASSWORD = System.getProperty("stats.test.postgres.password", "admin");
+
+    private static PostgreSQLContainer<?> container;
+
+    private PostgresTestDatabase() {
+    }
+
+    public static boolean isAvailable() {
+        return !URL.isEmpty() || DockerClientFactory.instance().isDockerAvailable();
+    }
+
+    // Новая пустая схема, в которой приложение создаст таблицы. Адрес для spring.datasource.url
+    public static synchronized String createSchema(String prefix) {
+        String schema = (prefix + "_" + UUID.randomUUID().toString().substring(0, 8)).toLowerCase(Locale.ROOT);
+        execute(serverUrl(), "CREATE SCHEMA " + schema);
+        String url = serverUrl();
+        return url + (url.contains("?") ? "&" : "?") + "currentSchema=" + schema + "&reWriteBatchedInserts=true";
+    }
+
+    public static String username() {
+        return URL.isEmpty() ? container().getUsername() : USERNAME;
+    }
+
+    public static String password() {
+        return URL.isEmpty() ? container().getPassword() : PASSWORD;
+    }
+
+    public static void execute(String url, String... statements) {
+        try (Connection connection = DriverManager.getConnection(url, username(), password());
+             Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Ошибка тестовой базы PostgreSQL: " + e.getMessage(), e);
+        }
+    }
+
+    // Каталог журнала записи для контекста с настройками по умолчанию, чтобы тест не писал в data/wal
+    public static String tempDirectory(String prefix) {
+        try {
+            return Files.createTempDirectory(prefix).toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String serverUrl() {
+        return URL.isEmpty() ? container().getJdbcUrl() : URL;
+    }
+
+    private static synchronized PostgreSQLContainer<?> container() {
+        if (container == null) {
+            container = new PostgreSQLContainer<>("postgres:16-alpine");
+            container.start();
+        }
+        return container;
+    }
+}
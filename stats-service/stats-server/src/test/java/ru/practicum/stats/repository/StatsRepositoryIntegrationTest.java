@@ -14,6 +14,7 @@ import ru.practicum.stats.model.Hit;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -118,6 +119,43 @@ class StatsRepositoryIntegrationTest {
         );
     }
 
+    @Test
+    void getStats_shouldFilterByUriPatternsInDatabase() {
+        entityManager.persist(Hit.builder()
+                .app("ewm-main-service")
+                .uri("/events/1/comments")
+                .ip("192.168.1.5")
+                .timestamp(LocalDateTime.of(2024, 1, 1, 14, 0))
+                .build());
+        entityManager.flush();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+        List<ViewStats> singleSegment = statsRepository.getStats(start, end, List.of("/events/*"), false);
+        List<ViewStats> anyTail = statsRepository.getStats(start, end, List.of("/events/**"), false);
+        List<ViewStats> mixed = statsRepository.getStats(start, end, List.of("/events/{id}/comments", "/events/2"), false);
+
+        assertEquals(3, singleSegment.size());
+        assertTrue(singleSegment.stream().noneMatch(s -> s.getUri().equals("/events/1/comments")));
+        assertEquals(4, anyTail.size());
+        assertEquals(List.of("/events/1/comments", "/events/2"),
+                mixed.stream().map(ViewStats::getUri).sorted().toList());
+        assertTrue(statsRepository.getStats(start, end, List.of("/users/*"), false).isEmpty());
+    }
+
+    @Test
+    void streamStats_shouldReturnSameRowsAsGetStats() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+        List<ViewStats> streamed;
+        try (Stream<ViewStats> stats = statsRepository.streamStats(start, end, null, true)) {
+            streamed = stats.toList();
+        }
+
+        assertEquals(statsRepository.getStats(start, end, null, true), streamed);
+    }
+
     @Test
     void getStats_shouldReturnEmptyListWhenNoMatches() {
         LocalDateTime start = LocalDateTime.of(2024, 1, 2, 0, 0); // После всех хитов
@@ -177,4 +215,21 @@ class StatsRepositoryIntegrationTest {
         assertNotNull(uniqueStat);
         assertEquals(2L, uniqueStat.getHits()); // Только уникальные IP
     }
-}
\ No newline at end of file
+
+    @Test
+    void getStats_shouldSumWeightsOfSampledHits() {
+        entityManager.persist(Hit.builder()
+                .app("ewm-main-service")
+                .uri("/events/2")
+                .ip("192.168.1.4")
+                .timestamp(LocalDateTime.of(2024, 1, 1, 14, 0))
+                .weight(8)
+                .build());
+        entityManager.flush();
+
+        List<ViewStats> stats = statsRepository.getStats(LocalDateTime.of(2024, 1, 1, 0, 0),
+                LocalDateTime.of(2024, 1, 2, 0, 0), List.of("/events/2"), false);
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/2", 9L)), stats);
+    }
+}
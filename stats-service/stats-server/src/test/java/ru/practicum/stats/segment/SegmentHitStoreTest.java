@@ -0,0 +1,181 @@
+package ru.practicum.stats.segment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.service.ParallelQueryExecutor;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentHitStoreTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    private SegmentHitStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = open(100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void getStats_shouldCountHitsInRange() {
+        store.append(hit("/events/1", "10.0.0.1", BASE));
+        store.append(hit("/events/1", "10.0.0.1", BASE.plusMinutes(1)));
+        store.append(hit("/events/2", "10.0.0.2", BASE.plusMinutes(2)));
+        store.append(hit("/events/2", "10.0.0.2", BASE.plusDays(2)));
+
+        List<ViewStats> stats = store.getStats(BASE, BASE.plusDays(1), null, false);
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 2L),
+                new ViewStats("ewm-main-service", "/events/2", 1L)), stats);
+    }
+
+    @Test
+    void getStats_shouldIncludeRangeBoundsAndFilterUris() {
+        store.append(hit("/events/1", "10.0.0.1", BASE));
+        store.append(hit("/events/2", "10.0.0.1", BASE));
+        store.append(hit("/events/1", "10.0.0.1", BASE.plusHours(1)));
+
+        List<ViewStats> stats = store.getStats(BASE, BASE.plusHours(1), List.of("/events/1", "/unknown"), false);
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 2L)), stats);
+        assertTrue(store.getStats(BASE, BASE.plusHours(1), List.of("/unknown"), false).isEmpty());
+    }
+
+    @Test
+    void getStats_shouldCountUniqueIpsAcrossSegments() {
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 350; i++) {
+            hits.add(hit("/events/1", "10.0.0." + (i % 7), BASE.plusMinutes(i)));
+        }
+        store.appendAll(hits);
+
+        assertEquals(4, store.getSegmentCount());
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 7L)),
+                store.getStats(BASE, BASE.plusDays(1), null, true));
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 350L)),
+                store.getStats(BASE, BASE.plusDays(1), null, false));
+    }
+
+    @Test
+    void getTimeSeries_shouldCountHitsAndUniqueIpsPerBucketAcrossSegments() {
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 180; i++) {
+            hits.add(hit("/events/1", "10.0.0." + (i % 7), BASE.plusMinutes(i)));
+        }
+        store.appendAll(hits);
+
+        assertEquals(2, store.getSegmentCount());
+        assertEquals(List.of(
+                        new TimeSeriesStats("ewm-main-service", "/events/1", BASE, 30L, 7L),
+                        new TimeSeriesStats("ewm-main-service", "/events/1", BASE.plusHours(1), 60L, 7L),
+                        new TimeSeriesStats("ewm-main-service", "/events/1", BASE.plusHours(2), 21L, 7L)),
+                store.getTimeSeries(BASE.plusMinutes(30), BASE.plusHours(2).plusMinutes(20), null,
+                        RollupLevel.HOUR));
+    }
+
+    @Test
+    void getStats_shouldSkipBlocksOutsideRangeButKeepOutOfOrderHits() {
+        SegmentHitStore large = open(3 * HitSegment.BLOCK_SIZE);
+        store.close();
+        store = large;
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 2 * HitSegment.BLOCK_SIZE; i++) {
+            hits.add(hit("/events/1", "10.0.0.1", BASE.plusSeconds(i)));
+        }
+        // Опоздавший хит в последнем блоке
+        hits.add(hit("/events/1", "10.0.0.1", BASE.plusSeconds(5)));
+        store.appendAll(hits);
+
+        List<ViewStats> stats = store.getStats(BASE, BASE.plusSeconds(9), null, false);
+
+        assertEquals(11L, stats.get(0).getHits());
+    }
+
+    @Test
+    void open_shouldRestoreSegmentsAfterRestart() {
+        for (int i = 0; i < 150; i++) {
+            store.append(hit("/events/" + (i % 3), "10.0.0." + i, BASE.plusSeconds(i)));
+        }
+        store.close();
+
+        store = open(100);
+        store.append(hit("/events/0", "10.0.0.200", BASE.plusSeconds(500)));
+
+        List<ViewStats> stats = store.getStats(BASE, BASE.plusDays(1), List.of("/events/0"), false);
+        assertEquals(51L, stats.get(0).getHits());
+        assertEquals(2, store.getSegmentCount());
+    }
+
+    @Test
+    void forEachHit_shouldReplayHitsOfRangeAfterRestart() {
+        store.append(hit("/events/1", "10.0.0.1", BASE.minusMinutes(1)));
+        for (int i = 0; i < 150; i++) {
+            store.append(hit("/events/" + (i % 3), "10.0.0." + i, BASE.plusSeconds(i)));
+        }
+        store.append(hit("/events/1", "10.0.0.1", BASE.plusHours(1)));
+        store.close();
+
+        store = open(100);
+        List<Hit> replayed = new ArrayList<>();
+        store.forEachHit(BASE, BASE.plusHours(1), replayed::add);
+
+        assertEquals(150, replayed.size());
+        assertEquals(hit("/events/0", "10.0.0.0", BASE), replayed.get(0));
+        assertEquals(hit("/events/2", "10.0.0.149", BASE.plusSeconds(149)), replayed.get(149));
+    }
+
+    @Test
+    void open_shouldDropRecordsReferencingLostDictionaryEntries() throws IOException {
+        store.append(hit("/events/1", "10.0.0.1", BASE));
+        store.append(hit("/events/2", "10.0.0.2", BASE));
+        store.close();
+
+        // Имитируем сбой: последние строки словаря не успели попасть на диск
+        Path dictionary = directory.resolve("hits-0000000000.dict");
+        try (FileChannel channel = FileChannel.open(dictionary, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+        store = open(100);
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 1L)),
+                store.getStats(BASE, BASE, null, false));
+    }
+
+    private SegmentHitStore open(int recordsPerSegment) {
+        SegmentHitStore opened = new SegmentHitStore(directory.toString(), recordsPerSegment,
+                new ParallelQueryExecutor(true, 4, 10, 24));
+        opened.open();
+        return opened;
+    }
+
+    private Hit hit(String uri, String ip, LocalDateTime timestamp) {
+        return Hit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,103 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.repository.HitPartitionRepository;
+import ru.practicum.stats.repository.PostgresTestDatabase;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Перенос в холодные блоки на секционированной таблице: сутки с партицией переносятся целиком,
+// опоздавшие хиты из партиции по умолчанию - через DELETE
+@SpringBootTest(classes = StatsServerStart.class, properties = {
+        "spring.profiles.active=",
+        "stats.wal.enabled=false",
+        "stats.visitors.enabled=false",
+        "stats.cache.enabled=false"
+})
+@EnabledIf("ru.practicum.stats.repository.PostgresTestDatabase#isAvailable")
+class ColdPartitionCompactionIntegrationTest {
+
+    private static final LocalDate DAY = LocalDate.now().minusDays(40);
+
+    @Autowired
+    private StatService statService;
+
+    @Autowired
+    private HitCompactor compactor;
+
+    @Autowired
+    private HitPartitionManager partitionManager;
+
+    @Autowired
+    private HitPartitionRepository partitionRepository;
+
+    @Autowired
+    private HitRollupAccumulator accumulator;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        String url = PostgresTestDatabase.createSchema("cold");
+        registry.add("spring.datasource.url", () -> url);
+        registry.add("spring.datasource.username", PostgresTestDatabase::username);
+        registry.add("spring.datasource.password", PostgresTestDatabase::password);
+        registry.add("stats.wal.dir", () -> PostgresTestDatabase.tempDirectory("stats-wal"));
+    }
+
+    @Test
+    void compact_shouldMoveWholePartitionAndDropIt() {
+        LocalDateTime start = DAY.atStartOfDay();
+        for (int i = 0; i < 30; i++) {
+            statService.saveHit(hit("/events/" + (i % 3 + 1), "10.0.0." + (i % 7), start.plusMinutes(40L * i)));
+        }
+        String partition = HitPartitionManager.partitionName(DAY);
+        partitionRepository.createPartition(partition, DAY);
+        accumulator.flush();
+        List<ViewStats> expected = statService.getStats(start, start.plusDays(1), null, true);
+        long firstEvent = statService.getStats(start, start.plusDays(1), List.of("/events/1"), true).get(0).getHits();
+
+        compactor.compact();
+
+        assertNull(partitionManager.findPartition(DAY));
+        assertFalse(partitionRepository.findPartitions().contains(partition));
+        assertEquals(30L, jdbcTemplate.queryForObject("SELECT SUM(row_count) FROM hits_cold_blocks", Long.class));
+        assertEquals(Set.copyOf(expected), Set.copyOf(statService.getStats(start, start.plusDays(1), null, true)));
+
+        statService.saveHit(hit("/events/1", "10.0.0.100", start.plusHours(3)));
+        accumulator.flush();
+        assertEquals(1L, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " +
+                HitPartitionRepository.DEFAULT_PARTITION, Long.class));
+
+        compactor.compact();
+
+        assertEquals(0L, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits", Long.class));
+        assertEquals(31L, jdbcTemplate.queryForObject("SELECT SUM(row_count) FROM hits_cold_blocks", Long.class));
+        assertEquals(firstEvent + 1,
+                statService.getStats(start, start.plusDays(1), List.of("/events/1"), true).get(0).getHits());
+    }
+
+    private EndpointHit hit(String uri, String ip, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,135 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = StatsServerStart.class)
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        "stats.cold.enabled=true",
+        "stats.cold.after-days=30",
+        "stats.cold.block-rows=20",
+        "stats.cold.compaction-initial-delay-ms=3600000"
+})
+class ColdStorageIntegrationTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Autowired
+    private StatService statService;
+
+    @Autowired
+    private HitCompactor compactor;
+
+    @Autowired
+    private HitRollupAccumulator accumulator;
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        accumulator.flush();
+        statsRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM hits_cold_blocks");
+        jdbcTemplate.update("DELETE FROM hits_cold_state");
+        for (RollupLevel level : RollupLevel.values()) {
+            jdbcTemplate.update("DELETE FROM " + level.getTable());
+        }
+
+        // Три старых дня хитов раз в 37 минут и немного свежих, которые должны остаться в hits
+        for (int i = 0; i < 3 * 24 * 60 / 37; i++) {
+            LocalDateTime timestamp = BASE.plusMinutes(37L * i).plusSeconds(i % 60);
+            statService.saveHit(hit("/events/" + (i % 2 + 1), "10.0.0." + (i % 50), timestamp));
+        }
+        now = LocalDateTime.now().withNano(0);
+        statService.saveHit(hit("/events/1", "10.0.0.1", now.minusHours(1)));
+        statService.saveHit(hit("/events/1", "::1", now.minusHours(1)));
+        accumulator.flush();
+    }
+
+    @Test
+    void compact_shouldMoveOnlyOldHitsIntoBlocks() {
+        compactor.compact();
+
+        assertEquals(2L, statsRepository.count());
+        Long blocks = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits_cold_blocks", Long.class);
+        Long rows = jdbcTemplate.queryForObject("SELECT SUM(row_count) FROM hits_cold_blocks", Long.class);
+        assertTrue(blocks >= 6, "Блоков: " + blocks);
+        assertEquals(3 * 24 * 60 / 37, rows);
+        assertEquals(BASE.plusDays(3), compactor.getBoundary());
+    }
+
+    @Test
+    void getStats_shouldReturnSameResultsAfterCompaction() {
+        List<List<LocalDateTime>> ranges = List.of(
+                List.of(BASE, BASE.plusDays(3)),
+                List.of(BASE.plusHours(3).plusMinutes(20).plusSeconds(30), BASE.plusDays(2).plusMinutes(10)),
+                List.of(BASE.plusDays(1).plusSeconds(1), now.plusHours(1)));
+        List<List<ViewStats>> expected = ranges.stream()
+                .flatMap(range -> List.of(
+                        statsRepository.getStats(range.get(0), range.get(1), null, false),
+                        statsRepository.getStats(range.get(0), range.get(1), null, true)).stream())
+                .toList();
+
+        compactor.compact();
+
+        for (int i = 0; i < ranges.size(); i++) {
+            LocalDateTime start = ranges.get(i).get(0);
+            LocalDateTime end = ranges.get(i).get(1);
+            assertSameStats(expected.get(2 * i), statService.getStats(start, end, null, false));
+            assertSameStats(expected.get(2 * i + 1), statService.getStats(start, end, null, true));
+            assertSameStats(expected.get(2 * i + 1), statService.getApproximateStats(start, end, null, true));
+        }
+    }
+
+    @Test
+    void getStats_shouldIncludeLateHitsUntilTheyAreCompacted() {
+        compactor.compact();
+        statService.saveHit(hit("/events/2", "10.0.0.200", BASE.plusHours(5)));
+        accumulator.flush();
+
+        List<ViewStats> beforeCompaction = statService.getStats(BASE, BASE.plusDays(1), List.of("/events/2"), true);
+        compactor.compact();
+        List<ViewStats> afterCompaction = statService.getStats(BASE, BASE.plusDays(1), List.of("/events/2"), true);
+
+        assertEquals(20L, beforeCompaction.get(0).getHits());
+        assertEquals(beforeCompaction, afterCompaction);
+        assertEquals(2L, statsRepository.count());
+    }
+
+    private void assertSameStats(List<ViewStats> expected, List<ViewStats> actual) {
+        Comparator<ViewStats> byUri = Comparator.comparing(ViewStats::getUri);
+        assertEquals(expected.stream().sorted(byUri).toList(), actual.stream().sorted(byUri).toList());
+    }
+
+    private EndpointHit hit(String uri, String ip, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,130 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.practicum.stats.repository.HitPartitionRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HitPartitionManagerTest {
+
+    @Mock
+    private HitPartitionRepository partitionRepository;
+
+    @Test
+    void init_shouldCreateMissingPartitionsAhead() {
+        LocalDate today = LocalDate.now();
+        when(partitionRepository.isPartitioned()).thenReturn(true);
+        when(partitionRepository.findPartitions()).thenReturn(List.of(HitPartitionRepository.DEFAULT_PARTITION,
+                HitPartitionManager.partitionName(today)));
+
+        new HitPartitionManager(partitionRepository, true, 2, 0).init();
+
+        verify(partitionRepository, never()).createPartition(HitPartitionManager.partitionName(today), today);
+        verify(partitionRepository).createPartition(HitPartitionManager.partitionName(today.plusDays(1)),
+                today.plusDays(1));
+        verify(partitionRepository).createPartition(HitPartitionManager.partitionName(today.plusDays(2)),
+                today.plusDays(2));
+        verify(partitionRepository, never()).dropPartition(anyString());
+    }
+
+    @Test
+    void dropBefore_shouldDropOnlyExpiredDailyPartitions() {
+        LocalDate today = LocalDate.now();
+        String expired = HitPartitionManager.partitionName(today.minusDays(31));
+        String kept = HitPartitionManager.partitionName(today.minusDays(30));
+        when(partitionRepository.isPartitioned()).thenReturn(true);
+        when(partitionRepository.findPartitions()).thenReturn(List.of(HitPartitionRepository.DEFAULT_PARTITION,
+                expired, kept, HitPartitionManager.partitionName(today)));
+
+        HitPartitionManager manager = new HitPartitionManager(partitionRepository, true, 0, 0);
+        manager.init();
+        verify(partitionRepository, never()).dropPartition(anyString());
+        manager.dropBefore(today.minusDays(30));
+
+        verify(partitionRepository).dropPartition(expired);
+        verify(partitionRepository, never()).dropPartition(kept);
+        verify(partitionRepository, never()).dropPartition(HitPartitionRepository.DEFAULT_PARTITION);
+        verify(partitionRepository).deleteFromDefaultBefore(today.minusDays(30));
+    }
+
+    @Test
+    void maintain_shouldDropPartitionsOlderThanRetention() {
+        LocalDate today = LocalDate.now();
+        String expired = HitPartitionManager.partitionName(today.minusDays(31));
+        String kept = HitPartitionManager.partitionName(today.minusDays(30));
+        when(partitionRepository.isPartitioned()).thenReturn(true);
+        when(partitionRepository.findPartitions()).thenReturn(List.of(HitPartitionRepository.DEFAULT_PARTITION,
+                expired, kept, HitPartitionManager.partitionName(today)));
+
+        new HitPartitionManager(partitionRepository, true, 0, 30).init();
+
+        verify(partitionRepository).dropPartition(expired);
+        verify(partitionRepository, never()).dropPartition(kept);
+        verify(partitionRepository).deleteFromDefaultBefore(today.minusDays(30));
+    }
+
+    @Test
+    void findPartition_shouldReturnOnlyExistingDailyPartition() {
+        LocalDate today = LocalDate.now();
+        when(partitionRepository.isPartitioned()).thenReturn(true);
+        when(partitionRepository.findPartitions()).thenReturn(List.of(HitPartitionRepository.DEFAULT_PARTITION,
+                HitPartitionManager.partitionName(today)));
+
+        HitPartitionManager manager = new HitPartitionManager(partitionRepository, true, 0, 0);
+        manager.init();
+
+        assertEquals(HitPartitionManager.partitionName(today), manager.findPartition(today));
+        assertNull(manager.findPartition(today.minusDays(40)));
+    }
+
+    @Test
+    void maintain_shouldContinueWhenPartitionCreationFails() {
+        LocalDate today = LocalDate.now();
+        when(partitionRepository.isPartitioned()).thenReturn(true);
+        when(partitionRepository.findPartitions()).thenReturn(List.of());
+        doThrow(new DataIntegrityViolationException("ошибка"))
+                .when(partitionRepository).createPartition(HitPartitionManager.partitionName(today), today);
+
+        new HitPartitionManager(partitionRepository, true, 1, 0).init();
+
+        verify(partitionRepository).createPartition(HitPartitionManager.partitionName(today.plusDays(1)),
+                today.plusDays(1));
+    }
+
+    @Test
+    void init_shouldSkipMaintenanceWhenTableIsNotPartitioned() {
+        when(partitionRepository.isPartitioned()).thenReturn(false);
+
+        HitPartitionManager manager = new HitPartitionManager(partitionRepository, true, 7, 30);
+        manager.init();
+        manager.maintain();
+
+        verify(partitionRepository, never()).findPartitions();
+        verify(partitionRepository, never()).createPartition(anyString(), any());
+    }
+
+    @Test
+    void init_shouldDoNothingWhenDisabled() {
+        new HitPartitionManager(partitionRepository, false, 7, 30).init();
+
+        verifyNoInteractions(partitionRepository);
+    }
+
+    @Test
+    void partitionDay_shouldParseOnlyDailyPartitionNames() {
+        assertEquals(LocalDate.of(2024, 3, 5), HitPartitionManager.partitionDay("hits_p20240305"));
+        assertNull(HitPartitionManager.partitionDay(HitPartitionRepository.DEFAULT_PARTITION));
+        assertNull(HitPartitionManager.partitionDay("hits_pbroken"));
+    }
+}
@@ -0,0 +1,99 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.stats.model.Hit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HitSamplerTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Mock
+    private HitWriteBehindBuffer hitBuffer;
+
+    @Mock
+    private HitWriteAheadLog writeAheadLog;
+
+    @Mock
+    private IngestAdmission admission;
+
+    private SimpleMeterRegistry meterRegistry;
+    private HitSampler sampler;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sampler = new HitSampler(hitBuffer, writeAheadLog, admission, meterRegistry, true, 1000, 100, 8, 2);
+    }
+
+    @Test
+    void adjust_shouldRaiseWeightOnlyUnderSustainedBacklogAndLowerWhenDrained() {
+        when(hitBuffer.size()).thenReturn(600);
+        when(writeAheadLog.getBacklog()).thenReturn(500L);
+
+        sampler.adjust();
+        assertEquals(1, sampler.getWeight());
+        sampler.adjust();
+        assertEquals(2, sampler.getWeight());
+        for (int i = 0; i < 10; i++) {
+            sampler.adjust();
+        }
+        assertEquals(8, sampler.getWeight());
+
+        when(hitBuffer.size()).thenReturn(0);
+        when(writeAheadLog.getBacklog()).thenReturn(50L);
+        sampler.adjust();
+        assertEquals(4, sampler.getWeight());
+        assertEquals(4, meterRegistry.get("stats.ingest.sample.weight").gauge().value());
+    }
+
+    @Test
+    void sample_shouldKeepEveryWeightedHitPerUriSoWeightsSumToHitCount() {
+        when(hitBuffer.size()).thenReturn(5000);
+        for (int i = 0; i < 4; i++) {
+            sampler.adjust();
+        }
+        assertEquals(4, sampler.getWeight());
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            hits.add(hit("/events/1"));
+            hits.add(hit("/events/2"));
+        }
+
+        List<Hit> kept = sampler.sample(hits);
+
+        assertEquals(200, kept.size());
+        assertTrue(kept.stream().allMatch(hit -> hit.getWeight() == 4));
+        assertEquals(400, kept.stream().filter(hit -> hit.getUri().equals("/events/1"))
+                .mapToInt(Hit::getWeight).sum());
+        assertEquals(600, meterRegistry.counter("stats.ingest.sampled-out").count());
+        assertTrue(hits.stream().allMatch(hit -> hit.getWeight() == 1));
+    }
+
+    @Test
+    void sample_shouldReturnHitsAsIsWithoutOverload() {
+        List<Hit> hits = List.of(hit("/events/1"), hit("/events/2"));
+
+        assertSame(hits, sampler.sample(hits));
+    }
+
+    private Hit hit(String uri) {
+        return Hit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("192.168.1.1")
+                .timestamp(BASE)
+                .build();
+    }
+}
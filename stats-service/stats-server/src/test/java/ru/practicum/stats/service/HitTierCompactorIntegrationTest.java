@@ -0,0 +1,157 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.exception.ValidationException;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.repository.ColdBlockRepository;
+import ru.practicum.stats.repository.HitBatchRepository;
+import ru.practicum.stats.repository.HitRollupRepository;
+import ru.practicum.stats.repository.StatsRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = StatsServerStart.class)
+@ActiveProfiles("test")
+class HitTierCompactorIntegrationTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+    // Сырые хиты остаются с третьих суток, часовые агрегаты - со вторых
+    private static final LocalDateTime RAW_BOUNDARY = BASE.plusDays(2);
+    private static final LocalDateTime HOURLY_BOUNDARY = BASE.plusDays(1);
+    private static final LocalDateTime END = BASE.plusDays(3).plusHours(5).plusMinutes(17);
+
+    @Autowired
+    private StatService statService;
+
+    @Autowired
+    private HitRollupAccumulator accumulator;
+
+    @Autowired
+    private HitRollupRepository rollupRepository;
+
+    @Autowired
+    private HitBatchRepository hitBatchRepository;
+
+    @Autowired
+    private ColdBlockRepository coldBlockRepository;
+
+    @Autowired
+    private HitPartitionManager partitionManager;
+
+    @Autowired
+    private ColdStatsReader coldStatsReader;
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private HitTierCompactor tiers;
+    private RollupStatsReader reader;
+
+    @BeforeEach
+    void setUp() {
+        accumulator.flush();
+        statsRepository.deleteAll();
+        for (RollupLevel level : RollupLevel.values()) {
+            jdbcTemplate.update("DELETE FROM " + level.getTable());
+        }
+        for (int i = 0; i < 4 * 24 * 60 / 37; i++) {
+            LocalDateTime timestamp = BASE.plusMinutes(37L * i).plusSeconds(i % 60);
+            statService.saveHit(hit("/events/" + (i % 2 + 1), "10.0.0." + (i % 50), timestamp));
+        }
+        accumulator.flush();
+
+        LocalDate today = LocalDate.now();
+        tiers = new HitTierCompactor(accumulator, rollupRepository, hitBatchRepository, coldBlockRepository,
+                partitionManager, true, (int) ChronoUnit.DAYS.between(RAW_BOUNDARY.toLocalDate(), today),
+                (int) ChronoUnit.DAYS.between(HOURLY_BOUNDARY.toLocalDate(), today));
+        reader = new RollupStatsReader(accumulator, rollupRepository, statsRepository, coldStatsReader, tiers);
+    }
+
+    @Test
+    void compact_shouldRemoveRawHitsAndFinerRollupsPastTheirTiers() {
+        long hitsAfterRawBoundary = statsRepository.getStats(RAW_BOUNDARY, BASE.plusDays(5), null, false).stream()
+                .mapToLong(ViewStats::getHits)
+                .sum();
+
+        tiers.compact();
+
+        assertEquals(hitsAfterRawBoundary, statsRepository.count());
+        assertEquals(0, countBefore("hits_rollup_minute", RAW_BOUNDARY));
+        assertEquals(0, countBefore("hits_rollup_hour", HOURLY_BOUNDARY));
+        assertTrue(countBefore("hits_rollup_hour", RAW_BOUNDARY) > 0);
+        assertEquals(2 * 2, countBefore("hits_rollup_day", RAW_BOUNDARY));
+    }
+
+    @Test
+    void getStats_shouldStitchTiersAndWidenDownsampledStart() {
+        LocalDateTime dailyStart = BASE.plusHours(5).plusMinutes(13);
+        LocalDateTime hourlyStart = HOURLY_BOUNDARY.plusHours(7).plusMinutes(13);
+        List<ViewStats> expectedDaily = statsRepository.getStats(BASE, END, null, false);
+        List<ViewStats> expectedHourly = statsRepository.getStats(HOURLY_BOUNDARY.plusHours(7), END,
+                List.of("/events/1"), false);
+        List<ViewStats> expectedUnique = statsRepository.getStats(BASE, END, null, true);
+
+        tiers.compact();
+
+        assertSameStats(expectedDaily, reader.getStats(dailyStart, END, null));
+        assertSameStats(expectedHourly, reader.getStats(hourlyStart, END, List.of("/events/1")));
+        assertSameStats(expectedUnique, reader.getApproximateUniqueStats(dailyStart, END, null));
+        assertEquals(RollupLevel.DAY, tiers.levelAt(dailyStart));
+        assertEquals(RollupLevel.HOUR, tiers.levelAt(hourlyStart));
+        assertEquals(RollupLevel.MINUTE, tiers.levelAt(RAW_BOUNDARY));
+    }
+
+    @Test
+    void getTimeSeries_shouldReadWholeDailyBucketsFromRollupsAfterCompaction() {
+        LocalDateTime dailyStart = BASE.plusHours(5).plusMinutes(13);
+        List<ViewStats> expectedSecondDay = statsRepository.getStatsBeforeEnd(BASE.plusDays(1), BASE.plusDays(2),
+                List.of("/events/2"), false);
+        List<ViewStats> expectedSecondDayUnique = statsRepository.getStatsBeforeEnd(BASE.plusDays(1),
+                BASE.plusDays(2), List.of("/events/2"), true);
+
+        tiers.compact();
+        List<TimeSeriesStats> series = reader.getTimeSeries(RollupLevel.DAY, dailyStart, END, List.of("/events/2"));
+
+        assertEquals(4, series.size());
+        assertEquals(BASE, series.get(0).getBucket());
+        assertEquals(new TimeSeriesStats("ewm-main-service", "/events/2", BASE.plusDays(1),
+                expectedSecondDay.get(0).getHits(), expectedSecondDayUnique.get(0).getHits()), series.get(1));
+        assertThrows(ValidationException.class,
+                () -> reader.getTimeSeries(RollupLevel.HOUR, dailyStart, END, null));
+    }
+
+    private long countBefore(String table, LocalDateTime before) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE bucket < ?", Long.class, before);
+    }
+
+    private void assertSameStats(List<ViewStats> expected, List<ViewStats> actual) {
+        Comparator<ViewStats> byUri = Comparator.comparing(ViewStats::getUri);
+        assertEquals(expected.stream().sorted(byUri).toList(), actual.stream().sorted(byUri).toList());
+    }
+
+    private EndpointHit hit(String uri, String ip, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
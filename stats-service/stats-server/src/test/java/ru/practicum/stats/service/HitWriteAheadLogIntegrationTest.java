@@ -0,0 +1,81 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.repository.HitWalRepository;
+import ru.practicum.stats.repository.StatsRepository;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = StatsServerStart.class)
+@ActiveProfiles("test")
+class HitWriteAheadLogIntegrationTest {
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private HitWalRepository walRepository;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        statsRepository.deleteAll();
+    }
+
+    @Test
+    void apply_shouldMoveLoggedHitsToDatabaseOnce() {
+        HitWriteAheadLog wal = wal();
+        wal.init();
+        wal.append(List.of(hit("/events/1"), hit("/events/2")));
+        wal.append(List.of(hit("/events/3")));
+
+        wal.apply();
+        wal.apply();
+
+        assertEquals(3, statsRepository.count());
+        assertEquals(wal.getSyncedLsn(), wal.getAppliedLsn());
+    }
+
+    @Test
+    void init_shouldApplyTailLeftByPreviousRunOnly() {
+        HitWriteAheadLog first = wal();
+        first.init();
+        first.append(List.of(hit("/events/1")));
+        first.apply();
+        // Падение до применения второй записи: журнал не закрывается и не применяется
+        first.append(List.of(hit("/events/2")));
+
+        HitWriteAheadLog restarted = wal();
+        restarted.init();
+
+        assertEquals(2, statsRepository.count());
+        assertEquals(restarted.getSyncedLsn(), restarted.getAppliedLsn());
+        restarted.shutdown();
+    }
+
+    private HitWriteAheadLog wal() {
+        return new HitWriteAheadLog(walRepository, true, directory.toString(), 1 << 20, true, 100);
+    }
+
+    private Hit hit(String uri) {
+        return Hit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("192.168.1.1")
+                .timestamp(LocalDateTime.of(2024, 1, 1, 12, 0))
+                .build();
+    }
+}
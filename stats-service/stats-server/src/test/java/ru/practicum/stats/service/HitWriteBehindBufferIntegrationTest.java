@@ -0,0 +1,75 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(classes = StatsServerStart.class)
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        "stats.ingest.buffer-capacity=4",
+        "stats.ingest.batch-size=3",
+        "stats.ingest.flush-interval-ms=600000"
+})
+class HitWriteBehindBufferIntegrationTest {
+
+    @Autowired
+    private HitWriteBehindBuffer hitBuffer;
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @BeforeEach
+    void setUp() {
+        hitBuffer.flush();
+        statsRepository.deleteAll();
+    }
+
+    @Test
+    void flush_shouldWriteBufferedHitsInBatches() {
+        hitBuffer.addAll(hits(3));
+
+        assertEquals(3, hitBuffer.size());
+        assertEquals(0, statsRepository.count());
+
+        hitBuffer.flush();
+
+        assertEquals(0, hitBuffer.size());
+        assertEquals(3, statsRepository.count());
+    }
+
+    @Test
+    void addAll_shouldFlushInCallerThreadWhenBufferIsFull() {
+        hitBuffer.addAll(hits(10));
+
+        assertEquals(10, statsRepository.count() + hitBuffer.size());
+        assertEquals(true, hitBuffer.size() <= 4);
+
+        hitBuffer.flush();
+
+        assertEquals(10, statsRepository.count());
+    }
+
+    private List<Hit> hits(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> Hit.builder()
+                        .app("ewm-main-service")
+                        .uri("/events/" + i)
+                        .ip("192.168.1." + i)
+                        .timestamp(LocalDateTime.of(2024, 1, 1, 10, 0).plusMinutes(i))
+                        .build())
+                .toList();
+    }
+}
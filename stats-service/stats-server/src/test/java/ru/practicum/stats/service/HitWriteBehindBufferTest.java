@@ -0,0 +1,110 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import ru.practicum.stats.exception.StatsPersistenceException;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.repository.HitBatchRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HitWriteBehindBufferTest {
+
+    @Mock
+    private HitBatchRepository hitBatchRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void flush_shouldRetryFailedBatchInsteadOfDroppingIt() {
+        HitWriteBehindBuffer buffer = buffer(10, 2);
+        doThrow(new DataAccessResourceFailureException("db down"))
+                .doNothing()
+                .when(hitBatchRepository).saveAll(anyList(), anyInt());
+        buffer.addAll(hits(3));
+
+        buffer.flush();
+        assertEquals(3, buffer.size());
+
+        buffer.flush();
+        assertEquals(0, buffer.size());
+        verify(hitBatchRepository, times(2)).saveAll(anyList(), anyInt());
+        assertEquals(1, meterRegistry.counter("stats.ingest.write.retries").count());
+        assertEquals(0, meterRegistry.counter("stats.ingest.lost").count());
+    }
+
+    @Test
+    void flush_shouldCountBatchAsLostAfterMaxRetries() {
+        HitWriteBehindBuffer buffer = buffer(10, 1);
+        doThrow(new DataAccessResourceFailureException("db down"))
+                .when(hitBatchRepository).saveAll(anyList(), anyInt());
+        buffer.addAll(hits(2));
+
+        buffer.flush();
+        buffer.flush();
+
+        assertEquals(0, buffer.size());
+        assertEquals(2, meterRegistry.counter("stats.ingest.lost").count());
+    }
+
+    @Test
+    void addAll_shouldRejectWholeBatchWhenBufferIsFullAndDatabaseIsDown() {
+        HitWriteBehindBuffer buffer = buffer(3, 5);
+        doThrow(new DataAccessResourceFailureException("db down"))
+                .when(hitBatchRepository).saveAll(anyList(), anyInt());
+        buffer.addAll(hits(2));
+
+        assertThrows(StatsPersistenceException.class, () -> buffer.addAll(hits(2)));
+        assertEquals(2, buffer.size());
+        assertEquals(0, meterRegistry.counter("stats.ingest.lost").count());
+    }
+
+    @Test
+    void addAll_shouldWriteBatchLargerThanBufferDirectly() {
+        HitWriteBehindBuffer buffer = buffer(2, 5);
+        List<Hit> batch = hits(3);
+
+        buffer.addAll(batch);
+
+        assertEquals(0, buffer.size());
+        verify(hitBatchRepository).saveAll(batch, 500);
+
+        doThrow(new DataAccessResourceFailureException("db down"))
+                .when(hitBatchRepository).saveAll(anyList(), anyInt());
+        assertThrows(StatsPersistenceException.class, () -> buffer.addAll(hits(3)));
+        assertEquals(0, buffer.size());
+    }
+
+    private HitWriteBehindBuffer buffer(int capacity, int maxRetries) {
+        return new HitWriteBehindBuffer(hitBatchRepository, meterRegistry, capacity, 500, maxRetries, 0);
+    }
+
+    private List<Hit> hits(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> Hit.builder()
+                        .app("ewm-main-service")
+                        .uri("/events/" + i)
+                        .ip("192.168.1." + i)
+                        .timestamp(LocalDateTime.of(2024, 1, 1, 10, 0).plusMinutes(i))
+                        .build())
+                .toList();
+    }
+}
@@ -0,0 +1,101 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import ru.practicum.stats.exception.IngestRejectedException;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestAdmissionTest {
+    private SimpleMeterRegistry meterRegistry;
+    private ExecutorService executor;
+    private CountDownLatch started;
+    private CountDownLatch release;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = Executors.newCachedThreadPool();
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void admit_shouldRejectWithTooManyRequestsOverPerAppLimit() throws InterruptedException {
+        IngestAdmission admission = admission(10, 10, 1000, 2);
+        occupy(admission, "ewm-main-service", 2);
+
+        IngestRejectedException e = assertThrows(IngestRejectedException.class,
+                () -> admission.admit(List.of("ewm-main-service"), () -> "saved"));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+        assertEquals(1, e.getRetryAfterSeconds());
+        assertEquals("saved", admission.admit(List.of("other-service"), () -> "saved"));
+        assertEquals(1, meterRegistry.counter("stats.ingest.rejected", "reason", "app_limit").count());
+    }
+
+    @Test
+    void admit_shouldRejectWithServiceUnavailableWhenQueueIsFull() throws InterruptedException {
+        IngestAdmission admission = admission(1, 0, 1000, 10);
+        occupy(admission, "ewm-main-service", 1);
+
+        IngestRejectedException e = assertThrows(IngestRejectedException.class,
+                () -> admission.admit(List.of("other-service"), () -> "saved"));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        assertEquals(1, meterRegistry.counter("stats.ingest.rejected", "reason", "queue_full").count());
+    }
+
+    @Test
+    void admit_shouldRejectAfterMaxWaitAndAdmitOnceWriterIsFree() throws InterruptedException {
+        IngestAdmission admission = admission(1, 10, 50, 10);
+        occupy(admission, "ewm-main-service", 1);
+
+        assertThrows(IngestRejectedException.class, () -> admission.admit(List.of("other-service"), () -> "saved"));
+        release.countDown();
+
+        assertEquals("saved", admission.admit(List.of("other-service"), () -> "saved"));
+        assertEquals(0, admission.getQueueDepth());
+        assertEquals(1, meterRegistry.counter("stats.ingest.rejected", "reason", "wait_timeout").count());
+        assertTrue(meterRegistry.timer("stats.ingest.wait").totalTime(TimeUnit.MILLISECONDS) >= 50);
+    }
+
+    private IngestAdmission admission(int maxConcurrent, int queueCapacity, long maxWaitMillis, int perAppLimit) {
+        return new IngestAdmission(meterRegistry, true, maxConcurrent, queueCapacity, maxWaitMillis, perAppLimit, 1);
+    }
+
+    // Запросы, занявшие места и ждущие release
+    private void occupy(IngestAdmission admission, String app, int requests) throws InterruptedException {
+        started = new CountDownLatch(requests);
+        for (int i = 0; i < requests; i++) {
+            executor.submit(() -> admission.admit(List.of(app), () -> {
+                started.countDown();
+                awaitRelease();
+                return null;
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.stats.dto.ViewStats;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelQueryExecutorTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private final ParallelQueryExecutor executor = new ParallelQueryExecutor(true, 4, 10, 24);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void split_shouldAlignInnerBoundariesToDaysAndKeepOnlyLastPartInclusive() {
+        LocalDateTime start = BASE.plusHours(5);
+        LocalDateTime end = BASE.plusDays(2).plusHours(3);
+
+        assertEquals(List.of(
+                new ParallelQueryExecutor.Part(start, BASE.plusDays(1), false),
+                new ParallelQueryExecutor.Part(BASE.plusDays(1), BASE.plusDays(2), false),
+                new ParallelQueryExecutor.Part(BASE.plusDays(2), end, true)), executor.split(start, end, true));
+        assertFalse(executor.isParallel(BASE.plusHours(1), BASE.plusHours(20)));
+        assertTrue(executor.isParallel(start, end));
+    }
+
+    @Test
+    void getStats_shouldSumPartialCountsFromAllParts() {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        List<ViewStats> stats = executor.getStats(BASE, BASE.plusDays(10), true, (from, to, includeTo) -> {
+            threads.add(Thread.currentThread().getName());
+            return List.of(new ViewStats("app", "/events/1", 2L), new ViewStats("app", "/events/2", 1L));
+        });
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 20L), new ViewStats("app", "/events/2", 10L)), stats);
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    void getUniqueStats_shouldNotDoubleCountIpsSeenInSeveralParts() {
+        List<ViewStats> stats = executor.getUniqueStats(BASE, BASE.plusDays(5), true, (from, to, includeTo, consumer) -> {
+            consumer.accept(List.of("app", "/events/1"), "10.0.0.1");
+            consumer.accept(List.of("app", "/events/1"), "10.0.1." + from.getDayOfMonth());
+        });
+
+        // 10.0.0.1 есть в каждом из пяти кусков, плюс свой ip у каждого куска
+        assertEquals(List.of(new ViewStats("app", "/events/1", 6L)), stats);
+    }
+
+    @Test
+    void constructor_shouldNotUseMoreThreadsThanDatabaseConnectionsByDefault() {
+        ParallelQueryExecutor defaults = new ParallelQueryExecutor(true, 0, 1, 24);
+        ParallelQueryExecutor configured = new ParallelQueryExecutor(true, 3, 1, 24);
+        try {
+            assertEquals(1, defaults.getParallelism());
+            assertEquals(3, configured.getParallelism());
+        } finally {
+            defaults.shutdown();
+            configured.shutdown();
+        }
+    }
+
+    @Test
+    void invokeAll_shouldRethrowTaskFailure() {
+        assertThrows(IllegalStateException.class, () -> executor.getStats(BASE, BASE.plusDays(3), true,
+                (from, to, includeTo) -> {
+                    throw new IllegalStateException("Ошибка чтения куска");
+                }));
+    }
+}
@@ -0,0 +1,97 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.exception.ValidationException;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.UriKey;
+import ru.practicum.stats.repository.HitRollupRepository;
+import ru.practicum.stats.repository.StatsRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = StatsServerStart.class)
+@ActiveProfiles("test")
+class RealtimeHitCountersIntegrationTest {
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private HitRollupRepository rollupRepository;
+
+    private RealtimeHitCounters counters;
+
+    @BeforeEach
+    void setUp() {
+        statsRepository.deleteAll();
+        counters = new RealtimeHitCounters(true);
+    }
+
+    @Test
+    void getStats_shouldCountHitsOfRequestedMinutes() {
+        LocalDateTime now = LocalDateTime.now();
+        counters.record(hit("/events/1", now));
+        counters.record(hit("/events/1", now.minusMinutes(3)));
+        counters.record(hit("/events/1", now.minusMinutes(10)));
+        counters.record(hit("/events/2", now.minusMinutes(10)));
+        counters.record(hit("/events/2", now.minusMinutes(10)));
+        counters.record(hit("/events/3", now.minusMinutes(90)));
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 2L)), counters.getStats(5, null));
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 3L),
+                new ViewStats("ewm-main-service", "/events/2", 2L)), counters.getStats(15, List.of()));
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/2", 2L)),
+                counters.getStats(60, List.of("/events/2", "/events/3")));
+    }
+
+    @Test
+    void restore_shouldRebuildLastHourFromDatabase() {
+        LocalDateTime now = LocalDateTime.now();
+        statsRepository.saveAll(List.of(hit("/events/1", now.minusMinutes(1)),
+                hit("/events/1", now.minusMinutes(20)),
+                hit("/events/2", now.minusMinutes(40)),
+                hit("/events/2", now.minusHours(2))));
+
+        counters.restore(rollupRepository::forEachHit);
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 2L),
+                new ViewStats("ewm-main-service", "/events/2", 1L)), counters.getStats(60, null));
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 1L)), counters.getStats(5, null));
+    }
+
+    @Test
+    void countBetween_shouldCountUpToNowWhenEndIsInFuture() {
+        LocalDateTime now = LocalDateTime.now();
+        counters.record(hit("/events/1", now.minusMinutes(2)));
+        counters.record(hit("/events/1", now.minusMinutes(1)));
+        counters.record(hit("/events/2", now.minusMinutes(30)));
+
+        Map<UriKey, Long> counts = counters.countBetween(now.minusMinutes(5), now.plusYears(3), null);
+
+        assertEquals(Map.of(new UriKey("ewm-main-service", "/events/1"), 2L), counts);
+    }
+
+    @Test
+    void getStats_shouldRejectWindowLongerThanHour() {
+        assertThrows(ValidationException.class, () -> counters.getStats(61, null));
+    }
+
+    private Hit hit(String uri, LocalDateTime timestamp) {
+        return Hit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("192.168.1.1")
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,228 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.TimeSeriesStats;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.RollupKey;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.repository.HitRollupRepository;
+import ru.practicum.stats.repository.StatsRepository;
+import ru.practicum.stats.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = StatsServerStart.class)
+@ActiveProfiles("test")
+class RollupStatsReaderIntegrationTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Autowired
+    private StatService statService;
+
+    @Autowired
+    private RollupStatsReader rollupStatsReader;
+
+    @Autowired
+    private HitRollupAccumulator accumulator;
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private HitRollupRepository rollupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        accumulator.flush();
+        statsRepository.deleteAll();
+        for (RollupLevel level : RollupLevel.values()) {
+            jdbcTemplate.update("DELETE FROM " + level.getTable());
+        }
+
+        // Хиты раз в 37 минут на протяжении трёх суток по двум uri
+        for (int i = 0; i < 3 * 24 * 60 / 37; i++) {
+            LocalDateTime timestamp = BASE.plusMinutes(37L * i).plusSeconds(i % 60);
+            statService.saveHit(hit("/events/" + (i % 2 + 1), "10.0.0." + (i % 50), timestamp));
+        }
+        statService.saveHit(hit("/events/1", "10.0.0.1", BASE.plusDays(1)));
+        accumulator.flush();
+    }
+
+    @Test
+    void flush_shouldFillAllRollupLevels() {
+        Long minuteHits = jdbcTemplate.queryForObject("SELECT SUM(hits) FROM hits_rollup_minute", Long.class);
+        Long hourHits = jdbcTemplate.queryForObject("SELECT SUM(hits) FROM hits_rollup_hour", Long.class);
+        Long dayRows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits_rollup_day", Long.class);
+
+        assertEquals(statsRepository.count(), minuteHits);
+        assertEquals(statsRepository.count(), hourHits);
+        assertEquals(6L, dayRows);
+    }
+
+    @Test
+    void getStats_shouldMatchRawCountsForUnalignedRange() {
+        LocalDateTime start = BASE.plusHours(5).plusMinutes(13).plusSeconds(7);
+        LocalDateTime end = BASE.plusDays(2).plusHours(17).plusMinutes(41).plusSeconds(3);
+
+        assertSameStats(statsRepository.getStats(start, end, null, false),
+                rollupStatsReader.getStats(start, end, null));
+    }
+
+    @Test
+    void getStats_shouldMatchRawCountsForAlignedRangeAndBoundaryHit() {
+        LocalDateTime start = BASE;
+        LocalDateTime end = BASE.plusDays(1);
+
+        assertSameStats(statsRepository.getStats(start, end, null, false),
+                rollupStatsReader.getStats(start, end, null));
+    }
+
+    @Test
+    void getStats_shouldFilterByUris() {
+        LocalDateTime start = BASE.minusDays(10);
+        LocalDateTime end = BASE.plusDays(10);
+
+        List<ViewStats> stats = rollupStatsReader.getStats(start, end, List.of("/events/2"));
+
+        assertEquals(1, stats.size());
+        assertEquals("/events/2", stats.get(0).getUri());
+        assertSameStats(statsRepository.getStats(start, end, List.of("/events/2"), false), stats);
+    }
+
+    @Test
+    void getStats_shouldIncludeHitsAfterWatermarkFromRawTable() {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        statService.saveHit(hit("/events/3", "10.0.0.1", now));
+
+        List<ViewStats> stats = rollupStatsReader.getStats(BASE, now.plusMinutes(1), List.of("/events/3"));
+
+        assertEquals(1, stats.size());
+        assertEquals(1L, stats.get(0).getHits());
+    }
+
+    @Test
+    void getStats_shouldSortByHitsDescending() {
+        List<ViewStats> stats = rollupStatsReader.getStats(BASE, BASE.plusDays(3), null);
+
+        assertEquals(2, stats.size());
+        assertTrue(stats.get(0).getHits() >= stats.get(1).getHits());
+    }
+
+    @Test
+    void streamStats_shouldMatchRawCountsInOneSortedPass() {
+        LocalDateTime start = BASE.plusHours(5).plusMinutes(13).plusSeconds(7);
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        statService.saveHit(hit("/events/2", "10.0.0.1", now));
+
+        List<ViewStats> streamed = new ArrayList<>();
+        rollupStatsReader.streamStats(start, now.plusMinutes(1), null, streamed::add);
+        List<ViewStats> filtered = new ArrayList<>();
+        rollupStatsReader.streamStats(start, now.plusMinutes(1), List.of("/events/2"), filtered::add);
+
+        assertSameStats(statsRepository.getStats(start, now.plusMinutes(1), null, false), streamed);
+        assertTrue(streamed.get(0).getHits() >= streamed.get(1).getHits());
+        assertSameStats(statsRepository.getStats(start, now.plusMinutes(1), List.of("/events/2"), false), filtered);
+    }
+
+    @Test
+    void getTimeSeries_shouldMatchOneQueryPerBucket() {
+        LocalDateTime start = BASE.plusHours(5).plusMinutes(13).plusSeconds(7);
+        LocalDateTime end = BASE.plusDays(2).plusHours(17).plusMinutes(41).plusSeconds(3);
+        List<TimeSeriesStats> expected = new ArrayList<>();
+        for (LocalDateTime bucket = RollupLevel.DAY.floor(start); !bucket.isAfter(end); bucket = bucket.plusDays(1)) {
+            LocalDateTime from = bucket.isBefore(start) ? start : bucket;
+            LocalDateTime to = bucket.plusDays(1);
+            List<ViewStats> hits = to.isAfter(end)
+                    ? statsRepository.getStats(from, end, List.of("/events/1"), false)
+                    : statsRepository.getStatsBeforeEnd(from, to, List.of("/events/1"), false);
+            List<ViewStats> unique = to.isAfter(end)
+                    ? statsRepository.getStats(from, end, List.of("/events/1"), true)
+                    : statsRepository.getStatsBeforeEnd(from, to, List.of("/events/1"), true);
+            expected.add(new TimeSeriesStats("ewm-main-service", "/events/1", bucket,
+                    hits.get(0).getHits(), unique.get(0).getHits()));
+        }
+
+        assertEquals(expected, rollupStatsReader.getTimeSeries(RollupLevel.DAY, start, end, List.of("/events/1")));
+    }
+
+    @Test
+    void flush_shouldStoreSketchesForHourAndDayBuckets() {
+        Long hourRowsWithoutSketch = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM hits_rollup_hour WHERE ip_sketch IS NULL", Long.class);
+        Long dayRowsWithoutSketch = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM hits_rollup_day WHERE ip_sketch IS NULL", Long.class);
+
+        assertEquals(0L, hourRowsWithoutSketch);
+        assertEquals(0L, dayRowsWithoutSketch);
+    }
+
+    @Test
+    void getApproximateUniqueStats_shouldMatchExactUniqueCountsForSmallSets() {
+        LocalDateTime start = BASE.plusHours(3).plusMinutes(20);
+        LocalDateTime end = BASE.plusDays(2).plusHours(5).plusMinutes(10);
+
+        assertSameStats(statsRepository.getStats(start, end, null, true),
+                rollupStatsReader.getApproximateUniqueStats(start, end, null));
+    }
+
+    @Test
+    void getApproximateUniqueStats_shouldNotDoubleCountIpsAcrossBuckets() {
+        List<ViewStats> stats = rollupStatsReader.getApproximateUniqueStats(BASE.minusDays(1), BASE.plusDays(5),
+                List.of("/events/1"));
+
+        assertEquals(1, stats.size());
+        assertEquals(26L, stats.get(0).getHits());
+    }
+
+    @Test
+    void mergeSketches_shouldKeepSketchWrittenBeforeCountRow() {
+        LocalDateTime bucket = BASE.plusDays(5);
+        HyperLogLog sketch = new HyperLogLog();
+        sketch.offer("10.0.0.1");
+        sketch.offer("10.0.0.2");
+
+        rollupRepository.mergeSketches(RollupLevel.HOUR, Map.of(new RollupKey("ewm-main-service", "/events/9", bucket),
+                sketch));
+        rollupRepository.apply(Map.of(new RollupKey("ewm-main-service", "/events/9", bucket), 3L), Map.of(),
+                LocalDateTime.now());
+
+        Long hits = jdbcTemplate.queryForObject(
+                "SELECT hits FROM hits_rollup_hour WHERE uri = '/events/9'", Long.class);
+        byte[] stored = jdbcTemplate.queryForObject(
+                "SELECT ip_sketch FROM hits_rollup_hour WHERE uri = '/events/9'", byte[].class);
+        assertEquals(3L, hits);
+        assertNotNull(stored);
+        assertEquals(2L, HyperLogLog.fromBytes(stored).cardinality());
+    }
+
+    private void assertSameStats(List<ViewStats> expected, List<ViewStats> actual) {
+        Comparator<ViewStats> byUri = Comparator.comparing(ViewStats::getUri);
+        assertEquals(expected.stream().sorted(byUri).toList(), actual.stream().sorted(byUri).toList());
+    }
+
+    private EndpointHit hit(String uri, String ip, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,76 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.segment.SegmentHitStore;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Профиль segment: контекст поднимается без источника данных, счётчики в памяти восстанавливаются из сегментов
+@SpringBootTest(classes = StatsServerStart.class)
+@ActiveProfiles("segment")
+class SegmentStatServiceIntegrationTest {
+    private static final LocalDateTime NOW = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private StatService statService;
+
+    @Autowired
+    private SegmentHitStore store;
+
+    @DynamicPropertySource
+    static void segments(DynamicPropertyRegistry registry) throws IOException {
+        String directory = Files.createTempDirectory("stats-segments").toString();
+        registry.add("stats.segment.dir", () -> directory);
+    }
+
+    @Test
+    void context_shouldNotCreateDatabaseComponents() {
+        assertInstanceOf(SegmentStatService.class, statService);
+        assertTrue(context.getBeansOfType(DataSource.class).isEmpty());
+        assertTrue(context.getBeansOfType(HitRollupAccumulator.class).isEmpty());
+        assertTrue(context.getBeansOfType(HitWriteAheadLog.class).isEmpty());
+        assertTrue(context.getBeansOfType(StatsResultCache.class).isEmpty());
+    }
+
+    @Test
+    void restore_shouldRebuildRealtimeCountersAndTopFromSegments() {
+        statService.saveHits(List.of(hit("/events/1", NOW.minusMinutes(5)), hit("/events/1", NOW.minusMinutes(2)),
+                hit("/events/2", NOW.minusHours(3))));
+
+        RealtimeHitCounters counters = new RealtimeHitCounters(true);
+        counters.restore(store::forEachHit);
+        TopUriTracker tracker = new TopUriTracker(null, true, 100);
+        tracker.restore(store::forEachHit);
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 2L)), counters.getStats(60, null));
+        assertEquals(2, tracker.getTop("day", 10).size());
+    }
+
+    private EndpointHit hit(String uri, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("10.0.0.1")
+                .timestamp(timestamp)
+                .build();
+    }
+}
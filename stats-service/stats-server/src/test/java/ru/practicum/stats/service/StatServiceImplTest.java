@@ -1,10 +1,12 @@
 package ru.practicum.stats.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.dao.DataAccessException;
 import ru.practicum.stats.dto.EndpointHit;
@@ -13,10 +15,14 @@ import ru.practicum.stats.exception.StatsPersistenceException;
 import ru.practicum.stats.exception.ValidationException;
 import ru.practicum.stats.mapper.HitMapper;
 import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.repository.HitRollupRepository;
 import ru.practicum.stats.repository.StatsRepository;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -30,6 +36,43 @@ class StatServiceImplTest {
     @Mock
     private HitMapper hitMapper;
 
+    @Mock
+    private HitWriteBehindBuffer hitBuffer;
+
+    @Mock
+    private HitWriteAheadLog writeAheadLog;
+
+    @Mock
+    private HitRollupAccumulator rollupAccumulator;
+
+    @Mock
+    private RollupStatsReader rollupStatsReader;
+
+    @Mock
+    private ColdStatsReader coldStatsReader;
+
+    @Mock
+    private TopUriTracker topUriTracker;
+
+    @Mock
+    private RealtimeHitCounters realtimeHitCounters;
+
+    @Mock
+    private StatsResultCache statsResultCache;
+
+    @Mock
+    private VisitorBitmapIndex visitorIndex;
+
+    @Mock
+    private ParallelQueryExecutor parallelExecutor;
+
+    @Mock
+    private HitRollupRepository rollupRepository;
+
+    @Spy
+    private HitSampler hitSampler = new HitSampler(null, null, null, new SimpleMeterRegistry(), false,
+            50000, 5000, 64, 5);
+
     @InjectMocks
     private StatServiceImpl statService;
 
@@ -38,6 +81,10 @@ class StatServiceImplTest {
 
     @BeforeEach
     void setUp() {
+        lenient().when(statsResultCache.getStats(any(), any(), any(), any()))
+                .thenAnswer(invocation -> invocation.<StatsResultCache.Loader>getArgument(3)
+                        .load(invocation.getArgument(0), invocation.getArgument(1), true));
+
         endpointHit = new EndpointHit();
         endpointHit.setApp("ewm-main-service");
         endpointHit.setUri("/events/1");
@@ -66,6 +113,10 @@ class StatServiceImplTest {
         verify(hitMapper).toHit(endpointHit);
         verify(statsRepository).save(hit);
         verify(hitMapper).toEndpointHit(hit);
+        verify(rollupAccumulator).record(hit);
+        verify(topUriTracker).record(hit);
+        verify(realtimeHitCounters).record(hit);
+        verify(statsResultCache).record(hit);
     }
 
     @Test
@@ -80,6 +131,84 @@ class StatServiceImplTest {
         assertEquals("Database error", exception.getMessage());
     }
 
+    @Test
+    void saveHit_shouldCountSampledHitsOnceInRealtimeWhenWriteAheadLogDisabled() {
+        RealtimeHitCounters counters = new RealtimeHitCounters(true);
+        doAnswer(invocation -> {
+            counters.record(invocation.getArgument(0));
+            return null;
+        }).when(realtimeHitCounters).record(any());
+        Hit weighted = Hit.builder()
+                .app(hit.getApp())
+                .uri(hit.getUri())
+                .ip(hit.getIp())
+                .timestamp(hit.getTimestamp())
+                .weight(4)
+                .build();
+        when(hitMapper.toHit(endpointHit)).thenReturn(hit);
+        doReturn(List.of(weighted)).doReturn(List.of()).when(hitSampler).sample(List.of(hit));
+        when(statsRepository.save(weighted)).thenReturn(weighted);
+
+        for (int i = 0; i < 4; i++) {
+            statService.saveHit(endpointHit);
+        }
+
+        verify(statsRepository).save(weighted);
+        verify(hitMapper).toEndpointHit(weighted);
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 4L)), counters.getStats(1, null));
+    }
+
+    @Test
+    void saveHit_shouldAppendToWriteAheadLogWhenEnabled() {
+        when(writeAheadLog.isEnabled()).thenReturn(true);
+        when(hitMapper.toHit(endpointHit)).thenReturn(hit);
+        when(hitMapper.toEndpointHit(hit)).thenReturn(endpointHit);
+
+        statService.saveHit(endpointHit);
+
+        verify(writeAheadLog).append(List.of(hit));
+        verify(realtimeHitCounters).record(hit);
+        verifyNoInteractions(statsRepository);
+    }
+
+    @Test
+    void saveHits_shouldAppendToWriteAheadLogInsteadOfBufferWhenEnabled() {
+        when(writeAheadLog.isEnabled()).thenReturn(true);
+        when(hitMapper.toHit(endpointHit)).thenReturn(hit);
+
+        statService.saveHits(List.of(endpointHit, endpointHit));
+
+        verify(writeAheadLog).append(List.of(hit, hit));
+        verifyNoInteractions(hitBuffer);
+    }
+
+    @Test
+    void saveHits_shouldCountAllHitsButStoreOnlySampledOnes() {
+        when(hitMapper.toHit(endpointHit)).thenReturn(hit);
+        doReturn(List.of()).when(hitSampler).sample(List.of(hit, hit));
+
+        statService.saveHits(List.of(endpointHit, endpointHit));
+
+        verifyNoInteractions(hitBuffer);
+        verify(rollupAccumulator).recordAll(List.of(hit, hit));
+        verify(realtimeHitCounters).recordAll(List.of(hit, hit));
+    }
+
+    @Test
+    void saveHits_shouldMapAndPassHitsToBuffer() {
+        when(hitMapper.toHit(endpointHit)).thenReturn(hit);
+
+        statService.saveHits(List.of(endpointHit, endpointHit));
+
+        verify(hitMapper, times(2)).toHit(endpointHit);
+        verify(hitBuffer).addAll(List.of(hit, hit));
+        verify(rollupAccumulator).recordAll(List.of(hit, hit));
+        verify(topUriTracker).recordAll(List.of(hit, hit));
+        verify(realtimeHitCounters).recordAll(List.of(hit, hit));
+        verify(statsResultCache).recordAll(List.of(hit, hit));
+        verifyNoInteractions(statsRepository);
+    }
+
     @Test
     void getStats_shouldReturnStatsWhenValidParameters() {
         LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
@@ -139,6 +268,192 @@ class StatServiceImplTest {
         verify(statsRepository).getStats(start, end, uris, false);
     }
 
+    @Test
+    void getStats_shouldUseRollupsForNonUniqueStatsWhenEnabled() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+        List<ViewStats> expectedStats = List.of(new ViewStats("ewm-main-service", "/events/1", 25L));
+
+        when(rollupStatsReader.isEnabled()).thenReturn(true);
+        when(rollupStatsReader.getStats(start, end, true, null)).thenReturn(expectedStats);
+
+        List<ViewStats> result = statService.getStats(start, end, null, false);
+
+        assertEquals(expectedStats, result);
+        verifyNoInteractions(statsRepository);
+    }
+
+    @Test
+    void getStats_shouldUseRawHitsForUniqueStatsEvenWhenRollupsEnabled() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+        when(statsRepository.getStats(start, end, null, true)).thenReturn(List.of());
+
+        statService.getStats(start, end, null, true);
+
+        verify(statsRepository).getStats(start, end, null, true);
+        verify(rollupStatsReader, never()).getStats(any(), any(), anyBoolean(), any());
+    }
+
+    @Test
+    void getStats_shouldUseVisitorBitmapsForUniqueStatsWhenEnabled() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 3, 1, 12, 0);
+        List<ViewStats> expected = List.of(new ViewStats("app", "/events/1", 7L));
+
+        when(visitorIndex.isEnabled()).thenReturn(true);
+        when(visitorIndex.getStats(start, end, null)).thenReturn(expected);
+
+        assertEquals(expected, statService.getStats(start, end, null, true));
+        verify(statsRepository, never()).getStats(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    void getStats_shouldSplitLongRawRangeAcrossParallelExecutorWithoutRollups() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 12, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 3, 1, 12, 0);
+        List<ViewStats> expected = List.of(new ViewStats("app", "/events/1", 70L));
+
+        when(rollupRepository.findFirstDataTime()).thenReturn(start.minusDays(1));
+        when(parallelExecutor.isParallel(start, end)).thenReturn(true);
+        when(parallelExecutor.getStats(eq(start), eq(end), eq(true), any())).thenReturn(expected);
+
+        assertEquals(expected, statService.getStats(start, end, null, false));
+        verify(statsRepository, never()).getStats(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    void getStats_shouldStartParallelPartsAtFirstStoredData() {
+        LocalDateTime start = LocalDateTime.of(1924, 1, 1, 12, 0);
+        LocalDateTime first = LocalDateTime.of(2024, 2, 1, 9, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 3, 1, 12, 0);
+        List<ViewStats> expected = List.of(new ViewStats("app", "/events/1", 7L));
+
+        when(rollupRepository.findFirstDataTime()).thenReturn(first);
+        when(parallelExecutor.isParallel(start, end)).thenReturn(true);
+        when(parallelExecutor.isParallel(first, end)).thenReturn(true);
+        when(parallelExecutor.getUniqueStats(eq(first), eq(end), eq(true), any())).thenReturn(expected);
+
+        assertEquals(expected, statService.getStats(start, end, null, true));
+    }
+
+    @Test
+    void getStats_shouldNotSplitRangeWithoutStoredData() {
+        LocalDateTime start = LocalDateTime.of(1924, 1, 1, 12, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+        when(parallelExecutor.isParallel(start, end)).thenReturn(true);
+
+        assertEquals(List.of(), statService.getStats(start, end, null, true));
+        verify(parallelExecutor, never()).getUniqueStats(any(), any(), anyBoolean(), any());
+    }
+
+    @Test
+    void getStats_shouldPassUriPatternsToRepositoryWithoutExpanding() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+        statService.getStats(start, end, List.of("/events/*", "/users/1"), false);
+
+        verify(statsRepository).getStats(start, end, List.of("/events/*", "/users/1"), false);
+    }
+
+    @Test
+    void getGroupedStats_shouldSumRowsByPattern() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+        when(statsRepository.getStats(eq(start), eq(end), anyList(), eq(false))).thenReturn(List.of(
+                new ViewStats("ewm-main-service", "/events/1", 4L),
+                new ViewStats("ewm-main-service", "/events/2", 3L),
+                new ViewStats("other-service", "/events/2", 1L)));
+
+        List<ViewStats> result = statService.getGroupedStats(start, end, List.of("/events/{id}"));
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/{id}", 7L),
+                new ViewStats("other-service", "/events/{id}", 1L)), result);
+    }
+
+    @Test
+    void getStats_shouldReadColdStorageWhenStartIsCompacted() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+        List<ViewStats> expectedStats = List.of(new ViewStats("ewm-main-service", "/events/1", 3L));
+
+        when(coldStatsReader.isCold(start)).thenReturn(true);
+        when(coldStatsReader.getStats(start, end, true, null, true)).thenReturn(expectedStats);
+
+        List<ViewStats> result = statService.getStats(start, end, null, true);
+
+        assertEquals(expectedStats, result);
+        verifyNoInteractions(statsRepository);
+    }
+
+    @Test
+    void streamStats_shouldReadRawUniqueStatsThroughCursor() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+        ViewStats first = new ViewStats("ewm-main-service", "/events/1", 5L);
+        ViewStats second = new ViewStats("ewm-main-service", "/events/2", 3L);
+
+        when(statsRepository.streamStats(start, end, null, true)).thenReturn(Stream.of(first, second));
+
+        List<ViewStats> received = new ArrayList<>();
+        statService.streamStats(start, end, null, true, received::add);
+
+        assertEquals(List.of(first, second), received);
+        verify(statsRepository, never()).getStats(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    void streamStats_shouldUseRollupsForNonUniqueStats() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+        List<ViewStats> expectedStats = List.of(new ViewStats("ewm-main-service", "/events/1", 5L));
+
+        when(rollupStatsReader.isEnabled()).thenReturn(true);
+        doAnswer(invocation -> {
+            Consumer<ViewStats> consumer = invocation.getArgument(3);
+            expectedStats.forEach(consumer);
+            return null;
+        }).when(rollupStatsReader).streamStats(eq(start), eq(end), isNull(), any());
+
+        List<ViewStats> received = new ArrayList<>();
+        statService.streamStats(start, end, null, false, received::add);
+
+        assertEquals(expectedStats, received);
+        verify(rollupStatsReader, never()).getStats(any(), any(), anyBoolean(), any());
+        verifyNoInteractions(statsRepository);
+    }
+
+    @Test
+    void getApproximateStats_shouldUseSketchesForUniqueStats() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+        List<ViewStats> expectedStats = List.of(new ViewStats("ewm-main-service", "/events/1", 7L));
+
+        when(rollupStatsReader.isEnabled()).thenReturn(true);
+        when(rollupStatsReader.getApproximateUniqueStats(start, end, null)).thenReturn(expectedStats);
+
+        List<ViewStats> result = statService.getApproximateStats(start, end, null, true);
+
+        assertEquals(expectedStats, result);
+        verifyNoInteractions(statsRepository);
+    }
+
+    @Test
+    void getApproximateStats_shouldFallBackToExactStatsWhenRollupsDisabled() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+        when(statsRepository.getStats(start, end, null, true)).thenReturn(List.of());
+
+        statService.getApproximateStats(start, end, null, true);
+
+        verify(statsRepository).getStats(start, end, null, true);
+        verify(rollupStatsReader, never()).getApproximateUniqueStats(any(), any(), any());
+    }
+
     @Test
     void getStats_shouldThrowValidationExceptionWhenStartIsNull() {
         LocalDateTime end = LocalDateTime.of(2024, 1, 2, 0, 0);
@@ -0,0 +1,173 @@
+package ru.practicum.stats.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.RollupLevel;
+import ru.practicum.stats.model.UriKey;
+import ru.practicum.stats.repository.HitRollupRepository;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StatsResultCacheTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+    @Mock
+    private RealtimeHitCounters realtimeHitCounters;
+
+    @Mock
+    private HitRollupRepository rollupRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private List<String> loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        loads = new ArrayList<>();
+    }
+
+    @Test
+    void getStats_shouldLoadPastRangeOnceAndCountHitsAndMisses() {
+        StatsResultCache cache = cache(100, 0);
+
+        List<ViewStats> first = cache.getStats(START, END, List.of("/events/2", "/events/1"), this::load);
+        List<ViewStats> second = cache.getStats(START, END, List.of("/events/1", "/events/2"), this::load);
+
+        assertEquals(first, second);
+        assertEquals(List.of(START + " " + END + " true"), loads);
+        assertEquals(1, meterRegistry.counter("stats.cache.requests", "result", "hit").count());
+        assertEquals(1, meterRegistry.counter("stats.cache.requests", "result", "miss").count());
+        assertEquals(1, meterRegistry.get("stats.cache.size").gauge().value());
+    }
+
+    @Test
+    void recordAll_shouldInvalidateEntriesCoveringLateHit() {
+        when(rollupRepository.findFirstDataTime()).thenReturn(START);
+        StatsResultCache cache = cache(100, 0);
+        cache.init();
+        cache.getStats(START, END, List.of("/events/1"), this::load);
+        cache.getStats(START, END, List.of("/events/2"), this::load);
+
+        cache.record(hit("/events/1", START.plusHours(1)));
+        cache.getStats(START, END, List.of("/events/1"), this::load);
+        cache.getStats(START, END, List.of("/events/2"), this::load);
+
+        assertEquals(3, loads.size());
+        assertEquals(1, meterRegistry.counter("stats.cache.invalidations").count());
+    }
+
+    @Test
+    void recordAll_shouldKeepEntriesOutsideLateHitAndReloadedAfterIt() {
+        when(rollupRepository.findFirstDataTime()).thenReturn(START);
+        StatsResultCache cache = cache(100, 0);
+        cache.init();
+        cache.getStats(START, END, null, this::load);
+        cache.getStats(START, START.plusHours(1), null, this::load);
+
+        cache.record(hit("/events/1", START.plusHours(5)));
+        cache.getStats(START, END, null, this::load);
+        cache.getStats(START, END, null, this::load);
+        cache.getStats(START, START.plusHours(1), null, this::load);
+
+        assertEquals(3, loads.size());
+        assertEquals(1, meterRegistry.counter("stats.cache.invalidations").count());
+        assertEquals(2, meterRegistry.counter("stats.cache.requests", "result", "hit").count());
+    }
+
+    @Test
+    void getStats_shouldEvictLeastRecentlyUsedEntry() {
+        StatsResultCache cache = cache(2, 0);
+        cache.getStats(START, END, null, this::load);
+        cache.getStats(START, END.plusDays(1), null, this::load);
+        cache.getStats(START, END, null, this::load);
+        cache.getStats(START, END.plusDays(2), null, this::load);
+
+        cache.getStats(START, END, null, this::load);
+
+        assertEquals(3, loads.size());
+        assertEquals(1, meterRegistry.counter("stats.cache.evictions").count());
+    }
+
+    @Test
+    void getStats_shouldShareEntryForStartsBeforeFirstData() {
+        LocalDateTime first = START.plusHours(3);
+        when(rollupRepository.findFirstDataTime()).thenReturn(first.plusSeconds(20));
+        StatsResultCache cache = cache(100, 0);
+        cache.init();
+
+        List<ViewStats> firstResult = cache.getStats(START.minusYears(20), END, null, this::load);
+        List<ViewStats> secondResult = cache.getStats(START.minusYears(20).plusSeconds(1), END, null, this::load);
+
+        assertEquals(firstResult, secondResult);
+        assertEquals(List.of(first + " " + END + " true"), loads);
+        assertEquals(1, meterRegistry.counter("stats.cache.requests", "result", "hit").count());
+    }
+
+    @Test
+    void recordAll_shouldDropNarrowedEntriesWhenHitPrecedesFirstData() {
+        when(rollupRepository.findFirstDataTime()).thenReturn(START.plusHours(3));
+        StatsResultCache cache = cache(100, 0);
+        cache.init();
+        cache.getStats(START.minusYears(20), END, List.of("/events/2"), this::load);
+
+        cache.record(hit("/events/1", START.plusHours(1)));
+        cache.getStats(START.minusYears(20).plusSeconds(1), END, List.of("/events/2"), this::load);
+
+        assertEquals(List.of(START.plusHours(3) + " " + END + " true", START.plusHours(1) + " " + END + " true"),
+                loads);
+    }
+
+    @Test
+    void getStats_shouldAddNewestBucketFromRealtimeCounters() {
+        StatsResultCache cache = cache(100, 0);
+        LocalDateTime end = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime start = end.minusHours(2);
+        LocalDateTime bucket = RollupLevel.MINUTE.floor(end).minusMinutes(1);
+        when(realtimeHitCounters.isEnabled()).thenReturn(true);
+        when(realtimeHitCounters.countBetween(eq(bucket), eq(end), any()))
+                .thenReturn(Map.of(new UriKey("ewm-main-service", "/events/1"), 3L));
+
+        cache.getStats(start, end, null, this::load);
+        List<ViewStats> result = cache.getStats(start, end, null, this::load);
+
+        assertEquals(List.of(start + " " + bucket + " false"), loads);
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 8L)), result);
+        verify(realtimeHitCounters, times(2)).countBetween(eq(bucket), eq(end), any());
+    }
+
+    private StatsResultCache cache(int maxEntries, long lateSettleMillis) {
+        return new StatsResultCache(realtimeHitCounters, rollupRepository, meterRegistry, true, maxEntries, 600000,
+                lateSettleMillis);
+    }
+
+    private List<ViewStats> load(LocalDateTime start, LocalDateTime end, boolean includeEnd) {
+        loads.add(start + " " + end + " " + includeEnd);
+        return List.of(new ViewStats("ewm-main-service", "/events/1", 5L));
+    }
+
+    private Hit hit(String uri, LocalDateTime timestamp) {
+        return Hit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("192.168.1.1")
+                .timestamp(timestamp)
+                .build();
+    }
+}
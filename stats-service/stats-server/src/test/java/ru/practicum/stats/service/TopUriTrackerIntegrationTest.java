@@ -0,0 +1,93 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dto.TopViewStats;
+import ru.practicum.stats.exception.ValidationException;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.repository.TopSnapshotRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = StatsServerStart.class)
+@ActiveProfiles("test")
+class TopUriTrackerIntegrationTest {
+
+    @Autowired
+    private TopUriTracker tracker;
+
+    @Autowired
+    private TopSnapshotRepository snapshotRepository;
+
+    @Test
+    void getTop_shouldRankUrisOfWindow() {
+        String app = "top-rank-app";
+        LocalDateTime now = LocalDateTime.now();
+        record(tracker, app, "/events/1", now, 5);
+        record(tracker, app, "/events/2", now.minusMinutes(10), 3);
+        record(tracker, app, "/events/3", now.minusHours(3), 7);
+
+        assertEquals(List.of(new TopViewStats(app, "/events/1", 5L, 0L),
+                new TopViewStats(app, "/events/2", 3L, 0L)), top(tracker, "hour", app));
+        assertEquals(List.of(new TopViewStats(app, "/events/3", 7L, 0L),
+                new TopViewStats(app, "/events/1", 5L, 0L),
+                new TopViewStats(app, "/events/2", 3L, 0L)), top(tracker, "DAY", app));
+    }
+
+    @Test
+    void getTop_shouldSeeLateHitsInClosedBuckets() {
+        String app = "top-late-app";
+        LocalDateTime now = LocalDateTime.now();
+        record(tracker, app, "/events/1", now.minusMinutes(5), 1);
+        assertEquals(1L, top(tracker, "hour", app).get(0).getHits());
+
+        record(tracker, app, "/events/1", now.minusMinutes(5), 2);
+
+        assertEquals(3L, top(tracker, "hour", app).get(0).getHits());
+    }
+
+    @Test
+    void snapshot_shouldSurviveRestart() {
+        String app = "top-restart-app";
+        LocalDateTime now = LocalDateTime.now();
+        record(tracker, app, "/events/1", now.minusMinutes(30), 4);
+        record(tracker, app, "/events/2", now.minusHours(5), 6);
+        tracker.snapshot();
+
+        TopUriTracker restarted = new TopUriTracker(snapshotRepository, true, 1000);
+        restarted.init();
+
+        assertEquals(top(tracker, "hour", app), top(restarted, "hour", app));
+        assertEquals(top(tracker, "day", app), top(restarted, "day", app));
+        assertEquals(2, top(restarted, "day", app).size());
+    }
+
+    @Test
+    void getTop_shouldRejectUnknownWindow() {
+        assertThrows(ValidationException.class, () -> tracker.getTop("week", 10));
+    }
+
+    private void record(TopUriTracker target, String app, String uri, LocalDateTime timestamp, int times) {
+        for (int i = 0; i < times; i++) {
+            target.record(Hit.builder()
+                    .app(app)
+                    .uri(uri)
+                    .ip("10.0.0." + i)
+                    .timestamp(timestamp)
+                    .build());
+        }
+    }
+
+    // Трекер общий для контекста, хиты других тестов отсекаются по app
+    private List<TopViewStats> top(TopUriTracker target, String window, String app) {
+        return target.getTop(window, 1000).stream()
+                .filter(stats -> stats.getApp().equals(app))
+                .toList();
+    }
+}
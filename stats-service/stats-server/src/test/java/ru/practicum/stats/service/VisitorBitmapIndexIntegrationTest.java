@@ -0,0 +1,124 @@
+package ru.practicum.stats.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.practicum.stats.StatsServerStart;
+import ru.practicum.stats.dictionary.HitDictionary;
+import ru.practicum.stats.dto.EndpointHit;
+import ru.practicum.stats.dto.ViewStats;
+import ru.practicum.stats.mapper.HitMapper;
+import ru.practicum.stats.repository.ColdBlockRepository;
+import ru.practicum.stats.repository.HitRollupRepository;
+import ru.practicum.stats.repository.StatsRepository;
+import ru.practicum.stats.repository.VisitorBitmapRepository;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = StatsServerStart.class)
+@ActiveProfiles("test")
+class VisitorBitmapIndexIntegrationTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Autowired
+    private StatService statService;
+
+    @Autowired
+    private HitMapper mapper;
+
+    @Autowired
+    private HitDictionary dictionary;
+
+    @Autowired
+    private VisitorBitmapRepository bitmapRepository;
+
+    @Autowired
+    private HitRollupRepository rollupRepository;
+
+    @Autowired
+    private ColdBlockRepository coldBlockRepository;
+
+    @Autowired
+    private ColdStatsReader coldStatsReader;
+
+    @Autowired
+    private HitTierCompactor tierCompactor;
+
+    @Autowired
+    private StatsRepository statsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private VisitorBitmapIndex index;
+
+    @BeforeEach
+    void setUp() {
+        statsRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM hits_visitors_day");
+        jdbcTemplate.update("DELETE FROM hits_visitors_state");
+
+        // Хиты раз в 37 минут на протяжении пяти суток по двум uri, ip повторяются с разным периодом
+        for (int i = 0; i < 5 * 24 * 60 / 37; i++) {
+            LocalDateTime timestamp = BASE.plusMinutes(37L * i).plusSeconds(i % 60);
+            statService.saveHit(hit("/events/" + (i % 2 + 1), "10.0." + (i % 3) + "." + (i % 71), timestamp));
+        }
+        index = new VisitorBitmapIndex(dictionary, bitmapRepository, rollupRepository, coldBlockRepository,
+                coldStatsReader, tierCompactor, true);
+        index.init();
+    }
+
+    @Test
+    void init_shouldRebuildBitmapsMatchingDistinctIpsForUnalignedRange() {
+        LocalDateTime start = BASE.plusHours(5).plusMinutes(13).plusSeconds(7);
+        LocalDateTime end = BASE.plusDays(4).plusHours(17).plusMinutes(41).plusSeconds(3);
+
+        assertTrue(index.isEnabled());
+        assertSameStats(statsRepository.getStats(start, end, null, true), index.getStats(start, end, null));
+        assertSameStats(statsRepository.getStats(start, end, List.of("/events/2"), true),
+                index.getStats(start, end, List.of("/events/2")));
+        assertSameStats(statsRepository.getStats(BASE.plusHours(1), BASE.plusHours(9), null, true),
+                index.getStats(BASE.plusHours(1), BASE.plusHours(9), null));
+    }
+
+    @Test
+    void flush_shouldAddRecordedVisitorsToStoredBitmaps() {
+        LocalDateTime start = BASE.minusDays(1);
+        LocalDateTime end = BASE.plusDays(6);
+        List<EndpointHit> late = List.of(
+                hit("/events/1", "192.168.1.1", BASE.plusDays(2).plusHours(3)),
+                hit("/events/1", "192.168.1.1", BASE.plusDays(3).plusHours(3)),
+                hit("/events/3", "192.168.1.2", BASE.plusDays(1)));
+        late.forEach(endpointHit -> {
+            statService.saveHit(endpointHit);
+            index.record(mapper.toHit(endpointHit));
+        });
+        index.flush();
+
+        Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits_visitors_day WHERE uri = '/events/3'",
+                Long.class);
+        assertEquals(1L, rows);
+        assertSameStats(statsRepository.getStats(start, end, null, true), index.getStats(start, end, null));
+    }
+
+    private void assertSameStats(List<ViewStats> expected, List<ViewStats> actual) {
+        Comparator<ViewStats> byUri = Comparator.comparing(ViewStats::getApp).thenComparing(ViewStats::getUri);
+        assertEquals(expected.stream().sorted(byUri).toList(), actual.stream().sorted(byUri).toList());
+    }
+
+    private EndpointHit hit(String uri, String ip, LocalDateTime timestamp) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+}
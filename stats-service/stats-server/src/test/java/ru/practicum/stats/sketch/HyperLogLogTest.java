@@ -0,0 +1,63 @@
+package ru.practicum.stats.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void cardinality_shouldBeExactForSmallSets() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 50; i++) {
+            sketch.offer("192.168.1." + i);
+            sketch.offer("192.168.1." + i);
+        }
+
+        assertEquals(50L, sketch.cardinality());
+    }
+
+    @Test
+    void cardinality_shouldStayWithinErrorBoundForLargeSets() {
+        HyperLogLog sketch = new HyperLogLog();
+        int distinct = 200_000;
+        for (int i = 0; i < distinct; i++) {
+            sketch.offer("10." + (i >> 16) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff));
+        }
+
+        double error = Math.abs(sketch.cardinality() - distinct) / (double) distinct;
+        assertTrue(error < 3 * HyperLogLog.RELATIVE_STANDARD_ERROR, "Ошибка оценки: " + error);
+    }
+
+    @Test
+    void merge_shouldEstimateUnion() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 300; i++) {
+            first.offer("ip-" + i);
+            second.offer("ip-" + (i + 200));
+        }
+
+        long union = first.merge(second).cardinality();
+
+        assertTrue(Math.abs(union - 500) <= 10, "Оценка объединения: " + union);
+    }
+
+    @Test
+    void toBytes_shouldRoundTrip() {
+        HyperLogLog sketch = new HyperLogLog();
+        sketch.offer("192.168.1.1");
+        sketch.offer("192.168.1.2");
+
+        HyperLogLog restored = HyperLogLog.fromBytes(sketch.toBytes());
+
+        assertEquals(sketch, restored);
+        assertEquals(2L, restored.cardinality());
+    }
+
+    @Test
+    void fromBytes_shouldRejectWrongSize() {
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[10]));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(null));
+    }
+}
@@ -0,0 +1,103 @@
+package ru.practicum.stats.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceSavingTest {
+
+    @Test
+    void top_shouldBeExactWhileItemsFitCapacity() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(10);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                sketch.offer("/events/" + i, 1);
+            }
+        }
+
+        List<SpaceSaving.Counter<String>> top = sketch.top(3);
+
+        assertEquals(List.of(new SpaceSaving.Counter<>("/events/4", 5, 0),
+                new SpaceSaving.Counter<>("/events/3", 4, 0),
+                new SpaceSaving.Counter<>("/events/2", 3, 0)), top);
+        assertEquals(0, sketch.minCount());
+        assertEquals(15, sketch.getTotal());
+    }
+
+    @Test
+    void offer_shouldKeepHeavyHittersWithinErrorBound() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(50);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // Zipf-подобное распределение: несколько популярных uri и длинный хвост
+            String uri = "/events/" + (int) Math.floor(Math.pow(1000, random.nextDouble()));
+            sketch.offer(uri, 1);
+            exact.merge(uri, 1L, Long::sum);
+        }
+
+        for (SpaceSaving.Counter<String> counter : sketch.counters()) {
+            long actual = exact.getOrDefault(counter.item(), 0L);
+            assertTrue(counter.count() >= actual, counter.toString());
+            assertTrue(counter.count() - counter.error() <= actual, counter.toString());
+        }
+        exact.forEach((uri, count) -> {
+            if (count > sketch.getTotal() / 50) {
+                assertTrue(sketch.counters().stream().anyMatch(counter -> counter.item().equals(uri)), uri);
+            }
+        });
+        assertEquals("/events/1", sketch.top(1).get(0).item());
+    }
+
+    @Test
+    void merge_shouldKeepErrorBoundsOfBothStreams() {
+        SpaceSaving<String> first = new SpaceSaving<>(3);
+        SpaceSaving<String> second = new SpaceSaving<>(3);
+        Map<String, Long> exact = new HashMap<>();
+        String[] firstStream = {"a", "a", "a", "b", "b", "c", "d", "a"};
+        String[] secondStream = {"b", "b", "e", "e", "e", "f", "a"};
+        for (String item : firstStream) {
+            first.offer(item, 1);
+            exact.merge(item, 1L, Long::sum);
+        }
+        for (String item : secondStream) {
+            second.offer(item, 1);
+            exact.merge(item, 1L, Long::sum);
+        }
+
+        SpaceSaving<String> merged = first.merge(second);
+
+        assertEquals(15, merged.getTotal());
+        assertEquals(3, merged.counters().size());
+        assertEquals("a", merged.top(1).get(0).item());
+        for (SpaceSaving.Counter<String> counter : merged.counters()) {
+            long actual = exact.get(counter.item());
+            assertTrue(counter.count() >= actual, counter.toString());
+            assertTrue(counter.count() - counter.error() <= actual, counter.toString());
+        }
+        exact.forEach((item, count) -> {
+            if (merged.counters().stream().noneMatch(counter -> counter.item().equals(item))) {
+                assertTrue(count <= merged.minCount(), item);
+            }
+        });
+    }
+
+    @Test
+    void of_shouldRestoreCounters() {
+        SpaceSaving<String> sketch = new SpaceSaving<>(2);
+        sketch.offer("a", 3);
+        sketch.offer("b", 1);
+        sketch.offer("c", 1);
+
+        SpaceSaving<String> restored = SpaceSaving.of(sketch.getCapacity(), sketch.getTotal(), sketch.counters());
+
+        assertEquals(sketch.counters(), restored.counters());
+        assertEquals(sketch.minCount(), restored.minCount());
+        assertEquals(5, restored.getTotal());
+    }
+}
@@ -0,0 +1,126 @@
+package ru.practicum.stats.wal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.stats.model.Hit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalStoreTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0, 0, 500);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void read_shouldReturnAppendedHitsAcrossSegments() throws IOException {
+        WalStore store = new WalStore(directory, 100, true);
+        store.open(0);
+        for (int i = 0; i < 10; i++) {
+            store.append(List.of(hit("/events/" + i)));
+        }
+
+        WalStore.Batch first = store.read(0, 4);
+        WalStore.Batch rest = store.read(first.end(), 100);
+
+        assertEquals(List.of("/events/0", "/events/1", "/events/2", "/events/3"), uris(first));
+        assertEquals(6, rest.hits().size());
+        assertEquals(store.getSyncedLsn(), rest.end());
+        assertEquals(BASE, rest.hits().get(0).getTimestamp());
+        assertTrue(store.getSegmentCount() > 1);
+        store.close();
+    }
+
+    @Test
+    void open_shouldCutTornTailAndKeepLsnAfterApplied() throws IOException {
+        WalStore store = new WalStore(directory, 1 << 20, true);
+        store.open(0);
+        store.append(List.of(hit("/events/1"), hit("/events/2")));
+        long end = store.getSyncedLsn();
+        store.close();
+        try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2}), end);
+        }
+
+        WalStore reopened = new WalStore(directory, 1 << 20, true);
+        reopened.open(0);
+        reopened.append(List.of(hit("/events/3")));
+
+        assertEquals(List.of("/events/1", "/events/2", "/events/3"), uris(reopened.read(0, 100)));
+        reopened.close();
+    }
+
+    @Test
+    void deleteBefore_shouldDropOnlyFullyAppliedSegments() throws IOException {
+        WalStore store = new WalStore(directory, 100, true);
+        store.open(0);
+        for (int i = 0; i < 10; i++) {
+            store.append(List.of(hit("/events/" + i)));
+        }
+        int segments = store.getSegmentCount();
+        WalStore.Batch applied = store.read(0, 5);
+
+        int deleted = store.deleteBefore(applied.end());
+
+        assertTrue(deleted > 0);
+        assertEquals(segments - deleted, segmentFiles().size());
+        assertEquals(5, store.read(applied.end(), 100).hits().size());
+        store.close();
+    }
+
+    @Test
+    void append_shouldKeepAllRecordsFromConcurrentWriters() throws Exception {
+        WalStore store = new WalStore(directory, 4096, true);
+        store.open(0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    store.append(List.of(hit("/events/" + i)));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(400, store.read(0, 1000).hits().size());
+        store.close();
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private List<String> uris(WalStore.Batch batch) {
+        return batch.hits().stream().map(Hit::getUri).toList();
+    }
+
+    private Hit hit(String uri) {
+        return Hit.builder()
+                .app("ewm-main-service")
+                .uri(uri)
+                .ip("192.168.1.1")
+                .timestamp(BASE)
+                .build();
+    }
+}
@@ -1,12 +1,128 @@
+CREATE TABLE IF NOT EXISTS hit_apps (
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_hit_apps PRIMARY KEY (id),
+    CONSTRAINT uq_hit_apps_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS hit_uris (
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(500) NOT NULL,
+    CONSTRAINT pk_hit_uris PRIMARY KEY (id),
+    CONSTRAINT uq_hit_uris_name UNIQUE (name)
+);
+
 CREATE TABLE IF NOT EXISTS hits (
     id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
-    app VARCHAR(255) NOT NULL,
-    uri VARCHAR(500) NOT NULL,
-    ip VARCHAR(45) NOT NULL,
+    app_id INT NOT NULL,
+    uri_id INT NOT NULL,
+    ip VARBINARY(45) NOT NULL,
     timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    weight INT DEFAULT 1 NOT NULL,
     CONSTRAINT pk_hit PRIMARY KEY (id)
 );
 
 CREATE INDEX IF NOT EXISTS idx_hit_timestamp ON hits(timestamp);
-CREATE INDEX IF NOT EXISTS idx_hit_uri ON hits(uri);
-CREATE INDEX IF NOT EXISTS idx_hit_app ON hits(app);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_hit_uri ON hits(uri_id);
+CREATE INDEX IF NOT EXISTS idx_hit_app ON hits(app_id);
+
+-- Агрегаты по корзинам времени: минута, час, сутки
+CREATE TABLE IF NOT EXISTS hits_rollup_minute (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(500) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    CONSTRAINT pk_hits_rollup_minute PRIMARY KEY (app, uri, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_hour (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(500) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    ip_sketch BYTEA,
+    CONSTRAINT pk_hits_rollup_hour PRIMARY KEY (app, uri, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_day (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(500) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    ip_sketch BYTEA,
+    CONSTRAINT pk_hits_rollup_day PRIMARY KEY (app, uri, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_minute_uri_bucket ON hits_rollup_minute(uri, bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_minute_bucket ON hits_rollup_minute(bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_hour_uri_bucket ON hits_rollup_hour(uri, bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_hour_bucket ON hits_rollup_hour(bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_day_uri_bucket ON hits_rollup_day(uri, bucket);
+CREATE INDEX IF NOT EXISTS idx_hits_rollup_day_bucket ON hits_rollup_day(bucket);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_state (
+    id INT NOT NULL,
+    watermark TIMESTAMP WITHOUT TIME ZONE,
+    CONSTRAINT pk_hits_rollup_state PRIMARY KEY (id)
+);
+
+-- Холодное хранилище: хиты старше порога, разложенные по столбцам блоками
+CREATE TABLE IF NOT EXISTS hits_cold_blocks (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    block_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    block_end TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    row_count INT NOT NULL,
+    dictionary BYTEA NOT NULL,
+    apps BYTEA NOT NULL,
+    uris BYTEA NOT NULL,
+    ips BYTEA NOT NULL,
+    timestamps BYTEA NOT NULL,
+    weights BYTEA,
+    CONSTRAINT pk_hits_cold_blocks PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hits_cold_blocks_start_end ON hits_cold_blocks(block_start, block_end);
+
+CREATE TABLE IF NOT EXISTS hits_cold_state (
+    id INT NOT NULL,
+    compacted_before TIMESTAMP WITHOUT TIME ZONE,
+    CONSTRAINT pk_hits_cold_state PRIMARY KEY (id)
+);
+
+-- Снимки скетчей популярных URI по корзинам окон, переживают перезапуск
+CREATE TABLE IF NOT EXISTS hits_top_snapshots (
+    time_window VARCHAR(16) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    sketch BYTEA NOT NULL,
+    CONSTRAINT pk_hits_top_snapshots PRIMARY KEY (time_window, bucket)
+);
+
+CREATE TABLE IF NOT EXISTS hits_wal_applied (
+    wal_id VARCHAR(36) NOT NULL,
+    lsn BIGINT NOT NULL,
+    CONSTRAINT pk_hits_wal_applied PRIMARY KEY (wal_id)
+);
+
+-- Номера посетителей и битовые карты номеров по (app, uri, сутки) для точного числа уникальных ip
+CREATE TABLE IF NOT EXISTS hit_ips (
+    id INT GENERATED BY DEFAULT AS IDENTITY,
+    name VARCHAR(45) NOT NULL,
+    CONSTRAINT pk_hit_ips PRIMARY KEY (id),
+    CONSTRAINT uq_hit_ips_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS hits_visitors_day (
+    app VARCHAR(255) NOT NULL,
+    uri VARCHAR(500) NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    visitors BYTEA NOT NULL,
+    CONSTRAINT pk_hits_visitors_day PRIMARY KEY (app, uri, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hits_visitors_day_bucket ON hits_visitors_day(bucket);
+
+CREATE TABLE IF NOT EXISTS hits_visitors_state (
+    id INT NOT NULL,
+    watermark TIMESTAMP WITHOUT TIME ZONE,
+    CONSTRAINT pk_hits_visitors_state PRIMARY KEY (id)
+);